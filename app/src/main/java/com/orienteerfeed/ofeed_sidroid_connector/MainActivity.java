@@ -26,12 +26,16 @@ import static com.orienteerfeed.ofeed_sidroid_connector.Preferences.USER_AGENT;
 import android.Manifest;
 import android.app.ActivityManager;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
+import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.Settings;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -49,10 +53,12 @@ import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.IntentSenderRequest;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.view.ContextThemeWrapper;
 import androidx.core.app.ActivityCompat;
+import androidx.core.content.FileProvider;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
@@ -65,7 +71,16 @@ import com.google.android.play.core.appupdate.AppUpdateOptions;
 import com.google.android.play.core.install.model.AppUpdateType;
 import com.google.android.play.core.install.model.UpdateAvailability;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
@@ -75,7 +90,8 @@ public class MainActivity extends AppCompatActivity {
     private Button startServiceButton;
     private TextView serviceStatus, serviceStatusHelp, httpCallStatus;
     private ImageView serviceStatusIcon, httpCallStatusIcon;
-    private SimpleTimer serviceStateTimer;
+    private ObservableValue.Subscription statusSubscription = null, siDroidHealthSubscription = null;
+    private SiDroidHealthMonitor.Lease siDroidHealthLease = null;
 
     // ********************************************************************************************
     // Lifecycle.
@@ -115,10 +131,8 @@ public class MainActivity extends AppCompatActivity {
         serviceStatus = findViewById(R.id.main_service_status);
         serviceStatusHelp = findViewById(R.id.main_service_status_help);
         serviceStatusIcon = findViewById(R.id.main_service_status_icon);
-        updateServiceState();
         httpCallStatus = findViewById(R.id.main_http_call_status);
         httpCallStatusIcon = findViewById(R.id.main_http_call_status_icon);
-        updateLatestStatus();
 
         if (!hasNotificationsPermission()) requestNotificationsPermission();
         // In-app update.
@@ -147,6 +161,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        logFollowHandler.removeCallbacksAndMessages(null);
         stopOFeedResultsService();
     }
 
@@ -183,61 +198,98 @@ public class MainActivity extends AppCompatActivity {
 
     // ********************************************************************************************
     // Service state.
+    // The user interface is redrawn when the status published by the service changes. While the
+    // service is stopped, it tells whether SI-Droid is reachable, ie, if uploading can be started.
     // ********************************************************************************************
     private void monitorServiceStateStart() {
-        serviceStateTimer = new SimpleTimer(997, () -> {
-            updateServiceState();
-            serviceStateTimer.startTimer();   // Restart timer.
+        acquireSiDroidHealthLease();
+        statusSubscription = ResultsServiceManager.getStatus().subscribe(this::runOnUiThread, status -> {
+            updateServiceState(status);
+            updateLatestStatus(status);
         });
-        serviceStateTimer.startTimer();
+        siDroidHealthSubscription = SiDroidHealthMonitor.get().getHealth().subscribe(this::runOnUiThread,
+                health -> updateServiceState());
     }
 
     private void monitorServiceStateStop() {
-        if (serviceStateTimer != null) serviceStateTimer.stopTimer();
+        if (statusSubscription != null) {
+            statusSubscription.unsubscribe();
+            statusSubscription = null;
+        }
+        if (siDroidHealthSubscription != null) {
+            siDroidHealthSubscription.unsubscribe();
+            siDroidHealthSubscription = null;
+        }
+        releaseSiDroidHealthLease();
+    }
+
+    /**
+     * Check that SI-Droid is reachable while this activity is shown, at the port in the settings.
+     */
+    private void acquireSiDroidHealthLease() {
+        releaseSiDroidHealthLease();
+        if (!isValidSettings()) return;
+        String pingUrl = String.format(Locale.US, SI_DROID_PING_URL, prefs.siDroidPort);
+        siDroidHealthLease = SiDroidHealthMonitor.get().acquire(pingUrl, USER_AGENT, prefs.siDroidProbeIntervalSec * 1_000L);
+    }
+
+    private void releaseSiDroidHealthLease() {
+        if (siDroidHealthLease != null) {
+            siDroidHealthLease.release();
+            siDroidHealthLease = null;
+        }
+    }
+
+    private void onSettingsDialogClosed() {
+        // The port of SI-Droid, or the interval between checks, may have changed.
+        if (statusSubscription != null) acquireSiDroidHealthLease();
+        updateServiceState();
     }
 
     private void updateServiceState() {
+        updateServiceState(ResultsServiceManager.getStatus().get());
+    }
+
+    private void updateServiceState(ResultsServiceStatus status) {
         if (!isValidSettings()) {
             serviceStatus.setText(R.string.status_not_configured);
             serviceStatusIcon.setImageResource(R.drawable.status_warning);
             startServiceButton.setText(R.string.settings);
             startServiceButton.setOnClickListener(v -> settings());
-        } else if (!ResultsService.isRunning) {
-            String pingUrl = String.format(Locale.US, SI_DROID_PING_URL, prefs.siDroidPort);
-            new HttpPing(pingUrl, USER_AGENT, isReachable ->
-                    runOnUiThread(() -> {
-                        if (isReachable) {
-                            serviceStatus.setText(R.string.status_stopped);
-                            serviceStatusIcon.setImageResource(R.drawable.status_stopped);
-                            serviceStatusHelp.setVisibility(GONE);
-                            startServiceButton.setText(R.string.start_uploading);
-                            startServiceButton.setEnabled(true);
-                            startServiceButton.setOnClickListener(v -> startOFeedResultsService());
-                        } else {
-                            serviceStatus.setText(R.string.si_droid_unreachable_title);
-                            serviceStatusIcon.setImageResource(R.drawable.error_red);
-                            serviceStatusHelp.setVisibility(VISIBLE);
-                            startServiceButton.setText(R.string.start_uploading);
-                            startServiceButton.setEnabled(false);
-                        }
-                    })).ping();
+        } else if (!status.running) {
+            SiDroidHealthMonitor.Health health = SiDroidHealthMonitor.get().getHealth().get();
+            if (health == SiDroidHealthMonitor.Health.REACHABLE) {
+                serviceStatus.setText(R.string.status_stopped);
+                serviceStatusIcon.setImageResource(R.drawable.status_stopped);
+                serviceStatusHelp.setVisibility(GONE);
+                startServiceButton.setText(R.string.start_uploading);
+                startServiceButton.setEnabled(true);
+                startServiceButton.setOnClickListener(v -> startOFeedResultsService());
+            } else if (health == SiDroidHealthMonitor.Health.UNREACHABLE) {
+                serviceStatus.setText(R.string.si_droid_unreachable_title);
+                serviceStatusIcon.setImageResource(R.drawable.error_red);
+                serviceStatusHelp.setVisibility(VISIBLE);
+                startServiceButton.setText(R.string.start_uploading);
+                startServiceButton.setEnabled(false);
+            }   // Else not checked yet, redrawn when it has been.
         } else {
             serviceStatus.setText(R.string.status_running);
             serviceStatusIcon.setImageResource(R.drawable.status_ok);
+            serviceStatusHelp.setVisibility(GONE);
             startServiceButton.setText(R.string.stop_uploading);
+            startServiceButton.setEnabled(true);
             startServiceButton.setOnClickListener(v -> stopOFeedResultsService());
         }
     }
 
-    private void updateLatestStatus() {
-        if (serviceManager != null) {
-            String s = serviceManager.getLatestStatus();
-            if (!s.isEmpty()) {
-                int iconResId = s.startsWith("S") ? R.drawable.status_ok : R.drawable.error_red;
-                httpCallStatusIcon.setImageResource(iconResId);
-                httpCallStatus.setText(s.substring(1));
-            }
-        }
+    private void updateLatestStatus(ResultsServiceStatus status) {
+        if (status.outcome == ResultsServiceStatus.Outcome.NONE) return;
+        int iconResId;
+        if (status.outcome == ResultsServiceStatus.Outcome.SUCCESS) iconResId = R.drawable.status_ok;
+        else if (status.outcome == ResultsServiceStatus.Outcome.SKIPPED) iconResId = R.drawable.status_skipped;
+        else iconResId = R.drawable.error_red;
+        httpCallStatusIcon.setImageResource(iconResId);
+        httpCallStatus.setText(status.getTimedMessage());
     }
 
     // ********************************************************************************************
@@ -256,6 +308,7 @@ public class MainActivity extends AppCompatActivity {
         if (itemId == R.id.main_menu_settings) settings();
         else if (itemId == R.id.main_menu_log) showLog();
         else if (itemId == R.id.main_menu_http_log) showHttpLog();
+        else if (itemId == R.id.main_menu_statistics) showStatistics();
         else if (itemId == R.id.main_menu_help) help();
         else if (itemId == R.id.main_menu_license) new LicenseDialog(this).show();
         else if (itemId == R.id.main_menu_about) new AboutDialog(this).show();
@@ -285,25 +338,11 @@ public class MainActivity extends AppCompatActivity {
     private void startOFeedResultsService() {
         String siDroidUrl = String.format(Locale.US, SI_DROID_URL, prefs.siDroidPort);
         serviceManager = new ResultsServiceManager(this, siDroidUrl,
-                prefs.oFeedServer, prefs.oFeedEventId, prefs.oFeedEventPassword, USER_AGENT, prefs.uploadIntervalSec,
+                prefs.oFeedServer, prefs.oFeedEventId, prefs.oFeedEventPassword, USER_AGENT, prefs.uploadIntervalSec, prefs.uploadJitterSec,
+                prefs.adaptiveUploadInterval ? new int[]{prefs.uploadIntervalFloorSec, prefs.uploadIntervalCeilingSec} : null,
                 new int[]{prefs.httpConnectTimeoutSec, prefs.httpReadTimeoutSec, prefs.httpWriteTimeoutSec, prefs.httpCallTimeoutSec},
-                new ResultsService.ResultsServiceStatus() {
-                    @Override
-                    public void onSuccess(String status) {
-                        runOnUiThread(() -> {
-                            httpCallStatus.setText(status);
-                            httpCallStatusIcon.setImageResource(R.drawable.status_ok);
-                        });
-                    }
-
-                    @Override
-                    public void onFailure(String status) {
-                        runOnUiThread(() -> {
-                            httpCallStatus.setText(status);
-                            httpCallStatusIcon.setImageResource(R.drawable.error_red);
-                        });
-                    }
-                });
+                prefs.oFeedGzipUpload, prefs.oFeedDeltaUpload, prefs.siDroidProbeIntervalSec, prefs.oFeedPreConnectLeadSec,
+                prefs.classResultCache, prefs.recordReplay);
         serviceManager.startOFeedResultsService();
         serviceManager.bindOFeedResultsService();
     }
@@ -320,7 +359,7 @@ public class MainActivity extends AppCompatActivity {
     // ********************************************************************************************
     private void settings() {
         stopOFeedResultsService();
-        new SettingsDialog(this, prefs, this::updateServiceState).show();
+        new SettingsDialog(this, prefs, this::onSettingsDialogClosed).show();
     }
 
     /**
@@ -336,43 +375,166 @@ public class MainActivity extends AppCompatActivity {
 
     // ********************************************************************************************
     // Log.
+    // The logs are read from the session journal, which is kept across sessions, one page at a
+    // time. If the journal can not be read, the logs of the running service are shown. While the
+    // newest page is shown, items added by the running service are added at the top.
     // ********************************************************************************************
+    private static final int LOG_PAGE_SIZE = 200;
+    private static final long LOG_FOLLOW_INTERVAL_MS = 1_000;
+    private final Handler logFollowHandler = new Handler(Looper.getMainLooper());
+    // Directory in the cache for exported files, shared through the FileProvider, see file_paths.xml.
+    private static final String EXPORT_DIRECTORY = "export";
+
     private void showLog() {
-        if (serviceManager != null) {
-            String log = serviceManager.getLog();
-            if (!log.isEmpty()) {
-                showLog(R.string.log, log);
-            } else {
-                showSnackbarEmptyLog();
-            }
-        } else {
-            showSnackbarEmptyLog();
-        }
+        showLog(R.string.log, SessionJournal.Source.SERVER);
     }
 
     private void showHttpLog() {
-        if (serviceManager != null) {
-            String log = serviceManager.getHttpLog();
+        showLog(R.string.show_http_log, SessionJournal.Source.HTTP);
+    }
+
+    private void showLog(int titleResId, SessionJournal.Source source) {
+        // Follow the log of the running service from before the journal is read, so that no item
+        // is missed.
+        long[] sequence = {serviceManager == null ? -1 : serviceManager.getNextLogSequence(source)};
+        List<SessionJournal.Record> records = readJournal(source, 0);
+        if (records.isEmpty()) {
+            String log = "";
+            if (serviceManager != null) {
+                log = source == SessionJournal.Source.HTTP ? serviceManager.getHttpLog() : serviceManager.getLog();
+            }
             if (!log.isEmpty()) {
-                showLog(R.string.show_http_log, log);
+                showLog(titleResId, log, null);
             } else {
                 showSnackbarEmptyLog();
             }
-        } else {
-            showSnackbarEmptyLog();
+            return;
         }
+        // Number of records shown so far, ie, records to skip for the next page.
+        int[] skip = {records.size()};
+        androidx.appcompat.app.AlertDialog dialog = showLog(titleResId, toText(records), source);
+        Runnable follow = new Runnable() {
+            @Override
+            public void run() {
+                CircularLog.Items items = serviceManager.getLogItems(source, sequence[0]);
+                if (items == null) return;  // The service has stopped.
+                if (!items.items.isEmpty()) {
+                    sequence[0] = items.nextSequence;
+                    TextView message = dialog.findViewById(R.id.dialog_with_scroll_view_text);
+                    if (message != null) message.setText(toText(items) + "\n" + message.getText());
+                }
+                logFollowHandler.postDelayed(this, LOG_FOLLOW_INTERVAL_MS);
+            }
+        };
+        if (sequence[0] >= 0) logFollowHandler.postDelayed(follow, LOG_FOLLOW_INTERVAL_MS);
+        dialog.setOnDismissListener(d -> logFollowHandler.removeCallbacks(follow));
+        Button older = dialog.getButton(DialogInterface.BUTTON_NEUTRAL);
+        older.setEnabled(records.size() == LOG_PAGE_SIZE);
+        // Set the listener after show(), so that the dialog is not dismissed.
+        older.setOnClickListener(v -> {
+            // Only the newest page is followed.
+            logFollowHandler.removeCallbacks(follow);
+            List<SessionJournal.Record> page = readJournal(source, skip[0]);
+            skip[0] += page.size();
+            if (!page.isEmpty()) {
+                View layout = dialog.findViewById(R.id.dialog_with_scroll_view);
+                TextView message = dialog.findViewById(R.id.dialog_with_scroll_view_text);
+                if (message != null) message.setText(toText(page));
+                if (layout != null) layout.scrollTo(0, 0);
+            }
+            older.setEnabled(page.size() == LOG_PAGE_SIZE);
+        });
     }
 
-    private void showLog(int titleResId, String log) {
+    /**
+     * Show a log.
+     *
+     * @param source Source of the log in the session journal, or null if the log is not from the
+     *               journal. A log from the journal can be paged and exported.
+     */
+    private androidx.appcompat.app.AlertDialog showLog(int titleResId, String log, @Nullable SessionJournal.Source source) {
         ContextThemeWrapper themedContext = new ContextThemeWrapper(this, R.style.Theme_ofeed_sidroid_connector);
         View layout = LayoutInflater.from(themedContext).inflate(R.layout.dialog_with_scroll_view, null);
         TextView message = layout.findViewById(R.id.dialog_with_scroll_view_text);
         message.setText(log);
-        new androidx.appcompat.app.AlertDialog.Builder(this)
+        androidx.appcompat.app.AlertDialog.Builder builder = new androidx.appcompat.app.AlertDialog.Builder(this)
                 .setView(layout)
                 .setTitle(titleResId)
-                .setPositiveButton(android.R.string.ok, null)
-                .show();
+                .setPositiveButton(android.R.string.ok, null);
+        if (source != null) {
+            builder.setNeutralButton(R.string.older, null)
+                    .setNegativeButton(R.string.export, (dialog, which) -> exportJournal());
+        }
+        return builder.show();
+    }
+
+    /**
+     * Read a page of the session journal, newest record first.
+     *
+     * @param skip Number of records already shown.
+     * @return The records, empty if there are no more records or the journal can not be read.
+     */
+    private List<SessionJournal.Record> readJournal(SessionJournal.Source source, int skip) {
+        try {
+            return SessionJournal.read(getFilesDir(), source, skip, LOG_PAGE_SIZE);
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Get items of the log of the running service as text, newest item first, like the journal.
+     */
+    private static String toText(CircularLog.Items items) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = items.items.size() - 1; i >= 0; i--) {
+            CircularLog.LogItem item = items.items.get(i);
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(item.getTime()).append(' ').append(item.text);
+        }
+        if (items.skipped) sb.append("\n...");
+        return sb.toString();
+    }
+
+    private static String toText(List<SessionJournal.Record> records) {
+        StringBuilder sb = new StringBuilder();
+        for (SessionJournal.Record record : records) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(record.getTime()).append(' ').append(record.text);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Export the whole session journal as a text file, to any app which can receive files, eg,
+     * email or a file manager. The file is written on a background thread.
+     */
+    private void exportJournal() {
+        File directory = new File(getCacheDir(), EXPORT_DIRECTORY);
+        File filesDir = getFilesDir();
+        new Thread(() -> {
+            try {
+                if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Can not create " + directory);
+                File file = new File(directory, "journal-" + LocalDate.now() + ".txt");
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                    SessionJournal.export(filesDir, writer);
+                }
+                Uri uri = FileProvider.getUriForFile(this, BuildConfig.APPLICATION_ID + ".fileprovider", file);
+                runOnUiThread(() -> {
+                    Intent intent = new Intent(Intent.ACTION_SEND);
+                    intent.setType("text/plain");
+                    intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.log) + " " + LocalDate.now());
+                    intent.putExtra(Intent.EXTRA_STREAM, uri);
+                    intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                    startActivity(Intent.createChooser(intent, getString(R.string.export)));
+                });
+            } catch (IOException | IllegalArgumentException e) {
+                runOnUiThread(() -> {
+                    View root = findViewById(R.id.main_snackbar_anchor);
+                    Snackbar.make(root, R.string.export_error, Snackbar.LENGTH_LONG).show();
+                });
+            }
+        }, "JournalExport").start();
     }
 
     private void showSnackbarEmptyLog() {
@@ -380,6 +542,56 @@ public class MainActivity extends AppCompatActivity {
         Snackbar.make(root, R.string.log_is_empty, Snackbar.LENGTH_LONG).show();
     }
 
+    // ********************************************************************************************
+    // Statistics.
+    // ********************************************************************************************
+    /**
+     * Show the statistics of the running session, or, when the service has stopped, those saved
+     * at the end of the most recent session.
+     */
+    private void showStatistics() {
+        SessionStatistics statistics = serviceManager == null ? null : serviceManager.getStatistics();
+        String text, csv;
+        int title;
+        if (statistics != null) {
+            text = statistics.toText();
+            csv = statistics.toCsv();
+            title = R.string.statistics;
+        } else {
+            SessionStatistics.Saved saved = SessionStatistics.load(getFilesDir());
+            if (saved == null) {
+                View root = findViewById(R.id.main_snackbar_anchor);
+                Snackbar.make(root, R.string.statistics_is_empty, Snackbar.LENGTH_LONG).show();
+                return;
+            }
+            text = saved.text;
+            csv = saved.csv;
+            title = R.string.statistics_previous_session;
+        }
+        ContextThemeWrapper themedContext = new ContextThemeWrapper(this, R.style.Theme_ofeed_sidroid_connector);
+        View layout = LayoutInflater.from(themedContext).inflate(R.layout.dialog_with_scroll_view, null);
+        TextView message = layout.findViewById(R.id.dialog_with_scroll_view_text);
+        message.setTypeface(Typeface.MONOSPACE);
+        message.setText(text);
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setView(layout)
+                .setTitle(title)
+                .setPositiveButton(android.R.string.ok, null)
+                .setNeutralButton(R.string.export_csv, (dialog, which) -> exportStatistics(csv))
+                .show();
+    }
+
+    /**
+     * Export the statistics as CSV, to any app which can receive text, eg, email or a file manager.
+     */
+    private void exportStatistics(String csv) {
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType("text/csv");
+        intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.statistics) + " " + LocalDate.now());
+        intent.putExtra(Intent.EXTRA_TEXT, csv);
+        startActivity(Intent.createChooser(intent, getString(R.string.export_csv)));
+    }
+
     // ********************************************************************************************
     // Permissions.
     // To display the notification icon in Android 33+ the POST_NOTIFICATIONS permission is required.
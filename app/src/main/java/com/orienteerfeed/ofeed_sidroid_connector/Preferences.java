@@ -97,6 +97,15 @@ public class Preferences {
     private static final String KEY_HTTP_CALL_TIMEOUT_SEC = "UPLOAD_POST_CALL_TIMEOUT_SEC";
     static final int DEFAULT_HTTP_CALL_TIMEOUT_SEC = 0;
 
+    /**
+     * Time (seconds) before each update to connect to OFeed, so that the upload does not wait
+     * for a new connection. 0 = No pre-connect.
+     * Default value {@link #DEFAULT_OFEED_PRE_CONNECT_LEAD_SEC}.
+     */
+    int oFeedPreConnectLeadSec;
+    private static final String KEY_OFEED_PRE_CONNECT_LEAD_SEC = "O_FEED_PRE_CONNECT_LEAD_SEC";
+    static final int DEFAULT_OFEED_PRE_CONNECT_LEAD_SEC = 0;
+
     /**
      * Endpoint URL of OFeed, eg, "https://api.orienteerfeed.com/rest/v1/events".
      * Default value {@link #DEFAULT_OFEED_SERVER}.
@@ -123,6 +132,40 @@ public class Preferences {
     private static final String KEY_OFEED_EVENT_PASSWORD = "O_FEED_EVENT_PASSWORD";
     private static final String DEFAULT_OFEED_EVENT_PASSWORD = "";
 
+    /**
+     * Compress uploads to OFeed with gzip (HTTP header Content-Encoding: gzip).
+     * Default value {@link #DEFAULT_OFEED_GZIP_UPLOAD}.
+     */
+    boolean oFeedGzipUpload;
+    private static final String KEY_OFEED_GZIP_UPLOAD = "O_FEED_GZIP_UPLOAD";
+    private static final boolean DEFAULT_OFEED_GZIP_UPLOAD = false;
+
+    /**
+     * Upload only the competitors whose results have changed, as a partial result list, and the
+     * whole result list now and then. OFeed must accept partial result lists.
+     * Default value {@link #DEFAULT_OFEED_DELTA_UPLOAD}.
+     */
+    boolean oFeedDeltaUpload;
+    private static final String KEY_OFEED_DELTA_UPLOAD = "O_FEED_DELTA_UPLOAD";
+    private static final boolean DEFAULT_OFEED_DELTA_UPLOAD = false;
+
+    /**
+     * Keep the classes of the previous result list in memory, so that only the classes which
+     * have changed are rewritten. Uses memory up to a limit.
+     * Default value {@link #DEFAULT_CLASS_RESULT_CACHE}.
+     */
+    boolean classResultCache;
+    private static final String KEY_CLASS_RESULT_CACHE = "CLASS_RESULT_CACHE";
+    private static final boolean DEFAULT_CLASS_RESULT_CACHE = false;
+
+    /**
+     * Record the result lists fetched from SI-Droid in a replay journal.
+     * Default value {@link #DEFAULT_RECORD_REPLAY}.
+     */
+    boolean recordReplay;
+    private static final String KEY_RECORD_REPLAY = "RECORD_REPLAY";
+    private static final boolean DEFAULT_RECORD_REPLAY = false;
+
     /**
      * SI-Droid port number for GET request of results.
      * Default value {@link #DEFAULT_SI_DROID_PORT}.
@@ -131,6 +174,14 @@ public class Preferences {
     private static final String KEY_SI_DROID_PORT = "SI_DROID_PORT";
     private static final int DEFAULT_SI_DROID_PORT = 8080;
 
+    /**
+     * Interval (seconds) between checks that SI-Droid is reachable.
+     * Default value {@link #DEFAULT_SI_DROID_PROBE_INTERVAL_SEC}.
+     */
+    int siDroidProbeIntervalSec;
+    private static final String KEY_SI_DROID_PROBE_INTERVAL_SEC = "SI_DROID_PROBE_INTERVAL_SEC";
+    static final int DEFAULT_SI_DROID_PROBE_INTERVAL_SEC = 3;
+
     /**
      * Interval (seconds) between updates from SI-Droid to OFeed.
      * Default value {@link #DEFAULT_UPLOAD_INTERVAL_SEC}.
@@ -139,6 +190,34 @@ public class Preferences {
     private static final String KEY_UPLOAD_INTERVAL_SEC = "UPLOAD_INTERVAL_SEC";
     private static final int DEFAULT_UPLOAD_INTERVAL_SEC = 30;
 
+    /**
+     * Maximum random delay (seconds) of each update, to spread the load on OFeed when many
+     * devices use the same interval. At most half the interval. 0 = No jitter.
+     * Default value {@link #DEFAULT_UPLOAD_JITTER_SEC}.
+     */
+    int uploadJitterSec;
+    private static final String KEY_UPLOAD_JITTER_SEC = "UPLOAD_JITTER_SEC";
+    static final int DEFAULT_UPLOAD_JITTER_SEC = 0;
+
+    /**
+     * Adapt the interval between updates to the rate at which competitors finish, within
+     * {@link #uploadIntervalFloorSec} and {@link #uploadIntervalCeilingSec}.
+     * Default value {@link #DEFAULT_ADAPTIVE_UPLOAD_INTERVAL}.
+     */
+    boolean adaptiveUploadInterval;
+    private static final String KEY_ADAPTIVE_UPLOAD_INTERVAL = "ADAPTIVE_UPLOAD_INTERVAL";
+    private static final boolean DEFAULT_ADAPTIVE_UPLOAD_INTERVAL = false;
+
+    /**
+     * Shortest and longest interval (seconds) between updates, if the interval is adaptive.
+     * Default values {@link #DEFAULT_UPLOAD_INTERVAL_FLOOR_SEC} and {@link #DEFAULT_UPLOAD_INTERVAL_CEILING_SEC}.
+     */
+    int uploadIntervalFloorSec, uploadIntervalCeilingSec;
+    private static final String KEY_UPLOAD_INTERVAL_FLOOR_SEC = "UPLOAD_INTERVAL_FLOOR_SEC";
+    private static final String KEY_UPLOAD_INTERVAL_CEILING_SEC = "UPLOAD_INTERVAL_CEILING_SEC";
+    private static final int DEFAULT_UPLOAD_INTERVAL_FLOOR_SEC = 10;
+    private static final int DEFAULT_UPLOAD_INTERVAL_CEILING_SEC = 120;
+
     /**
      * Android battery restrictions.
      */
@@ -195,16 +274,26 @@ public class Preferences {
         httpReadTimeoutSec = prefs.getInt(KEY_HTTP_READ_TIMEOUT_SEC, DEFAULT_HTTP_READ_TIMEOUT_SEC);
         httpWriteTimeoutSec = prefs.getInt(KEY_HTTP_WRITE_TIMEOUT_SEC, DEFAULT_HTTP_WRITE_TIMEOUT_SEC);
         httpCallTimeoutSec = prefs.getInt(KEY_HTTP_CALL_TIMEOUT_SEC, DEFAULT_HTTP_CALL_TIMEOUT_SEC);
+        oFeedPreConnectLeadSec = prefs.getInt(KEY_OFEED_PRE_CONNECT_LEAD_SEC, DEFAULT_OFEED_PRE_CONNECT_LEAD_SEC);
 
         oFeedServer = prefs.getString(KEY_OFEED_SERVER, DEFAULT_OFEED_SERVER);
         oFeedEventId = prefs.getString(KEY_OFEED_EVENT_ID, DEFAULT_OFEED_EVENT_ID);
         oFeedEventPassword = prefs.getString(KEY_OFEED_EVENT_PASSWORD, DEFAULT_OFEED_EVENT_PASSWORD);
+        oFeedGzipUpload = prefs.getBoolean(KEY_OFEED_GZIP_UPLOAD, DEFAULT_OFEED_GZIP_UPLOAD);
+        oFeedDeltaUpload = prefs.getBoolean(KEY_OFEED_DELTA_UPLOAD, DEFAULT_OFEED_DELTA_UPLOAD);
+        classResultCache = prefs.getBoolean(KEY_CLASS_RESULT_CACHE, DEFAULT_CLASS_RESULT_CACHE);
+        recordReplay = prefs.getBoolean(KEY_RECORD_REPLAY, DEFAULT_RECORD_REPLAY);
 
         // SI-Droid.
         siDroidPort = prefs.getInt(KEY_SI_DROID_PORT, DEFAULT_SI_DROID_PORT);
+        siDroidProbeIntervalSec = prefs.getInt(KEY_SI_DROID_PROBE_INTERVAL_SEC, DEFAULT_SI_DROID_PROBE_INTERVAL_SEC);
 
         // Upload interval.
         uploadIntervalSec = prefs.getInt(KEY_UPLOAD_INTERVAL_SEC, DEFAULT_UPLOAD_INTERVAL_SEC);
+        uploadJitterSec = prefs.getInt(KEY_UPLOAD_JITTER_SEC, DEFAULT_UPLOAD_JITTER_SEC);
+        adaptiveUploadInterval = prefs.getBoolean(KEY_ADAPTIVE_UPLOAD_INTERVAL, DEFAULT_ADAPTIVE_UPLOAD_INTERVAL);
+        uploadIntervalFloorSec = prefs.getInt(KEY_UPLOAD_INTERVAL_FLOOR_SEC, DEFAULT_UPLOAD_INTERVAL_FLOOR_SEC);
+        uploadIntervalCeilingSec = prefs.getInt(KEY_UPLOAD_INTERVAL_CEILING_SEC, DEFAULT_UPLOAD_INTERVAL_CEILING_SEC);
 
         // Battery restriction
         checkBatteryRestriction = prefs.getBoolean(KEY_BATTERY_RESTRICTION, DEFAULT_BATTERY_RESTRICTION);
@@ -231,16 +320,26 @@ public class Preferences {
         editor.putInt(KEY_HTTP_READ_TIMEOUT_SEC, httpReadTimeoutSec);
         editor.putInt(KEY_HTTP_WRITE_TIMEOUT_SEC, httpWriteTimeoutSec);
         editor.putInt(KEY_HTTP_CALL_TIMEOUT_SEC, httpCallTimeoutSec);
+        editor.putInt(KEY_OFEED_PRE_CONNECT_LEAD_SEC, oFeedPreConnectLeadSec);
 
         editor.putString(KEY_OFEED_SERVER, oFeedServer);
         editor.putString(KEY_OFEED_EVENT_ID, oFeedEventId);
         editor.putString(KEY_OFEED_EVENT_PASSWORD, oFeedEventPassword);
+        editor.putBoolean(KEY_OFEED_GZIP_UPLOAD, oFeedGzipUpload);
+        editor.putBoolean(KEY_OFEED_DELTA_UPLOAD, oFeedDeltaUpload);
+        editor.putBoolean(KEY_CLASS_RESULT_CACHE, classResultCache);
+        editor.putBoolean(KEY_RECORD_REPLAY, recordReplay);
 
         // SI-Droid.
         editor.putInt(KEY_SI_DROID_PORT, siDroidPort);
+        editor.putInt(KEY_SI_DROID_PROBE_INTERVAL_SEC, siDroidProbeIntervalSec);
 
         // Upload interval.
         editor.putInt(KEY_UPLOAD_INTERVAL_SEC, uploadIntervalSec);
+        editor.putInt(KEY_UPLOAD_JITTER_SEC, uploadJitterSec);
+        editor.putBoolean(KEY_ADAPTIVE_UPLOAD_INTERVAL, adaptiveUploadInterval);
+        editor.putInt(KEY_UPLOAD_INTERVAL_FLOOR_SEC, uploadIntervalFloorSec);
+        editor.putInt(KEY_UPLOAD_INTERVAL_CEILING_SEC, uploadIntervalCeilingSec);
 
         // Battery restriction
         editor.putBoolean(KEY_BATTERY_RESTRICTION, checkBatteryRestriction);
@@ -1,15 +1,25 @@
 package com.orienteerfeed.ofeed_sidroid_connector;
 
 import static android.content.pm.ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC;
+import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_ADAPTIVE_UPDATE_INTERVAL;
+import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_CLASS_RESULT_CACHE;
 import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_OFEED_AUTHORIZATION;
 import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_OFEED_EVENT_ID;
+import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_OFEED_DELTA_UPLOAD;
+import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_OFEED_GZIP_UPLOAD;
+import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_RECORD_REPLAY;
+import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_OFEED_PRE_CONNECT_LEAD_SEC;
 import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_OFEED_TIMEOUT_CALL_SEC;
 import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_OFEED_TIMEOUT_CONNECT_SEC;
 import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_OFEED_TIMEOUT_READ_SEC;
 import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_OFEED_TIMEOUT_WRITE_SEC;
 import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_OFEED_URL;
+import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_SI_DROID_PROBE_INTERVAL_SEC;
 import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_SI_DROID_URL;
+import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_UPDATE_INTERVAL_CEILING_SEC;
+import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_UPDATE_INTERVAL_FLOOR_SEC;
 import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_UPDATE_INTERVAL_SEC;
+import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_UPDATE_JITTER_SEC;
 import static com.orienteerfeed.ofeed_sidroid_connector.ResultsServiceManager.KEY_USER_AGENT;
 
 import android.app.Notification;
@@ -18,6 +28,8 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.Network;
 import android.os.Binder;
 import android.os.Build;
 import android.os.IBinder;
@@ -29,106 +41,81 @@ import androidx.core.app.NotificationCompat;
 import androidx.core.app.ServiceCompat;
 
 import java.io.IOException;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.FormatStyle;
-import java.util.Objects;
-import java.util.concurrent.TimeUnit;
-
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.MultipartBody;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
-import okhttp3.ResponseBody;
-import okhttp3.logging.HttpLoggingInterceptor;
 
 /**
- * Foreground service which gets results from SI-Droid and uploads them to OFeed.
+ * Foreground service which gets results from SI-Droid and uploads them to OFeed, with a
+ * {@link ResultsPipeline}. The service provides the settings, the translated texts, the logs and
+ * the network callback of the pipeline.
  */
 public class ResultsService extends Service {
 
     // *********************************************************************************************
-    // Interface.
+    // Status.
     // *********************************************************************************************
 
     /**
-     * Callback for updating the main user interface with the status of the most recent update
-     * of results from SI-Droid to OFeed.
+     * Status of the service, and of the most recent update of results from SI-Droid to OFeed.
+     * Observed by the main user interface, which is redrawn only when the status changes.
      */
-    public interface ResultsServiceStatus {
-        void onSuccess(String status);
+    static final ObservableValue<ResultsServiceStatus> STATUS = new ObservableValue<>(ResultsServiceStatus.STOPPED);
 
-        void onFailure(String status);
-    }
+    // *********************************************************************************************
+    // Log.
+    // *********************************************************************************************
 
     /**
-     * Set callback for updating the main user interface with the status of the most recent update.
+     * Get the application level log.
      */
-    public void setResultsServiceStatus(ResultsServiceStatus statusListener) {
-        this.statusListener = statusListener;
-    }
-
-    private static final DateTimeFormatter HH_MM_SS = DateTimeFormatter.ofLocalizedTime(FormatStyle.MEDIUM);
-    private String latestStatus = "";
-
-    private void statusSuccess(String status) {
-        String s = LocalTime.now().format(HH_MM_SS) + " " + status;
-        latestStatus = "S" + s;  // Prefix for success.
-        statusListener.onSuccess(s);
+    public String getServerLog() {
+        return serverLog.toString();
     }
 
-    private void statusFailure(String status) {
-        String s = LocalTime.now().format(HH_MM_SS) + " " + status;
-        latestStatus = "F" + s;  // Prefix for failure.
-        statusListener.onFailure(s);
+    /**
+     * Get the HTTP log produced by OkHttp HTTP client.
+     */
+    public String getHttpLog() {
+        return httpLog.toString();
     }
 
     /**
-     * Get status of the most recent update.
+     * Get the items of a log added since a sequence number, eg, to update a live log view.
      *
-     * @return Status, prefixed with "S" for success and "F" for failure.
+     * @param source        The application level log or the HTTP log.
+     * @param sinceSequence Sequence number of the first item, 0 for all items.
      */
-    public String getLatestStatus() {
-        return latestStatus;
+    CircularLog.Items getLogItems(SessionJournal.Source source, long sinceSequence) {
+        return (source == SessionJournal.Source.HTTP ? httpLog : serverLog).get(sinceSequence);
     }
 
-    // *********************************************************************************************
-    // Log.
-    // *********************************************************************************************
-
     /**
-     * Get the application level log.
+     * Get the sequence number of the next item to be added to a log, to follow the log from now.
+     *
+     * @param source The application level log or the HTTP log.
      */
-    public String getServerLog() {
-        return serverLog.toString();
+    long getNextLogSequence(SessionJournal.Source source) {
+        return (source == SessionJournal.Source.HTTP ? httpLog : serverLog).getNextSequence();
     }
 
     /**
-     * Get the HTTP log produced by OkHttp HTTP client.
+     * Get the latency and byte statistics of the updates, and of the HTTP calls, during this session.
      */
-    public String getHttpLog() {
-        return httpLog.toString();
+    SessionStatistics getStatistics() {
+        return statistics;
     }
 
     // *********************************************************************************************
     // Member fields.
     // *********************************************************************************************
-    // Flag checked by main activity to see if service is running.
-    public static boolean isRunning = false;
-    private OkHttpClient httpClient;
-    private ResultsServiceStatus statusListener = null;
-    private String oFeedUrl, oFeedEventId, oFeedAuthorization, oFeedUserAgent;
-    private int updateIntervalMillisec;
-    private static final MediaType XML_MEDIA_TYPE = MediaType.parse("text/xml; charset=utf-8");
-
-    private Request siDroidGetRequest;
-    private SimpleTimer updateIntervalTimer = null;
+    private ResultsPipeline pipeline = null;
+    private ConnectivityManager.NetworkCallback networkCallback = null;
 
     private CircularLog serverLog, httpLog;
+    // Durable copy of the logs, and metrics of each update. Null if it could not be opened.
+    private SessionJournal journal = null;
+    // Max number of items in each log. Adding an item costs the same whatever the capacity.
+    private static final int LOG_CAPACITY = 1_000;
+    // Latencies of the stages of the updates, and bytes transferred.
+    private final SessionStatistics statistics = new SessionStatistics();
 
     // *********************************************************************************************
     // Binder that is given to the client.
@@ -166,8 +153,16 @@ public class ResultsService extends Service {
             startForeground(1, notification);
         }
 
-        serverLog = new CircularLog(25);
-        httpLog = new CircularLog(25);
+        String journalError = null;
+        try {
+            journal = new SessionJournal(getFilesDir());
+        } catch (IOException e) {
+            journalError = getString(R.string.journal_open_error);
+            if (e.getMessage() != null) journalError += " " + e.getMessage();
+        }
+        serverLog = new CircularLog(LOG_CAPACITY, item -> journal(SessionJournal.Source.SERVER, item));
+        httpLog = new CircularLog(LOG_CAPACITY, item -> journal(SessionJournal.Source.HTTP, item));
+        if (journalError != null) serverLog.add(journalError);
     }
 
     @Override
@@ -175,38 +170,45 @@ public class ResultsService extends Service {
         super.onStartCommand(intent, flags, startId);
 
         // Get params.
-        String siDroidUrl = intent.getStringExtra(KEY_SI_DROID_URL);
-        oFeedUrl = intent.getStringExtra(KEY_OFEED_URL);
-        oFeedEventId = intent.getStringExtra(KEY_OFEED_EVENT_ID);
-        oFeedAuthorization = intent.getStringExtra(KEY_OFEED_AUTHORIZATION);
-        oFeedUserAgent = intent.getStringExtra(KEY_USER_AGENT);
-        updateIntervalMillisec = intent.getIntExtra(KEY_UPDATE_INTERVAL_SEC, 30) * 1_000;
-        int timeoutConnectSec = intent.getIntExtra(KEY_OFEED_TIMEOUT_CONNECT_SEC, -1);    // -1 = Use default timeout.
-        int timeoutReadSec = intent.getIntExtra(KEY_OFEED_TIMEOUT_READ_SEC, -1);
-        int timeoutWriteSec = intent.getIntExtra(KEY_OFEED_TIMEOUT_WRITE_SEC, -1);
-        int timeoutCallSec = intent.getIntExtra(KEY_OFEED_TIMEOUT_CALL_SEC, -1);
-
-        // Create the HTTP client and attach a logger.
-        HttpLoggingInterceptor logging = new HttpLoggingInterceptor(logItem -> httpLog.add(logItem));
-        logging.setLevel(HttpLoggingInterceptor.Level.BASIC);
-        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder();
-        clientBuilder.addInterceptor(logging);
-        if (timeoutConnectSec >= 0) clientBuilder.connectTimeout(timeoutConnectSec, TimeUnit.SECONDS);
-        if (timeoutReadSec >= 0) clientBuilder.readTimeout(timeoutReadSec, TimeUnit.SECONDS);
-        if (timeoutWriteSec >= 0) clientBuilder.writeTimeout(timeoutWriteSec, TimeUnit.SECONDS);
-        if (timeoutCallSec >= 0) clientBuilder.callTimeout(timeoutCallSec, TimeUnit.SECONDS);
-        httpClient = clientBuilder.build();
-
-        // Create GET request to pull results out of SI-Droid.
-        siDroidGetRequest = new Request.Builder()
-                .url(Objects.requireNonNull(siDroidUrl))
-                .header("User-Agent", oFeedUserAgent)
-                .get().build();
-
-        // Allow some time for the service to start before the first update of results from SI-Droid to OFeed takes place.
-        new SimpleTimer(3_000, this::firstUpdateOfResults).startTimer();
-
-        isRunning = true;
+        ResultsPipeline.Config config = new ResultsPipeline.Config();
+        config.siDroidUrl = intent.getStringExtra(KEY_SI_DROID_URL);
+        config.oFeedUrl = intent.getStringExtra(KEY_OFEED_URL);
+        config.oFeedEventId = intent.getStringExtra(KEY_OFEED_EVENT_ID);
+        config.oFeedAuthorization = intent.getStringExtra(KEY_OFEED_AUTHORIZATION);
+        config.userAgent = intent.getStringExtra(KEY_USER_AGENT);
+        config.gzipUpload = intent.getBooleanExtra(KEY_OFEED_GZIP_UPLOAD, false);
+        config.deltaUpload = intent.getBooleanExtra(KEY_OFEED_DELTA_UPLOAD, false);
+        config.updateIntervalSec = intent.getIntExtra(KEY_UPDATE_INTERVAL_SEC, 30);
+        config.updateJitterSec = intent.getIntExtra(KEY_UPDATE_JITTER_SEC, 0);
+        if (intent.getBooleanExtra(KEY_ADAPTIVE_UPDATE_INTERVAL, false)) {
+            config.intervalRangeSec = new int[]{intent.getIntExtra(KEY_UPDATE_INTERVAL_FLOOR_SEC, 10),
+                    intent.getIntExtra(KEY_UPDATE_INTERVAL_CEILING_SEC, 120)};
+        }
+        config.timeoutsSec = new int[]{     // -1 = Use default timeout.
+                intent.getIntExtra(KEY_OFEED_TIMEOUT_CONNECT_SEC, -1),
+                intent.getIntExtra(KEY_OFEED_TIMEOUT_READ_SEC, -1),
+                intent.getIntExtra(KEY_OFEED_TIMEOUT_WRITE_SEC, -1),
+                intent.getIntExtra(KEY_OFEED_TIMEOUT_CALL_SEC, -1)};
+        config.probeIntervalSec = intent.getIntExtra(KEY_SI_DROID_PROBE_INTERVAL_SEC, 3);
+        config.preConnectLeadSec = intent.getIntExtra(KEY_OFEED_PRE_CONNECT_LEAD_SEC, 0);
+        config.classResultCache = intent.getBooleanExtra(KEY_CLASS_RESULT_CACHE, false);
+        config.recordReplay = intent.getBooleanExtra(KEY_RECORD_REPLAY, false);
+        config.filesDir = getFilesDir();
+        config.cacheDir = getCacheDir();
+
+        pipeline = new ResultsPipeline(config, this::getText, STATUS, serverLog, httpLog, journal, statistics);
+        pipeline.start();
+
+        // Upload results waiting in the outbox as soon as the network is available again,
+        // rather than at the next tick.
+        ResultsPipeline started = pipeline;
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(@NonNull Network network) {
+                started.onNetworkAvailable();
+            }
+        };
+        getSystemService(ConnectivityManager.class).registerDefaultNetworkCallback(networkCallback);
 
         return Service.START_STICKY_COMPATIBILITY;
     }
@@ -214,144 +216,95 @@ public class ResultsService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        isRunning = false;
-        stopResultsUpdates();
+        if (networkCallback != null) {
+            getSystemService(ConnectivityManager.class).unregisterNetworkCallback(networkCallback);
+            networkCallback = null;
+        }
+        if (pipeline != null) {
+            pipeline.stop();
+            try {
+                statistics.save(getFilesDir());
+            } catch (IOException e) {
+                // Only the live statistics of the session were available.
+            }
+        } else {
+            STATUS.update(s -> s.withRunning(false));
+        }
+        if (journal != null) journal.close();
     }
 
-    private void stopResultsUpdates() {
-        updateIntervalTimer.stopTimer();
-    }
-
-    // *********************************************************************************************
-    // Get results from SI-Droid.
-    // *********************************************************************************************
-
-    private void firstUpdateOfResults() {
-        // First update of results from SI-Droid to OFeed.
-        updateResults();
-
-        // Recurring updates.
-        updateIntervalTimer = new SimpleTimer(updateIntervalMillisec, () -> {
-            updateResults();
-            updateIntervalTimer.startTimer();   // Restart timer.
-        });
-        updateIntervalTimer.startTimer();
+    private void journal(SessionJournal.Source source, CircularLog.LogItem item) {
+        if (journal != null) journal.append(source, item.timeMillis, item.text);
     }
 
     /**
-     * Get results from SI-Droid.
+     * Get the translated text of a message of the pipeline.
      */
-    private void updateResults() {
-        serverLog.add(getString(R.string.si_droid_get_request));
-        httpClient.newCall(siDroidGetRequest).enqueue(new Callback() {
-            @Override
-            public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                String message = e.getMessage();
-                if (message == null) message = getString(R.string.io_exception);
-                statusFailure(message);
-                serverLog.add(message);
-            }
-
-            @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) {
-                try (ResponseBody responseBody = response.body()) {
-                    if (response.isSuccessful()) {
-                        if (responseBody != null) {
-                            String responseBodyAsString = responseBody.string();
-                            if(responseBodyAsString.contains("<PersonResult>")) {
-                                // Results available.
-                                serverLog.add(getString(R.string.si_droid_results_retrieved));
-                                uploadResults(responseBodyAsString);
-                            } else {
-                                String message = getString(R.string.si_droid_no_results);
-                                statusSuccess(message);
-                                serverLog.add(message);
-                            }
-                        } else {
-                            String message = getString(R.string.null_response);
-                            statusFailure(message);
-                            serverLog.add(message);
-                        }
-                    } else {
-                        // Unsuccessful response.
-                        String message = HttpStatusCodes.getMeaning(response.code());
-                        statusFailure(message);
-                        serverLog.add(message);
-                    }
-                } catch (IOException e) {
-                    String message = e.getMessage();
-                    if (message == null) message = getString(R.string.io_exception);
-                    statusFailure(message);
-                    serverLog.add(message);
-                }
-            }
-        });
+    private String getText(ResultsPipeline.Text text, Object... args) {
+        return getString(getTextResId(text), args);
     }
 
-    /**
-     * Upload results to OFeed.
-     */
-    private void uploadResults(String xmlContent) {
-        serverLog.add(getString(R.string.ofeed_post_request));
-
-        // Insert external id.
-        String xmlContentWithExternalId;
-        try {
-            xmlContentWithExternalId = XmlModifier.updateOrInsertIds(xmlContent);
-        } catch (Exception e) {
-            String message = getString(R.string.external_id_error);
-            statusFailure(message);
-            if (e.getMessage() != null) message += " " + e.getMessage();
-            serverLog.add(message);
-            return;
+    private static int getTextResId(ResultsPipeline.Text text) {
+        switch (text) {
+            case UPDATE_TICK_COALESCED:
+                return R.string.update_tick_coalesced;
+            case UPDATE_TICK_DEFERRED:
+                return R.string.update_tick_deferred;
+            case UPDATE_CANCELLED:
+                return R.string.update_cancelled;
+            case NETWORK_AVAILABLE:
+                return R.string.network_available;
+            case SI_DROID_UNREACHABLE:
+                return R.string.si_droid_unreachable_title;
+            case SI_DROID_REACHABLE_AGAIN:
+                return R.string.si_droid_reachable_again;
+            case SI_DROID_READY:
+                return R.string.si_droid_ready;
+            case SI_DROID_NOT_READY:
+                return R.string.si_droid_not_ready;
+            case SI_DROID_GET_REQUEST:
+                return R.string.si_droid_get_request;
+            case SI_DROID_RESULTS_RETRIEVED:
+                return R.string.si_droid_results_retrieved;
+            case SI_DROID_NO_RESULTS:
+                return R.string.si_droid_no_results;
+            case UPDATE_INTERVAL_ADAPTED:
+                return R.string.update_interval_adapted;
+            case EXTERNAL_ID_ERROR:
+                return R.string.external_id_error;
+            case COMPETITOR_IDS_SAVE_ERROR:
+                return R.string.competitor_ids_save_error;
+            case OFEED_POST_REQUEST:
+                return R.string.ofeed_post_request;
+            case OFEED_UPLOAD_OK:
+                return R.string.ofeed_upload_ok;
+            case OFEED_UPLOAD_SKIPPED:
+                return R.string.ofeed_upload_skipped;
+            case OFEED_UPLOAD_PENDING:
+                return R.string.ofeed_upload_pending;
+            case OFEED_UPLOAD_COMPRESSION:
+                return R.string.ofeed_upload_compression;
+            case OFEED_FIRST_UPLOAD:
+                return R.string.ofeed_first_upload;
+            case OFEED_CIRCUIT_OPEN:
+                return R.string.ofeed_circuit_open;
+            case OFEED_CIRCUIT_OPENED:
+                return R.string.ofeed_circuit_opened;
+            case OFEED_RETRY:
+                return R.string.ofeed_retry;
+            case OFEED_DELTA_UPLOAD:
+                return R.string.ofeed_delta_upload;
+            case OFEED_DELTA_REJECTED:
+                return R.string.ofeed_delta_rejected;
+            case REPLAY_RECORDED:
+                return R.string.replay_recorded;
+            case REPLAY_RECORD_ERROR:
+                return R.string.replay_record_error;
+            case NULL_RESPONSE:
+                return R.string.null_response;
+            default:
+                return R.string.io_exception;
         }
-
-        RequestBody xmlRequestBody = RequestBody.create(xmlContentWithExternalId, XML_MEDIA_TYPE);
-        RequestBody requestBody = new MultipartBody.Builder()
-                .setType(MultipartBody.FORM)
-                .addFormDataPart("eventId", oFeedEventId)
-                .addFormDataPart("file", "result-list-iof-3.0.xml", xmlRequestBody)
-                .build();
-
-        Request request = new Request.Builder()
-                .url(oFeedUrl)
-                .addHeader("User-Agent", oFeedUserAgent)
-                .addHeader("Authorization", oFeedAuthorization)
-                .addHeader("Content-Type", "text; charset=utf-8")
-                .post(requestBody)
-                .build();
-
-        httpClient.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                String message = e.getMessage();
-                if (message == null) message = getString(R.string.io_exception);
-                statusFailure(message);
-                serverLog.add(message);
-            }
-
-            @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) {
-                try (ResponseBody responseBody = response.body()) {
-                    if (response.isSuccessful()) {
-                        if (responseBody != null) {
-                            String message = getString(R.string.ofeed_upload_ok);
-                            statusSuccess(message);
-                            serverLog.add(message);
-                        } else {
-                            String message = getString(R.string.null_response);
-                            statusFailure(message);
-                            serverLog.add(message);
-                        }
-                    } else {
-                        // Unsuccessful response.
-                        String message = HttpStatusCodes.getMeaning(response.code());
-                        statusFailure(message);
-                        serverLog.add(message);
-                    }
-                }
-            }
-        });
     }
 
     // *********************************************************************************************
@@ -9,6 +9,7 @@ import android.os.IBinder;
 import android.util.Base64;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 
 /**
@@ -21,9 +22,9 @@ public class ResultsServiceManager {
     // *********************************************************************************************
     private final Activity activity;
     private final String oFeedUrl, siDroidUrl, eventId, authorization, userAgent;
-    private final int updateIntervalSec;
-    private final int[] timeoutsSec;
-    private final ResultsService.ResultsServiceStatus statusListener;
+    private final int updateIntervalSec, updateJitterSec, probeIntervalSec, preConnectLeadSec;
+    private final int[] intervalRangeSec, timeoutsSec;
+    private final boolean gzipUpload, deltaUpload, classResultCache, recordReplay;
 
     private ResultsService resultsService;
     private Intent oFeedResultsServiceIntent;
@@ -39,8 +40,15 @@ public class ResultsServiceManager {
     static final String KEY_SI_DROID_URL = pn + "siDroidUrl", KEY_OFEED_URL = pn + "url",
             KEY_OFEED_EVENT_ID = pn + "eventId", KEY_OFEED_AUTHORIZATION = pn + "authorization",
             KEY_USER_AGENT = pn + "userAgent", KEY_UPDATE_INTERVAL_SEC = pn + "updateIntervalSec",
+            KEY_UPDATE_JITTER_SEC = pn + "updateJitterSec",
             KEY_OFEED_TIMEOUT_CONNECT_SEC = pn + "timeoutConnectSec", KEY_OFEED_TIMEOUT_READ_SEC = pn + "timeoutReadSec",
-            KEY_OFEED_TIMEOUT_WRITE_SEC = pn + "timeoutWriteSec", KEY_OFEED_TIMEOUT_CALL_SEC = pn + "timeoutCallSec";
+            KEY_OFEED_TIMEOUT_WRITE_SEC = pn + "timeoutWriteSec", KEY_OFEED_TIMEOUT_CALL_SEC = pn + "timeoutCallSec",
+            KEY_ADAPTIVE_UPDATE_INTERVAL = pn + "adaptiveUpdateInterval",
+            KEY_UPDATE_INTERVAL_FLOOR_SEC = pn + "updateIntervalFloorSec", KEY_UPDATE_INTERVAL_CEILING_SEC = pn + "updateIntervalCeilingSec",
+            KEY_OFEED_GZIP_UPLOAD = pn + "gzipUpload", KEY_OFEED_DELTA_UPLOAD = pn + "deltaUpload",
+            KEY_SI_DROID_PROBE_INTERVAL_SEC = pn + "siDroidProbeIntervalSec",
+            KEY_OFEED_PRE_CONNECT_LEAD_SEC = pn + "preConnectLeadSec", KEY_CLASS_RESULT_CACHE = pn + "classResultCache",
+            KEY_RECORD_REPLAY = pn + "recordReplay";
 
     // *********************************************************************************************
     // Constructor.
@@ -55,14 +63,24 @@ public class ResultsServiceManager {
      * @param eventPassword     O Feed event password.
      * @param userAgent         SI Droid OFeed Connector user agent. Included in the HTTP request header to O Feed.
      * @param updateIntervalSec Time between uploads from SI Droid Event to OFeed (sec). Must be greater than zero.
+     * @param updateJitterSec   Random delay of each upload, up to this (sec). 0 = No jitter.
+     * @param intervalRangeSec  Shortest and longest time between uploads (sec), as array {floor, ceiling}, if the
+     *                          time between uploads is adapted to the finish rate. Null for a fixed time between uploads.
      * @param timeoutsSec       Timeouts in seconds for OkHttpClient, as array {connect, read, write, call}.
      *                          A value of -1 means default timeout.
-     * @param statusListener    Status of most recent update by {@link ResultsService} is received through this listener.
+     * @param gzipUpload        Compress uploads to OFeed with gzip.
+     * @param deltaUpload       Upload only the competitors whose results have changed, and the whole
+     *                          result list now and then.
+     * @param probeIntervalSec  Time between checks that SI Droid Event is reachable (sec).
+     * @param preConnectLeadSec Time before each upload to connect to OFeed (sec). 0 = No pre-connect.
+     * @param classResultCache  Rewrite only the classes which have changed since the previous result list.
+     * @param recordReplay      Record the result lists fetched from SI Droid Event in a replay journal.
      * @noinspection JavadocLinkAsPlainText
      */
     ResultsServiceManager(Activity activity, String siDroidUrl, String oFeedUrl, String eventId, String eventPassword,
-                          String userAgent, int updateIntervalSec, int[] timeoutsSec,
-                          @NonNull ResultsService.ResultsServiceStatus statusListener) {
+                          String userAgent, int updateIntervalSec, int updateJitterSec, int[] intervalRangeSec, int[] timeoutsSec, boolean gzipUpload,
+                          boolean deltaUpload, int probeIntervalSec, int preConnectLeadSec, boolean classResultCache,
+                          boolean recordReplay) {
         if (updateIntervalSec <= 0) throw new IllegalArgumentException("updateIntervalSec must be > 0");
         this.activity = activity;
         this.siDroidUrl = siDroidUrl;
@@ -71,8 +89,15 @@ public class ResultsServiceManager {
         authorization = "Basic " + base64EncodeToString(eventId + ":" + eventPassword);
         this.userAgent = userAgent;
         this.updateIntervalSec = updateIntervalSec;
+        this.updateJitterSec = updateJitterSec;
+        this.intervalRangeSec = intervalRangeSec;
         this.timeoutsSec = timeoutsSec;
-        this.statusListener = statusListener;
+        this.gzipUpload = gzipUpload;
+        this.deltaUpload = deltaUpload;
+        this.probeIntervalSec = probeIntervalSec;
+        this.preConnectLeadSec = preConnectLeadSec;
+        this.classResultCache = classResultCache;
+        this.recordReplay = recordReplay;
     }
 
     // *********************************************************************************************
@@ -87,10 +112,22 @@ public class ResultsServiceManager {
         oFeedResultsServiceIntent.putExtra(KEY_OFEED_AUTHORIZATION, authorization);
         oFeedResultsServiceIntent.putExtra(KEY_USER_AGENT, userAgent);
         oFeedResultsServiceIntent.putExtra(KEY_UPDATE_INTERVAL_SEC, updateIntervalSec);
+        oFeedResultsServiceIntent.putExtra(KEY_UPDATE_JITTER_SEC, updateJitterSec);
+        oFeedResultsServiceIntent.putExtra(KEY_ADAPTIVE_UPDATE_INTERVAL, intervalRangeSec != null);
+        if (intervalRangeSec != null) {
+            oFeedResultsServiceIntent.putExtra(KEY_UPDATE_INTERVAL_FLOOR_SEC, intervalRangeSec[0]);
+            oFeedResultsServiceIntent.putExtra(KEY_UPDATE_INTERVAL_CEILING_SEC, intervalRangeSec[1]);
+        }
         oFeedResultsServiceIntent.putExtra(KEY_OFEED_TIMEOUT_CONNECT_SEC, timeoutsSec[0]);
         oFeedResultsServiceIntent.putExtra(KEY_OFEED_TIMEOUT_READ_SEC, timeoutsSec[1]);
         oFeedResultsServiceIntent.putExtra(KEY_OFEED_TIMEOUT_WRITE_SEC, timeoutsSec[2]);
         oFeedResultsServiceIntent.putExtra(KEY_OFEED_TIMEOUT_CALL_SEC, timeoutsSec[3]);
+        oFeedResultsServiceIntent.putExtra(KEY_OFEED_GZIP_UPLOAD, gzipUpload);
+        oFeedResultsServiceIntent.putExtra(KEY_OFEED_DELTA_UPLOAD, deltaUpload);
+        oFeedResultsServiceIntent.putExtra(KEY_SI_DROID_PROBE_INTERVAL_SEC, probeIntervalSec);
+        oFeedResultsServiceIntent.putExtra(KEY_OFEED_PRE_CONNECT_LEAD_SEC, preConnectLeadSec);
+        oFeedResultsServiceIntent.putExtra(KEY_CLASS_RESULT_CACHE, classResultCache);
+        oFeedResultsServiceIntent.putExtra(KEY_RECORD_REPLAY, recordReplay);
 
         ContextCompat.startForegroundService(activity, oFeedResultsServiceIntent);
     }
@@ -106,7 +143,6 @@ public class ResultsServiceManager {
     void unbindOFeedResultsService() {
         if (oFeedResultsServiceIsBound) {
             activity.unbindService(oFeedResultsServiceConnection);
-            resultsService.setResultsServiceStatus(null);
             oFeedResultsServiceIsBound = false;
         }
     }
@@ -134,25 +170,61 @@ public class ResultsServiceManager {
     }
 
     /**
-     * Get status of the most recent update.
+     * Get the items of a log added since a sequence number, see
+     * {@link ResultsService#getLogItems(SessionJournal.Source, long)}.
      *
-     * @return Status, prefixed with "S" for success and "F" for failure.
+     * @return The items, or null if the service is not bound.
      */
-    String getLatestStatus() {
+    @Nullable
+    CircularLog.Items getLogItems(SessionJournal.Source source, long sinceSequence) {
         if (oFeedResultsServiceIsBound) {
-            return resultsService.getLatestStatus();
+            return resultsService.getLogItems(source, sinceSequence);
         } else {
-            return "";
+            return null;
+        }
+    }
+
+    /**
+     * Get the sequence number of the next item to be added to a log.
+     *
+     * @return The sequence number, or -1 if the service is not bound.
+     */
+    long getNextLogSequence(SessionJournal.Source source) {
+        if (oFeedResultsServiceIsBound) {
+            return resultsService.getNextLogSequence(source);
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the latency and byte statistics of the updates during this session.
+     *
+     * @return The statistics, or null if the service is not bound.
+     */
+    @Nullable
+    SessionStatistics getStatistics() {
+        if (oFeedResultsServiceIsBound) {
+            return resultsService.getStatistics();
+        } else {
+            return null;
         }
     }
 
+    /**
+     * Get the status of {@link ResultsService}, and of its most recent update, as a stream of
+     * immutable snapshots. The stream is available also when the service is not running.
+     */
+    static ObservableValue<ResultsServiceStatus> getStatus() {
+        return ResultsService.STATUS;
+    }
+
     private final ServiceConnection oFeedResultsServiceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName className, IBinder service) {
             // Get service instance.
             ResultsService.OFeedResultsBinder binder = (ResultsService.OFeedResultsBinder) service;
             resultsService = binder.getService();
-            resultsService.setResultsServiceStatus(statusListener);
             oFeedResultsServiceIsBound = true;
         }
 
@@ -13,6 +13,7 @@ import android.text.method.PasswordTransformationMethod;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.NumberPicker;
@@ -27,6 +28,7 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.function.IntConsumer;
 
 class SettingsDialog {
     /**
@@ -45,10 +47,12 @@ class SettingsDialog {
     private final SettingsDialogClosed listener;
 
     // Keep old values to restore changes, if user cancels this dialog.
-    private int oldUploadIntervalSec, oldHttpConnectTimeoutSec, oldHttpReadTimeoutSec, oldHttpWriteTimeoutSec, oldHttpCallTimeoutSec;
+    private boolean oldAdaptiveUploadInterval;
+    private int oldUploadIntervalSec, oldUploadIntervalFloorSec, oldUploadIntervalCeilingSec, oldHttpConnectTimeoutSec, oldHttpReadTimeoutSec, oldHttpWriteTimeoutSec, oldHttpCallTimeoutSec, oldSiDroidProbeIntervalSec, oldOFeedPreConnectLeadSec, oldUploadJitterSec;
 
     // Editable user interface views.
     private EditText port, server, eventId, eventPassword;
+    private CheckBox gzipUpload, deltaUpload, classResultCache, recordReplay;
 
     /**
      * Index into {@link #serverUrl}.
@@ -85,15 +89,41 @@ class SettingsDialog {
 //        View layout = LayoutInflater.from(activity).inflate(R.layout.settings, null);
         // Keep old values to restore changes, if user cancels this dialog.
         oldUploadIntervalSec = prefs.uploadIntervalSec;
+        oldAdaptiveUploadInterval = prefs.adaptiveUploadInterval;
+        oldUploadIntervalFloorSec = prefs.uploadIntervalFloorSec;
+        oldUploadIntervalCeilingSec = prefs.uploadIntervalCeilingSec;
         oldHttpConnectTimeoutSec = prefs.httpConnectTimeoutSec;
         oldHttpReadTimeoutSec = prefs.httpReadTimeoutSec;
         oldHttpWriteTimeoutSec = prefs.httpWriteTimeoutSec;
         oldHttpCallTimeoutSec = prefs.httpCallTimeoutSec;
+        oldSiDroidProbeIntervalSec = prefs.siDroidProbeIntervalSec;
+        oldOFeedPreConnectLeadSec = prefs.oFeedPreConnectLeadSec;
+        oldUploadJitterSec = prefs.uploadJitterSec;
 
         // Upload interval.
         Button uploadIntervalButton = layout.findViewById(R.id.settings_upload_interval);
         updateTimeButton(prefs.uploadIntervalSec, uploadIntervalButton);
-        uploadIntervalButton.setOnClickListener(v -> onUploadIntervalClicked(uploadIntervalButton));
+        uploadIntervalButton.setOnClickListener(v -> onUploadIntervalClicked(R.string.upload_interval,
+                prefs.uploadIntervalSec, sec -> prefs.uploadIntervalSec = sec, uploadIntervalButton));
+
+        // Adaptive upload interval, between floor and ceiling.
+        CheckBox adaptiveUploadInterval = layout.findViewById(R.id.settings_upload_interval_adaptive);
+        Button uploadIntervalFloorButton = layout.findViewById(R.id.settings_upload_interval_floor);
+        Button uploadIntervalCeilingButton = layout.findViewById(R.id.settings_upload_interval_ceiling);
+        View uploadIntervalRangeSeparator = layout.findViewById(R.id.settings_upload_interval_range_separator);
+        updateTimeButton(prefs.uploadIntervalFloorSec, uploadIntervalFloorButton);
+        updateTimeButton(prefs.uploadIntervalCeilingSec, uploadIntervalCeilingButton);
+        uploadIntervalFloorButton.setOnClickListener(v -> onUploadIntervalClicked(R.string.upload_interval_floor,
+                prefs.uploadIntervalFloorSec, sec -> prefs.uploadIntervalFloorSec = sec, uploadIntervalFloorButton));
+        uploadIntervalCeilingButton.setOnClickListener(v -> onUploadIntervalClicked(R.string.upload_interval_ceiling,
+                prefs.uploadIntervalCeilingSec, sec -> prefs.uploadIntervalCeilingSec = sec, uploadIntervalCeilingButton));
+        View[] uploadIntervalRange = {uploadIntervalFloorButton, uploadIntervalRangeSeparator, uploadIntervalCeilingButton};
+        adaptiveUploadInterval.setChecked(prefs.adaptiveUploadInterval);
+        setVisibility(uploadIntervalRange, prefs.adaptiveUploadInterval);
+        adaptiveUploadInterval.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            prefs.adaptiveUploadInterval = isChecked;
+            setVisibility(uploadIntervalRange, isChecked);
+        });
 
         // SI-Droid port number.
         port = layout.findViewById(R.id.settings_si_droid_port);
@@ -158,6 +188,22 @@ class SettingsDialog {
         Button httpTimeouts = layout.findViewById(R.id.settings_ofeed_http_timeouts);
         httpTimeouts.setOnClickListener(v -> new SettingsHttpTimeoutsDialog(activity, prefs).show());
 
+        // Compress uploads.
+        gzipUpload = layout.findViewById(R.id.settings_ofeed_gzip_upload);
+        gzipUpload.setChecked(prefs.oFeedGzipUpload);
+
+        // Upload changed competitors only.
+        deltaUpload = layout.findViewById(R.id.settings_ofeed_delta_upload);
+        deltaUpload.setChecked(prefs.oFeedDeltaUpload);
+
+        // Rewrite changed classes only.
+        classResultCache = layout.findViewById(R.id.settings_class_result_cache);
+        classResultCache.setChecked(prefs.classResultCache);
+
+        // Record a replay journal.
+        recordReplay = layout.findViewById(R.id.settings_record_replay);
+        recordReplay.setChecked(prefs.recordReplay);
+
         // Show the settings dialog.
         androidx.appcompat.app.AlertDialog.Builder builder = new androidx.appcompat.app.AlertDialog.Builder(activity)
                 .setView(layout)
@@ -169,10 +215,16 @@ class SettingsDialog {
                 .setNegativeButton(android.R.string.cancel, (dialog, which) -> {
                     // Restore changes.
                     prefs.uploadIntervalSec = oldUploadIntervalSec;
+                    prefs.adaptiveUploadInterval = oldAdaptiveUploadInterval;
+                    prefs.uploadIntervalFloorSec = oldUploadIntervalFloorSec;
+                    prefs.uploadIntervalCeilingSec = oldUploadIntervalCeilingSec;
                     prefs.httpConnectTimeoutSec = oldHttpConnectTimeoutSec;
                     prefs.httpReadTimeoutSec = oldHttpReadTimeoutSec;
                     prefs.httpWriteTimeoutSec = oldHttpWriteTimeoutSec;
                     prefs.httpCallTimeoutSec = oldHttpCallTimeoutSec;
+                    prefs.siDroidProbeIntervalSec = oldSiDroidProbeIntervalSec;
+                    prefs.oFeedPreConnectLeadSec = oldOFeedPreConnectLeadSec;
+                    prefs.uploadJitterSec = oldUploadJitterSec;
                     // Done.
                     listener.onSettingsDialogClosed();
                 })
@@ -198,7 +250,9 @@ class SettingsDialog {
             String newPassword = eventPassword.getText().toString().trim();
             // Check values.
             String error = null;
-            if (newPort < 1025 || newPort > 65535) error = activity.getString(R.string.port_number_error);
+            if (prefs.adaptiveUploadInterval && prefs.uploadIntervalFloorSec > prefs.uploadIntervalCeilingSec)
+                error = activity.getString(R.string.upload_interval_range_error);
+            else if (newPort < 1025 || newPort > 65535) error = activity.getString(R.string.port_number_error);
             else if (serverUrl[URL_HOST].isEmpty()) error = activity.getString(R.string.server_not_specified);
             else if (!isHttpsUrl(newServerUrl)) error = activity.getString(R.string.server_https_required) + "\n\n" +
                     activity.getString(R.string.server_https_required_reason);
@@ -212,6 +266,10 @@ class SettingsDialog {
             prefs.oFeedServer = newServerUrl;
             prefs.oFeedEventId = newEventId;
             prefs.oFeedEventPassword = newPassword;
+            prefs.oFeedGzipUpload = gzipUpload.isChecked();
+            prefs.oFeedDeltaUpload = deltaUpload.isChecked();
+            prefs.classResultCache = classResultCache.isChecked();
+            prefs.recordReplay = recordReplay.isChecked();
             prefs.save();
             dialog.dismiss();
             // Done.
@@ -224,19 +282,22 @@ class SettingsDialog {
     //**********************************************************************************************
 
     /**
-     * The user has clicked to adjust the upload interval.
-     * {@link Preferences#uploadIntervalSec} is updated.
+     * The user has clicked to adjust the upload interval, or the floor or ceiling of the adaptive
+     * upload interval.
      *
-     * @param button The user interface button to be updated.
+     * @param titleResId Title of the time picker.
+     * @param timeSec    Current value (sec).
+     * @param setter     Updates the preference, eg, {@link Preferences#uploadIntervalSec}.
+     * @param button     The user interface button to be updated.
      */
-    private void onUploadIntervalClicked(Button button) {
+    private void onUploadIntervalClicked(int titleResId, int timeSec, IntConsumer setter, Button button) {
         ContextThemeWrapper themedContext = new ContextThemeWrapper(activity, R.style.Theme_ofeed_sidroid_connector);
         View layout = LayoutInflater.from(themedContext).inflate(R.layout.time_picker_dialog, null);
         TextView tv = layout.findViewById(R.id.time_interval_picker_min_caption);
         float textSizePx = tv.getTextSize();
 
-        int min = prefs.uploadIntervalSec / 60;
-        int sec = prefs.uploadIntervalSec - 60 * min;
+        int min = timeSec / 60;
+        int sec = timeSec - 60 * min;
 
         NumberPicker minPicker = layout.findViewById(R.id.time_interval_picker_min);
         NumberPicker secPicker = layout.findViewById(R.id.time_interval_picker_sec);
@@ -257,12 +318,12 @@ class SettingsDialog {
 
         new androidx.appcompat.app.AlertDialog.Builder(activity)
                 .setView(layout)
-                .setTitle(R.string.upload_interval)
+                .setTitle(titleResId)
                 .setPositiveButton(android.R.string.ok, (dialog, id) -> {
                     int mm = minPicker.getValue();
                     int secCorrection = secPicker.getMaxValue() == 54 ? 5 : 0;
                     int ss = secPicker.getValue() + secCorrection;
-                    prefs.uploadIntervalSec = 60 * mm + ss;
+                    setter.accept(60 * mm + ss);
                     updateTimeButton(new int[]{mm, ss}, button);
                 })
                 .setNegativeButton(android.R.string.cancel, null)
@@ -409,6 +470,13 @@ class SettingsDialog {
                 .create().show();
     }
 
+    /**
+     * Show or hide views.
+     */
+    private static void setVisibility(View[] views, boolean isVisible) {
+        for (View view : views) view.setVisibility(isVisible ? View.VISIBLE : View.GONE);
+    }
+
     /**
      * Index into array produced by {@link #splitTimeSec(int)}.
      */
@@ -4,6 +4,9 @@ import static com.orienteerfeed.ofeed_sidroid_connector.Preferences.DEFAULT_HTTP
 import static com.orienteerfeed.ofeed_sidroid_connector.Preferences.DEFAULT_HTTP_CONNECT_TIMEOUT_SEC;
 import static com.orienteerfeed.ofeed_sidroid_connector.Preferences.DEFAULT_HTTP_READ_TIMEOUT_SEC;
 import static com.orienteerfeed.ofeed_sidroid_connector.Preferences.DEFAULT_HTTP_WRITE_TIMEOUT_SEC;
+import static com.orienteerfeed.ofeed_sidroid_connector.Preferences.DEFAULT_OFEED_PRE_CONNECT_LEAD_SEC;
+import static com.orienteerfeed.ofeed_sidroid_connector.Preferences.DEFAULT_SI_DROID_PROBE_INTERVAL_SEC;
+import static com.orienteerfeed.ofeed_sidroid_connector.Preferences.DEFAULT_UPLOAD_JITTER_SEC;
 import static com.orienteerfeed.ofeed_sidroid_connector.Util.string2Int;
 
 import android.app.Activity;
@@ -35,16 +38,25 @@ class SettingsHttpTimeoutsDialog {
         EditText readTimeout = layout.findViewById(R.id.settings_http_read_timeout);
         EditText writeTimeout = layout.findViewById(R.id.settings_http_write_timeout);
         EditText callTimeout = layout.findViewById(R.id.settings_http_call_timeout);
+        EditText probeInterval = layout.findViewById(R.id.settings_si_droid_probe_interval);
+        EditText preConnectLead = layout.findViewById(R.id.settings_ofeed_pre_connect_lead);
+        EditText uploadJitter = layout.findViewById(R.id.settings_upload_jitter);
 
         connectTimeout.setText(String.valueOf(prefs.httpConnectTimeoutSec));
         readTimeout.setText(String.valueOf(prefs.httpReadTimeoutSec));
         writeTimeout.setText(String.valueOf(prefs.httpWriteTimeoutSec));
         callTimeout.setText(String.valueOf(prefs.httpCallTimeoutSec));
+        probeInterval.setText(String.valueOf(prefs.siDroidProbeIntervalSec));
+        preConnectLead.setText(String.valueOf(prefs.oFeedPreConnectLeadSec));
+        uploadJitter.setText(String.valueOf(prefs.uploadJitterSec));
         layout.findViewById(R.id.settings_http_reset_timeouts).setOnClickListener(view -> {
             connectTimeout.setText(String.valueOf(DEFAULT_HTTP_CONNECT_TIMEOUT_SEC));
             readTimeout.setText(String.valueOf(DEFAULT_HTTP_READ_TIMEOUT_SEC));
             writeTimeout.setText(String.valueOf(DEFAULT_HTTP_WRITE_TIMEOUT_SEC));
             callTimeout.setText(String.valueOf(DEFAULT_HTTP_CALL_TIMEOUT_SEC));
+            probeInterval.setText(String.valueOf(DEFAULT_SI_DROID_PROBE_INTERVAL_SEC));
+            preConnectLead.setText(String.valueOf(DEFAULT_OFEED_PRE_CONNECT_LEAD_SEC));
+            uploadJitter.setText(String.valueOf(DEFAULT_UPLOAD_JITTER_SEC));
         });
         new androidx.appcompat.app.AlertDialog.Builder(activity)
                 .setView(layout)
@@ -55,6 +67,9 @@ class SettingsHttpTimeoutsDialog {
                     prefs.httpReadTimeoutSec = string2Int(readTimeout.getText().toString());
                     prefs.httpWriteTimeoutSec = string2Int(writeTimeout.getText().toString());
                     prefs.httpCallTimeoutSec = string2Int(callTimeout.getText().toString());
+                    prefs.siDroidProbeIntervalSec = Math.max(1, string2Int(probeInterval.getText().toString()));
+                    prefs.oFeedPreConnectLeadSec = string2Int(preConnectLead.getText().toString());
+                    prefs.uploadJitterSec = Math.max(0, string2Int(uploadJitter.getText().toString()));
                 })
                 .setNegativeButton(android.R.string.cancel, null)
                 .setCancelable(false)
@@ -0,0 +1,94 @@
+// JMH benchmarks of the hot paths of the app, on a plain JVM. Run with ./gradlew :benchmark:jmh,
+// optionally with -PjmhIncludes=<regexp>, and compare the results with the stored baseline with
+// ./gradlew :benchmark:jmhCompare.
+import groovy.json.JsonSlurper
+import java.util.Locale
+
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+// Set build directory outside Android Studio development environment.
+var externalBuildDir = project.findProperty("EXTERNAL_BUILD_DIR") as String
+layout.buildDirectory.set(File("${externalBuildDir}${project.name}"))
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    jmh(project(":core"))
+    // Generates the result lists.
+    jmh(project(":simulator"))
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.set(listOf("gc", "com.orienteerfeed.ofeed_sidroid_connector.PeakHeapProfiler"))
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    (project.findProperty("jmhIncludes") as String?)?.let { includes.set(listOf(it)) }
+}
+
+val baselineFile = file("baseline/results.json")
+
+tasks.register<Copy>("jmhSaveBaseline") {
+    group = "benchmark"
+    description = "Stores the last JMH results as the baseline."
+    from(jmh.resultsFile)
+    into(baselineFile.parentFile)
+}
+
+tasks.register("jmhCompare") {
+    group = "benchmark"
+    description = "Compares the last JMH results with the baseline. Fails on a regression of more than " +
+            "-PjmhTolerance (default 0.10) in throughput, allocation per operation or peak heap."
+    mustRunAfter("jmh")
+    val resultsFile = jmh.resultsFile
+    val tolerance = (project.findProperty("jmhTolerance") as String?)?.toDouble() ?: 0.10
+    doLast {
+        if (!baselineFile.exists()) throw GradleException("No baseline $baselineFile, run jmhSaveBaseline first.")
+
+        // Runs by benchmark and parameters.
+        fun load(file: File): Map<String, Map<*, *>> =
+            (JsonSlurper().parse(file) as List<*>).map { it as Map<*, *> }.associateBy { run ->
+                val params = (run["params"] as Map<*, *>?)?.entries?.sortedBy { it.key.toString() }
+                    ?.joinToString(",") { "${it.key}=${it.value}" }
+                if (params.isNullOrEmpty()) run["benchmark"].toString() else "${run["benchmark"]}($params)"
+            }
+
+        val current = load(resultsFile.get().asFile)
+        val baseline = load(baselineFile)
+        val regressions = mutableListOf<String>()
+        fun compare(key: String, metric: String, now: Map<*, *>?, then: Map<*, *>?, higherIsBetter: Boolean) {
+            val a = (then?.get("score") as? Number)?.toDouble() ?: return
+            val b = (now?.get("score") as? Number)?.toDouble() ?: return
+            if (a == 0.0) return
+            val change = (b - a) / a
+            val line = String.format(Locale.US, "%-70s %-18s %14.3f -> %14.3f %-10s %+7.1f %%",
+                key, metric, a, b, now?.get("scoreUnit"), change * 100)
+            println(line)
+            if ((if (higherIsBetter) -change else change) > tolerance) regressions.add(line)
+        }
+        fun secondary(run: Map<*, *>, metric: String): Map<*, *>? =
+            (run["secondaryMetrics"] as Map<*, *>?)?.entries?.firstOrNull { it.key.toString().endsWith(metric) }
+                ?.value as Map<*, *>?
+
+        for ((key, run) in current) {
+            val base = baseline[key] ?: continue
+            compare(key, "score", run["primaryMetric"] as Map<*, *>?, base["primaryMetric"] as Map<*, *>?,
+                run["mode"] == "thrpt")
+            for (metric in listOf("gc.alloc.rate.norm", "heap.peak")) {
+                compare(key, metric, secondary(run, metric), secondary(base, metric), false)
+            }
+        }
+        if (regressions.isNotEmpty()) {
+            throw GradleException("Regressions of more than ${tolerance * 100} %:\n" + regressions.joinToString("\n"))
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of adding to a full log, alone and from several threads, and of rendering it as
+ * text for the log view.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(time = 2)
+@Measurement(time = 2)
+@State(Scope.Benchmark)
+public class CircularLogBenchmark {
+
+    private static final String ITEM = "Results uploaded to OFeed, 1234 runners, 256 kB in 312 ms.";
+
+    /**
+     * Capacity of the log. 1000 is the capacity of the logs of {@link ResultsService}.
+     */
+    @Param({"100", "1000"})
+    public int capacity;
+
+    private CircularLog log;
+
+    @Setup
+    public void setUp() {
+        log = new CircularLog(capacity);
+        for (int i = 0; i < capacity; i++) log.add(ITEM);
+    }
+
+    @Benchmark
+    public void add() {
+        log.add(ITEM);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void addContended() {
+        log.add(ITEM);
+    }
+
+    @Benchmark
+    public String toText() {
+        return log.toString();
+    }
+}
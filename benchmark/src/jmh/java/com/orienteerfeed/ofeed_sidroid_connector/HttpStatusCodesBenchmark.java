@@ -0,0 +1,33 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of translating status codes, for a code early in the table, one late in the table,
+ * and one not in the table.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(time = 2)
+@Measurement(time = 2)
+@State(Scope.Benchmark)
+public class HttpStatusCodesBenchmark {
+
+    @Param({"200", "503", "799"})
+    public int code;
+
+    @Benchmark
+    public String getMeaning() {
+        return HttpStatusCodes.getMeaning(code);
+    }
+}
@@ -0,0 +1,52 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.ResultListWriter;
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.SimulatedEvent;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * IOF XML 3.0 result lists for the benchmarks, as served by SI-Droid Event, generated by the
+ * simulator. The same number of runners always gives the same result list.
+ */
+final class IofDocuments {
+
+    /**
+     * Runners per class, as at a large event.
+     */
+    private static final int RUNNERS_PER_CLASS = 125;
+
+    /**
+     * Simulated time after the end of the event, when all runners have finished.
+     */
+    private static final long AFTER_END_MILLIS = 24 * 3_600_000L;
+
+    private IofDocuments() {
+    }
+
+    /**
+     * Get the final result list of an event.
+     *
+     * @param runners Number of runners.
+     */
+    static String resultList(int runners) throws IOException {
+        return resultList(runners, AFTER_END_MILLIS);
+    }
+
+    /**
+     * Get the result list of an event at a time, eg, of two consecutive updates.
+     *
+     * @param runners    Number of runners.
+     * @param timeMillis Simulated time from the first start (ms). The event lasts 4 h.
+     */
+    static String resultList(int runners, long timeMillis) throws IOException {
+        SimulatedEvent event = new SimulatedEvent(new SimulatedEvent.Config()
+                .competitors(runners)
+                .classes(Math.max(1, runners / RUNNERS_PER_CLASS))
+                .seed(runners));
+        StringWriter writer = new StringWriter(runners * 1_500);
+        ResultListWriter.write(event, timeMillis, writer);
+        return writer.toString();
+    }
+}
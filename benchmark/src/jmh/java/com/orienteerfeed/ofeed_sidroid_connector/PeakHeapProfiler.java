@@ -0,0 +1,46 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * JMH profiler of the peak heap use of each iteration, as the sum of the peak use of the heap
+ * memory pools. Reported as {@code heap.peak}, the max of the iterations. Enabled with
+ * {@code -prof com.orienteerfeed.ofeed_sidroid_connector.PeakHeapProfiler}.
+ */
+public class PeakHeapProfiler implements InternalProfiler {
+
+    @Override
+    public String getDescription() {
+        return "Peak heap use";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams,
+                                                       IterationResult result) {
+        long bytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) bytes += pool.getPeakUsage().getUsed();
+        }
+        return Collections.singletonList(new ScalarResult("heap.peak", bytes / (1024.0 * 1024.0), "MB",
+                AggregationPolicy.MAX));
+    }
+}
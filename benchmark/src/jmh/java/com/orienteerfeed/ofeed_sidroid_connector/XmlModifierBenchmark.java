@@ -0,0 +1,120 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of inserting Ids into a result list, per engine and size of the result list, and
+ * of consecutive updates with and without the {@link ClassResultCache}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(time = 2)
+@Measurement(time = 2)
+public class XmlModifierBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+        @Param({"100", "1000", "10000"})
+        public int runners;
+
+        String resultList;
+
+        @Setup
+        public void setUp() throws Exception {
+            resultList = IofDocuments.resultList(runners);
+        }
+    }
+
+    /**
+     * Input of the DOM engine, which already takes seconds for a result list of 1000 runners.
+     */
+    @State(Scope.Benchmark)
+    public static class DomInput {
+        @Param({"100", "1000"})
+        public int domRunners;
+
+        String resultList;
+
+        @Setup
+        public void setUp() throws Exception {
+            resultList = IofDocuments.resultList(domRunners);
+        }
+    }
+
+    /**
+     * Input of consecutive updates: two result lists half-way through an event, 30 sec apart,
+     * rewritten in turn. Only the classes with new results differ between them.
+     */
+    @State(Scope.Benchmark)
+    public static class UpdateInput {
+        @Param({"1000", "10000"})
+        public int updateRunners;
+
+        String[] resultLists;
+        ClassResultCache cache;
+        CompetitorIds competitorIds;
+        int next;
+
+        @Setup
+        public void setUp() throws Exception {
+            resultLists = new String[]{IofDocuments.resultList(updateRunners, 2 * 3_600_000L),
+                    IofDocuments.resultList(updateRunners, 2 * 3_600_000L + 30_000)};
+            // Uncapped, so that every class is cached.
+            cache = new ClassResultCache(Long.MAX_VALUE);
+            competitorIds = new CompetitorIds(new File(System.getProperty("java.io.tmpdir")), "benchmark-" + updateRunners);
+        }
+
+        String nextResultList() {
+            next ^= 1;
+            return resultLists[next];
+        }
+    }
+
+    @Benchmark
+    public Writer streaming(Input input) throws Exception {
+        return updateOrInsertIds(input.resultList, XmlModifier.Mode.STREAMING);
+    }
+
+    @Benchmark
+    public Writer dom(DomInput input) throws Exception {
+        return updateOrInsertIds(input.resultList, XmlModifier.Mode.DOM);
+    }
+
+    @Benchmark
+    public Writer update(UpdateInput input) throws Exception {
+        return updateOrInsertIds(input.nextResultList(), input.competitorIds.forDocument(), null);
+    }
+
+    @Benchmark
+    public Writer updateCached(UpdateInput input) throws Exception {
+        return updateOrInsertIds(input.nextResultList(), input.competitorIds.forDocument(), input.cache);
+    }
+
+    private static Writer updateOrInsertIds(String resultList, XmlModifier.IdProvider idProvider,
+                                            ClassResultCache cache) throws Exception {
+        StringWriter writer = new StringWriter(resultList.length() * 9 / 8);
+        XmlModifier.updateOrInsertIds(new StringReader(resultList), writer, XmlModifier.Mode.STREAMING, idProvider, cache);
+        return writer;
+    }
+
+    private static Writer updateOrInsertIds(String resultList, XmlModifier.Mode mode) throws Exception {
+        StringWriter writer = new StringWriter(resultList.length() * 9 / 8);
+        XmlModifier.updateOrInsertIds(new StringReader(resultList), writer, mode, XmlModifier.POSITIONAL);
+        return writer;
+    }
+}
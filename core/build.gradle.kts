@@ -0,0 +1,23 @@
+// The fetch, transform and upload pipeline, shared by the app and the daemon. Plain Java, no
+// Android dependencies except for the annotations.
+plugins {
+    `java-library`
+}
+
+// Set build directory outside Android Studio development environment.
+var externalBuildDir = project.findProperty("EXTERNAL_BUILD_DIR") as String
+layout.buildDirectory.set(File("${externalBuildDir}${project.name}"))
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    api(libs.okhttp)
+    api(libs.okhttplog)
+    compileOnly(libs.androidx.annotation)
+    testImplementation(libs.junit)
+    // Stand-ins for SI-Droid and OFeed.
+    testImplementation(project(":simulator"))
+}
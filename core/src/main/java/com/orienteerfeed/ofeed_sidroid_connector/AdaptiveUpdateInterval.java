@@ -0,0 +1,89 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+/**
+ * Interval between updates of results, adapted to the rate at which competitors finish.
+ * <p>
+ * After each fetch from SI-Droid, the number of PersonResults is compared to the previous fetch.
+ * While new results are arriving, the interval is set so that each update carries about
+ * {@link #FINISHERS_PER_UPDATE} new results, ie, the faster competitors finish, the shorter the
+ * interval. A result list which has changed without new PersonResults, eg, a status set to
+ * disqualified or a corrected time, keeps the interval. Only when nothing has changed is the
+ * interval doubled. The interval is kept between a floor and a ceiling.
+ */
+class AdaptiveUpdateInterval {
+
+    /**
+     * Target number of new results per update.
+     */
+    private static final double FINISHERS_PER_UPDATE = 3;
+
+    /**
+     * Weight of the most recent observation in the smoothed finish rate, 0-1.
+     */
+    private static final double SMOOTHING = 0.5;
+
+    private final long floorMillis, ceilingMillis;
+    private long intervalMillis;
+    private double finishRatePerMilli = 0;
+    private int previousPersonResults = -1;
+    private long previousMillis;
+
+    /**
+     * Adaptive update interval.
+     *
+     * @param floorMillis   Shortest interval (ms).
+     * @param ceilingMillis Longest interval (ms).
+     * @param initialMillis Interval until the finish rate is known (ms).
+     */
+    AdaptiveUpdateInterval(long floorMillis, long ceilingMillis, long initialMillis) {
+        this.floorMillis = floorMillis;
+        this.ceilingMillis = Math.max(floorMillis, ceilingMillis);
+        intervalMillis = clamp(initialMillis);
+    }
+
+    /**
+     * Update the interval with the results of the most recent fetch.
+     *
+     * @param personResults Number of PersonResults in the result list.
+     * @param changed       True if the result list differs from the previous fetch, see
+     *                      {@link ResultListFingerprint}.
+     * @param nowMillis     Time of the fetch (ms).
+     * @return The new interval (ms).
+     */
+    synchronized long onResults(int personResults, boolean changed, long nowMillis) {
+        if (previousPersonResults >= 0 && nowMillis > previousMillis) {
+            // A decrease, eg, a result removed by the organiser, is not counted as finishers.
+            int finishers = Math.max(0, personResults - previousPersonResults);
+            double rate = (double) finishers / (nowMillis - previousMillis);
+            finishRatePerMilli = SMOOTHING * rate + (1 - SMOOTHING) * finishRatePerMilli;
+            if (finishers > 0) {
+                intervalMillis = clamp((long) (FINISHERS_PER_UPDATE / finishRatePerMilli));
+            } else if (!changed) {
+                // Nothing new, back off.
+                intervalMillis = clamp(2 * intervalMillis);
+            }   // Else changed without finishers, keep the interval.
+        }
+        previousPersonResults = personResults;
+        previousMillis = nowMillis;
+        return intervalMillis;
+    }
+
+    synchronized long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    long getCeilingMillis() {
+        return ceilingMillis;
+    }
+
+    /**
+     * Get the smoothed finish rate (finishers per minute).
+     */
+    synchronized double getFinishRatePerMinute() {
+        return finishRatePerMilli * 60_000;
+    }
+
+    private long clamp(long millis) {
+        return Math.max(floorMillis, Math.min(ceilingMillis, millis));
+    }
+}
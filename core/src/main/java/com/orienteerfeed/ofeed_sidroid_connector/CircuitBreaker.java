@@ -0,0 +1,147 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+/**
+ * Retry policy and circuit breaker for uploads to OFeed.
+ * <p>
+ * After a failed upload, the next attempt is delayed by a jittered exponential backoff, or by
+ * the time given by the server in a {@code Retry-After} header. After
+ * {@link #FAILURE_THRESHOLD} consecutive failures, or when the server asks for a pause with
+ * {@code Retry-After}, the circuit opens: no requests are made until the delay has passed. Then
+ * the circuit is half-open, and one request is let through as a probe. If it succeeds the circuit
+ * closes, otherwise it opens again with a longer delay.
+ */
+class CircuitBreaker {
+
+    enum State {
+        /**
+         * Requests are made as usual.
+         */
+        CLOSED,
+        /**
+         * Requests are suspended until the delay has passed.
+         */
+        OPEN,
+        /**
+         * The delay has passed, the next request is a probe.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Number of consecutive failures which opens the circuit.
+     */
+    private static final int FAILURE_THRESHOLD = 3;
+
+    /**
+     * Backoff after the first failure, doubled after each further failure up to the maximum (ms).
+     */
+    private static final long BASE_BACKOFF_MILLIS = 2_000, MAX_BACKOFF_MILLIS = 5 * 60_000;
+
+    private final Random random = new Random();
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long retryAtMillis = 0;
+    // True if the circuit was opened because the server asked for a pause.
+    private boolean isPausedByServer = false;
+
+    /**
+     * Check if a request may be made now. Moves the circuit from open to half-open when the
+     * delay has passed.
+     */
+    synchronized boolean allowRequest(long nowMillis) {
+        if (state == State.OPEN && nowMillis >= retryAtMillis) state = State.HALF_OPEN;
+        return state != State.OPEN;
+    }
+
+    /**
+     * The request succeeded. Closes the circuit.
+     */
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        retryAtMillis = 0;
+        isPausedByServer = false;
+    }
+
+    /**
+     * The network has become available. If the circuit was opened by network errors rather than
+     * by the server, the next request is let through as a probe without waiting for the delay.
+     */
+    synchronized void onNetworkAvailable() {
+        if (state == State.OPEN && !isPausedByServer) state = State.HALF_OPEN;
+    }
+
+    /**
+     * The request failed with a transient error, eg, a network error, 429 or 503.
+     *
+     * @param nowMillis        Time of the failure (ms).
+     * @param retryAfterMillis Delay requested by the server in a Retry-After header (ms),
+     *                         or -1 if none.
+     * @return Delay until the next attempt (ms).
+     */
+    synchronized long onFailure(long nowMillis, long retryAfterMillis) {
+        consecutiveFailures++;
+        long delay;
+        if (retryAfterMillis >= 0) {
+            delay = Math.min(retryAfterMillis, MAX_BACKOFF_MILLIS);
+        } else {
+            // Exponential backoff with jitter, in the upper half of the backoff.
+            int exponent = Math.min(consecutiveFailures - 1, 20);
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << exponent);
+            delay = backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+        }
+        retryAtMillis = nowMillis + delay;
+        isPausedByServer = retryAfterMillis >= 0;
+        if (retryAfterMillis >= 0 || consecutiveFailures >= FAILURE_THRESHOLD || state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+        return delay;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get the time until the next attempt (ms), 0 if an attempt may be made now.
+     */
+    synchronized long getRetryDelayMillis(long nowMillis) {
+        return Math.max(0, retryAtMillis - nowMillis);
+    }
+
+    /**
+     * Check if an HTTP status code signals a transient error, worth retrying.
+     */
+    static boolean isRetryable(int code) {
+        return code == 408 || code == 425 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * Parse the value of a Retry-After header, either a number of seconds or an HTTP date.
+     *
+     * @param retryAfter Value of the header, or null.
+     * @param nowMillis  Current time (ms).
+     * @return The delay (ms), or -1 if the header is missing or invalid.
+     */
+    static long parseRetryAfter(String retryAfter, long nowMillis) {
+        if (retryAfter == null) return -1;
+        String value = retryAfter.trim();
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds < 0 ? -1 : seconds * 1_000;
+        } catch (NumberFormatException e) {
+            // Not a number, try a date.
+        }
+        try {
+            long atMillis = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, atMillis - nowMillis);
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
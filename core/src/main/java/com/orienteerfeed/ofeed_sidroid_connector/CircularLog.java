@@ -0,0 +1,219 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A log implemented as a circular buffer. Threadsafe and lock-free.
+ * <p>
+ * Each item is given a sequence number, 0 for the first item. Adding an item only claims the
+ * next sequence number and stores the item in its slot, so the cost does not depend on the
+ * capacity. The time of an item is kept as epoch milliseconds, and is formatted only when the log
+ * is read. Readers can ask for the items since a sequence number, eg, to update a log view
+ * incrementally.
+ */
+public class CircularLog {
+
+    // *********************************************************************************************
+    // Helper class, which stores one log item.
+    // *********************************************************************************************
+    static class LogItem {
+        /**
+         * Sequence number of this log item.
+         */
+        final long sequence;
+        /**
+         * Time when this log item was created (epoch ms).
+         */
+        final long timeMillis;
+        /**
+         * The logged item.
+         */
+        final String text;
+
+        private static final DateTimeFormatter HH_MM_SS = DateTimeFormatter.ofLocalizedTime(FormatStyle.MEDIUM);
+
+        /**
+         * Helper class, which stores one log item.
+         *
+         * @param sequence   Sequence number of the item.
+         * @param timeMillis Time of the item (epoch ms).
+         * @param text       Item to be logged.
+         */
+        LogItem(long sequence, long timeMillis, String text) {
+            this.sequence = sequence;
+            this.timeMillis = timeMillis;
+            this.text = text;
+        }
+
+        /**
+         * Get the local time hh:mm:ss when this log item was created.
+         */
+        String getTime() {
+            return Instant.ofEpochMilli(timeMillis).atZone(ZoneId.systemDefault()).format(HH_MM_SS);
+        }
+    }
+
+    /**
+     * Items read from the log.
+     */
+    static class Items {
+        /**
+         * The items, oldest first.
+         */
+        final List<LogItem> items;
+        /**
+         * True if items have been overwritten before they could be read, ie, items are missing
+         * before the first item.
+         */
+        final boolean skipped;
+        /**
+         * Sequence number to pass to {@link #get(long)} to read the items added after these.
+         */
+        final long nextSequence;
+
+        private Items(List<LogItem> items, boolean skipped, long nextSequence) {
+            this.items = items;
+            this.skipped = skipped;
+            this.nextSequence = nextSequence;
+        }
+    }
+
+    // *********************************************************************************************
+    // Fields.
+    // *********************************************************************************************
+
+    private final int capacity;
+    // Slots, a power of two at least the capacity, so that an index is found by masking.
+    private final AtomicReferenceArray<LogItem> log;
+    private final int mask;
+    // Sequence number of the next item to add.
+    private final AtomicLong nextSequence = new AtomicLong();
+    // Items with lower sequence numbers have been cleared.
+    private volatile long clearedSequence = 0;
+    // Called with each item added, or null.
+    @Nullable
+    private final Consumer<LogItem> onAdd;
+
+    // *********************************************************************************************
+    // Constructor.
+    // *********************************************************************************************
+
+    /**
+     * A log implemented as a circular buffer. Threadsafe.
+     *
+     * @param capacity Max number of items the log can hold.
+     */
+    CircularLog(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * A log implemented as a circular buffer, which also passes each item on, eg, to a
+     * {@link SessionJournal}. Threadsafe.
+     *
+     * @param capacity Max number of items the log can hold.
+     * @param onAdd    Called with each item added, on the thread adding it.
+     */
+    CircularLog(int capacity, @Nullable Consumer<LogItem> onAdd) {
+        this.onAdd = onAdd;
+        this.capacity = Math.max(1, capacity);
+        int slots = Integer.highestOneBit(this.capacity);
+        if (slots < this.capacity) slots <<= 1;
+        log = new AtomicReferenceArray<>(slots);
+        mask = slots - 1;
+    }
+
+    // *********************************************************************************************
+    // Methods.
+    // *********************************************************************************************
+
+    /**
+     * Get all items of the log as text, last added item first.
+     */
+    @NonNull
+    @Override
+    public String toString() {
+        Items items = get(0);
+        if (items.items.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder();
+        List<LogItem> list = new ArrayList<>(items.items);
+        Collections.reverse(list);
+        for (LogItem item : list) {
+            sb.append(item.getTime()).append(" ").append(item.text).append("\n");
+        }
+        if (items.skipped) sb.append("...\n");
+        return sb.delete(sb.length() - 1, sb.length()).toString();
+    }
+
+    /**
+     * Add item to log. The item will be timestamped.
+     * If the logs capacity has been reached, this item will replace the oldest item of the log.
+     *
+     * @param item Item to be logged.
+     */
+    void add(String item) {
+        long sequence = nextSequence.getAndIncrement();
+        LogItem logItem = new LogItem(sequence, System.currentTimeMillis(), item);
+        log.set((int) (sequence & mask), logItem);
+        if (onAdd != null) onAdd.accept(logItem);
+    }
+
+    /**
+     * Clear log. All items of the log will be removed. Sequence numbers are not reused, so
+     * readers can continue from their current sequence number.
+     */
+    void clear() {
+        clearedSequence = nextSequence.get();
+    }
+
+    /**
+     * Get the sequence number of the next item to be added, ie, the number of items added so far.
+     */
+    long getNextSequence() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Get the items added since a sequence number. Returns at most the capacity of the log.
+     * <p>
+     * An item being added concurrently, whose sequence number has been claimed but which has
+     * not been stored yet, ends the items returned, so that it is not missed by the next read.
+     *
+     * @param sinceSequence Sequence number of the first item to get, 0 for all items.
+     * @return The items, oldest first.
+     */
+    @NonNull
+    Items get(long sinceSequence) {
+        long end = nextSequence.get();
+        long start = Math.max(sinceSequence, Math.max(clearedSequence, end - capacity));
+        boolean skipped = start > sinceSequence && start > clearedSequence;
+        List<LogItem> items = new ArrayList<>((int) Math.max(0, end - start));
+        long sequence = start;
+        while (sequence < end) {
+            LogItem item = log.get((int) (sequence & mask));
+            if (item == null || item.sequence < sequence) break;    // Not stored yet.
+            if (item.sequence > sequence) {
+                // Overwritten while reading, continue from the oldest item still in the log.
+                skipped = true;
+                items.clear();
+                sequence = Math.max(sequence + 1, nextSequence.get() - capacity);
+                continue;
+            }
+            items.add(item);
+            sequence++;
+        }
+        return new Items(items, skipped, sequence);
+    }
+}
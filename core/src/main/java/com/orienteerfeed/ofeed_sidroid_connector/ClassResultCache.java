@@ -0,0 +1,190 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import java.util.HashMap;
+
+/**
+ * Cache of rewritten ClassResult elements, so that only the classes which have changed since the
+ * previous result list are rewritten by {@link StreamingIdRewriter}. During an event, most
+ * classes are unchanged from one update to the next.
+ * <p>
+ * An element is looked up by a 64 bit hash of its content, and is only reused if its content is
+ * the same, so that elements whose hashes collide are never mixed up. The cache holds the
+ * content before and after rewriting, and the competitors who were given Ids in it, in order. When an element is
+ * reused, the Ids of its competitors are requested again, in the same order as if it had been
+ * rewritten, and the Ids are replaced if they have changed. The output is therefore the same as
+ * without the cache.
+ * <p>
+ * The cache keeps the elements of the most recent result list only, ie, uncapped, its memory use
+ * would be about twice the size of one result list, before and after rewriting. The memory held
+ * is therefore capped: an element which does not fit is not cached, but streamed as without the
+ * cache. Not threadsafe, one result list is rewritten at a time.
+ */
+class ClassResultCache {
+
+    // Estimated memory of an entry besides its text, and of each competitor (bytes).
+    private static final long ENTRY_BYTES = 128, COMPETITOR_BYTES = 160;
+
+    private final long maxBytes;
+    private HashMap<Long, Entry> previous = new HashMap<>();
+    private HashMap<Long, Entry> current = new HashMap<>();
+    // Memory of the entries of the previous result list, of the current one, and of the entries
+    // added to the current one, ie, not reused from the previous one.
+    private long previousBytes, currentBytes, addedBytes;
+    private int hits, misses;
+
+    /**
+     * Cache of rewritten ClassResult elements.
+     *
+     * @param maxBytes Max memory held by the cache (bytes), estimated from the lengths of the
+     *                 elements.
+     */
+    ClassResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * A rewritten ClassResult element.
+     */
+    static final class Entry {
+        // Content before rewriting, to tell elements with the same hash apart.
+        final String input;
+        // Content after rewriting, up to and including the end tag.
+        final String output;
+        // Competitors given Ids, with positions relative to the first Person of the element.
+        final Competitor[] competitors;
+        // Ids of the competitors, and where they are in the output.
+        final int[] ids, idOffsets;
+        // Number of Person tags in the element.
+        final int persons;
+        // Name of the class, from {@code <Class><Name>}.
+        final String className;
+        // Estimated memory of the entry.
+        final long bytes;
+
+        Entry(String input, String output, Competitor[] competitors, int[] ids, int[] idOffsets, int persons,
+              String className) {
+            this.input = input;
+            this.output = output;
+            this.competitors = competitors;
+            this.ids = ids;
+            this.idOffsets = idOffsets;
+            this.persons = persons;
+            this.className = className;
+            bytes = estimateBytes(input.length() + output.length()) + competitors.length * COMPETITOR_BYTES;
+        }
+    }
+
+    /**
+     * A new result list is to be rewritten.
+     */
+    void beginDocument() {
+        current.clear();
+        currentBytes = 0;
+        addedBytes = 0;
+    }
+
+    /**
+     * The result list has been rewritten. Only its elements are kept, for the next result list.
+     */
+    void endDocument() {
+        HashMap<Long, Entry> swap = previous;
+        previous = current;
+        current = swap;
+        current.clear();
+        previousBytes = currentBytes;
+        currentBytes = 0;
+        addedBytes = 0;
+    }
+
+    /**
+     * Get a rewritten element, from the previous result list or earlier in the current one.
+     *
+     * @param hash    Hash of the content, see {@link #hashOf(CharSequence)}.
+     * @param content The content, up to and including the end tag.
+     * @return The element, or null if it has not been rewritten.
+     */
+    Entry get(long hash, CharSequence content) {
+        Entry entry = current.get(hash);
+        if (entry == null) entry = previous.get(hash);
+        if (entry == null || !entry.input.contentEquals(content)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        add(hash, entry);
+        return entry;
+    }
+
+    /**
+     * Check if an element of a given length can be cached, ie, if it fits in the memory left.
+     * An element which does not fit is streamed rather than rewritten for the cache.
+     *
+     * @param length Length of the content of the element (chars).
+     */
+    boolean hasRoomFor(int length) {
+        // The output is somewhat longer than the content, with the Ids inserted.
+        return previousBytes + addedBytes + estimateBytes(2L * length) <= maxBytes;
+    }
+
+    /**
+     * Add a rewritten element of the current result list, if it fits in the memory left.
+     */
+    void put(long hash, Entry entry) {
+        if (previousBytes + addedBytes + entry.bytes > maxBytes) return;
+        addedBytes += entry.bytes;
+        add(hash, entry);
+    }
+
+    private void add(long hash, Entry entry) {
+        Entry replaced = current.put(hash, entry);
+        if (replaced != entry) currentBytes += entry.bytes - (replaced == null ? 0 : replaced.bytes);
+    }
+
+    /**
+     * Get the estimated memory held by the cache (bytes).
+     */
+    long getBytes() {
+        return previousBytes + addedBytes;
+    }
+
+    /**
+     * Get the number of elements reused.
+     */
+    int getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of elements rewritten.
+     */
+    int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Hash of the content of an element, to look it up. {@link #hash(CharSequence)}, overridden
+     * by tests to make hashes collide.
+     */
+    long hashOf(CharSequence content) {
+        return hash(content);
+    }
+
+    /**
+     * Estimate the memory of text (bytes), 2 bytes per char.
+     */
+    private static long estimateBytes(long chars) {
+        return ENTRY_BYTES + 2 * chars;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the content of an element.
+     */
+    static long hash(CharSequence content) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, n = content.length(); i < n; i++) {
+            hash ^= content.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,53 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Identifying attributes of a competitor in an IOF xml 3.0 result list.
+ * Attributes missing from the result list are empty strings.
+ */
+class Competitor {
+    /**
+     * Position of the competitor's Person tag in the result list, starting at 1.
+     */
+    final int position;
+    /**
+     * Name of class, from {@code <ClassResult><Class><Name>}.
+     */
+    final String className;
+    /**
+     * Family name and given name, from {@code <Person><Name><Family>} and {@code <Person><Name><Given>}.
+     */
+    final String family, given;
+    /**
+     * Name of club, from {@code <PersonResult><Organisation><Name>}.
+     */
+    final String organisation;
+    /**
+     * Card number, from {@code <PersonResult><Result><ControlCard>}.
+     */
+    final String controlCard;
+
+    Competitor(int position, String className, String family, String given, String organisation, String controlCard) {
+        this.position = position;
+        this.className = className;
+        this.family = family;
+        this.given = given;
+        this.organisation = organisation;
+        this.controlCard = controlCard;
+    }
+
+    /**
+     * Key which identifies this competitor. The key does not depend on the position of the
+     * competitor in the result list.
+     */
+    String key() {
+        return className + '\u001f' + family + '\u001f' + given + '\u001f' + organisation + '\u001f' + controlCard;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return given + " " + family + ", " + organisation + ", " + className;
+    }
+}
@@ -0,0 +1,149 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Stable Ids of competitors in an event.
+ * <p>
+ * A competitor is identified by class, name, club and card number, see {@link Competitor#key()},
+ * so the Id does not change when the order of the result list changes, eg, when a competitor
+ * finishes ahead of others. Ids are assigned in the order competitors are first seen, starting
+ * at 1, and are saved to a file so that they survive a restart of the app.
+ * <p>
+ * The file is a sequence of 12 byte records, a 64 bit hash of the key followed by the Id.
+ * New records are appended by {@link #save()}. A partially written record at the end of the
+ * file, eg, after a crash, is ignored. An unreadable file is replaced.
+ */
+class CompetitorIds {
+
+    private static final int RECORD_SIZE = 12;
+
+    private final File file;
+    private final HashMap<Long, Integer> ids = new HashMap<>();
+    private final ArrayList<Long> unsavedKeys = new ArrayList<>();
+    // Next Id to assign, above every Id in the file.
+    private int nextId = 1;
+    private boolean isLoaded = false;
+
+    /**
+     * Stable Ids of competitors in an event.
+     *
+     * @param directory Directory of the file, typically {@code Context.getFilesDir()}.
+     * @param eventId   OFeed event id. Each event has its own file.
+     */
+    CompetitorIds(File directory, String eventId) {
+        String name = eventId == null ? "" : eventId.replaceAll("[^A-Za-z0-9_-]", "_");
+        file = new File(directory, "competitor-ids-" + name + ".bin");
+    }
+
+    /**
+     * Get an {@link XmlModifier.IdProvider} for one result list. Competitors with identical keys
+     * in the same result list, eg, two runners with the same name in a club without card numbers,
+     * are told apart by their order in the result list.
+     */
+    XmlModifier.IdProvider forDocument() {
+        HashMap<String, Integer> occurrences = new HashMap<>();
+        return competitor -> {
+            String key = competitor.key();
+            Integer n = occurrences.get(key);
+            n = n == null ? 1 : n + 1;
+            occurrences.put(key, n);
+            return getId(n == 1 ? key : key + '#' + n);
+        };
+    }
+
+    /**
+     * Get the Id of a competitor, assigning a new Id if the competitor has not been seen before.
+     *
+     * @param key Key of the competitor, see {@link Competitor#key()}.
+     */
+    synchronized int getId(String key) {
+        load();
+        long hash = hash(key);
+        Integer id = ids.get(hash);
+        if (id == null) {
+            id = nextId++;
+            ids.put(hash, id);
+            unsavedKeys.add(hash);
+        }
+        return id;
+    }
+
+    /**
+     * Append Ids assigned since the previous save to the file.
+     */
+    synchronized void save() throws IOException {
+        if (unsavedKeys.isEmpty()) return;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            for (Long hash : unsavedKeys) {
+                out.writeLong(hash);
+                out.writeInt(ids.get(hash));
+            }
+        }
+        unsavedKeys.clear();
+    }
+
+    /**
+     * Load the file, the first time an Id is requested.
+     */
+    private void load() {
+        if (isLoaded) return;
+        isLoaded = true;
+        if (!file.exists()) return;
+        long records = file.length() / RECORD_SIZE;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            for (long i = 0; i < records; i++) {
+                long hash = in.readLong();
+                int id = in.readInt();
+                ids.put(hash, id);
+                nextId = Math.max(nextId, id + 1);
+            }
+        } catch (EOFException e) {
+            // Partial record, ignore.
+        } catch (IOException e) {
+            // Unreadable file. Start over, Ids are reassigned from 1 to a new file, as the records
+            // appended to the old one would map several competitors to the same Id.
+            ids.clear();
+            nextId = 1;
+            rewrite();
+            return;
+        }
+        if (file.length() % RECORD_SIZE != 0) {
+            // Drop the partial record, so that new records are appended at a record boundary.
+            rewrite();
+        }
+    }
+
+    /**
+     * Rewrite the file with the Ids currently loaded.
+     */
+    private void rewrite() {
+        unsavedKeys.clear();
+        unsavedKeys.addAll(ids.keySet());
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the UTF-8 encoded key.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,115 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * Request body which gzip compresses another request body while it is being written to the
+ * server. To be sent with the header {@code Content-Encoding: gzip}. The compression is streamed,
+ * nothing is buffered apart from the buffers of the compressor.
+ * <p>
+ * The number of bytes before and after compression, and the time spent compressing, are
+ * measured while the body is written.
+ */
+class GzipRequestBody extends RequestBody {
+
+    private final RequestBody body;
+    // Measured while writing.
+    private long rawBytes = 0, compressedBytes = 0, compressionNanos = 0;
+
+    GzipRequestBody(RequestBody body) {
+        this.body = body;
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return body.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;  // Unknown until compressed, the body is sent chunked.
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return body.isOneShot();
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        rawBytes = compressedBytes = compressionNanos = 0;
+        // Time spent in the compressor, excluding time spent writing to the network.
+        long[] networkNanos = {0};
+        Sink network = new ForwardingSink(sink) {
+            @Override
+            public void write(@NonNull Buffer source, long byteCount) throws IOException {
+                long start = System.nanoTime();
+                compressedBytes += byteCount;
+                super.write(source, byteCount);
+                networkNanos[0] += System.nanoTime() - start;
+            }
+
+            @Override
+            public void close() throws IOException {
+                // The sink is owned by the caller, it is flushed but not closed.
+                flush();
+            }
+        };
+        GzipSink gzip = new GzipSink(network);
+        Sink compressor = new ForwardingSink(gzip) {
+            @Override
+            public void write(@NonNull Buffer source, long byteCount) throws IOException {
+                long start = System.nanoTime();
+                rawBytes += byteCount;
+                super.write(source, byteCount);
+                compressionNanos += System.nanoTime() - start;
+            }
+
+            @Override
+            public void close() throws IOException {
+                long start = System.nanoTime();
+                super.close();
+                compressionNanos += System.nanoTime() - start;
+            }
+        };
+        BufferedSink gzipSink = Okio.buffer(compressor);
+        body.writeTo(gzipSink);
+        // Closing writes the gzip trailer.
+        gzipSink.close();
+        compressionNanos = Math.max(0, compressionNanos - networkNanos[0]);
+    }
+
+    /**
+     * Number of bytes before compression, valid after the body has been written.
+     */
+    long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * Number of bytes after compression, valid after the body has been written.
+     */
+    long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * Time spent compressing (ns), valid after the body has been written.
+     */
+    long getCompressionNanos() {
+        return compressionNanos;
+    }
+}
@@ -0,0 +1,244 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.HttpUrl;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Measures the network phases of an HTTP call: DNS lookup, TCP connect, TLS handshake, writing
+ * the request, time to first byte of the response, and reading the response, and whether a new
+ * connection was made or an existing one reused. When the call ends, the durations are recorded
+ * in the {@link SessionStatistics} and summarized on one line of the HTTP log.
+ * <p>
+ * One listener is created for each call by {@link Factory}. A phase repeated within a call, eg,
+ * connecting to a second address after the first failed, is counted with its total duration.
+ * <p>
+ * A call tagged with {@link #PRE_CONNECT_TAG} only makes a connection for a later call. Only its
+ * DNS lookup, connect and TLS handshake are recorded, and also as
+ * {@link SessionStatistics.Phase#HANDSHAKE_SAVED}, if a new connection was made. It is summarized
+ * in the HTTP log only if it fails, so that the log shows the calls which carry results.
+ */
+class HttpCallEventListener extends EventListener {
+
+    /**
+     * Tag, of type String, of a call made only to connect before a later call, eg, an upload.
+     */
+    static final String PRE_CONNECT_TAG = "pre-connect";
+
+    /**
+     * Creates a listener for each call of an OkHttp client.
+     */
+    static class Factory implements EventListener.Factory {
+        private final SessionStatistics statistics;
+        private final Consumer<String> log;
+        private final String siDroidHost;
+
+        /**
+         * @param statistics Statistics to record the phases in.
+         * @param log        Log for a summary of each call, eg, the HTTP log.
+         * @param siDroidUrl URL of SI-Droid. Calls to its host are recorded as SI-Droid calls,
+         *                   all other calls as OFeed calls.
+         */
+        Factory(SessionStatistics statistics, Consumer<String> log, String siDroidUrl) {
+            this.statistics = statistics;
+            this.log = log;
+            HttpUrl url = HttpUrl.parse(siDroidUrl);
+            siDroidHost = url == null ? "" : url.host();
+        }
+
+        @NonNull
+        @Override
+        public EventListener create(@NonNull Call call) {
+            SessionStatistics.Target target = call.request().url().host().equals(siDroidHost)
+                    ? SessionStatistics.Target.SI_DROID : SessionStatistics.Target.OFEED;
+            return new HttpCallEventListener(statistics, log, target);
+        }
+    }
+
+    private final SessionStatistics statistics;
+    private final Consumer<String> log;
+    private final SessionStatistics.Target target;
+
+    // A call is executed on one thread at a time, so the fields need no synchronization.
+    private long callStartNanos, dnsStartNanos, connectStartNanos, tlsStartNanos;
+    private long requestStartNanos, requestEndNanos, responseStartNanos;
+    private long dnsNanos = -1, connectNanos = -1, tlsNanos = -1;
+    private long requestNanos = -1, ttfbNanos = -1, responseNanos = -1;
+    private boolean connected = false, reused = false;
+
+    private HttpCallEventListener(SessionStatistics statistics, Consumer<String> log, SessionStatistics.Target target) {
+        this.statistics = statistics;
+        this.log = log;
+        this.target = target;
+    }
+
+    // *********************************************************************************************
+    // Events.
+    // *********************************************************************************************
+    @Override
+    public void callStart(@NonNull Call call) {
+        callStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+        dnsStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> inetAddressList) {
+        dnsNanos = add(dnsNanos, dnsStartNanos);
+    }
+
+    @Override
+    public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy) {
+        connected = true;
+        connectStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(@NonNull Call call) {
+        tlsStartNanos = System.nanoTime();
+        connectNanos = add(connectNanos, connectStartNanos);
+        connectStartNanos = 0;  // TCP connect done, the rest is TLS.
+    }
+
+    @Override
+    public void secureConnectEnd(@NonNull Call call, @Nullable Handshake handshake) {
+        tlsNanos = add(tlsNanos, tlsStartNanos);
+    }
+
+    @Override
+    public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy,
+                           @Nullable Protocol protocol) {
+        if (connectStartNanos != 0) connectNanos = add(connectNanos, connectStartNanos);
+    }
+
+    @Override
+    public void connectFailed(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy,
+                              @Nullable Protocol protocol, @NonNull IOException ioe) {
+        if (connectStartNanos != 0) connectNanos = add(connectNanos, connectStartNanos);
+    }
+
+    @Override
+    public void connectionAcquired(@NonNull Call call, @NonNull Connection connection) {
+        reused = !connected;
+        statistics.recordConnection(target, reused);
+    }
+
+    @Override
+    public void requestHeadersStart(@NonNull Call call) {
+        requestStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(@NonNull Call call, @NonNull Request request) {
+        requestEnd();
+    }
+
+    @Override
+    public void requestBodyEnd(@NonNull Call call, long byteCount) {
+        requestEnd();
+    }
+
+    @Override
+    public void responseHeadersStart(@NonNull Call call) {
+        responseStartNanos = System.nanoTime();
+        if (requestEndNanos != 0) ttfbNanos = add(ttfbNanos, requestEndNanos);
+    }
+
+    @Override
+    public void responseHeadersEnd(@NonNull Call call, @NonNull Response response) {
+        // Until the body is read, the response is the headers.
+        responseNanos = System.nanoTime() - responseStartNanos;
+    }
+
+    @Override
+    public void responseBodyEnd(@NonNull Call call, long byteCount) {
+        responseNanos = System.nanoTime() - responseStartNanos;
+    }
+
+    @Override
+    public void callEnd(@NonNull Call call) {
+        end(call, null);
+    }
+
+    @Override
+    public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+        statistics.recordCallFailure(target);
+        end(call, ioe);
+    }
+
+    // *********************************************************************************************
+    // Helpers.
+    // *********************************************************************************************
+    private void requestEnd() {
+        requestEndNanos = System.nanoTime();
+        requestNanos = requestEndNanos - requestStartNanos;
+    }
+
+    /**
+     * Add the time since a start to a duration, -1 if not measured yet.
+     */
+    private static long add(long nanos, long startNanos) {
+        return Math.max(0, nanos) + System.nanoTime() - startNanos;
+    }
+
+    private void end(Call call, @Nullable IOException ioe) {
+        long callNanos = System.nanoTime() - callStartNanos;
+        boolean preConnect = PRE_CONNECT_TAG.equals(call.request().tag(String.class));
+        record(SessionStatistics.Phase.DNS, dnsNanos);
+        record(SessionStatistics.Phase.CONNECT, connectNanos);
+        record(SessionStatistics.Phase.TLS, tlsNanos);
+        if (preConnect) {
+            if (ioe == null && connected) {
+                record(SessionStatistics.Phase.HANDSHAKE_SAVED,
+                        Math.max(0, dnsNanos) + Math.max(0, connectNanos) + Math.max(0, tlsNanos));
+            }
+        } else {
+            record(SessionStatistics.Phase.REQUEST, requestNanos);
+            record(SessionStatistics.Phase.TTFB, ttfbNanos);
+            record(SessionStatistics.Phase.RESPONSE, responseNanos);
+            if (ioe == null) record(SessionStatistics.Phase.CALL, callNanos);
+        }
+        if (preConnect && ioe == null) return;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(call.request().method()).append(' ').append(call.request().url().encodedPath()).append(':');
+        append(sb, "dns", dnsNanos);
+        append(sb, "connect", connectNanos);
+        append(sb, "tls", tlsNanos);
+        append(sb, "request", requestNanos);
+        append(sb, "ttfb", ttfbNanos);
+        append(sb, "response", responseNanos);
+        append(sb, "total", callNanos);
+        sb.append(reused ? " reused" : connected ? " new" : "");
+        if (preConnect) sb.append(" pre-connect");
+        if (ioe != null) sb.append(" failed");
+        log.accept(sb.toString());
+    }
+
+    private void record(SessionStatistics.Phase phase, long nanos) {
+        if (nanos >= 0) statistics.recordPhase(target, phase, nanos);
+    }
+
+    private static void append(StringBuilder sb, String name, long nanos) {
+        if (nanos >= 0) sb.append(String.format(Locale.ROOT, " %s=%.0fms", name, nanos / 1e6));
+    }
+}
@@ -0,0 +1,27 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * The HTTP client shared by the whole app.
+ * <p>
+ * Each OkHttpClient has its own connection pool and dispatcher threads, so clients should not be
+ * created per request. Clients with their own settings, eg, timeouts or interceptors, are derived
+ * from the shared client with {@link OkHttpClient#newBuilder()}, and then share its connection
+ * pool and threads.
+ */
+final class HttpClients {
+
+    private static OkHttpClient shared = null;
+
+    private HttpClients() {
+    }
+
+    /**
+     * Get the shared HTTP client.
+     */
+    static synchronized OkHttpClient shared() {
+        if (shared == null) shared = new OkHttpClient();
+        return shared;
+    }
+}
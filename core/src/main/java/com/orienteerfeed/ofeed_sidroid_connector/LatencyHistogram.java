@@ -0,0 +1,87 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+/**
+ * Histogram of latencies, for percentiles over a whole session at a small, fixed cost.
+ * <p>
+ * Latencies are counted in microseconds, in log-linear buckets: each power of two is divided into
+ * {@link #SUB_BUCKETS} buckets of equal width, so a percentile is accurate to within about 6 %
+ * whatever the latency. Recording a latency only increments a counter, and the memory used does
+ * not grow with the number of latencies recorded.
+ */
+class LatencyHistogram {
+
+    /**
+     * Number of buckets per power of two, a power of two itself.
+     */
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    // Latencies below SUB_BUCKETS us have a bucket each, then SUB_BUCKETS buckets per power of two.
+    private final long[] buckets = new long[(Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+    private long count = 0, totalMicros = 0, maxMicros = 0;
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos Latency (ns).
+     */
+    synchronized void record(long nanos) {
+        long micros = Math.max(0, nanos / 1_000);
+        buckets[indexOf(micros)]++;
+        count++;
+        totalMicros += micros;
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Get a percentile of the latencies recorded.
+     *
+     * @param percentile Percentile, 0-100.
+     * @return The latency (us), the upper bound of the bucket it falls in but never more than the
+     * largest latency recorded. 0 if nothing has been recorded.
+     */
+    synchronized long getPercentileMicros(double percentile) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) return Math.min(maxMicros, upperBoundOf(i));
+        }
+        return maxMicros;
+    }
+
+    synchronized long getMaxMicros() {
+        return maxMicros;
+    }
+
+    synchronized long getMeanMicros() {
+        return count == 0 ? 0 : totalMicros / count;
+    }
+
+    synchronized long getTotalMicros() {
+        return totalMicros;
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Get the largest latency which falls in a bucket (us).
+     */
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
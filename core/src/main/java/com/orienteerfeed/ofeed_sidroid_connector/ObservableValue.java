@@ -0,0 +1,127 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.NonNull;
+
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * A value which can be observed, eg, the status of {@link ResultsPipeline}. Threadsafe.
+ * <p>
+ * The value should be immutable. Observers are called on an executor of their choice, eg, the
+ * main thread, with the current value when they subscribe, and then each time the value changes.
+ * Only the latest value is delivered: if the value changes several times before an observer
+ * has run, the observer is called once, and never twice in a row with equal values.
+ *
+ * @param <T> Type of the value.
+ */
+class ObservableValue<T> {
+
+    /**
+     * Observer of the value.
+     */
+    interface Observer<T> {
+        void onChanged(@NonNull T value);
+    }
+
+    /**
+     * Subscription of an observer, see {@link #subscribe(Executor, Observer)}.
+     */
+    interface Subscription {
+        /**
+         * Stop observing. The observer is not called after this, if this is called on the
+         * executor of the observer.
+         */
+        void unsubscribe();
+    }
+
+    private final AtomicReference<T> value;
+    private final CopyOnWriteArrayList<Delivery> deliveries = new CopyOnWriteArrayList<>();
+
+    ObservableValue(@NonNull T initialValue) {
+        value = new AtomicReference<>(Objects.requireNonNull(initialValue));
+    }
+
+    /**
+     * Get the current value.
+     */
+    @NonNull
+    T get() {
+        return value.get();
+    }
+
+    /**
+     * Set the value. Observers are notified if the value has changed.
+     */
+    void set(@NonNull T newValue) {
+        update(oldValue -> newValue);
+    }
+
+    /**
+     * Update the value atomically from its current value. Observers are notified if the value
+     * has changed.
+     *
+     * @param function Computes the new value from the current value. May be called more than once.
+     */
+    void update(UnaryOperator<T> function) {
+        T oldValue, newValue;
+        do {
+            oldValue = value.get();
+            newValue = Objects.requireNonNull(function.apply(oldValue));
+        } while (!value.compareAndSet(oldValue, newValue));
+        if (newValue.equals(oldValue)) return;
+        for (Delivery delivery : deliveries) delivery.schedule();
+    }
+
+    /**
+     * Observe the value. The observer is called with the current value, and then with each
+     * new value.
+     *
+     * @param executor Executor on which the observer is called, eg, the main thread. Must run
+     *                 one task at a time.
+     * @param observer The observer.
+     * @return Subscription, for stopping the observation.
+     */
+    Subscription subscribe(Executor executor, Observer<T> observer) {
+        Delivery delivery = new Delivery(executor, observer);
+        deliveries.add(delivery);
+        delivery.schedule();
+        return () -> {
+            delivery.cancelled = true;
+            deliveries.remove(delivery);
+        };
+    }
+
+    /**
+     * Delivers the latest value to an observer.
+     */
+    private class Delivery {
+        private final Executor executor;
+        private final Observer<T> observer;
+        private volatile boolean cancelled = false;
+        // True while a delivery is scheduled but has not run yet.
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        // Only accessed on the executor.
+        private T delivered = null;
+
+        Delivery(Executor executor, Observer<T> observer) {
+            this.executor = executor;
+            this.observer = observer;
+        }
+
+        void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;  // Will deliver the latest value.
+            executor.execute(() -> {
+                scheduled.set(false);
+                T latest = value.get();
+                if (cancelled || latest.equals(delivered)) return;
+                delivered = latest;
+                observer.onChanged(latest);
+            });
+        }
+    }
+}
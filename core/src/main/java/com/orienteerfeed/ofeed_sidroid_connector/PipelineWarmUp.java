@@ -0,0 +1,62 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Warms up the transform path of {@link ResultsPipeline} on a small result list, so that the
+ * first real update does not pay for loading the XML parser classes, and for running the
+ * fingerprint and the Id rewriter in the interpreter.
+ */
+final class PipelineWarmUp {
+
+    /**
+     * A small IOF XML 3.0 result list, with the elements rewritten by {@link XmlModifier}.
+     */
+    private static final String RESULT_LIST = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<ResultList xmlns=\"http://www.orienteering.org/datastandard/3.0\" iofVersion=\"3.0\""
+            + " createTime=\"2025-01-01T10:00:00\" status=\"Snapshot\">\n"
+            + "  <Event><Name>Warm-up</Name></Event>\n"
+            + "  <ClassResult>\n"
+            + "    <Class><Name>H21</Name></Class>\n"
+            + person("Anna", "Andersson", 1, 1865)
+            + person("Bertil", "Berg", 2, 1930)
+            + "  </ClassResult>\n"
+            + "  <ClassResult>\n"
+            + "    <Class><Name>D21</Name></Class>\n"
+            + person("Cecilia", "Carlsson", 1, 2100)
+            + "  </ClassResult>\n"
+            + "</ResultList>\n";
+
+    /**
+     * Number of passes. Enough for the class loading and the first compilation of the hot
+     * methods, while taking no more than some tens of milliseconds on a slow device.
+     */
+    private static final int PASSES = 20;
+
+    private PipelineWarmUp() {
+    }
+
+    /**
+     * Compute the fingerprint of the small result list, and insert Ids into it, a number of times.
+     * The output is discarded, and no Ids are saved.
+     *
+     * @param mode Engine to warm up.
+     */
+    static void run(XmlModifier.Mode mode) throws Exception {
+        for (int i = 0; i < PASSES; i++) {
+            ResultListFingerprint.compute(new StringReader(RESULT_LIST));
+            XmlModifier.updateOrInsertIds(new StringReader(RESULT_LIST), new StringWriter(RESULT_LIST.length() * 2),
+                    mode, XmlModifier.POSITIONAL);
+        }
+    }
+
+    private static String person(String given, String family, int position, int timeSec) {
+        return "    <PersonResult>\n"
+                + "      <Person><Name><Family>" + family + "</Family><Given>" + given + "</Given></Name></Person>\n"
+                + "      <Organisation><Name>OK Warm-up</Name></Organisation>\n"
+                + "      <Result><Time>" + timeSec + "</Time><Position>" + position + "</Position>"
+                + "<Status>OK</Status></Result>\n"
+                + "    </PersonResult>\n";
+    }
+}
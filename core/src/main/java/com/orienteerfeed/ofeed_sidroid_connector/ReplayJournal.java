@@ -0,0 +1,426 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact journal of the result lists fetched from SI-Droid during a session, for replaying the
+ * event afterwards, eg, to reproduce a performance problem, or as a repeatable benchmark.
+ * <p>
+ * Each result list is a record with the time it was fetched. A record holds the whole result
+ * list, a delta against the previous result list, or nothing if the result list is unchanged.
+ * Deltas are line based: runs of lines copied from the previous result list, and lines inserted.
+ * As a result list grows by a few results between fetches, a delta is typically some hundred
+ * bytes. Each record is deflated, and has the CRC-32 of its result list.
+ * <p>
+ * Format: {@link #MAGIC}, version (int), then records of time (long, epoch ms), kind (byte),
+ * CRC-32 of the result list (int), length of the payload (int) and the payload. A record cut
+ * short, eg, by a crash, ends the journal.
+ */
+public final class ReplayJournal {
+
+    private static final int MAGIC = 0x4f46524a;   // "OFRJ".
+    private static final int VERSION = 1;
+    private static final byte FULL = 0, DELTA = 1, SAME = 2;
+    private static final byte COPY = 0, INSERT = 1;
+    private static final String EXTENSION = ".ofrj";
+    // Candidate lines compared when a run of copied lines ends, and lines compared per candidate.
+    private static final int MAX_CANDIDATES = 16, MAX_RUN_COMPARED = 64;
+    // Shortest run of copied lines worth a copy operation, in bytes.
+    private static final int MIN_COPY_BYTES = 12;
+
+    private ReplayJournal() {
+    }
+
+    /**
+     * Get a new journal file for a session.
+     *
+     * @param filesDir Typically {@code Context.getFilesDir()}.
+     * @param eventId  The OFeed event id. Characters not allowed in the file name are replaced.
+     */
+    static File newFile(File filesDir, String eventId) {
+        String name = eventId == null ? "" : eventId.replaceAll("[^A-Za-z0-9_-]", "_");
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        return new File(new File(filesDir, "replay"), name + "-" + time + EXTENSION);
+    }
+
+    // *********************************************************************************************
+    // Snapshot.
+    // *********************************************************************************************
+
+    /**
+     * A result list read from the journal.
+     */
+    public static final class Snapshot {
+        /**
+         * Time the result list was fetched (epoch ms).
+         */
+        public final long timeMillis;
+        /**
+         * The result list, UTF-8.
+         */
+        public final byte[] content;
+
+        Snapshot(long timeMillis, byte[] content) {
+            this.timeMillis = timeMillis;
+            this.content = content;
+        }
+    }
+
+    // *********************************************************************************************
+    // Writer.
+    // *********************************************************************************************
+
+    /**
+     * Appends result lists to a new journal file. Threadsafe.
+     */
+    static final class Writer implements Closeable {
+        private final File file;
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        private byte[] previous = null;
+        private int count = 0;
+        private boolean closed = false;
+
+        /**
+         * Create the journal file, and its directory if needed.
+         */
+        Writer(File file) throws IOException {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) throw new IOException("Can not create " + dir);
+            this.file = file;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.flush();
+        }
+
+        /**
+         * Append a result list. Does nothing once the journal has been closed.
+         *
+         * @param timeMillis Time the result list was fetched (epoch ms).
+         * @param resultList The result list, UTF-8.
+         */
+        synchronized void append(long timeMillis, File resultList) throws IOException {
+            if (closed) return;
+            byte[] content = readFile(resultList);
+            byte kind;
+            byte[] payload;
+            if (previous == null) {
+                kind = FULL;
+                payload = deflate(content);
+            } else if (Arrays.equals(previous, content)) {
+                kind = SAME;
+                payload = new byte[0];
+            } else {
+                kind = DELTA;
+                payload = deflate(delta(previous, content));
+            }
+            out.writeLong(timeMillis);
+            out.writeByte(kind);
+            out.writeInt(crc(content));
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.flush();
+            previous = content;
+            count++;
+        }
+
+        /**
+         * Get the number of result lists appended.
+         */
+        synchronized int getCount() {
+            return count;
+        }
+
+        /**
+         * Get the journal file.
+         */
+        File getFile() {
+            return file;
+        }
+
+        /**
+         * Get the size of the journal file (bytes).
+         */
+        long getBytes() {
+            return file.length();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            previous = null;
+            deflater.end();
+            out.close();
+        }
+
+        private byte[] deflate(byte[] data) throws IOException {
+            deflater.reset();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 8 + 64);
+            try (DeflaterOutputStream deflated = new DeflaterOutputStream(bytes, deflater, 8192)) {
+                deflated.write(data);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    // *********************************************************************************************
+    // Reader.
+    // *********************************************************************************************
+
+    /**
+     * Reads the result lists of a journal file, in order.
+     */
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private byte[] previous = null;
+
+        /**
+         * Open a journal file.
+         *
+         * @throws IOException If the file is not a journal.
+         */
+        public Reader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            try {
+                if (in.readInt() != MAGIC) throw new IOException("Not a replay journal: " + file);
+                int version = in.readInt();
+                if (version != VERSION) throw new IOException("Unsupported replay journal version " + version + ": " + file);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Read the next result list.
+         *
+         * @return The result list, or null at the end of the journal.
+         * @throws IOException If the journal is corrupt.
+         */
+        public Snapshot next() throws IOException {
+            long timeMillis;
+            byte kind;
+            int crc;
+            byte[] payload;
+            try {
+                timeMillis = in.readLong();
+                kind = in.readByte();
+                crc = in.readInt();
+                payload = new byte[in.readInt()];
+                in.readFully(payload);
+            } catch (EOFException e) {
+                return null;    // End, or a record cut short.
+            }
+            byte[] content;
+            if (kind == FULL) {
+                content = inflate(payload);
+            } else if (kind == SAME && previous != null) {
+                content = previous;
+            } else if (kind == DELTA && previous != null) {
+                content = applyDelta(previous, inflate(payload));
+            } else {
+                throw new IOException("Corrupt replay journal, record kind " + kind);
+            }
+            if (crc(content) != crc) throw new IOException("Corrupt replay journal, bad checksum");
+            previous = content;
+            return new Snapshot(timeMillis, content);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private static byte[] inflate(byte[] payload) throws IOException {
+            try (InputStream inflated = new InflaterInputStream(new ByteArrayInputStream(payload))) {
+                return readFully(inflated, payload.length * 8);
+            }
+        }
+    }
+
+    // *********************************************************************************************
+    // Delta.
+    // *********************************************************************************************
+
+    /**
+     * Encode a result list as copy and insert operations against the previous result list.
+     */
+    static byte[] delta(byte[] previous, byte[] content) throws IOException {
+        int[] oldLines = lineStarts(previous), newLines = lineStarts(content);
+        int oldCount = oldLines.length - 1, newCount = newLines.length - 1;
+
+        // Lines of the previous result list by hash, as chains through next[].
+        int buckets = Integer.highestOneBit(Math.max(16, oldCount * 2));
+        int[] head = new int[buckets], next = new int[oldCount];
+        Arrays.fill(head, -1);
+        for (int i = oldCount - 1; i >= 0; i--) {
+            int bucket = hash(previous, oldLines[i], oldLines[i + 1]) & (buckets - 1);
+            next[i] = head[bucket];
+            head[bucket] = i;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        int insertStart = 0;
+        int i = 0;
+        while (i < newCount) {
+            // Find the longest run of lines from here, which is also in the previous result list.
+            int bestStart = -1, bestRun = 0, candidates = 0;
+            int bucket = hash(content, newLines[i], newLines[i + 1]) & (buckets - 1);
+            for (int j = head[bucket]; j >= 0 && candidates < MAX_CANDIDATES; j = next[j], candidates++) {
+                int run = 0;
+                while (run < MAX_RUN_COMPARED && i + run < newCount && j + run < oldCount
+                        && sameLine(previous, oldLines, j + run, content, newLines, i + run)) run++;
+                if (run > bestRun) {
+                    bestRun = run;
+                    bestStart = j;
+                }
+            }
+            if (bestRun > 0) {
+                // Extend the run beyond the lines compared.
+                while (i + bestRun < newCount && bestStart + bestRun < oldCount
+                        && sameLine(previous, oldLines, bestStart + bestRun, content, newLines, i + bestRun)) bestRun++;
+            }
+            if (bestRun == 0 || newLines[i + bestRun] - newLines[i] < MIN_COPY_BYTES) {
+                i++;    // Inserted.
+                continue;
+            }
+            if (insertStart < i) writeInsert(out, content, newLines[insertStart], newLines[i]);
+            out.writeByte(COPY);
+            writeVarInt(out, bestStart);
+            writeVarInt(out, bestRun);
+            i += bestRun;
+            insertStart = i;
+        }
+        if (insertStart < newCount) writeInsert(out, content, newLines[insertStart], newLines[newCount]);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a result list from copy and insert operations against the previous result list.
+     */
+    static byte[] applyDelta(byte[] previous, byte[] delta) throws IOException {
+        int[] oldLines = lineStarts(previous);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(previous.length + previous.length / 8);
+        while (in.available() > 0) {
+            byte op = in.readByte();
+            if (op == COPY) {
+                int start = readVarInt(in), count = readVarInt(in);
+                if (start < 0 || count < 0 || start + count >= oldLines.length) throw new IOException("Corrupt delta");
+                out.write(previous, oldLines[start], oldLines[start + count] - oldLines[start]);
+            } else if (op == INSERT) {
+                byte[] inserted = new byte[readVarInt(in)];
+                in.readFully(inserted);
+                out.write(inserted);
+            } else {
+                throw new IOException("Corrupt delta, operation " + op);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeInsert(DataOutputStream out, byte[] content, int from, int to) throws IOException {
+        out.writeByte(INSERT);
+        writeVarInt(out, to - from);
+        out.write(content, from, to - from);
+    }
+
+    /**
+     * Get the offsets of the starts of the lines, and the length of the data last.
+     */
+    private static int[] lineStarts(byte[] data) {
+        int lines = 0;
+        for (byte b : data) if (b == '\n') lines++;
+        if (data.length > 0 && data[data.length - 1] != '\n') lines++;
+        int[] starts = new int[lines + 1];
+        int line = 1;
+        for (int i = 0; i < data.length && line < lines; i++) {
+            if (data[i] == '\n') starts[line++] = i + 1;
+        }
+        starts[lines] = data.length;
+        return starts;
+    }
+
+    private static int hash(byte[] data, int from, int to) {
+        int hash = 0x811c9dc5;
+        for (int i = from; i < to; i++) hash = (hash ^ data[i]) * 0x01000193;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean sameLine(byte[] a, int[] aLines, int aLine, byte[] b, int[] bLines, int bLine) {
+        int aFrom = aLines[aLine], length = aLines[aLine + 1] - aFrom;
+        int bFrom = bLines[bLine];
+        if (bLines[bLine + 1] - bFrom != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (a[aFrom + i] != b[bFrom + i]) return false;
+        }
+        return true;
+    }
+
+    // *********************************************************************************************
+    // Helpers.
+    // *********************************************************************************************
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Corrupt delta, bad integer");
+    }
+
+    private static int crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return readFully(in, (int) Math.min(Integer.MAX_VALUE - 8, file.length()));
+        }
+    }
+
+    private static byte[] readFully(InputStream in, int sizeHint) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, sizeHint));
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+}
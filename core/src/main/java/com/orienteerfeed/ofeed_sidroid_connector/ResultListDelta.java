@@ -0,0 +1,195 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+
+/**
+ * Partial IOF xml 3.0 result list, with only the PersonResults which have changed since a
+ * previous result list, eg, to upload one new finisher rather than the whole result list.
+ * <p>
+ * The partial result list has {@code <ResultList status="Delta">}, as defined by IOF xml 3.0.
+ * It has the elements of the result list outside the ClassResults, eg, the Event, and the
+ * ClassResults with changes, each with its Class and other elements but only its changed
+ * PersonResults.
+ * <p>
+ * A PersonResult is identified by its class and its Person element, ie, Id and name. It has
+ * changed if anything in it has changed, eg, status, time, position or splits. A delta can not
+ * remove a competitor, so the whole result list has to be uploaded when competitors have been
+ * removed, see {@link #removed}. Nor does it tell changes outside the PersonResults, eg, to the
+ * Event or a Class, see {@link #outsideChanged}.
+ */
+class ResultListDelta {
+
+    /**
+     * The PersonResults of a result list, as 64 bit hashes of their identities and contents.
+     */
+    static final class Snapshot {
+        private final HashMap<Long, Long> personResults;
+        // Hash of everything outside the PersonResults, in canonical form.
+        private final long outsideHash;
+
+        private Snapshot(HashMap<Long, Long> personResults, long outsideHash) {
+            this.personResults = personResults;
+            this.outsideHash = outsideHash;
+        }
+    }
+
+    /**
+     * The PersonResults of the result list.
+     */
+    final Snapshot snapshot;
+    /**
+     * Number of PersonResults in the result list, and number which are new or have changed.
+     */
+    final int total, changed;
+    /**
+     * Number of PersonResults of the previous result list which are missing from the result list.
+     */
+    final int removed;
+    /**
+     * True if anything outside the PersonResults differs from the previous result list, eg, the
+     * Event, a Class, or a new ClassResult without PersonResults. Volatile attributes and white
+     * space are ignored, as in {@link ResultListFingerprint}.
+     */
+    final boolean outsideChanged;
+
+    private ResultListDelta(Snapshot snapshot, int total, int changed, int removed, boolean outsideChanged) {
+        this.snapshot = snapshot;
+        this.total = total;
+        this.changed = changed;
+        this.removed = removed;
+        this.outsideChanged = outsideChanged;
+    }
+
+    /**
+     * Compare a result list with a previous result list, and write the partial result list.
+     *
+     * @param reader   The result list.
+     * @param previous The previous result list, null if none, ie, every PersonResult is new.
+     * @param out      The partial result list is written here. Null to get the snapshot only.
+     * @return The snapshot of the result list, and the number of changes.
+     */
+    static ResultListDelta build(Reader reader, @Nullable Snapshot previous, @Nullable Writer out) throws IOException {
+        HashMap<Long, Long> personResults = new HashMap<>();
+        int total = 0, changed = 0, matched = 0;
+
+        XmlScanner scanner = new XmlScanner(reader);
+        int depth = 0;
+        // Depth of the current ClassResult, -1 outside ClassResults.
+        int classDepth = -1;
+        // 1 in the Class element of the ClassResult, 2 in its Name element.
+        int inClass = 0;
+        final StringBuilder className = new StringBuilder();
+        // Content of the ClassResult not yet written, and where white space at its end starts.
+        final StringBuilder frame = new StringBuilder();
+        int whitespaceStart = -1;
+        boolean classWritten = false;
+        final StringBuilder personResult = new StringBuilder();
+        // Everything outside the PersonResults, in canonical form.
+        final StringWriter outside = new StringWriter();
+
+        XmlScanner.Token token;
+        while ((token = scanner.next()) != XmlScanner.Token.END_DOCUMENT) {
+            if (classDepth < 0) {
+                // Outside ClassResults, copy everything, with the status of the result list set.
+                ResultListFingerprint.copyCanonical(scanner, token, outside);
+                if (token == XmlScanner.Token.START_TAG && scanner.nameEquals("ClassResult")) {
+                    classDepth = depth++;
+                    className.setLength(0);
+                    frame.setLength(0);
+                    frame.append(scanner.raw());
+                    whitespaceStart = -1;
+                    classWritten = false;
+                    continue;
+                }
+                if (token == XmlScanner.Token.START_TAG) depth++;
+                else if (token == XmlScanner.Token.END_TAG) depth--;
+                if (out == null) continue;
+                if ((token == XmlScanner.Token.START_TAG || token == XmlScanner.Token.EMPTY_ELEMENT_TAG)
+                        && scanner.nameEquals("ResultList")) {
+                    scanner.copyWithAttributeValueTo(out, "status", "Delta");
+                } else {
+                    scanner.copyTo(out);
+                }
+                continue;
+            }
+
+            if (token == XmlScanner.Token.START_TAG && depth == classDepth + 1 && scanner.nameEquals("PersonResult")) {
+                personResult.setLength(0);
+                personResult.append(scanner.raw());
+                scanner.appendElementContentTo(personResult);
+                total++;
+                long key = ClassResultCache.hash(className + "\u001f" + person(personResult));
+                long hash = ClassResultCache.hash(personResult);
+                Long before = previous == null ? null : previous.personResults.get(key);
+                if (personResults.put(key, hash) == null && before != null) matched++;
+                if (before != null && before == hash) {
+                    // Unchanged, leave out, with the white space before it.
+                    if (whitespaceStart >= 0) frame.setLength(whitespaceStart);
+                } else {
+                    changed++;
+                    if (out != null) out.append(frame).append(personResult);
+                    frame.setLength(0);
+                    classWritten = true;
+                }
+                whitespaceStart = -1;
+                continue;
+            }
+
+            if (token == XmlScanner.Token.TEXT) {
+                if (inClass == 2) scanner.appendTextTo(className);
+                if (scanner.isWhitespace()) {
+                    if (whitespaceStart < 0) whitespaceStart = frame.length();
+                } else {
+                    whitespaceStart = -1;
+                }
+            } else {
+                whitespaceStart = -1;
+            }
+            if (token == XmlScanner.Token.START_TAG) {
+                if (depth == classDepth + 1 && scanner.nameEquals("Class")) inClass = 1;
+                else if (inClass == 1 && depth == classDepth + 2 && scanner.nameEquals("Name")) inClass = 2;
+                depth++;
+            } else if (token == XmlScanner.Token.END_TAG) {
+                depth--;
+                if (inClass == 2 && depth == classDepth + 2) inClass = 1;
+                else if (inClass == 1 && depth == classDepth + 1) inClass = 0;
+            }
+            frame.append(scanner.raw());
+            ResultListFingerprint.copyCanonical(scanner, token, outside);
+            if (depth == classDepth) {
+                // End of the ClassResult, written if it has changes.
+                if (classWritten && out != null) out.append(frame);
+                classDepth = -1;
+                inClass = 0;
+            }
+        }
+        if (out != null) out.flush();
+        int removed = previous == null ? 0 : previous.personResults.size() - matched;
+        long outsideHash = ClassResultCache.hash(outside.getBuffer());
+        return new ResultListDelta(new Snapshot(personResults, outsideHash), total, changed, removed,
+                previous != null && previous.outsideHash != outsideHash);
+    }
+
+    /**
+     * Get the Person element of a PersonResult, ie, the identity of the competitor, or the whole
+     * PersonResult if it has none.
+     */
+    private static CharSequence person(StringBuilder personResult) {
+        int start = personResult.indexOf("<Person", 1);
+        while (start >= 0) {
+            char c = start + 7 < personResult.length() ? personResult.charAt(start + 7) : '>';
+            if (c == '>' || c == '/' || c == ' ' || c == '\t' || c == '\n' || c == '\r') break;
+            start = personResult.indexOf("<Person", start + 7);
+        }
+        if (start < 0) return personResult;
+        int end = personResult.indexOf("</Person>", start);
+        end = end < 0 ? personResult.indexOf(">", start) + 1 : end + "</Person>".length();
+        return personResult.subSequence(start, end);
+    }
+}
@@ -0,0 +1,129 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import okio.ByteString;
+
+/**
+ * Fingerprint of an IOF xml 3.0 result list, used to detect if the result list has changed.
+ * The fingerprint is a SHA-256 hash of the document in a canonical form, where parts which
+ * change although the results do not are left out:
+ * <ul>
+ *     <li>Values of volatile attributes, see {@link #VOLATILE_ATTRIBUTES}.</li>
+ *     <li>Comments, processing instructions and the XML declaration.</li>
+ *     <li>White space between tags.</li>
+ * </ul>
+ * The number of PersonResults is counted in the same pass.
+ */
+class ResultListFingerprint {
+
+    /**
+     * SHA-256 hash of the canonical form, as a hex string.
+     */
+    final String hash;
+    /**
+     * Number of PersonResult elements.
+     */
+    final int personResults;
+
+    private ResultListFingerprint(String hash, int personResults) {
+        this.hash = hash;
+        this.personResults = personResults;
+    }
+
+    /**
+     * Attributes whose values are set when the result list is generated, eg,
+     * {@code <ResultList createTime="2025-06-01T10:15:30">}.
+     */
+    private static final String[] VOLATILE_ATTRIBUTES = {"createTime"};
+
+    /**
+     * Compute the fingerprint of a result list.
+     *
+     * @param reader The result list.
+     * @return The fingerprint.
+     */
+    static ResultListFingerprint compute(Reader reader) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        Writer canonical = new BufferedWriter(new OutputStreamWriter(new DigestSink(digest), StandardCharsets.UTF_8));
+
+        XmlScanner scanner = new XmlScanner(reader);
+        int personResults = 0;
+        XmlScanner.Token token;
+        while ((token = scanner.next()) != XmlScanner.Token.END_DOCUMENT) {
+            if ((token == XmlScanner.Token.START_TAG || token == XmlScanner.Token.EMPTY_ELEMENT_TAG)
+                    && scanner.nameEquals("PersonResult")) {
+                personResults++;
+            }
+            copyCanonical(scanner, token, canonical);
+        }
+        canonical.flush();
+        return new ResultListFingerprint(ByteString.of(digest.digest()).hex(), personResults);
+    }
+
+    /**
+     * Write the canonical form of the current token of a scanner, see {@link ResultListFingerprint}.
+     */
+    static void copyCanonical(XmlScanner scanner, XmlScanner.Token token, Writer canonical) throws IOException {
+        switch (token) {
+            case TEXT:
+                if (!scanner.isWhitespace()) scanner.copyTo(canonical);
+                break;
+            case START_TAG:
+            case EMPTY_ELEMENT_TAG:
+                copyExcludingVolatileAttributes(scanner, canonical);
+                break;
+            case OTHER:
+                // Keep CDATA sections and the document type declaration only.
+                if (!scanner.isComment() && !scanner.raw().startsWith("<?")) scanner.copyTo(canonical);
+                break;
+            default:
+                scanner.copyTo(canonical);
+                break;
+        }
+    }
+
+    private static void copyExcludingVolatileAttributes(XmlScanner scanner, Writer canonical) throws IOException {
+        for (String attribute : VOLATILE_ATTRIBUTES) {
+            if (scanner.hasAttribute(attribute)) {
+                scanner.copyExcludingAttributeValueTo(canonical, attribute);
+                return;
+            }
+        }
+        scanner.copyTo(canonical);
+    }
+
+    /**
+     * Output stream which feeds everything written to it into a message digest.
+     */
+    private static class DigestSink extends OutputStream {
+        private final MessageDigest digest;
+
+        DigestSink(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public void write(int b) {
+            digest.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            digest.update(b, off, len);
+        }
+    }
+}
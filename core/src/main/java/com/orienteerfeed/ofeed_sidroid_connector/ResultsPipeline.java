@@ -0,0 +1,1144 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.logging.HttpLoggingInterceptor;
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * Gets results from SI-Droid and uploads them to OFeed, on a timer. Plain Java, shared by the
+ * foreground service of the app and by the command-line daemon.
+ * <p>
+ * The host provides the settings, the texts of the log messages, and where the status, the logs
+ * and the statistics go, and tells the pipeline when the network is available again.
+ * <p>
+ * Each update streams the result list through a few I/O buffers, so memory use does not grow
+ * with the size of the event. The result list is not piped from SI-Droid straight into the
+ * upload, though, but passes through files, so that it survives a failed upload and a restart:
+ * <ol>
+ *     <li>The result list is read from SI-Droid, and saved to a file in the cache directory and
+ *     fingerprinted in the same pass.</li>
+ *     <li>If it has changed, Ids are inserted while copying it from that file into the
+ *     outbox, see {@link UploadOutbox}.</li>
+ *     <li>The result list waiting in the outbox is uploaded from its file, with delta upload
+ *     after a pass which writes the changed competitors to another file.</li>
+ * </ol>
+ */
+class ResultsPipeline {
+
+    // *********************************************************************************************
+    // Settings.
+    // *********************************************************************************************
+
+    /**
+     * Settings of the pipeline. Defaults as in the app.
+     */
+    static final class Config {
+        String siDroidUrl, oFeedUrl, oFeedEventId, oFeedAuthorization, userAgent;
+        boolean gzipUpload = false;
+        int updateIntervalSec = 30;
+        // Maximum random delay of each update, to spread the load on OFeed, 0 = No jitter.
+        int updateJitterSec = 0;
+        // Range of the adaptive update interval, null if the interval is fixed.
+        int[] intervalRangeSec = null;
+        // Connect, read, write and call timeouts of OFeed, -1 = Use default timeout.
+        int[] timeoutsSec = {-1, -1, -1, -1};
+        int probeIntervalSec = 3;
+        // Time before each tick to connect to OFeed, 0 = No pre-connect.
+        int preConnectLeadSec = 0;
+        // Record each result list fetched in a replay journal.
+        boolean recordReplay = false;
+        // Upload only the competitors whose results have changed, and the whole result list
+        // every fullUploadEvery uploads. OFeed must accept partial result lists.
+        boolean deltaUpload = false;
+        int fullUploadEvery = 10;
+        // Rewrite only the classes which have changed since the previous result list, keeping up
+        // to CLASS_RESULT_CACHE_MAX_BYTES of the previous result list in memory.
+        boolean classResultCache = false;
+        // Competitor Ids and the outbox are kept here, and temporary files there.
+        File filesDir, cacheDir;
+
+        /**
+         * Get the Authorization header of OFeed for an event.
+         */
+        static String basicAuthorization(String eventId, String eventPassword) {
+            return "Basic " + ByteString.encodeUtf8(eventId + ":" + eventPassword).base64();
+        }
+    }
+
+    // *********************************************************************************************
+    // Texts.
+    // *********************************************************************************************
+
+    /**
+     * Log and status messages of the pipeline, with the English texts. The app gives the
+     * translated texts of its string resources instead.
+     */
+    enum Text {
+        UPDATE_TICK_COALESCED("Previous update still running, update already pending."),
+        UPDATE_TICK_DEFERRED("Previous update still running, update deferred."),
+        UPDATE_CANCELLED("Stale update cancelled."),
+        NETWORK_AVAILABLE("Network available, retrying upload."),
+        SI_DROID_UNREACHABLE("SI-Droid unreachable."),
+        SI_DROID_REACHABLE_AGAIN("SI-Droid reachable again."),
+        SI_DROID_READY("SI-Droid checked after %d ms, starting updates."),
+        SI_DROID_NOT_READY("SI-Droid not checked within %d ms, starting updates anyway."),
+        SI_DROID_GET_REQUEST("Requesting results from SI-Droid."),
+        SI_DROID_RESULTS_RETRIEVED("Results retrieved from SI-Droid."),
+        SI_DROID_NO_RESULTS("No results from SI-Droid."),
+        UPDATE_INTERVAL_ADAPTED("Upload interval %1$d sec, %2$.1f finishers/min."),
+        EXTERNAL_ID_ERROR("Update of external id failed."),
+        COMPETITOR_IDS_SAVE_ERROR("Saving of competitor ids failed."),
+        OFEED_POST_REQUEST("Submitting results to OFeed."),
+        OFEED_UPLOAD_OK("Results uploaded to OFeed."),
+        OFEED_UPLOAD_SKIPPED("Results unchanged, upload skipped."),
+        OFEED_UPLOAD_PENDING("Results kept for the next upload attempt."),
+        OFEED_UPLOAD_COMPRESSION("Upload %1$d bytes, compressed %2$d bytes (%3$.1fx) in %4$d ms."),
+        OFEED_FIRST_UPLOAD("First upload %d ms after start."),
+        OFEED_CIRCUIT_OPEN("OFeed paused, updates suspended for %1$d sec."),
+        OFEED_CIRCUIT_OPENED("OFeed paused, retrying in %1$d sec."),
+        OFEED_RETRY("Retrying in %1$d sec."),
+        OFEED_DELTA_UPLOAD("Uploading %1$d of %2$d competitors, changed since the previous upload."),
+        OFEED_DELTA_REJECTED("Partial result list rejected, uploading whole result lists from now on."),
+        REPLAY_RECORDED("Replay journal %1$s, %2$d result lists, %3$d kB."),
+        REPLAY_RECORD_ERROR("Recording of the replay journal failed."),
+        NULL_RESPONSE("HTTP response body is null."),
+        IO_EXCEPTION("I/O exception.");
+
+        final String english;
+
+        Text(String english) {
+            this.english = english;
+        }
+    }
+
+    /**
+     * Gives the text of a message, formatted with its arguments.
+     */
+    interface Texts {
+        String get(Text text, Object... args);
+
+        /**
+         * The English texts.
+         */
+        Texts ENGLISH = (text, args) -> String.format(Locale.US, text.english, args);
+    }
+
+    // *********************************************************************************************
+    // Member fields.
+    // *********************************************************************************************
+    private final Config config;
+    private final Texts texts;
+    private final ObservableValue<ResultsServiceStatus> status;
+    private final CircularLog serverLog, httpLog;
+    // Durable copy of the logs, and metrics of each update. Null if there is none.
+    @Nullable
+    private final SessionJournal journal;
+    // Latencies of the stages of the updates, and bytes transferred.
+    private final SessionStatistics statistics;
+    // Runs the ticks of the update interval timer, the updates, and tells the wall-clock time.
+    private final ScheduledExecutorService timerExecutor;
+    private final Executor worker;
+    private final LongSupplier clock;
+
+    private OkHttpClient httpClient;
+    private int updateIntervalMillisec;
+    // Time before each tick to connect to OFeed, 0 = No pre-connect.
+    private long preConnectLeadMillis;
+    // Adapts the update interval to the finish rate, null if the interval is fixed.
+    private AdaptiveUpdateInterval adaptiveUpdateInterval = null;
+    // Fingerprint hash of the result list of the previous fetch, null if it had no results.
+    private String latestFetchedFingerprint = null;
+    private static final ByteString PERSON_RESULT = ByteString.encodeUtf8("<PersonResult>");
+    private static final MediaType XML_MEDIA_TYPE = MediaType.parse("text/xml; charset=utf-8");
+    // Engine used to insert Ids into the result list. XmlModifier.Mode.DOM is kept as a fallback.
+    private static final XmlModifier.Mode XML_MODIFIER_MODE = XmlModifier.Mode.STREAMING;
+
+    private Request siDroidGetRequest;
+    private TickTimer updateIntervalTimer = null;
+    private SingleFlightScheduler scheduler = null;
+    // Stable Ids of competitors, saved between sessions.
+    private CompetitorIds competitorIds;
+    // ClassResults of the previous result list, so that only the classes which have changed are
+    // rewritten. Null if not enabled.
+    private ClassResultCache classResultCache = null;
+    // Max memory held by the ClassResult cache (bytes).
+    private static final long CLASS_RESULT_CACHE_MAX_BYTES = 8 * 1024 * 1024;
+    // Retry policy and circuit breaker for uploads to OFeed.
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+    // Result list waiting to be uploaded, saved between sessions.
+    private UploadOutbox outbox;
+    // Checks that SI-Droid is reachable, shared with the main user interface.
+    private SiDroidHealthMonitor.Lease siDroidHealthLease = null;
+    private ObservableValue.Subscription siDroidHealthSubscription = null;
+    // Most recent health of SI-Droid seen by this pipeline. Guarded by this.
+    private SiDroidHealthMonitor.Health siDroidHealth = SiDroidHealthMonitor.Health.UNKNOWN;
+    // Fingerprint of the most recent result list successfully uploaded to OFeed.
+    private volatile String latestUploadedFingerprint = null;
+    // Delta upload: competitors of the result list acknowledged by OFeed, null if the next upload
+    // is to be the whole result list, and the number of partial uploads since the whole one.
+    // Once OFeed has rejected a partial result list, whole result lists are uploaded.
+    private ResultListDelta.Snapshot acknowledgedSnapshot = null;
+    private int deltaUploads = 0;
+    private boolean deltaRejected = false;
+    // Records the result lists fetched, null if not recording.
+    private volatile ReplayJournal.Writer replayJournal = null;
+
+    // Start of the session, System.nanoTime(), and whether anything has been uploaded since.
+    private long sessionStartNanos;
+    private volatile boolean uploaded = false;
+    // Longest wait for SI-Droid to be checked before the first update (ms).
+    private static final long READINESS_TIMEOUT_MILLIS = 3_000;
+
+    // *********************************************************************************************
+    // Constructor.
+    // *********************************************************************************************
+
+    /**
+     * Pipeline, not started yet.
+     *
+     * @param config     Settings.
+     * @param texts      Texts of the log and status messages.
+     * @param status     Status of the pipeline, updated by it.
+     * @param serverLog  Application level log.
+     * @param httpLog    HTTP log.
+     * @param journal    Durable journal, for the metrics of each update. Null if there is none.
+     * @param statistics Statistics of the session.
+     */
+    ResultsPipeline(Config config, Texts texts, ObservableValue<ResultsServiceStatus> status, CircularLog serverLog,
+                    CircularLog httpLog, @Nullable SessionJournal journal, SessionStatistics statistics) {
+        this(config, texts, status, serverLog, httpLog, journal, statistics, TickTimer.newExecutor(),
+                SingleFlightScheduler.newWorker(), System::currentTimeMillis);
+    }
+
+    /**
+     * Pipeline with a given timer executor, worker and clock, eg, for tests.
+     *
+     * @param config        Settings.
+     * @param texts         Texts of the log and status messages.
+     * @param status        Status of the pipeline, updated by it.
+     * @param serverLog     Application level log.
+     * @param httpLog       HTTP log.
+     * @param journal       Durable journal, for the metrics of each update. Null if there is none.
+     * @param statistics    Statistics of the session.
+     * @param timerExecutor Runs the ticks of the update interval timer, see {@link TickTimer}.
+     * @param worker        Runs the updates, one at a time, see {@link SingleFlightScheduler}.
+     * @param clock         Current wall-clock time (ms).
+     */
+    ResultsPipeline(Config config, Texts texts, ObservableValue<ResultsServiceStatus> status, CircularLog serverLog,
+                    CircularLog httpLog, @Nullable SessionJournal journal, SessionStatistics statistics,
+                    ScheduledExecutorService timerExecutor, Executor worker, LongSupplier clock) {
+        this.config = config;
+        this.texts = texts;
+        this.status = status;
+        this.serverLog = serverLog;
+        this.httpLog = httpLog;
+        this.journal = journal;
+        this.statistics = statistics;
+        this.timerExecutor = timerExecutor;
+        this.worker = worker;
+        this.clock = clock;
+    }
+
+    // *********************************************************************************************
+    // Lifecycle.
+    // *********************************************************************************************
+
+    /**
+     * Start the updates.
+     */
+    void start() {
+        sessionStartNanos = System.nanoTime();
+        updateIntervalMillisec = config.updateIntervalSec * 1_000;
+        if (config.intervalRangeSec != null) {
+            adaptiveUpdateInterval = new AdaptiveUpdateInterval(config.intervalRangeSec[0] * 1_000L,
+                    config.intervalRangeSec[1] * 1_000L, updateIntervalMillisec);
+        }
+        preConnectLeadMillis = config.preConnectLeadSec * 1_000L;
+
+        // Create the HTTP client and attach a logger, and a listener which measures the network
+        // phases of each call. The client shares connections and threads with the rest of the app.
+        // Pre-connect calls are left out of the log, the listener logs them only if they fail.
+        HttpLoggingInterceptor logging = new HttpLoggingInterceptor(logItem -> httpLog.add(logItem));
+        logging.setLevel(HttpLoggingInterceptor.Level.BASIC);
+        OkHttpClient.Builder clientBuilder = HttpClients.shared().newBuilder();
+        clientBuilder.addInterceptor(chain ->
+                HttpCallEventListener.PRE_CONNECT_TAG.equals(chain.request().tag(String.class))
+                        ? chain.proceed(chain.request()) : logging.intercept(chain));
+        clientBuilder.eventListenerFactory(new HttpCallEventListener.Factory(statistics, httpLog::add,
+                Objects.requireNonNull(config.siDroidUrl)));
+        int[] timeoutsSec = config.timeoutsSec;
+        if (timeoutsSec[0] >= 0) clientBuilder.connectTimeout(timeoutsSec[0], TimeUnit.SECONDS);
+        if (timeoutsSec[1] >= 0) clientBuilder.readTimeout(timeoutsSec[1], TimeUnit.SECONDS);
+        if (timeoutsSec[2] >= 0) clientBuilder.writeTimeout(timeoutsSec[2], TimeUnit.SECONDS);
+        if (timeoutsSec[3] >= 0) clientBuilder.callTimeout(timeoutsSec[3], TimeUnit.SECONDS);
+        httpClient = clientBuilder.build();
+
+        competitorIds = new CompetitorIds(config.filesDir, config.oFeedEventId);
+        if (config.classResultCache) classResultCache = new ClassResultCache(CLASS_RESULT_CACHE_MAX_BYTES);
+        outbox = new UploadOutbox(config.filesDir, config.oFeedEventId);
+        if (config.recordReplay) startReplayJournal();
+
+        // Create GET request to pull results out of SI-Droid.
+        siDroidGetRequest = new Request.Builder()
+                .url(config.siDroidUrl)
+                .header("User-Agent", config.userAgent)
+                .get().build();
+
+        startResultsUpdates();
+        startSiDroidHealthMonitor();
+        startUp();
+
+        status.update(s -> s.withRunning(true));
+    }
+
+    /**
+     * Stop the updates. An update in flight is cancelled.
+     */
+    void stop() {
+        status.update(s -> s.withRunning(false));
+        stopSiDroidHealthMonitor();
+        if (updateIntervalTimer != null) {
+            updateIntervalTimer.stop();
+            serverLog.add(updateIntervalTimer.getStatistics());
+        }
+        if (scheduler != null) {
+            scheduler.stop();
+            serverLog.add(scheduler.getStatistics());
+        }
+        stopReplayJournal();
+    }
+
+    /**
+     * The network is available again. Results waiting in the outbox are uploaded at once,
+     * rather than at the next tick.
+     */
+    void onNetworkAvailable() {
+        if (outbox == null || outbox.peek() == null) return;
+        circuitBreaker.onNetworkAvailable();
+        serverLog.add(texts.get(Text.NETWORK_AVAILABLE));
+        scheduler.tick();
+    }
+
+    private void startResultsUpdates() {
+        // At most one update in flight, ticks arriving meanwhile are coalesced. An update still
+        // running after the (longest) update interval is stale.
+        scheduler = new SingleFlightScheduler(this::updateResults, new SingleFlightScheduler.Listener() {
+            @Override
+            public void onTickDeferred(boolean coalesced, long deferredTicks, long coalescedTicks) {
+                serverLog.add(texts.get(coalesced ? Text.UPDATE_TICK_COALESCED : Text.UPDATE_TICK_DEFERRED)
+                        + " (" + deferredTicks + "/" + coalescedTicks + ")");
+            }
+
+            @Override
+            public void onRunCancelled(long cancelledRuns) {
+                serverLog.add(texts.get(Text.UPDATE_CANCELLED) + " (" + cancelledRuns + ")");
+            }
+        }, adaptiveUpdateInterval == null ? updateIntervalMillisec : adaptiveUpdateInterval.getCeilingMillis(),
+                worker, clock);
+
+        // Recurring updates, on a timer thread of their own. The timer is started by startUp(),
+        // as soon as SI-Droid has been checked.
+        long periodMillis = adaptiveUpdateInterval == null ? updateIntervalMillisec : adaptiveUpdateInterval.getIntervalMillis();
+        updateIntervalTimer = new TickTimer(periodMillis, config.updateJitterSec * 1_000L, scheduler::tick,
+                timerExecutor, clock);
+        // Connect to OFeed shortly before each tick, as an idle connection may have been dropped
+        // since the previous upload, eg, by the NAT of the mobile network.
+        updateIntervalTimer.setPreTick(preConnectLeadMillis, this::preConnectBeforeUpload);
+    }
+
+    /**
+     * Check now and then that SI-Droid is reachable, also between updates. When SI-Droid becomes
+     * unreachable, this is shown at once, and updates don't wait for SI-Droid until it is
+     * reachable again. Then an update is made at once, rather than at the next tick.
+     */
+    private void startSiDroidHealthMonitor() {
+        stopSiDroidHealthMonitor();
+        String pingUrl = Objects.requireNonNull(HttpUrl.parse(config.siDroidUrl)).newBuilder().encodedPath("/").build().toString();
+        SiDroidHealthMonitor monitor = SiDroidHealthMonitor.get();
+        siDroidHealthLease = monitor.acquire(pingUrl, config.userAgent, config.probeIntervalSec * 1_000L);
+        siDroidHealthSubscription = monitor.getHealth().subscribe(Runnable::run, this::onSiDroidHealth);
+    }
+
+    private synchronized void onSiDroidHealth(SiDroidHealthMonitor.Health health) {
+        SiDroidHealthMonitor.Health oldHealth = siDroidHealth;
+        siDroidHealth = health;
+        if (health == SiDroidHealthMonitor.Health.UNREACHABLE) {
+            String message = texts.get(Text.SI_DROID_UNREACHABLE);
+            statusFailure(message);
+            serverLog.add(message);
+        } else if (health == SiDroidHealthMonitor.Health.REACHABLE
+                && oldHealth == SiDroidHealthMonitor.Health.UNREACHABLE) {
+            serverLog.add(texts.get(Text.SI_DROID_REACHABLE_AGAIN));
+            scheduler.tick();
+        }
+    }
+
+    private void stopSiDroidHealthMonitor() {
+        if (siDroidHealthSubscription != null) {
+            siDroidHealthSubscription.unsubscribe();
+            siDroidHealthSubscription = null;
+        }
+        if (siDroidHealthLease != null) {
+            siDroidHealthLease.release();
+            siDroidHealthLease = null;
+        }
+    }
+
+    // *********************************************************************************************
+    // Status.
+    // *********************************************************************************************
+
+    private void statusSuccess(String message) {
+        setOutcome(ResultsServiceStatus.Outcome.SUCCESS, message);
+    }
+
+    private void statusFailure(String message) {
+        setOutcome(ResultsServiceStatus.Outcome.FAILURE, message);
+    }
+
+    private void statusSkipped(String message) {
+        setOutcome(ResultsServiceStatus.Outcome.SKIPPED, message);
+    }
+
+    private void setOutcome(ResultsServiceStatus.Outcome outcome, String message) {
+        long now = clock.getAsLong();
+        status.update(s -> s.withOutcome(outcome, message, now));
+    }
+
+    // *********************************************************************************************
+    // Start-up.
+    // *********************************************************************************************
+
+    /**
+     * Start the updates as soon as SI-Droid is ready, ie, has been checked, or after
+     * {@link #READINESS_TIMEOUT_MILLIS}, whichever comes first. Meanwhile, the transform path is
+     * warmed up and, if pre-connect is on, a connection to OFeed is made, so that the first update
+     * is as fast as the following ones. The durations are recorded in the statistics.
+     */
+    private void startUp() {
+        if (preConnectLeadMillis > 0) preConnectOFeed();
+        CountDownLatch checked = new CountDownLatch(1);
+        ObservableValue.Subscription subscription = SiDroidHealthMonitor.get().getHealth().subscribe(Runnable::run, health -> {
+            if (health != SiDroidHealthMonitor.Health.UNKNOWN) checked.countDown();
+        });
+        Thread thread = new Thread(() -> {
+            long warmUpStartNanos = System.nanoTime();
+            try {
+                PipelineWarmUp.run(XML_MODIFIER_MODE);
+                statistics.recordStartUp(SessionStatistics.StartUp.WARM_UP, System.nanoTime() - warmUpStartNanos);
+            } catch (Exception e) {
+                // Not needed, the first update just takes longer.
+            }
+            boolean ready;
+            try {
+                long remainingNanos = TimeUnit.MILLISECONDS.toNanos(READINESS_TIMEOUT_MILLIS) - (System.nanoTime() - sessionStartNanos);
+                ready = checked.await(remainingNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                ready = false;
+            }
+            subscription.unsubscribe();
+            long readyNanos = System.nanoTime() - sessionStartNanos;
+            statistics.recordStartUp(SessionStatistics.StartUp.SI_DROID_READY, readyNanos);
+            serverLog.add(texts.get(ready ? Text.SI_DROID_READY : Text.SI_DROID_NOT_READY, readyNanos / 1_000_000));
+            updateIntervalTimer.start(0);
+        }, "ResultsPipelineStartUp");
+        thread.start();
+    }
+
+    /**
+     * Connect to OFeed before the upload of the coming tick, unless nothing will be uploaded:
+     * the circuit stays open past the tick, or SI-Droid is unreachable and the outbox is empty.
+     * Called on the timer thread.
+     */
+    private void preConnectBeforeUpload() {
+        long now = clock.getAsLong();
+        if (circuitBreaker.getState() == CircuitBreaker.State.OPEN
+                && circuitBreaker.getRetryDelayMillis(now) > preConnectLeadMillis) return;
+        if (SiDroidHealthMonitor.get().getHealth().get() == SiDroidHealthMonitor.Health.UNREACHABLE
+                && outbox.peek() == null) return;
+        preConnectOFeed();
+    }
+
+    /**
+     * Make a connection to OFeed, which is kept in the connection pool of the HTTP client for
+     * the next upload. If a pooled connection is still alive, it is reused and kept alive. The
+     * response is ignored.
+     */
+    private void preConnectOFeed() {
+        HttpUrl url = HttpUrl.parse(config.oFeedUrl);
+        if (url == null) return;
+        Request request = new Request.Builder()
+                .url(url.newBuilder().encodedPath("/").query(null).build())
+                .header("User-Agent", config.userAgent)
+                .tag(String.class, HttpCallEventListener.PRE_CONNECT_TAG)
+                .head().build();
+        long preConnectStartNanos = System.nanoTime();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                // The first upload connects instead.
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                response.close();
+                statistics.recordStartUp(SessionStatistics.StartUp.PRE_CONNECT, System.nanoTime() - preConnectStartNanos);
+            }
+        });
+    }
+
+    // *********************************************************************************************
+    // Get results from SI-Droid.
+    // *********************************************************************************************
+
+    /**
+     * Get results from SI-Droid, and upload them to OFeed. Called by the scheduler on its worker
+     * thread, and blocks until the update has completed.
+     * New results are transformed into the outbox. Whatever is waiting in the outbox is then
+     * uploaded, also if SI-Droid could not be reached, eg, results left from before a restart.
+     * While SI-Droid is known to be unreachable, results are not requested from it.
+     *
+     * @param run Handle for cancelling the update, if it becomes stale.
+     */
+    private void updateResults(SingleFlightScheduler.Run run) {
+        long startNanos = System.nanoTime();
+        statistics.startTick();
+        try {
+            // While the circuit is open, nothing can be uploaded, so don't get or transform results either.
+            long now = clock.getAsLong();
+            if (!circuitBreaker.allowRequest(now)) {
+                String message = texts.get(Text.OFEED_CIRCUIT_OPEN, toSeconds(circuitBreaker.getRetryDelayMillis(now)));
+                statusFailure(message);
+                serverLog.add(message);
+                return;
+            }
+            if (SiDroidHealthMonitor.get().getHealth().get() != SiDroidHealthMonitor.Health.UNREACHABLE) {
+                getResults(run);
+                if (run.isCancelled()) return;
+            }
+            UploadOutbox.Entry entry = outbox.peek();
+            if (entry != null) uploadResults(run, entry);
+            statistics.record(SessionStatistics.Stage.UPDATE, startNanos);
+        } finally {
+            journalTick(run);
+        }
+    }
+
+    /**
+     * Add the metrics of an update to the journal.
+     */
+    private void journalTick(SingleFlightScheduler.Run run) {
+        if (journal == null) return;
+        String metrics = "lateness=" + updateIntervalTimer.getLatestLatenessMillis() + "ms"
+                + " interval=" + (adaptiveUpdateInterval == null ? updateIntervalMillisec : adaptiveUpdateInterval.getIntervalMillis()) + "ms"
+                + " circuit=" + circuitBreaker.getState()
+                + (run.isCancelled() ? " cancelled" : "");
+        String summary = statistics.getTickSummary();
+        if (!summary.isEmpty()) metrics += " " + summary;
+        journal.append(SessionJournal.Source.METRICS, clock.getAsLong(), metrics);
+    }
+
+    /**
+     * Get results from SI-Droid. New results are transformed and put in the outbox.
+     * <p>
+     * The result list is saved to a file and fingerprinted as it is read from SI-Droid, see
+     * {@link SpoolingReader}. Only errors requesting or reading the result list count as failures
+     * of SI-Droid. Errors saving, fingerprinting or transforming it are logged against their own
+     * stage.
+     *
+     * @param run Handle for cancelling the request, if it becomes stale.
+     */
+    private void getResults(SingleFlightScheduler.Run run) {
+        serverLog.add(texts.get(Text.SI_DROID_GET_REQUEST));
+        long startNanos = System.nanoTime();
+        Call call = httpClient.newCall(siDroidGetRequest);
+        run.setCancellable(call::cancel);
+        try (Response response = call.execute(); ResponseBody responseBody = response.body()) {
+            // Any response tells that SI-Droid is reachable.
+            SiDroidHealthMonitor.get().report(true);
+            if (response.isSuccessful()) {
+                if (responseBody != null) {
+                    if (hasResults(responseBody.source())) {
+                        // Results available.
+                        serverLog.add(texts.get(Text.SI_DROID_RESULTS_RETRIEVED));
+                        File results;
+                        try {
+                            results = File.createTempFile("results", ".xml", config.cacheDir);
+                        } catch (IOException e) {
+                            throw new CacheFileException(e);
+                        }
+                        try {
+                            ResultListFingerprint fingerprint = fetchResults(responseBody.charStream(), results, startNanos);
+                            if (fingerprint == null) return;
+                            statistics.add(SessionStatistics.Counter.FETCHED_BYTES, results.length());
+                            recordReplay(results);
+                            processResults(results, fingerprint);
+                        } finally {
+                            //noinspection ResultOfMethodCallIgnored
+                            results.delete();
+                        }
+                    } else {
+                        statistics.record(SessionStatistics.Stage.FETCH, startNanos);
+                        adaptUpdateInterval(0, null);
+                        String message = texts.get(Text.SI_DROID_NO_RESULTS);
+                        statusSuccess(message);
+                        serverLog.add(message);
+                    }
+                } else {
+                    statistics.recordFailure(SessionStatistics.Stage.FETCH);
+                    String message = texts.get(Text.NULL_RESPONSE);
+                    statusFailure(message);
+                    serverLog.add(message);
+                }
+            } else {
+                // Unsuccessful response.
+                statistics.recordFailure(SessionStatistics.Stage.FETCH);
+                String message = HttpStatusCodes.getMeaning(response.code());
+                statusFailure(message);
+                serverLog.add(message);
+            }
+        } catch (CacheFileException e) {
+            // Eg, the cache directory is full. SI-Droid has responded.
+            resultsFailed(e.getCause());
+        } catch (IOException e) {
+            if (run.isCancelled()) return;  // Stale, already logged by the scheduler.
+            SiDroidHealthMonitor.get().report(false);
+            statistics.recordFailure(SessionStatistics.Stage.FETCH);
+            resultsFailed(e);
+        }
+    }
+
+    /**
+     * Read the result list from SI-Droid, saving it to a file and computing its fingerprint in
+     * the same pass.
+     *
+     * @param siDroidResults Body of the response from SI-Droid.
+     * @param file           The result list is saved to this file.
+     * @param startNanos     Start of the request to SI-Droid.
+     * @return The fingerprint, or null if the result list could not be fingerprinted, eg, a
+     * malformed or truncated result list.
+     * @throws FetchException     If the result list can not be read from SI-Droid.
+     * @throws CacheFileException If the file can not be written.
+     */
+    @Nullable
+    private ResultListFingerprint fetchResults(Reader siDroidResults, File file, long startNanos) throws IOException {
+        long passStartNanos = System.nanoTime();
+        ResultListFingerprint fingerprint;
+        long fingerprintNanos;
+        try (SpoolingReader reader = new SpoolingReader(siDroidResults, file)) {
+            fingerprint = ResultListFingerprint.compute(reader);
+            reader.drain();
+            fingerprintNanos = Math.max(0, System.nanoTime() - passStartNanos - reader.getReadNanos());
+        } catch (FetchException | CacheFileException e) {
+            throw e;
+        } catch (IOException e) {
+            // Eg, a malformed or truncated result list.
+            statistics.recordFailure(SessionStatistics.Stage.FINGERPRINT);
+            resultsFailed(e);
+            return null;
+        }
+        statistics.recordNanos(SessionStatistics.Stage.FETCH, System.nanoTime() - startNanos - fingerprintNanos);
+        statistics.recordNanos(SessionStatistics.Stage.FINGERPRINT, fingerprintNanos);
+        return fingerprint;
+    }
+
+    /**
+     * Transform a result list fetched from SI-Droid and put it in the outbox, if it is new.
+     *
+     * @param results     The result list, as saved by {@link #fetchResults(Reader, File, long)}.
+     * @param fingerprint Fingerprint of the result list.
+     */
+    private void processResults(File results, ResultListFingerprint fingerprint) {
+        adaptUpdateInterval(fingerprint.personResults, fingerprint.hash);
+        UploadOutbox.Entry waiting = outbox.peek();
+        if (waiting == null && fingerprint.hash.equals(latestUploadedFingerprint)) {
+            String message = texts.get(Text.OFEED_UPLOAD_SKIPPED);
+            statusSkipped(message);
+            serverLog.add(message);
+        } else if (waiting == null || !fingerprint.hash.equals(waiting.fingerprint)) {
+            try {
+                transformResults(results, fingerprint);
+            } catch (IOException e) {
+                // The failure is recorded by transformResults().
+                resultsFailed(e);
+            }
+        }   // Else unchanged, and already waiting in the outbox.
+    }
+
+    private void resultsFailed(IOException e) {
+        String message = e.getMessage();
+        if (message == null) message = texts.get(Text.IO_EXCEPTION);
+        statusFailure(message);
+        serverLog.add(message);
+    }
+
+    /**
+     * An error writing a file in the cache directory while getting results, rather than an
+     * error reading from SI-Droid.
+     */
+    private static class CacheFileException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CacheFileException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * An error reading the result list from SI-Droid, rather than an error parsing it.
+     */
+    private static class FetchException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        FetchException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Reader of the result list from SI-Droid, which saves everything read to a file. The file is
+     * UTF-8 encoded, regardless of the encoding used by SI-Droid. The time spent waiting for
+     * SI-Droid is measured.
+     */
+    private static class SpoolingReader extends Reader {
+        private final Reader siDroidResults;
+        private final Writer file;
+        private long readNanos = 0;
+
+        /**
+         * @param siDroidResults Body of the response from SI-Droid.
+         * @param file           The result list is saved to this file.
+         * @throws CacheFileException If the file can not be written.
+         */
+        SpoolingReader(Reader siDroidResults, File file) throws CacheFileException {
+            this.siDroidResults = siDroidResults;
+            try {
+                this.file = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new CacheFileException(e);
+            }
+        }
+
+        /**
+         * @throws FetchException     If the result list can not be read from SI-Droid.
+         * @throws CacheFileException If the file can not be written.
+         */
+        @Override
+        public int read(@NonNull char[] buffer, int offset, int length) throws IOException {
+            long startNanos = System.nanoTime();
+            int n;
+            try {
+                n = siDroidResults.read(buffer, offset, length);
+            } catch (IOException e) {
+                throw new FetchException(e);
+            } finally {
+                readNanos += System.nanoTime() - startNanos;
+            }
+            if (n > 0) {
+                try {
+                    file.write(buffer, offset, n);
+                } catch (IOException e) {
+                    throw new CacheFileException(e);
+                }
+            }
+            return n;
+        }
+
+        /**
+         * Read the rest of the result list, if any, so that all of it is saved.
+         */
+        void drain() throws IOException {
+            char[] buffer = new char[8192];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // Saved by read().
+            }
+        }
+
+        /**
+         * Get the time spent waiting for SI-Droid (ns).
+         */
+        long getReadNanos() {
+            return readNanos;
+        }
+
+        /**
+         * Close the file. The response from SI-Droid is closed by its owner.
+         *
+         * @throws CacheFileException If the file can not be written.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                file.close();
+            } catch (IOException e) {
+                throw new CacheFileException(e);
+            }
+        }
+    }
+
+    // *********************************************************************************************
+    // Replay journal.
+    // *********************************************************************************************
+
+    private void startReplayJournal() {
+        try {
+            replayJournal = new ReplayJournal.Writer(ReplayJournal.newFile(config.filesDir, config.oFeedEventId));
+        } catch (IOException e) {
+            replayFailed(e);
+        }
+    }
+
+    /**
+     * Record a result list fetched from SI-Droid in the replay journal, if recording. If the
+     * recording fails, it is stopped.
+     *
+     * @param results The result list, as saved by {@link #fetchResults(Reader, File, long)}.
+     */
+    private void recordReplay(File results) {
+        ReplayJournal.Writer journal = replayJournal;
+        if (journal == null) return;
+        try {
+            journal.append(clock.getAsLong(), results);
+        } catch (IOException e) {
+            replayFailed(e);
+            stopReplayJournal();
+        }
+    }
+
+    private void stopReplayJournal() {
+        ReplayJournal.Writer journal = replayJournal;
+        if (journal == null) return;
+        replayJournal = null;
+        try {
+            journal.close();
+            serverLog.add(texts.get(Text.REPLAY_RECORDED, journal.getFile().getName(), journal.getCount(),
+                    journal.getBytes() / 1_024));
+        } catch (IOException e) {
+            replayFailed(e);
+        }
+    }
+
+    private void replayFailed(IOException e) {
+        String message = texts.get(Text.REPLAY_RECORD_ERROR);
+        if (e.getMessage() != null) message += " " + e.getMessage();
+        serverLog.add(message);
+    }
+
+    /**
+     * Adapt the interval between updates to the rate at which competitors finish, if the
+     * adaptive update interval is enabled.
+     *
+     * @param personResults Number of results from SI-Droid.
+     * @param fingerprint   Fingerprint hash of the result list, or null if there were no results.
+     */
+    private void adaptUpdateInterval(int personResults, @Nullable String fingerprint) {
+        if (adaptiveUpdateInterval == null) return;
+        boolean changed = !Objects.equals(fingerprint, latestFetchedFingerprint);
+        latestFetchedFingerprint = fingerprint;
+        long oldIntervalMillis = adaptiveUpdateInterval.getIntervalMillis();
+        long newIntervalMillis = adaptiveUpdateInterval.onResults(personResults, changed, clock.getAsLong());
+        if (newIntervalMillis != oldIntervalMillis) {
+            updateIntervalTimer.setPeriod(newIntervalMillis);
+            serverLog.add(texts.get(Text.UPDATE_INTERVAL_ADAPTED,
+                    newIntervalMillis / 1_000, adaptiveUpdateInterval.getFinishRatePerMinute()));
+        }
+    }
+
+    /**
+     * Check if the result list from SI-Droid contains any results. Only the beginning of the
+     * result list, up to the first result, is read. Nothing is consumed from the source.
+     */
+    private static boolean hasResults(BufferedSource siDroidResults) throws IOException {
+        return siDroidResults.indexOf(PERSON_RESULT) != -1;
+    }
+
+    private static Reader newFileReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Insert external ids into the result list, and put it in the outbox, replacing any result
+     * list waiting there. The result list is streamed from file to file, so it is never held in
+     * memory as a whole.
+     *
+     * @param results     The result list, as saved by {@link #fetchResults(Reader, File, long)}.
+     * @param fingerprint Fingerprint of the result list.
+     */
+    private void transformResults(File results, ResultListFingerprint fingerprint) throws IOException {
+        long startNanos = System.nanoTime();
+        File payload = outbox.createTempFile();
+        try (Reader reader = newFileReader(results);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(payload), StandardCharsets.UTF_8))) {
+            XmlModifier.updateOrInsertIds(reader, writer, XML_MODIFIER_MODE, competitorIds.forDocument(), classResultCache);
+        } catch (IOException e) {
+            statistics.recordFailure(SessionStatistics.Stage.TRANSFORM);
+            //noinspection ResultOfMethodCallIgnored
+            payload.delete();
+            throw e;
+        } catch (Exception e) {
+            statistics.recordFailure(SessionStatistics.Stage.TRANSFORM);
+            //noinspection ResultOfMethodCallIgnored
+            payload.delete();
+            String message = texts.get(Text.EXTERNAL_ID_ERROR);
+            statusFailure(message);
+            if (e.getMessage() != null) message += " " + e.getMessage();
+            serverLog.add(message);
+            return;
+        } finally {
+            saveCompetitorIds();
+        }
+        outbox.put(payload, fingerprint.hash);
+        statistics.record(SessionStatistics.Stage.TRANSFORM, startNanos);
+    }
+
+    // *********************************************************************************************
+    // Upload results to OFeed.
+    // *********************************************************************************************
+
+    /**
+     * Upload the result list waiting in the outbox to OFeed. The result list is removed from the
+     * outbox when OFeed has acknowledged it, otherwise it is kept for the next attempt.
+     * Blocks until the upload has completed.
+     * <p>
+     * With delta upload, only the competitors changed since the result list last acknowledged by
+     * OFeed are uploaded, see {@link ResultListDelta}. The whole result list is uploaded every
+     * {@link Config#fullUploadEvery} uploads, and when a partial result list can not tell the
+     * changes, eg, when competitors have been removed or something outside the PersonResults has
+     * changed, and for the rest of the session if OFeed rejects a partial result list.
+     *
+     * @param run   Handle for cancelling the upload, if it becomes stale.
+     * @param entry The result list in the outbox.
+     */
+    private void uploadResults(SingleFlightScheduler.Run run, UploadOutbox.Entry entry) {
+        serverLog.add(texts.get(Text.OFEED_POST_REQUEST));
+        if (!config.deltaUpload || deltaRejected) {
+            uploadResults(run, entry, entry.file, null, false);
+            return;
+        }
+        ResultListDelta.Snapshot previous = deltaUploads + 1 < config.fullUploadEvery ? acknowledgedSnapshot : null;
+        File deltaFile = null;
+        try {
+            ResultListDelta delta = null;
+            try {
+                if (previous != null) deltaFile = outbox.createTempFile();
+                try (Reader reader = newFileReader(entry.file);
+                     Writer writer = deltaFile == null ? null
+                             : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(deltaFile), StandardCharsets.UTF_8))) {
+                    delta = ResultListDelta.build(reader, previous, writer);
+                }
+            } catch (IOException e) {
+                // Upload the whole result list, and start over with partial ones after that.
+                acknowledgedSnapshot = null;
+                String message = texts.get(Text.IO_EXCEPTION);
+                if (e.getMessage() != null) message += " " + e.getMessage();
+                serverLog.add(message);
+            }
+            boolean isDelta = delta != null && previous != null && delta.removed == 0
+                    && !delta.outsideChanged && delta.changed > 0 && delta.changed * 2 <= delta.total;
+            if (isDelta) serverLog.add(texts.get(Text.OFEED_DELTA_UPLOAD, delta.changed, delta.total));
+            uploadResults(run, entry, isDelta ? deltaFile : entry.file, delta, isDelta);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            if (deltaFile != null) deltaFile.delete();
+        }
+    }
+
+    /**
+     * Check if an HTTP status code in response to a partial result list tells that the content
+     * was rejected, rather than eg, the event id or the password.
+     */
+    private static boolean isDeltaRejected(int code) {
+        return code == 400 || code == 415 || code == 422;
+    }
+
+    /**
+     * Upload a result list to OFeed, see {@link #uploadResults(SingleFlightScheduler.Run, UploadOutbox.Entry)}.
+     *
+     * @param run     Handle for cancelling the upload, if it becomes stale.
+     * @param entry   The result list in the outbox.
+     * @param file    The result list to upload, the one in the outbox or a partial one.
+     * @param delta   Competitors of the result list in the outbox, null if not known.
+     * @param isDelta True if the file is a partial result list.
+     */
+    private void uploadResults(SingleFlightScheduler.Run run, UploadOutbox.Entry entry, File file,
+                               @Nullable ResultListDelta delta, boolean isDelta) {
+        RequestBody requestBody = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("eventId", config.oFeedEventId)
+                .addFormDataPart("file", "result-list-iof-3.0.xml", RequestBody.create(file, XML_MEDIA_TYPE))
+                .build();
+
+        // Optionally compress the request body while uploading.
+        GzipRequestBody gzipRequestBody = null;
+        if (config.gzipUpload) {
+            gzipRequestBody = new GzipRequestBody(requestBody);
+            requestBody = gzipRequestBody;
+        }
+
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(config.oFeedUrl)
+                .addHeader("User-Agent", config.userAgent)
+                .addHeader("Authorization", config.oFeedAuthorization)
+                .addHeader("Content-Type", "text; charset=utf-8");
+        if (gzipRequestBody != null) requestBuilder.addHeader("Content-Encoding", "gzip");
+        Request request = requestBuilder.post(requestBody).build();
+
+        long rawBytes = contentLength(requestBody);
+        long startNanos = System.nanoTime();
+        Call call = httpClient.newCall(request);
+        run.setCancellable(call::cancel);
+        try (Response response = call.execute()) {
+            if (gzipRequestBody != null) {
+                logCompression(gzipRequestBody);
+                statistics.add(SessionStatistics.Counter.UPLOAD_RAW_BYTES, gzipRequestBody.getRawBytes());
+                statistics.add(SessionStatistics.Counter.UPLOAD_SENT_BYTES, gzipRequestBody.getCompressedBytes());
+            } else {
+                statistics.add(SessionStatistics.Counter.UPLOAD_RAW_BYTES, rawBytes);
+                statistics.add(SessionStatistics.Counter.UPLOAD_SENT_BYTES, rawBytes);
+            }
+            if (response.isSuccessful()) {
+                if (response.body() != null) {
+                    statistics.record(SessionStatistics.Stage.UPLOAD, startNanos);
+                    circuitBreaker.onSuccess();
+                    outbox.acknowledge(entry);
+                    latestUploadedFingerprint = entry.fingerprint;
+                    if (delta != null) {
+                        acknowledgedSnapshot = delta.snapshot;
+                        deltaUploads = isDelta ? deltaUploads + 1 : 0;
+                    }
+                    if (!uploaded) {
+                        uploaded = true;
+                        long firstUploadNanos = System.nanoTime() - sessionStartNanos;
+                        statistics.recordStartUp(SessionStatistics.StartUp.FIRST_UPLOAD, firstUploadNanos);
+                        serverLog.add(texts.get(Text.OFEED_FIRST_UPLOAD, firstUploadNanos / 1_000_000));
+                    }
+                    String message = texts.get(Text.OFEED_UPLOAD_OK);
+                    statusSuccess(message);
+                    serverLog.add(message);
+                    return;
+                } else {
+                    String message = texts.get(Text.NULL_RESPONSE);
+                    statusFailure(message);
+                    serverLog.add(message);
+                }
+            } else if (CircuitBreaker.isRetryable(response.code())) {
+                // Transient error, retry after a while, or when the server says so.
+                long now = clock.getAsLong();
+                long retryAfterMillis = CircuitBreaker.parseRetryAfter(response.header("Retry-After"), now);
+                uploadFailed(HttpStatusCodes.getMeaning(response.code()), circuitBreaker.onFailure(now, retryAfterMillis));
+            } else {
+                // Unsuccessful response.
+                String message = HttpStatusCodes.getMeaning(response.code());
+                statusFailure(message);
+                serverLog.add(message);
+                if (isDelta) {
+                    acknowledgedSnapshot = null;
+                    if (isDeltaRejected(response.code())) {
+                        // Eg, OFeed does not accept partial result lists.
+                        deltaRejected = true;
+                        serverLog.add(texts.get(Text.OFEED_DELTA_REJECTED));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (run.isCancelled()) return;  // Stale, already logged by the scheduler.
+            String message = e.getMessage();
+            if (message == null) message = texts.get(Text.IO_EXCEPTION);
+            uploadFailed(message, circuitBreaker.onFailure(clock.getAsLong(), -1));
+        }
+        statistics.recordFailure(SessionStatistics.Stage.UPLOAD);
+        serverLog.add(texts.get(Text.OFEED_UPLOAD_PENDING));
+    }
+
+    /**
+     * Get the length of a request body, 0 if unknown.
+     */
+    private static long contentLength(RequestBody requestBody) {
+        try {
+            return Math.max(0, requestBody.contentLength());
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * An upload failed with a transient error. Schedule a retry.
+     *
+     * @param message     Description of the error.
+     * @param delayMillis Delay until the retry (ms).
+     */
+    private void uploadFailed(String message, long delayMillis) {
+        Text text = circuitBreaker.getState() == CircuitBreaker.State.OPEN ? Text.OFEED_CIRCUIT_OPENED : Text.OFEED_RETRY;
+        message += " " + texts.get(text, toSeconds(delayMillis));
+        statusFailure(message);
+        serverLog.add(message);
+        updateIntervalTimer.tickOnce(delayMillis);
+    }
+
+    /**
+     * Convert milliseconds to seconds, rounding up.
+     */
+    private static long toSeconds(long millis) {
+        return (millis + 999) / 1_000;
+    }
+
+    /**
+     * Log the size of the upload before and after compression, and the time spent compressing.
+     */
+    private void logCompression(GzipRequestBody gzipRequestBody) {
+        long rawBytes = gzipRequestBody.getRawBytes(), compressedBytes = gzipRequestBody.getCompressedBytes();
+        double ratio = compressedBytes == 0 ? 0 : (double) rawBytes / compressedBytes;
+        serverLog.add(texts.get(Text.OFEED_UPLOAD_COMPRESSION, rawBytes, compressedBytes, ratio,
+                gzipRequestBody.getCompressionNanos() / 1_000_000));
+    }
+
+    /**
+     * Save Ids of competitors seen for the first time, so that they are kept if the app restarts.
+     */
+    private void saveCompetitorIds() {
+        try {
+            competitorIds.save();
+        } catch (IOException e) {
+            String message = texts.get(Text.COMPETITOR_IDS_SAVE_ERROR);
+            if (e.getMessage() != null) message += " " + e.getMessage();
+            serverLog.add(message);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.NonNull;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Objects;
+
+/**
+ * Status of {@link ResultsPipeline}: whether it is running, and the outcome of the most recent
+ * update of results from SI-Droid to OFeed. Immutable, a new status is published each time the
+ * status changes, eg, through {@code ResultsService.STATUS} of the app.
+ */
+final class ResultsServiceStatus {
+
+    /**
+     * Outcome of an update.
+     */
+    enum Outcome {
+        /**
+         * No update yet.
+         */
+        NONE,
+        /**
+         * Results uploaded, or no results to upload.
+         */
+        SUCCESS,
+        /**
+         * The update failed.
+         */
+        FAILURE,
+        /**
+         * Upload skipped, the results are unchanged.
+         */
+        SKIPPED
+    }
+
+    /**
+     * The service is not running, and there has been no update.
+     */
+    static final ResultsServiceStatus STOPPED = new ResultsServiceStatus(false, Outcome.NONE, "", 0);
+
+    private static final DateTimeFormatter HH_MM_SS = DateTimeFormatter.ofLocalizedTime(FormatStyle.MEDIUM);
+
+    final boolean running;
+    /**
+     * Outcome of the most recent update.
+     */
+    @NonNull
+    final Outcome outcome;
+    /**
+     * Description of the outcome, empty if there has been no update.
+     */
+    @NonNull
+    final String message;
+    /**
+     * Time of the most recent update (epoch ms), 0 if there has been no update.
+     */
+    final long timeMillis;
+
+    private ResultsServiceStatus(boolean running, @NonNull Outcome outcome, @NonNull String message, long timeMillis) {
+        this.running = running;
+        this.outcome = outcome;
+        this.message = message;
+        this.timeMillis = timeMillis;
+    }
+
+    /**
+     * Get a copy of this status with the service running or not.
+     */
+    ResultsServiceStatus withRunning(boolean running) {
+        return new ResultsServiceStatus(running, outcome, message, timeMillis);
+    }
+
+    /**
+     * Get a copy of this status with the outcome of an update.
+     */
+    ResultsServiceStatus withOutcome(@NonNull Outcome outcome, @NonNull String message, long timeMillis) {
+        return new ResultsServiceStatus(running, outcome, message, timeMillis);
+    }
+
+    /**
+     * Get the local time hh:mm:ss of the most recent update, followed by its description.
+     */
+    String getTimedMessage() {
+        return Instant.ofEpochMilli(timeMillis).atZone(ZoneId.systemDefault()).format(HH_MM_SS) + " " + message;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ResultsServiceStatus)) return false;
+        ResultsServiceStatus that = (ResultsServiceStatus) o;
+        return running == that.running && timeMillis == that.timeMillis
+                && outcome == that.outcome && message.equals(that.message);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(running, outcome, message, timeMillis);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ResultsServiceStatus{running=" + running + ", outcome=" + outcome + ", message=" + message + "}";
+    }
+}
@@ -0,0 +1,326 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Durable journal of the logs and metrics of {@link ResultsPipeline}, kept across sessions.
+ * <p>
+ * The journal is a directory of segment files of {@link #SEGMENT_BYTES} each. The newest segment
+ * is memory-mapped, so appending a record is a copy into memory, and what has been appended
+ * survives if the process is killed. When a segment is full, a new segment is started, and the
+ * oldest segments are deleted so that at most {@link #MAX_SEGMENTS} are kept.
+ * <p>
+ * Each record is a length (int, the number of bytes of the text), a time (long, epoch ms), a
+ * source (byte) and the text (UTF-8). The length is written last, and a length of 0 ends the
+ * segment, so a record cut short by the death of the process is never read.
+ */
+class SessionJournal {
+
+    /**
+     * Source of a record.
+     */
+    enum Source {
+        /**
+         * The application level log.
+         */
+        SERVER('S'),
+        /**
+         * The HTTP log.
+         */
+        HTTP('H'),
+        /**
+         * Metrics of each update.
+         */
+        METRICS('M');
+
+        final byte code;
+
+        Source(char code) {
+            this.code = (byte) code;
+        }
+
+        @Nullable
+        static Source of(byte code) {
+            for (Source source : values()) {
+                if (source.code == code) return source;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A record read from the journal.
+     */
+    static class Record {
+        final long timeMillis;
+        final Source source;
+        final String text;
+
+        private static final DateTimeFormatter HH_MM_SS = DateTimeFormatter.ofLocalizedTime(FormatStyle.MEDIUM);
+        private static final DateTimeFormatter ISO = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+        private Record(long timeMillis, Source source, String text) {
+            this.timeMillis = timeMillis;
+            this.source = source;
+            this.text = text;
+        }
+
+        /**
+         * Get the local time hh:mm:ss of this record.
+         */
+        String getTime() {
+            return Instant.ofEpochMilli(timeMillis).atZone(ZoneId.systemDefault()).format(HH_MM_SS);
+        }
+
+        /**
+         * Get this record as one line of text with date, time and source, for export.
+         */
+        String toLine() {
+            return Instant.ofEpochMilli(timeMillis).atZone(ZoneId.systemDefault()).format(ISO)
+                    + " " + (char) source.code + " " + text;
+        }
+    }
+
+    /**
+     * Size of each segment file (bytes).
+     */
+    static final int SEGMENT_BYTES = 512 * 1024;
+
+    /**
+     * Max number of segment files kept.
+     */
+    static final int MAX_SEGMENTS = 8;
+
+    private static final String DIRECTORY = "journal", PREFIX = "journal-", SUFFIX = ".bin";
+    private static final int HEADER_BYTES = 4 + 8 + 1;
+
+    /**
+     * Max length of the text of a record (bytes), to fit in a segment with the 0 length which
+     * ends the segment.
+     */
+    static final int MAX_TEXT_BYTES = SEGMENT_BYTES - HEADER_BYTES - 4;
+
+    private final File directory;
+    // Guarded by this. Null if the journal is closed, or could not be written.
+    private MappedByteBuffer buffer;
+    private long segment;
+
+    /**
+     * Open the journal for appending. Appends continue in the newest segment, after the last
+     * complete record.
+     *
+     * @param filesDir Parent directory of the journal, typically {@code Context.getFilesDir()}.
+     */
+    SessionJournal(File filesDir) throws IOException {
+        directory = getDirectory(filesDir);
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Can not create " + directory);
+        long[] segments = listSegments(directory);
+        if (segments.length == 0) {
+            open(1);
+        } else {
+            open(segments[segments.length - 1]);
+            buffer.position(endOfRecords(buffer));
+        }
+    }
+
+    /**
+     * Get the directory of the journal.
+     *
+     * @param filesDir Typically {@code Context.getFilesDir()}.
+     */
+    static File getDirectory(File filesDir) {
+        return new File(filesDir, DIRECTORY);
+    }
+
+    /**
+     * Append a record. Text longer than {@link #MAX_TEXT_BYTES} is truncated, between characters.
+     * Does nothing if the journal is closed, or if a new segment could not be created.
+     *
+     * @param source     Source of the record.
+     * @param timeMillis Time of the record (epoch ms).
+     * @param text       The text.
+     */
+    synchronized void append(Source source, long timeMillis, String text) {
+        if (buffer == null) return;
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        if (length > MAX_TEXT_BYTES) {
+            // Truncate before a character, not within one: skip back over continuation bytes.
+            length = MAX_TEXT_BYTES;
+            while (length > 0 && (bytes[length] & 0xC0) == 0x80) length--;
+        }
+        if (length == 0) return;    // A length of 0 ends the segment.
+        // Leave room for the 0 length which ends the segment.
+        if (buffer.remaining() < HEADER_BYTES + length + 4) {
+            try {
+                open(segment + 1);
+                deleteOldSegments();
+            } catch (IOException e) {
+                buffer = null;
+                return;
+            }
+        }
+        int position = buffer.position();
+        buffer.position(position + 4);
+        buffer.putLong(timeMillis).put(source.code).put(bytes, 0, length);
+        // End the segment after this record, over any record torn before a restart.
+        buffer.putInt(buffer.position(), 0);
+        buffer.putInt(position, length);
+    }
+
+    /**
+     * Write what has been appended to storage, and stop appending.
+     */
+    synchronized void close() {
+        if (buffer == null) return;
+        buffer.force();
+        buffer = null;
+    }
+
+    /**
+     * Read records, newest first. Records are read from the newest segment backwards, and only
+     * as many segments are read as needed.
+     *
+     * @param filesDir Parent directory of the journal, typically {@code Context.getFilesDir()}.
+     * @param source   Only records from this source are read, or all records if null.
+     * @param skip     Number of (newest) records to skip, for paging.
+     * @param count    Max number of records to read.
+     * @return The records, newest first.
+     */
+    static List<Record> read(File filesDir, @Nullable Source source, int skip, int count) throws IOException {
+        List<Record> records = new ArrayList<>(count);
+        long[] segments = listSegments(getDirectory(filesDir));
+        for (int i = segments.length - 1; i >= 0 && records.size() < count; i--) {
+            List<Record> segmentRecords = readSegment(getDirectory(filesDir), segments[i], source);
+            Collections.reverse(segmentRecords);
+            for (Record record : segmentRecords) {
+                if (skip > 0) {
+                    skip--;
+                } else if (records.size() < count) {
+                    records.add(record);
+                } else {
+                    break;
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Write all records, oldest first, one line each.
+     *
+     * @param filesDir Parent directory of the journal, typically {@code Context.getFilesDir()}.
+     * @param writer   The records are written to this.
+     */
+    static void export(File filesDir, Writer writer) throws IOException {
+        File directory = getDirectory(filesDir);
+        for (long segment : listSegments(directory)) {
+            for (Record record : readSegment(directory, segment, null)) {
+                writer.write(record.toLine());
+                writer.write('\n');
+            }
+        }
+    }
+
+    // *********************************************************************************************
+    // Helpers.
+    // *********************************************************************************************
+
+    // Called with the lock held, or from the constructor.
+    private void open(long segment) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(directory, segment), "rw")) {
+            // The mapping stays valid after the file is closed.
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+        }
+        this.segment = segment;
+    }
+
+    private void deleteOldSegments() {
+        long[] segments = listSegments(directory);
+        for (int i = 0; i < segments.length - MAX_SEGMENTS; i++) {
+            //noinspection ResultOfMethodCallIgnored
+            segmentFile(directory, segments[i]).delete();
+        }
+    }
+
+    /**
+     * Get the position after the last complete record of a segment.
+     */
+    private static int endOfRecords(ByteBuffer segment) {
+        int position = 0;
+        while (position + HEADER_BYTES <= segment.limit()) {
+            int length = segment.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > segment.limit()) break;
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private static List<Record> readSegment(File directory, long segment, @Nullable Source source) throws IOException {
+        List<Record> records = new ArrayList<>();
+        File file = segmentFile(directory, segment);
+        if (!file.exists()) return records;     // Deleted by rotation meanwhile.
+        ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int end = endOfRecords(buffer);
+        int position = 0;
+        while (position < end) {
+            int length = buffer.getInt(position);
+            long timeMillis = buffer.getLong(position + 4);
+            Source recordSource = Source.of(buffer.get(position + 12));
+            if (recordSource != null && (source == null || source == recordSource)) {
+                byte[] bytes = new byte[length];
+                buffer.position(position + HEADER_BYTES);
+                buffer.get(bytes);
+                records.add(new Record(timeMillis, recordSource, new String(bytes, StandardCharsets.UTF_8)));
+            }
+            position += HEADER_BYTES + length;
+        }
+        return records;
+    }
+
+    /**
+     * Get the numbers of the segments in a directory, oldest first.
+     */
+    private static long[] listSegments(File directory) {
+        String[] names = directory.list();
+        if (names == null) return new long[0];
+        long[] segments = new long[names.length];
+        int n = 0;
+        for (String name : names) {
+            if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) continue;
+            try {
+                long segment = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                segments[n++] = segment;
+            } catch (NumberFormatException e) {
+                // Not a segment.
+            }
+        }
+        segments = Arrays.copyOf(segments, n);
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private static File segmentFile(File directory, long segment) {
+        return new File(directory, PREFIX + segment + SUFFIX);
+    }
+}
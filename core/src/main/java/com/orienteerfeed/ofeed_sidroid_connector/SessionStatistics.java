@@ -0,0 +1,464 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Statistics of the updates of results during a session of {@link ResultsPipeline}: a latency
+ * histogram for each stage of the update, a latency histogram for each network phase of the
+ * HTTP calls to SI-Droid and OFeed, counters of bytes transferred and connections made, and the
+ * durations of the start-up of the session.
+ * Shown to the user, and exported as CSV for analysis after the event. The statistics of a
+ * session are saved when it ends, see {@link #save(File)}, so they can be shown and exported
+ * after the service has stopped.
+ */
+class SessionStatistics {
+
+    private static final String TEXT_FILE = "session-statistics.txt", CSV_FILE = "session-statistics.csv";
+
+    /**
+     * Statistics of the most recent session, as saved when it ended.
+     */
+    static final class Saved {
+        /**
+         * See {@link #toText()} and {@link #toCsv()}.
+         */
+        final String text, csv;
+
+        private Saved(String text, String csv) {
+            this.text = text;
+            this.csv = csv;
+        }
+    }
+
+    /**
+     * Stages of an update of results.
+     */
+    enum Stage {
+        /**
+         * Get the result list from SI-Droid and save it to a file, including the time SI-Droid
+         * takes to generate the result list.
+         */
+        FETCH("fetch"),
+        /**
+         * Compute the fingerprint of the result list. Done in the same pass as the fetch, so
+         * this is the time of the pass not spent waiting for SI-Droid.
+         */
+        FINGERPRINT("fingerprint"),
+        /**
+         * Insert Ids into the result list.
+         */
+        TRANSFORM("transform"),
+        /**
+         * Upload the result list to OFeed, including compression if enabled.
+         */
+        UPLOAD("upload"),
+        /**
+         * The whole update, from the tick to the completion of the upload.
+         */
+        UPDATE("update");
+
+        final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Byte counters.
+     */
+    enum Counter {
+        /**
+         * Result lists received from SI-Droid.
+         */
+        FETCHED_BYTES("fetched_bytes"),
+        /**
+         * Uploads to OFeed before compression.
+         */
+        UPLOAD_RAW_BYTES("upload_raw_bytes"),
+        /**
+         * Uploads to OFeed as sent, ie, after compression if enabled.
+         */
+        UPLOAD_SENT_BYTES("upload_sent_bytes");
+
+        final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Servers called.
+     */
+    enum Target {
+        SI_DROID("si-droid"),
+        OFEED("ofeed");
+
+        final String label;
+
+        Target(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Network phases of an HTTP call, see {@link HttpCallEventListener}.
+     */
+    enum Phase {
+        /**
+         * DNS lookup.
+         */
+        DNS("dns"),
+        /**
+         * TCP connect, excluding the TLS handshake.
+         */
+        CONNECT("connect"),
+        /**
+         * TLS handshake.
+         */
+        TLS("tls"),
+        /**
+         * Write the request headers and body.
+         */
+        REQUEST("request"),
+        /**
+         * From the request written to the first byte of the response, ie, time spent by the server.
+         */
+        TTFB("ttfb"),
+        /**
+         * Read the response headers and body.
+         */
+        RESPONSE("response"),
+        /**
+         * The whole call.
+         */
+        CALL("call"),
+        /**
+         * DNS lookup, TCP connect and TLS handshake made by a pre-connect call before an upload,
+         * ie, time the upload saved by reusing the connection. See
+         * {@link HttpCallEventListener#PRE_CONNECT_TAG}.
+         */
+        HANDSHAKE_SAVED("handshake_saved");
+
+        final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Steps of the start-up of a session, see {@link #recordStartUp(StartUp, long)}.
+     */
+    enum StartUp {
+        /**
+         * From the start of the service until SI-Droid has been checked, or the wait timed out.
+         */
+        SI_DROID_READY("si_droid_ready"),
+        /**
+         * Warm-up of the transform path on a small result list.
+         */
+        WARM_UP("warm_up"),
+        /**
+         * Connection to OFeed made before the first upload.
+         */
+        PRE_CONNECT("pre_connect"),
+        /**
+         * From the start of the service until the first upload to OFeed has completed.
+         */
+        FIRST_UPLOAD("first_upload");
+
+        final String label;
+
+        StartUp(String label) {
+            this.label = label;
+        }
+    }
+
+    private final long startMillis = System.currentTimeMillis();
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private final Map<Stage, Long> failures = new EnumMap<>(Stage.class);
+    private final Map<Counter, long[]> counters = new EnumMap<>(Counter.class);  // {events, bytes}
+    private final Map<Target, Map<Phase, LatencyHistogram>> phases = new EnumMap<>(Target.class);
+    private final Map<Target, long[]> connections = new EnumMap<>(Target.class);  // {new, reused, failed calls}
+    // Latencies (ns) and bytes of the current update, for the tick summary.
+    private final Map<Stage, Long> tickNanos = new EnumMap<>(Stage.class);
+    private final Map<Counter, Long> tickBytes = new EnumMap<>(Counter.class);
+    // Durations (ns) of the start-up steps completed.
+    private final Map<StartUp, Long> startUp = new EnumMap<>(StartUp.class);
+
+    SessionStatistics() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+            failures.put(stage, 0L);
+        }
+        for (Counter counter : Counter.values()) counters.put(counter, new long[2]);
+        for (Target target : Target.values()) {
+            Map<Phase, LatencyHistogram> map = new EnumMap<>(Phase.class);
+            for (Phase phase : Phase.values()) map.put(phase, new LatencyHistogram());
+            phases.put(target, map);
+            connections.put(target, new long[3]);
+        }
+    }
+
+    /**
+     * Record the latency of a stage which has completed.
+     *
+     * @param stage      The stage.
+     * @param startNanos Start of the stage, from {@link System#nanoTime()}.
+     */
+    synchronized void record(Stage stage, long startNanos) {
+        recordNanos(stage, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Record the latency of a stage which has completed, eg, a stage run in the same pass as
+     * another one.
+     *
+     * @param stage The stage.
+     * @param nanos Latency (ns).
+     */
+    synchronized void recordNanos(Stage stage, long nanos) {
+        //noinspection ConstantConditions
+        histograms.get(stage).record(nanos);
+        tickNanos.put(stage, nanos);
+    }
+
+    /**
+     * Count a stage which has failed. Its latency is not recorded.
+     */
+    synchronized void recordFailure(Stage stage) {
+        //noinspection ConstantConditions
+        failures.put(stage, failures.get(stage) + 1);
+    }
+
+    /**
+     * Add to a byte counter.
+     */
+    synchronized void add(Counter counter, long bytes) {
+        long[] value = counters.get(counter);
+        //noinspection ConstantConditions
+        value[0]++;
+        value[1] += bytes;
+        tickBytes.merge(counter, bytes, Long::sum);
+    }
+
+    /**
+     * Record the duration of a start-up step. Only the first duration of each step is kept.
+     *
+     * @param step  The step.
+     * @param nanos Duration (ns).
+     */
+    synchronized void recordStartUp(StartUp step, long nanos) {
+        startUp.putIfAbsent(step, nanos);
+    }
+
+    /**
+     * Start a new update. The latencies and bytes recorded from now on are summarized by
+     * {@link #getTickSummary()}.
+     */
+    synchronized void startTick() {
+        tickNanos.clear();
+        tickBytes.clear();
+    }
+
+    /**
+     * Get a one line summary of the latencies and bytes of the current update, for the journal.
+     * Stages and counters not recorded during the update are left out.
+     */
+    synchronized String getTickSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Stage, Long> entry : tickNanos.entrySet()) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(String.format(Locale.ROOT, "%s=%.1fms", entry.getKey().label, entry.getValue() / 1e6));
+        }
+        for (Map.Entry<Counter, Long> entry : tickBytes.entrySet()) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(entry.getKey().label).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Record the duration of a network phase of an HTTP call.
+     *
+     * @param target The server called.
+     * @param phase  The phase.
+     * @param nanos  Duration (ns).
+     */
+    void recordPhase(Target target, Phase phase, long nanos) {
+        // The histograms are synchronized, and the maps are not modified after construction.
+        //noinspection ConstantConditions
+        phases.get(target).get(phase).record(nanos);
+    }
+
+    /**
+     * Count a connection used by an HTTP call.
+     *
+     * @param target The server called.
+     * @param reused True if an existing connection was reused, false if a new one was made.
+     */
+    synchronized void recordConnection(Target target, boolean reused) {
+        //noinspection ConstantConditions
+        connections.get(target)[reused ? 1 : 0]++;
+    }
+
+    /**
+     * Count an HTTP call which has failed, eg, with a network error.
+     */
+    synchronized void recordCallFailure(Target target) {
+        //noinspection ConstantConditions
+        connections.get(target)[2]++;
+    }
+
+    /**
+     * Get the statistics as a table, for display.
+     */
+    synchronized String toText() {
+        StringBuilder sb = new StringBuilder();
+        long minutes = (System.currentTimeMillis() - startMillis) / 60_000;
+        sb.append(String.format(Locale.ROOT, "Session %d min\n\n", minutes));
+        sb.append(String.format(Locale.ROOT, "%-11s %5s %7s %7s %7s %7s %4s\n", "ms", "n", "p50", "p95", "p99", "max", "fail"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram h = histograms.get(stage);
+            //noinspection ConstantConditions
+            sb.append(String.format(Locale.ROOT, "%-11s %5d %7.1f %7.1f %7.1f %7.1f %4d\n", stage.label, h.getCount(),
+                    h.getPercentileMicros(50) / 1_000.0, h.getPercentileMicros(95) / 1_000.0,
+                    h.getPercentileMicros(99) / 1_000.0, h.getMaxMicros() / 1_000.0, failures.get(stage)));
+        }
+        sb.append('\n');
+        for (Counter counter : Counter.values()) {
+            long[] value = counters.get(counter);
+            //noinspection ConstantConditions
+            sb.append(String.format(Locale.ROOT, "%-18s %5d %10d\n", counter.label, value[0], value[1]));
+        }
+        if (!startUp.isEmpty()) sb.append('\n');
+        for (Map.Entry<StartUp, Long> entry : startUp.entrySet()) {
+            sb.append(String.format(Locale.ROOT, "%-18s %16.1f ms\n", entry.getKey().label, entry.getValue() / 1e6));
+        }
+        for (Target target : Target.values()) {
+            long[] value = connections.get(target);
+            //noinspection ConstantConditions
+            sb.append(String.format(Locale.ROOT, "\n%-11s %5s %7s %7s %7s %7s\n", target.label + " ms", "n", "p50", "p95", "p99", "max"));
+            //noinspection ConstantConditions
+            for (Map.Entry<Phase, LatencyHistogram> entry : phases.get(target).entrySet()) {
+                LatencyHistogram h = entry.getValue();
+                sb.append(String.format(Locale.ROOT, "%-11s %5d %7.1f %7.1f %7.1f %7.1f\n", entry.getKey().label, h.getCount(),
+                        h.getPercentileMicros(50) / 1_000.0, h.getPercentileMicros(95) / 1_000.0,
+                        h.getPercentileMicros(99) / 1_000.0, h.getMaxMicros() / 1_000.0));
+            }
+            sb.append(String.format(Locale.ROOT, "connections new=%d reused=%d, failed calls=%d\n", value[0], value[1], value[2]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the statistics as CSV, one line per stage, counter and network phase. Latencies are in
+     * milliseconds, with microsecond precision. The last column is the total latency (ms) of a
+     * stage or phase, or the number of bytes of a counter. Network phases are named
+     * {@code <target>.<phase>}, eg, {@code ofeed.tls}. Start-up steps are named
+     * {@code startup.<step>}, with their duration in all latency columns.
+     */
+    synchronized String toCsv() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("metric,count,failures,p50_ms,p95_ms,p99_ms,max_ms,mean_ms,total\n");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram h = histograms.get(stage);
+            sb.append(stage.label).append(',');
+            //noinspection ConstantConditions
+            appendCsv(sb, h, String.valueOf(failures.get(stage)));
+        }
+        for (Counter counter : Counter.values()) {
+            long[] value = counters.get(counter);
+            //noinspection ConstantConditions
+            sb.append(counter.label).append(',').append(value[0]).append(",,,,,,,").append(value[1]).append('\n');
+        }
+        for (Map.Entry<StartUp, Long> entry : startUp.entrySet()) {
+            String millis = toMillis(entry.getValue() / 1_000);
+            sb.append("startup.").append(entry.getKey().label).append(",1,,").append(millis).append(',').append(millis)
+                    .append(',').append(millis).append(',').append(millis).append(',').append(millis)
+                    .append(',').append(millis).append('\n');
+        }
+        for (Target target : Target.values()) {
+            //noinspection ConstantConditions
+            for (Map.Entry<Phase, LatencyHistogram> entry : phases.get(target).entrySet()) {
+                sb.append(target.label).append('.').append(entry.getKey().label).append(',');
+                appendCsv(sb, entry.getValue(), "");
+            }
+            long[] value = connections.get(target);
+            //noinspection ConstantConditions
+            sb.append(target.label).append(".connections_new,").append(value[0]).append(",,,,,,,\n");
+            sb.append(target.label).append(".connections_reused,").append(value[1]).append(",,,,,,,\n");
+            sb.append(target.label).append(".calls_failed,").append(value[2]).append(",,,,,,,\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Append the columns of a histogram, from count to total, and end the line.
+     */
+    private static void appendCsv(StringBuilder sb, LatencyHistogram h, String failures) {
+        sb.append(h.getCount()).append(',').append(failures).append(',')
+                .append(toMillis(h.getPercentileMicros(50))).append(',')
+                .append(toMillis(h.getPercentileMicros(95))).append(',')
+                .append(toMillis(h.getPercentileMicros(99))).append(',')
+                .append(toMillis(h.getMaxMicros())).append(',')
+                .append(toMillis(h.getMeanMicros())).append(',')
+                .append(toMillis(h.getTotalMicros())).append('\n');
+    }
+
+    /**
+     * Save the statistics as text and CSV, replacing those of the previous session.
+     *
+     * @param directory Directory of the files, typically {@code Context.getFilesDir()}.
+     */
+    synchronized void save(File directory) throws IOException {
+        write(new File(directory, TEXT_FILE), toText());
+        write(new File(directory, CSV_FILE), toCsv());
+    }
+
+    /**
+     * Load the statistics saved when the most recent session ended.
+     *
+     * @param directory Directory of the files, see {@link #save(File)}.
+     * @return The statistics, or null if no session has been saved, or they can not be read.
+     */
+    @Nullable
+    static Saved load(File directory) {
+        try {
+            return new Saved(read(new File(directory, TEXT_FILE)), read(new File(directory, CSV_FILE)));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            byte[] bytes = new byte[(int) file.length()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String toMillis(long micros) {
+        return String.format(Locale.ROOT, "%.3f", micros / 1_000.0);
+    }
+}
@@ -0,0 +1,224 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Checks now and then that SI-Droid is reachable, and publishes the result as an observable
+ * {@link Health}, shared by the main user interface and by {@link ResultsPipeline}.
+ * <p>
+ * SI-Droid is checked while anyone holds a {@link Lease}, at the shortest period asked for by any
+ * lease. The checks are made with a client derived from {@link HttpClients#shared()}, so the
+ * connection to SI-Droid is kept alive between checks, and no threads or sockets are created for
+ * each check. Results of requests made by others, eg, the updates of {@link ResultsPipeline}, are
+ * passed in with {@link #report(boolean)}, and a check is skipped if such a result is more recent
+ * than the period, so SI-Droid is not checked more often than needed.
+ */
+final class SiDroidHealthMonitor {
+
+    /**
+     * Whether SI-Droid is reachable.
+     */
+    enum Health {
+        /**
+         * Not checked yet.
+         */
+        UNKNOWN,
+        /**
+         * SI-Droid responded successfully.
+         */
+        REACHABLE,
+        /**
+         * SI-Droid could not be reached, or responded with an error.
+         */
+        UNREACHABLE
+    }
+
+    /**
+     * Permission to check SI-Droid, see {@link #acquire(String, String, long)}.
+     */
+    interface Lease {
+        /**
+         * Stop checking, unless someone else holds a lease. Does nothing if already released.
+         */
+        void release();
+    }
+
+    // Timeout of each check. SI-Droid runs on the same device, so it responds quickly if it is running.
+    private static final long PROBE_TIMEOUT_MILLIS = 2_000;
+
+    private static final SiDroidHealthMonitor INSTANCE = new SiDroidHealthMonitor();
+
+    private final ObservableValue<Health> health = new ObservableValue<>(Health.UNKNOWN);
+    private final OkHttpClient probeClient = HttpClients.shared().newBuilder()
+            .callTimeout(PROBE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+            .build();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SiDroidHealth");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this.
+    private final List<LeaseImpl> leases = new ArrayList<>();
+    private Request probeRequest = null;
+    private long periodMillis = 0;
+    private ScheduledFuture<?> probes = null;
+    private Call inFlight = null;
+    // Time of the most recent result passed in with report(), System.nanoTime().
+    private volatile long reportedNanos = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+
+    private SiDroidHealthMonitor() {
+    }
+
+    /**
+     * Get the monitor shared by the whole app.
+     */
+    static SiDroidHealthMonitor get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get whether SI-Droid is reachable. Observers are called when the health changes.
+     */
+    ObservableValue<Health> getHealth() {
+        return health;
+    }
+
+    /**
+     * Start checking SI-Droid, and keep checking until the lease is released. SI-Droid is checked
+     * at once, and then at the shortest period of all leases held.
+     * If the URL differs from the URL of the leases already held, eg, because the port of SI-Droid
+     * has changed, the new URL is checked from now on, and the health is unknown until it has been
+     * checked.
+     *
+     * @param pingUrl      URL to check.
+     * @param userAgent    HTTP user agent.
+     * @param periodMillis Time between checks (ms).
+     * @return Lease, to be released when the checks are no longer needed.
+     */
+    synchronized Lease acquire(String pingUrl, String userAgent, long periodMillis) {
+        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(pingUrl));
+        boolean newUrl = probeRequest == null || !probeRequest.url().equals(url);
+        if (newUrl) {
+            probeRequest = new Request.Builder().url(url).header("User-Agent", userAgent).get().build();
+            if (inFlight != null) inFlight.cancel();
+            inFlight = null;
+            health.set(Health.UNKNOWN);
+        }
+        LeaseImpl lease = new LeaseImpl(Math.max(1, periodMillis));
+        leases.add(lease);
+        reschedule();
+        if (newUrl) probeNow();
+        return lease;
+    }
+
+    /**
+     * Check SI-Droid now, eg, when the user interface is shown. Does nothing if no lease is held.
+     */
+    synchronized void probeNow() {
+        if (probes != null) executor.execute(() -> probe(true));
+    }
+
+    /**
+     * Report the outcome of a request to SI-Droid made by someone else, eg, an update of
+     * {@link ResultsPipeline}. Counts as a check.
+     *
+     * @param reachable True if SI-Droid responded successfully.
+     */
+    void report(boolean reachable) {
+        reportedNanos = System.nanoTime();
+        health.set(reachable ? Health.REACHABLE : Health.UNREACHABLE);
+    }
+
+    // *********************************************************************************************
+    // Helpers.
+    // *********************************************************************************************
+
+    private class LeaseImpl implements Lease {
+        private final long periodMillis;
+
+        LeaseImpl(long periodMillis) {
+            this.periodMillis = periodMillis;
+        }
+
+        @Override
+        public void release() {
+            synchronized (SiDroidHealthMonitor.this) {
+                if (leases.remove(this)) reschedule();
+            }
+        }
+    }
+
+    /**
+     * Schedule the checks at the shortest period of the leases held, or stop them if none is held.
+     * Called with the lock held.
+     */
+    private void reschedule() {
+        long shortest = Long.MAX_VALUE;
+        for (LeaseImpl lease : leases) shortest = Math.min(shortest, lease.periodMillis);
+        if (leases.isEmpty()) {
+            if (probes != null) probes.cancel(false);
+            probes = null;
+            periodMillis = 0;
+        } else if (probes == null || shortest != periodMillis) {
+            if (probes != null) probes.cancel(false);
+            periodMillis = shortest;
+            probes = executor.scheduleWithFixedDelay(() -> probe(false), 0, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Check SI-Droid, unless a check is already in flight. The call is asynchronous, so the
+     * executor thread is never blocked.
+     *
+     * @param force Check also if a result has been reported within the period.
+     */
+    private void probe(boolean force) {
+        Call call;
+        synchronized (this) {
+            if (probes == null || probeRequest == null || inFlight != null) return;
+            if (!force && System.nanoTime() - reportedNanos < TimeUnit.MILLISECONDS.toNanos(periodMillis)) return;
+            call = probeClient.newCall(probeRequest);
+            inFlight = call;
+        }
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                done(call, false);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                // Close the response, so the connection is returned to the pool and kept alive.
+                boolean reachable = response.isSuccessful();
+                response.close();
+                done(call, reachable);
+            }
+        });
+    }
+
+    private void done(Call call, boolean reachable) {
+        synchronized (this) {
+            if (inFlight == call) inFlight = null;
+            // Checks of an old URL, or cancelled checks, say nothing about SI-Droid now.
+            if (call.isCanceled() || !call.request().url().equals(probeRequest.url())) return;
+        }
+        health.set(reachable ? Health.REACHABLE : Health.UNREACHABLE);
+    }
+}
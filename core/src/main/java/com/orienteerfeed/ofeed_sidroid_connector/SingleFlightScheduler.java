@@ -0,0 +1,219 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs the fetch-transform-upload pipeline of {@link ResultsPipeline} on a worker thread, with at
+ * most one run in flight.
+ * <p>
+ * A tick which arrives while a run is in flight is deferred: it collapses into a single pending
+ * run, which starts as soon as the run in flight has finished. Further ticks while the run is
+ * pending are coalesced into it, so the latest tick wins and no backlog builds up. A run which
+ * has been in flight for longer than the staleness limit when a tick arrives is cancelled, so
+ * that the pending run can fetch newer results instead of waiting for stale results to upload.
+ */
+class SingleFlightScheduler {
+
+    // *********************************************************************************************
+    // Interfaces.
+    // *********************************************************************************************
+
+    /**
+     * The work done on each tick. Called on the worker thread.
+     */
+    interface Pipeline {
+        void run(Run run);
+    }
+
+    /**
+     * Callback for logging of deferred ticks and cancelled runs. Called on the ticking thread.
+     */
+    interface Listener {
+        /**
+         * A tick arrived while a run was in flight.
+         *
+         * @param coalesced True if a run was already pending, and the tick was merged into it.
+         */
+        void onTickDeferred(boolean coalesced, long deferredTicks, long coalescedTicks);
+
+        /**
+         * The run in flight was cancelled because it had become stale.
+         */
+        void onRunCancelled(long cancelledRuns);
+    }
+
+    // *********************************************************************************************
+    // Run.
+    // *********************************************************************************************
+
+    /**
+     * One run of the pipeline. Lets the pipeline register its current blocking operation,
+     * typically an HTTP call, so that the run can be cancelled.
+     */
+    static class Run {
+        private final LongSupplier clock;
+        private final long startMillis;
+        private boolean isCancelled = false;
+        private Runnable cancellable = null;
+
+        private Run(LongSupplier clock) {
+            this.clock = clock;
+            startMillis = clock.getAsLong();
+        }
+
+        /**
+         * Register the operation to cancel if the run is cancelled. Replaces any operation
+         * registered earlier. If the run has already been cancelled, the operation is cancelled
+         * immediately.
+         */
+        synchronized void setCancellable(Runnable cancellable) {
+            this.cancellable = cancellable;
+            if (isCancelled && cancellable != null) cancellable.run();
+        }
+
+        synchronized boolean isCancelled() {
+            return isCancelled;
+        }
+
+        synchronized void cancel() {
+            isCancelled = true;
+            if (cancellable != null) cancellable.run();
+        }
+
+        long getAgeMillis() {
+            return clock.getAsLong() - startMillis;
+        }
+    }
+
+    // *********************************************************************************************
+    // Member fields.
+    // *********************************************************************************************
+    private final Pipeline pipeline;
+    private final Listener listener;
+    private final long staleAfterMillis;
+    private final Executor worker;
+    private final LongSupplier clock;
+
+    // Guarded by this.
+    private Run inFlight = null;
+    private boolean isPending = false;
+    private boolean isStopped = false;
+    private long ticks = 0, runs = 0, deferredTicks = 0, coalescedTicks = 0, cancelledRuns = 0;
+
+    // *********************************************************************************************
+    // Constructor.
+    // *********************************************************************************************
+
+    /**
+     * Single-flight scheduler.
+     *
+     * @param pipeline         The work done on each tick.
+     * @param listener         Callback for logging.
+     * @param staleAfterMillis A run in flight for longer than this when a tick arrives is cancelled.
+     */
+    SingleFlightScheduler(Pipeline pipeline, Listener listener, long staleAfterMillis) {
+        this(pipeline, listener, staleAfterMillis, newWorker(), System::currentTimeMillis);
+    }
+
+    /**
+     * Single-flight scheduler with a given worker and clock, eg, for tests.
+     *
+     * @param pipeline         The work done on each tick.
+     * @param listener         Callback for logging.
+     * @param staleAfterMillis A run in flight for longer than this when a tick arrives is cancelled.
+     * @param worker           Runs the pipeline, one run at a time. Shut down by {@link #stop()}
+     *                         if it is an {@link ExecutorService}.
+     * @param clock            Current time (ms).
+     */
+    SingleFlightScheduler(Pipeline pipeline, Listener listener, long staleAfterMillis, Executor worker,
+                          LongSupplier clock) {
+        this.pipeline = pipeline;
+        this.listener = listener;
+        this.staleAfterMillis = staleAfterMillis;
+        this.worker = worker;
+        this.clock = clock;
+    }
+
+    /**
+     * Create the worker of a scheduler, with a thread of its own.
+     */
+    static ExecutorService newWorker() {
+        return Executors.newSingleThreadExecutor(r -> new Thread(r, "ResultsPipeline"));
+    }
+
+    // *********************************************************************************************
+    // Methods.
+    // *********************************************************************************************
+
+    /**
+     * Request a run of the pipeline. Starts a run immediately if none is in flight, otherwise
+     * the request is deferred until the run in flight has finished.
+     */
+    void tick() {
+        boolean coalesced;
+        long deferred, merged, cancelled = -1;
+        synchronized (this) {
+            if (isStopped) return;
+            ticks++;
+            if (inFlight == null) {
+                start();
+                return;
+            }
+            coalesced = isPending;
+            isPending = true;
+            deferred = ++deferredTicks;
+            merged = coalesced ? ++coalescedTicks : coalescedTicks;
+            if (!inFlight.isCancelled() && inFlight.getAgeMillis() > staleAfterMillis) {
+                inFlight.cancel();
+                cancelled = ++cancelledRuns;
+            }
+        }
+        listener.onTickDeferred(coalesced, deferred, merged);
+        if (cancelled >= 0) listener.onRunCancelled(cancelled);
+    }
+
+    /**
+     * Stop the scheduler. The run in flight, if any, is cancelled, and pending ticks are dropped.
+     */
+    void stop() {
+        synchronized (this) {
+            isStopped = true;
+            isPending = false;
+            if (inFlight != null) inFlight.cancel();
+        }
+        if (worker instanceof ExecutorService) ((ExecutorService) worker).shutdown();
+    }
+
+    /**
+     * Get a summary of the ticks handled so far, for logging.
+     */
+    synchronized String getStatistics() {
+        return "ticks=" + ticks + " runs=" + runs + " deferred=" + deferredTicks
+                + " coalesced=" + coalescedTicks + " cancelled=" + cancelledRuns;
+    }
+
+    // Called with the lock held.
+    private void start() {
+        Run run = new Run(clock);
+        inFlight = run;
+        runs++;
+        worker.execute(() -> {
+            try {
+                pipeline.run(run);
+            } finally {
+                finished();
+            }
+        });
+    }
+
+    private synchronized void finished() {
+        inFlight = null;
+        if (isPending && !isStopped) {
+            isPending = false;
+            start();
+        }
+    }
+}
@@ -0,0 +1,551 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Streaming engine of {@link XmlModifier}. The result list is copied from input to output in one
+ * pass, and Id tags are inserted or updated on the fly.
+ * <p>
+ * The Id of a competitor depends on attributes which appear after the Person tag, eg, club and
+ * card number. Therefore, each PersonResult is held back until its end tag has been read.
+ * Memory use is bounded by the size of one PersonResult, regardless of the size of the document.
+ * <p>
+ * With a {@link ClassResultCache}, each ClassResult is read as a whole, and only rewritten if it
+ * has changed since the previous document. Memory use is then bounded by the size of the cache,
+ * plus one ClassResult. A ClassResult which does not fit in the cache is streamed as without it.
+ */
+class StreamingIdRewriter {
+
+    // *********************************************************************************************
+    // Elements of interest.
+    // *********************************************************************************************
+    private static final String[] ELEMENT_NAMES = {"ClassResult", "Class", "PersonResult", "Person",
+            "Name", "Family", "Given", "Organisation", "Result", "ControlCard", "Id"};
+    private static final int OTHER = -1, CLASS_RESULT = 0, CLASS = 1, PERSON_RESULT = 2, PERSON = 3,
+            NAME = 4, FAMILY = 5, GIVEN = 6, ORGANISATION = 7, RESULT = 8, CONTROL_CARD = 9, ID = 10;
+
+    // *********************************************************************************************
+    // Member fields.
+    // *********************************************************************************************
+    // The scanner and the writer are replaced while a ClassResult is rewritten for the cache.
+    private XmlScanner scanner;
+    private Writer writer;
+    private final XmlModifier.IdProvider idProvider;
+    // Rewritten ClassResults of the previous document, null if not cached.
+    private final ClassResultCache cache;
+
+    // Elements from the root to the current element.
+    private int[] path = new int[32];
+    private int depth = 0;
+
+    // Number of Person tags so far.
+    private int personCount = 0;
+    // Class of the current ClassResult.
+    private final StringBuilder className = new StringBuilder();
+
+    // PersonResult (or Person outside a PersonResult) being held back, and the depth of its root.
+    private final Fragment fragment = new Fragment();
+    private int fragmentDepth = -1;
+    // Persons of the current fragment, waiting for their Ids.
+    private final ArrayList<PendingId> pendingIds = new ArrayList<>(1);
+    private PendingId person = null;
+    private boolean idDone;
+    // Club and card number of the current fragment.
+    private final StringBuilder organisation = new StringBuilder(), controlCard = new StringBuilder();
+    private boolean organisationDone, controlCardDone;
+
+    // ClassResult being rewritten for the cache: its content, its output, and its competitors.
+    private final StringBuilder classContent = new StringBuilder();
+    private final Fragment classOutput = new Fragment();
+    private boolean recording = false;
+    private final ArrayList<Competitor> recordedCompetitors = new ArrayList<>();
+    private final ArrayList<Integer> recordedIds = new ArrayList<>(), recordedIdOffsets = new ArrayList<>();
+
+    // *********************************************************************************************
+    // Constructor.
+    // *********************************************************************************************
+
+    /**
+     * Streaming engine of {@link XmlModifier}.
+     *
+     * @param reader     The result list.
+     * @param writer     The modified result list is written here.
+     * @param idProvider Provides the Id of each competitor.
+     */
+    StreamingIdRewriter(Reader reader, Writer writer, XmlModifier.IdProvider idProvider) {
+        this(reader, writer, idProvider, null);
+    }
+
+    /**
+     * Streaming engine of {@link XmlModifier}, which rewrites only the ClassResults that have
+     * changed since the previous document.
+     *
+     * @param reader     The result list.
+     * @param writer     The modified result list is written here.
+     * @param idProvider Provides the Id of each competitor.
+     * @param cache      Rewritten ClassResults of the previous document, null for no cache.
+     */
+    StreamingIdRewriter(Reader reader, Writer writer, XmlModifier.IdProvider idProvider, ClassResultCache cache) {
+        scanner = new XmlScanner(reader);
+        this.writer = writer;
+        this.idProvider = idProvider;
+        this.cache = cache;
+    }
+
+    // *********************************************************************************************
+    // Methods.
+    // *********************************************************************************************
+
+    /**
+     * Copy the result list from input to output, inserting or updating Id tags.
+     * Like the DOM engine, the first Id tag within each Person tag is updated. If a Person lacks
+     * an Id, one is inserted before its Name tag, or last in the Person tag if there is no Name tag.
+     * The encoding in the XML declaration is set to UTF-8, the encoding used by the DOM engine.
+     */
+    void rewrite() throws IOException {
+        if (cache != null) cache.beginDocument();
+        copyTokens(true);
+        if (fragmentDepth >= 0) throw new IOException("Unexpected end of XML document.");
+        writer.flush();
+        if (cache != null) cache.endDocument();
+    }
+
+    /**
+     * Copy tokens from the scanner to the writer until the scanner reaches its end.
+     *
+     * @param document True for the whole document, false for the content of a ClassResult.
+     */
+    private void copyTokens(boolean document) throws IOException {
+        boolean firstToken = document;
+        XmlScanner.Token token;
+        while ((token = scanner.next()) != XmlScanner.Token.END_DOCUMENT) {
+            switch (token) {
+                case TEXT:
+                    captureText();
+                    scanner.copyTo(out());
+                    break;
+                case START_TAG:
+                    startTag(classify(), false);
+                    break;
+                case EMPTY_ELEMENT_TAG:
+                    startTag(classify(), true);
+                    break;
+                case END_TAG:
+                    endTag();
+                    break;
+                default:
+                    if (firstToken && scanner.raw().startsWith("<?xml")) {
+                        writeXmlDeclaration();
+                    } else {
+                        scanner.copyTo(out());
+                    }
+                    break;
+            }
+            firstToken = false;
+        }
+    }
+
+    // *********************************************************************************************
+    // Tags.
+    // *********************************************************************************************
+
+    private void startTag(int element, boolean isEmpty) throws IOException {
+        if (element == CLASS_RESULT && !isEmpty && cache != null && fragmentDepth < 0 && !recording) {
+            scanner.copyTo(writer);
+            push(element);
+            classResult();
+            return;
+        }
+        // Hold back each PersonResult, and each Person outside a PersonResult.
+        if (fragmentDepth < 0 && (element == PERSON_RESULT || element == PERSON)) beginFragment();
+        Writer out = out();
+
+        if (element == PERSON && person == null) {
+            // Person starts here.
+            person = new PendingId(++personCount);
+            pendingIds.add(person);
+            idDone = false;
+            if (isEmpty) {
+                // Empty person, add an <Id>.
+                scanner.copyOpenTagTo(out);
+                out.write('>');
+                writeId();
+                out.write("</Person>");
+                person = null;
+                if (fragmentDepth == depth) endFragment();
+                return;
+            }
+        } else if (person != null && !idDone && element == ID) {
+            if (isEmpty) {
+                // Empty <Id/> exists — give it a value.
+                scanner.copyOpenTagTo(out);
+                out.write('>');
+                person.idOffset = fragment.length();
+                out.write("</Id>");
+            } else {
+                // <Id> exists — update its value.
+                scanner.copyTo(out);
+                skipElementContent();
+                person.idOffset = fragment.length();
+                scanner.copyTo(out);     // </Id>
+            }
+            idDone = true;
+            return;
+        } else if (person != null && !idDone && element == NAME) {
+            // <Id> does not exist — insert it before <Name>.
+            writeId();
+        } else if (element == CLASS && parent() == CLASS_RESULT) {
+            className.setLength(0);
+        }
+
+        scanner.copyTo(out);
+        if (!isEmpty) push(element);
+    }
+
+    private void endTag() throws IOException {
+        int element = pop();
+        Writer out = out();
+        if (element == PERSON && person != null) {
+            // Person ends here. Append <Id> if neither <Id> nor <Name> was found.
+            if (!idDone) writeId();
+            person = null;
+        } else if (element == ORGANISATION && parent() == PERSON_RESULT) {
+            organisationDone = true;
+        } else if (element == CONTROL_CARD) {
+            if (controlCard.length() > 0) controlCardDone = true;
+        }
+        scanner.copyTo(out);
+        if (fragmentDepth == depth) endFragment();
+    }
+
+    /**
+     * Write an empty Id tag, whose value is inserted when the fragment ends.
+     */
+    private void writeId() throws IOException {
+        Writer out = out();
+        out.write("<Id>");
+        person.idOffset = fragment.length();
+        out.write("</Id>");
+        idDone = true;
+    }
+
+    /**
+     * Skip the content of the current element, leaving the scanner at its end tag.
+     */
+    private void skipElementContent() throws IOException {
+        int level = 0;
+        while (true) {
+            XmlScanner.Token token = scanner.next();
+            if (token == XmlScanner.Token.END_DOCUMENT) throw new IOException("Unexpected end of XML document.");
+            if (token == XmlScanner.Token.START_TAG) level++;
+            else if (token == XmlScanner.Token.END_TAG && level-- == 0) return;
+        }
+    }
+
+    /**
+     * Write the XML declaration with encoding set to UTF-8.
+     */
+    private void writeXmlDeclaration() throws IOException {
+        writer.write(utf8XmlDeclaration(scanner.raw()));
+    }
+
+    /**
+     * Get an XML declaration with its encoding set to UTF-8, also used by the DOM engine.
+     */
+    static String utf8XmlDeclaration(String declaration) {
+        return declaration.replaceFirst("encoding\\s*=\\s*([\"'])[^\"']*\\1", "encoding=$1UTF-8$1");
+    }
+
+    // *********************************************************************************************
+    // Identifying attributes of competitors.
+    // *********************************************************************************************
+
+    private void captureText() {
+        if (depth < 3) return;
+        int element = path[depth - 1], parent = path[depth - 2], grandparent = path[depth - 3];
+        if (person != null && parent == NAME && grandparent == PERSON) {
+            if (element == FAMILY) scanner.appendTextTo(person.family);
+            else if (element == GIVEN) scanner.appendTextTo(person.given);
+        } else if (element == NAME && parent == ORGANISATION && grandparent == PERSON_RESULT) {
+            if (!organisationDone) scanner.appendTextTo(organisation);
+        } else if (element == CONTROL_CARD && parent == RESULT && grandparent == PERSON_RESULT) {
+            if (!controlCardDone) scanner.appendTextTo(controlCard);
+        } else if (element == NAME && parent == CLASS && grandparent == CLASS_RESULT) {
+            scanner.appendTextTo(className);
+        }
+    }
+
+    // *********************************************************************************************
+    // Fragments.
+    // *********************************************************************************************
+
+    private Writer out() {
+        return fragmentDepth >= 0 ? fragment : writer;
+    }
+
+    private void beginFragment() {
+        fragmentDepth = depth;
+        fragment.clear();
+        pendingIds.clear();
+        organisation.setLength(0);
+        controlCard.setLength(0);
+        organisationDone = false;
+        controlCardDone = false;
+    }
+
+    /**
+     * The fragment is complete. Insert the Ids, and write the fragment.
+     */
+    private void endFragment() throws IOException {
+        fragmentDepth = -1;
+        String club = organisation.toString().trim();
+        String card = controlCard.toString().trim();
+        String classNameTrimmed = className.toString().trim();
+        // Insert from the end, so that the offsets of earlier Ids remain valid.
+        for (int i = pendingIds.size() - 1; i >= 0; i--) {
+            PendingId pending = pendingIds.get(i);
+            if (pending.idOffset < 0) continue;
+            pending.competitor = new Competitor(pending.position, classNameTrimmed,
+                    pending.family.toString().trim(), pending.given.toString().trim(), club, card);
+            pending.id = String.valueOf(idProvider.getId(pending.competitor));
+            fragment.insert(pending.idOffset, pending.id);
+        }
+        if (recording) record();
+        fragment.writeTo(writer);
+        fragment.clear();
+        pendingIds.clear();
+    }
+
+    // *********************************************************************************************
+    // ClassResults.
+    // *********************************************************************************************
+
+    /**
+     * A ClassResult starts here. Reuse it if it is unchanged since the previous document,
+     * otherwise rewrite it and add it to the cache.
+     */
+    private void classResult() throws IOException {
+        classContent.setLength(0);
+        scanner.appendElementContentTo(classContent);
+        long hash = cache.hashOf(classContent);
+        ClassResultCache.Entry entry = cache.get(hash, classContent);
+        if (entry != null) {
+            writeClassResult(entry);
+            pop();
+        } else if (cache.hasRoomFor(classContent.length())) {
+            entry = rewriteClassResult(classContent);
+            cache.put(hash, entry);
+            writer.write(entry.output);
+        } else {
+            streamClassResult(classContent);
+        }
+    }
+
+    /**
+     * Rewrite the content of a ClassResult straight to the output, as without the cache.
+     */
+    private void streamClassResult(StringBuilder content) throws IOException {
+        XmlScanner outerScanner = scanner;
+        int outerDepth = depth;
+        scanner = new XmlScanner(new StringReader(content.toString()));
+        try {
+            copyTokens(false);
+        } finally {
+            scanner = outerScanner;
+        }
+        if (depth != outerDepth - 1 || fragmentDepth >= 0) throw new IOException("Unexpected end of XML document.");
+    }
+
+    /**
+     * Rewrite the content of a ClassResult, recording the competitors given Ids.
+     */
+    private ClassResultCache.Entry rewriteClassResult(StringBuilder content) throws IOException {
+        XmlScanner outerScanner = scanner;
+        Writer outerWriter = writer;
+        int outerDepth = depth, firstPerson = personCount;
+        String input = content.toString();
+        scanner = new XmlScanner(new StringReader(input));
+        writer = classOutput;
+        classOutput.clear();
+        recordedCompetitors.clear();
+        recordedIds.clear();
+        recordedIdOffsets.clear();
+        recording = true;
+        try {
+            copyTokens(false);
+        } finally {
+            scanner = outerScanner;
+            writer = outerWriter;
+            recording = false;
+        }
+        // The content ends with the end tag of the ClassResult, which has been popped.
+        if (depth != outerDepth - 1 || fragmentDepth >= 0) throw new IOException("Unexpected end of XML document.");
+
+        int n = recordedCompetitors.size();
+        Competitor[] competitors = new Competitor[n];
+        int[] ids = new int[n], idOffsets = new int[n];
+        for (int i = 0; i < n; i++) {
+            Competitor competitor = recordedCompetitors.get(i);
+            // Position relative to the first Person of the ClassResult.
+            competitors[i] = new Competitor(competitor.position - firstPerson, competitor.className,
+                    competitor.family, competitor.given, competitor.organisation, competitor.controlCard);
+            ids[i] = recordedIds.get(i);
+            idOffsets[i] = recordedIdOffsets.get(i);
+        }
+        return new ClassResultCache.Entry(input, classOutput.toString(), competitors, ids, idOffsets,
+                personCount - firstPerson, className.toString());
+    }
+
+    /**
+     * Write a rewritten ClassResult. The Ids of its competitors are requested in order, as if it
+     * was rewritten again, and inserted if they have changed, eg, positional Ids after a
+     * ClassResult earlier in the document has grown.
+     */
+    private void writeClassResult(ClassResultCache.Entry entry) throws IOException {
+        int firstPerson = personCount;
+        String output = entry.output;
+        int written = 0;
+        for (int i = 0; i < entry.competitors.length; i++) {
+            Competitor cached = entry.competitors[i];
+            int id = idProvider.getId(new Competitor(firstPerson + cached.position, cached.className,
+                    cached.family, cached.given, cached.organisation, cached.controlCard));
+            if (id == entry.ids[i]) continue;
+            int offset = entry.idOffsets[i];
+            writer.write(output, written, offset - written);
+            writer.write(String.valueOf(id));
+            written = offset + String.valueOf(entry.ids[i]).length();
+        }
+        writer.write(output, written, output.length() - written);
+        personCount = firstPerson + entry.persons;
+        className.setLength(0);
+        className.append(entry.className);
+    }
+
+    /**
+     * Record the competitors of the fragment, which is about to be written to the output of the
+     * ClassResult, and where their Ids are in that output.
+     */
+    private void record() {
+        int offset = classOutput.length();
+        for (PendingId pending : pendingIds) {
+            if (pending.idOffset < 0) continue;
+            recordedCompetitors.add(pending.competitor);
+            recordedIds.add(Integer.valueOf(pending.id));
+            recordedIdOffsets.add(offset + pending.idOffset);
+            // Ids inserted earlier in the fragment move the later ones.
+            offset += pending.id.length();
+        }
+    }
+
+    // *********************************************************************************************
+    // Path of elements.
+    // *********************************************************************************************
+
+    private int classify() {
+        for (int i = 0; i < ELEMENT_NAMES.length; i++) {
+            if (scanner.nameEquals(ELEMENT_NAMES[i])) return i;
+        }
+        return OTHER;
+    }
+
+    private void push(int element) {
+        if (depth == path.length) {
+            int[] deeper = new int[path.length * 2];
+            System.arraycopy(path, 0, deeper, 0, depth);
+            path = deeper;
+        }
+        path[depth++] = element;
+    }
+
+    private int pop() throws IOException {
+        if (depth == 0) throw new IOException("Unexpected end tag " + scanner.raw() + ".");
+        return path[--depth];
+    }
+
+    private int parent() {
+        return depth > 0 ? path[depth - 1] : OTHER;
+    }
+
+    // *********************************************************************************************
+    // Helper classes.
+    // *********************************************************************************************
+
+    /**
+     * A Person whose Id has not yet been written.
+     */
+    private static class PendingId {
+        final int position;
+        final StringBuilder family = new StringBuilder(), given = new StringBuilder();
+        // Position in the fragment where the Id is to be inserted, -1 if none.
+        int idOffset = -1;
+        // The competitor and the Id, once inserted.
+        Competitor competitor;
+        String id;
+
+        PendingId(int position) {
+            this.position = position;
+        }
+    }
+
+    /**
+     * Unsynchronized writer to a growable buffer, which allows text to be inserted.
+     */
+    private static class Fragment extends Writer {
+        private final StringBuilder sb = new StringBuilder(4096);
+        private char[] chunk = new char[0];
+
+        int length() {
+            return sb.length();
+        }
+
+        void clear() {
+            sb.setLength(0);
+        }
+
+        void insert(int offset, String s) {
+            sb.insert(offset, s);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
+
+        void writeTo(Writer out) throws IOException {
+            int length = sb.length();
+            if (chunk.length < length) chunk = new char[Math.max(length, 2 * chunk.length)];
+            sb.getChars(0, length, chunk, 0);
+            out.write(chunk, 0, length);
+        }
+
+        @Override
+        public void write(@NonNull char[] cbuf, int off, int len) {
+            sb.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(int c) {
+            sb.append((char) c);
+        }
+
+        @Override
+        public void write(@NonNull String str) {
+            sb.append(str);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Recurring timer for the updates of {@link ResultsPipeline}, running on its own thread so that
+ * work on the main thread can not delay the updates.
+ * <p>
+ * Ticks are aligned to wall-clock boundaries, ie, multiples of the period since midnight UTC,
+ * eg, at :00 and :30 each minute with a period of 30 s. Each tick is scheduled from the boundary
+ * it belongs to rather than from the time the previous tick ran, so the period does not drift.
+ * Boundaries missed altogether, eg, while the device was asleep, are skipped rather than run in
+ * a burst. An optional random jitter can be added to each tick, to spread the load on the server
+ * when many devices use the same period. The lateness of each tick, ie, the time from its
+ * scheduled time until it actually ran, is measured.
+ * <p>
+ * Optionally, a pre-tick callback runs a lead time before each regular tick, eg, to connect to
+ * the server before the upload of the tick.
+ */
+class TickTimer {
+
+    // *********************************************************************************************
+    // Member fields.
+    // *********************************************************************************************
+    private long periodMillis;
+    private final long maxJitterMillis;
+    private final Runnable onTick;
+    private final ScheduledExecutorService executor;
+    private final LongSupplier clock;
+    private final Random random = new Random();
+
+    // Guarded by this.
+    private ScheduledFuture<?> future = null, preTickFuture = null;
+    private long preTickLeadMillis = 0;
+    private Runnable onPreTick = null;
+    private long boundaryMillis, previousBoundaryMillis;
+    private long ticks = 0, missedBoundaries = 0;
+    private long latestLatenessMillis = 0, maxLatenessMillis = 0, totalLatenessMillis = 0;
+
+    // *********************************************************************************************
+    // Constructor.
+    // *********************************************************************************************
+
+    /**
+     * Recurring timer.
+     *
+     * @param periodMillis    Period (ms).
+     * @param maxJitterMillis Each tick is delayed by a random time from 0 up to this (ms).
+     *                        0 for no jitter.
+     * @param onTick          Callback on each tick, called on the timer thread. Should return
+     *                        quickly, or the next tick will be late.
+     */
+    TickTimer(long periodMillis, long maxJitterMillis, Runnable onTick) {
+        this(periodMillis, maxJitterMillis, onTick, newExecutor(), System::currentTimeMillis);
+    }
+
+    /**
+     * Recurring timer with a given executor and clock, eg, for tests.
+     *
+     * @param periodMillis    Period (ms).
+     * @param maxJitterMillis Each tick is delayed by a random time from 0 up to this (ms).
+     *                        0 for no jitter.
+     * @param onTick          Callback on each tick, called on the timer thread.
+     * @param executor        Runs the ticks, on a single thread. Shut down by {@link #stop()}.
+     * @param clock           Current wall-clock time (ms).
+     */
+    TickTimer(long periodMillis, long maxJitterMillis, Runnable onTick, ScheduledExecutorService executor,
+              LongSupplier clock) {
+        this.periodMillis = periodMillis;
+        this.maxJitterMillis = Math.max(0, Math.min(maxJitterMillis, periodMillis / 2));
+        this.onTick = onTick;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Create the executor of a timer, with a thread of its own.
+     */
+    static ScheduledExecutorService newExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> new Thread(r, "TickTimer"));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    // *********************************************************************************************
+    // Methods.
+    // *********************************************************************************************
+
+    /**
+     * Start the timer. The first tick is after the initial delay, and the following ticks are
+     * at wall-clock boundaries, starting at least half a period after the first tick.
+     *
+     * @param initialDelayMillis Time until the first tick (ms).
+     */
+    synchronized void start(long initialDelayMillis) {
+        boundaryMillis = clock.getAsLong() + initialDelayMillis;
+        schedule();
+    }
+
+    /**
+     * Run a callback a lead time before each regular tick, from the next tick scheduled. Not
+     * run if the tick is less than the lead time away when it is scheduled, eg, the first tick.
+     *
+     * @param leadMillis Time before each tick (ms). 0 for no callback.
+     * @param onPreTick  Callback, called on the timer thread. Should return quickly.
+     */
+    synchronized void setPreTick(long leadMillis, Runnable onPreTick) {
+        this.preTickLeadMillis = Math.max(0, leadMillis);
+        this.onPreTick = onPreTick;
+    }
+
+    /**
+     * Stop the timer. The timer can not be restarted.
+     */
+    synchronized void stop() {
+        if (future != null) future.cancel(false);
+        if (preTickFuture != null) preTickFuture.cancel(false);
+        executor.shutdown();
+    }
+
+    /**
+     * Change the period. The next tick is rescheduled to the first boundary of the new period,
+     * at least half the new period after the previous tick.
+     *
+     * @param periodMillis New period (ms).
+     */
+    synchronized void setPeriod(long periodMillis) {
+        if (periodMillis == this.periodMillis || executor.isShutdown()) return;
+        this.periodMillis = periodMillis;
+        if (ticks == 0) return;     // The first tick is not at a boundary.
+        if (future == null || !future.cancel(false)) return;    // Tick running, it schedules the next tick.
+        if (preTickFuture != null) preTickFuture.cancel(false);
+        boundaryMillis = nextBoundary(previousBoundaryMillis, clock.getAsLong());
+        schedule();
+    }
+
+    /**
+     * Schedule an extra tick, eg, to retry a failed upload before the next regular tick.
+     * Regular ticks are not affected.
+     *
+     * @param delayMillis Delay until the extra tick (ms).
+     */
+    synchronized void tickOnce(long delayMillis) {
+        if (executor.isShutdown()) return;
+        executor.schedule(onTick, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get a summary of the lateness of ticks, for logging.
+     */
+    synchronized String getStatistics() {
+        long meanLatenessMillis = ticks == 0 ? 0 : totalLatenessMillis / ticks;
+        return "ticks=" + ticks + " missed=" + missedBoundaries + " lateness ms: latest=" + latestLatenessMillis
+                + " mean=" + meanLatenessMillis + " max=" + maxLatenessMillis;
+    }
+
+    /**
+     * Get the lateness of the most recent tick (ms).
+     */
+    synchronized long getLatestLatenessMillis() {
+        return latestLatenessMillis;
+    }
+
+    // Called with the lock held.
+    private void schedule() {
+        long jitter = maxJitterMillis == 0 ? 0 : (long) (random.nextDouble() * maxJitterMillis);
+        long scheduledMillis = boundaryMillis + jitter;
+        long delay = Math.max(0, scheduledMillis - clock.getAsLong());
+        try {
+            future = executor.schedule(() -> tick(scheduledMillis), delay, TimeUnit.MILLISECONDS);
+            preTickFuture = onPreTick != null && preTickLeadMillis > 0 && delay > preTickLeadMillis
+                    ? executor.schedule(onPreTick, delay - preTickLeadMillis, TimeUnit.MILLISECONDS) : null;
+        } catch (RuntimeException e) {
+            // Stopped.
+            future = null;
+            preTickFuture = null;
+        }
+    }
+
+    private void tick(long scheduledMillis) {
+        synchronized (this) {
+            if (executor.isShutdown()) return;
+            long now = clock.getAsLong();
+            long lateness = Math.max(0, now - scheduledMillis);
+            ticks++;
+            latestLatenessMillis = lateness;
+            maxLatenessMillis = Math.max(maxLatenessMillis, lateness);
+            totalLatenessMillis += lateness;
+
+            previousBoundaryMillis = boundaryMillis;
+            boundaryMillis = nextBoundary(boundaryMillis, now);
+            schedule();
+        }
+        onTick.run();
+    }
+
+    /**
+     * Get the next boundary after a tick, skipping any boundaries already passed. Same as
+     * boundary + period, except after the first tick, which is not at a boundary, and after a
+     * change of period.
+     *
+     * @param tickBoundaryMillis Boundary of the tick.
+     * @param now                Current time.
+     */
+    private long nextBoundary(long tickBoundaryMillis, long now) {
+        long next = ceil(tickBoundaryMillis + periodMillis / 2);
+        if (next <= now) {
+            long ceilNow = ceil(now + 1);
+            missedBoundaries += (ceilNow - next) / periodMillis;
+            next = ceilNow;
+        }
+        return next;
+    }
+
+    /**
+     * Get the first boundary at or after the given time.
+     */
+    private long ceil(long millis) {
+        return ((millis + periodMillis - 1) / periodMillis) * periodMillis;
+    }
+}
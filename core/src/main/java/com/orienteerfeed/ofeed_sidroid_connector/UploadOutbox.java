@@ -0,0 +1,138 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * On-disk outbox for result lists waiting to be uploaded to OFeed. The outbox holds the latest
+ * transformed result list, ie, with Ids inserted, until OFeed has acknowledged it. A newer result
+ * list replaces an older one, so at most one result list is waiting at any time.
+ * <p>
+ * Each result list is a file named {@code payload-<sequence>-<fingerprint>.xml}. A new result list
+ * is written to a temporary file, which is then renamed into place, so the outbox is never left
+ * with a partially written result list, even if the process is killed. The outbox survives
+ * restarts of the app.
+ */
+class UploadOutbox {
+
+    private static final String PREFIX = "payload-", SUFFIX = ".xml", TEMP_SUFFIX = ".tmp";
+
+    /**
+     * A result list in the outbox.
+     */
+    static class Entry {
+        final File file;
+        final long sequence;
+        /**
+         * Fingerprint of the result list before it was transformed, see {@link ResultListFingerprint}.
+         */
+        final String fingerprint;
+
+        private Entry(File file, long sequence, String fingerprint) {
+            this.file = file;
+            this.sequence = sequence;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private final File directory;
+    private Entry latest;
+
+    /**
+     * Open the outbox. Any result list left from a previous session is kept, and leftover
+     * temporary files are deleted.
+     *
+     * @param parent  Parent directory of the outbox, typically {@code Context.getFilesDir()}.
+     * @param eventId OFeed event id. Each event has its own outbox.
+     */
+    UploadOutbox(File parent, String eventId) {
+        String name = eventId == null ? "" : eventId.replaceAll("[^A-Za-z0-9_-]", "_");
+        directory = new File(parent, "outbox-" + name);
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();     // If this fails, createTempFile() will tell.
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            Entry entry = parse(file);
+            if (entry == null) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();      // Temporary file.
+            } else if (latest == null || entry.sequence > latest.sequence) {
+                if (latest != null) {
+                    //noinspection ResultOfMethodCallIgnored
+                    latest.file.delete();
+                }
+                latest = entry;
+            } else {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Create a temporary file in the outbox, to be filled and then passed to {@link #put(File, String)}.
+     */
+    File createTempFile() throws IOException {
+        return File.createTempFile(PREFIX, TEMP_SUFFIX, directory);
+    }
+
+    /**
+     * Put a result list in the outbox, replacing any result list waiting.
+     *
+     * @param tempFile    Temporary file created by {@link #createTempFile()}, holding the
+     *                    transformed result list.
+     * @param fingerprint Fingerprint of the result list.
+     */
+    synchronized void put(File tempFile, String fingerprint) throws IOException {
+        long sequence = latest == null ? 1 : latest.sequence + 1;
+        File file = new File(directory, PREFIX + sequence + "-" + fingerprint + SUFFIX);
+        if (!tempFile.renameTo(file)) throw new IOException("Can not rename " + tempFile + " to " + file);
+        if (latest != null) {
+            //noinspection ResultOfMethodCallIgnored
+            latest.file.delete();
+        }
+        latest = new Entry(file, sequence, fingerprint);
+    }
+
+    /**
+     * Get the result list waiting to be uploaded.
+     *
+     * @return The result list, or null if the outbox is empty.
+     */
+    @Nullable
+    synchronized Entry peek() {
+        return latest;
+    }
+
+    /**
+     * OFeed has acknowledged a result list, remove it from the outbox. Nothing is removed if the
+     * result list has already been replaced by a newer one.
+     */
+    synchronized void acknowledge(Entry entry) {
+        if (latest == null || latest.sequence != entry.sequence) return;
+        //noinspection ResultOfMethodCallIgnored
+        latest.file.delete();
+        latest = null;
+    }
+
+    /**
+     * Parse the name of a file in the outbox.
+     *
+     * @return The entry, or null if the file is not a result list, eg, a temporary file.
+     */
+    @Nullable
+    private static Entry parse(File file) {
+        String name = file.getName();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) return null;
+        String[] parts = name.substring(PREFIX.length(), name.length() - SUFFIX.length()).split("-", 2);
+        if (parts.length != 2) return null;
+        try {
+            return new Entry(file, Long.parseLong(parts[0]), parts[1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.*;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.*;
+
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.xml.sax.InputSource;
+
+class XmlModifier {
+
+    /**
+     * Engine used to rewrite the result list.
+     */
+    enum Mode {
+        /**
+         * Copy the document from input to output in one pass, rewriting Id tags on the fly.
+         * Memory use is bounded regardless of the size of the document, also with a
+         * {@link ClassResultCache}, whose memory is capped. The layout of the input document is
+         * preserved.
+         */
+        STREAMING,
+        /**
+         * Parse the document into a DOM, update it, and serialize it again.
+         * Kept as a fallback for {@link #STREAMING}. The XML declaration and white space of the
+         * input document are preserved, so the output is the same document as that of
+         * {@link #STREAMING}, with the same layout. It may differ in markup which the DOM does
+         * not keep, eg, the order of attributes, {@code <a></a>} rather than {@code <a/>},
+         * character references or CR LF line breaks.
+         */
+        DOM
+    }
+
+    /**
+     * Provides the Id of a competitor.
+     */
+    interface IdProvider {
+        int getId(Competitor competitor);
+    }
+
+    /**
+     * Ids are an incremental counter starting at 1, ie, the position of the Person tag in the
+     * result list. Ids change when the order of the result list changes.
+     */
+    static final IdProvider POSITIONAL = competitor -> competitor.position;
+
+    /**
+     * Insert or update Id tags in an IOF xml 3.0 result list.
+     * This will change each occurrence of
+     * {@code <Person><Name>...</Name></Person>} to
+     * {@code <Person><Id>123</Id><Name>...</Name></Person>}
+     * where 123 is an incremental counter starting at 1.
+     */
+    static String updateOrInsertIds(String xmlInput) throws Exception {
+        return updateOrInsertIds(xmlInput, Mode.STREAMING);
+    }
+
+    /**
+     * Insert or update Id tags in an IOF xml 3.0 result list, using the given engine.
+     * See {@link #updateOrInsertIds(String)}.
+     */
+    static String updateOrInsertIds(String xmlInput, Mode mode) throws Exception {
+        StringWriter writer = new StringWriter(xmlInput.length() + xmlInput.length() / 16);
+        updateOrInsertIds(new StringReader(xmlInput), writer, mode, POSITIONAL);
+        return writer.toString();
+    }
+
+    /**
+     * Insert or update Id tags in an IOF xml 3.0 result list, using the given engine.
+     * See {@link #updateOrInsertIds(String)}.
+     *
+     * @param reader     The result list.
+     * @param writer     The modified result list is written here.
+     * @param idProvider Provides the Id of each competitor, eg, {@link #POSITIONAL}.
+     */
+    static void updateOrInsertIds(Reader reader, Writer writer, Mode mode, IdProvider idProvider) throws Exception {
+        updateOrInsertIds(reader, writer, mode, idProvider, null);
+    }
+
+    /**
+     * Insert or update Id tags in an IOF xml 3.0 result list, using the given engine, rewriting
+     * only the ClassResults which have changed since the previous result list.
+     * See {@link #updateOrInsertIds(String)}.
+     *
+     * @param reader     The result list.
+     * @param writer     The modified result list is written here.
+     * @param idProvider Provides the Id of each competitor, eg, {@link #POSITIONAL}.
+     * @param cache      ClassResults of the previous result list, capped in memory. Null, or
+     *                   ignored by the DOM engine, to rewrite the whole result list.
+     */
+    static void updateOrInsertIds(Reader reader, Writer writer, Mode mode, IdProvider idProvider,
+                                  ClassResultCache cache) throws Exception {
+        if (mode == Mode.STREAMING) {
+            new StreamingIdRewriter(reader, writer, idProvider, cache).rewrite();
+        } else {
+            updateOrInsertIdsDom(reader, writer, idProvider);
+        }
+    }
+
+    // *********************************************************************************************
+    // DOM engine.
+    // *********************************************************************************************
+
+    /**
+     * DOM version of {@link StreamingIdRewriter}.
+     */
+    private static void updateOrInsertIdsDom(Reader reader, Writer writer, IdProvider idProvider) throws Exception {
+        // The DOM does not keep the XML declaration as written, nor the white space around the
+        // root element.
+        BufferedReader input = new BufferedReader(reader);
+        String prolog = readXmlDeclaration(input);
+        TrailingWhitespaceReader trailing = new TrailingWhitespaceReader(input);
+
+        // Parse input string into DOM Document.
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document doc = builder.parse(new InputSource(trailing));
+
+        NodeList personList = doc.getElementsByTagName("Person");
+        for (int i = 0; i < personList.getLength(); i++) {
+            Element person = (Element) personList.item(i);
+            String idValue = String.valueOf(idProvider.getId(getCompetitor(person, i + 1)));
+
+            NodeList idList = person.getElementsByTagName("Id");
+            if (idList.getLength() > 0) {
+                // <Id> exists — update its value
+                idList.item(0).setTextContent(idValue);
+            } else {
+                // <Id> does not exist — insert it before <Name>
+                Element id = doc.createElement("Id");
+                id.setTextContent(idValue);
+
+                Node nameNode = person.getElementsByTagName("Name").item(0);
+                person.insertBefore(id, nameNode);
+            }
+        }
+
+        // Convert DOM back to String, with the XML declaration of the input.
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        transformer.setOutputProperty(OutputKeys.INDENT, "no");
+
+        writer.write(prolog);
+        transformer.transform(new DOMSource(doc), new StreamResult(writer));
+        writer.write(trailing.getTrailingWhitespace());
+        writer.flush();
+    }
+
+    /**
+     * Read the XML declaration at the start of a document, if any, with the white space after it.
+     *
+     * @return The XML declaration with its encoding set to UTF-8, like {@link StreamingIdRewriter}
+     * writes it, and the white space. Empty if the document has no XML declaration.
+     */
+    private static String readXmlDeclaration(BufferedReader reader) throws IOException {
+        final int maxLength = 1_024;
+        reader.mark(maxLength);
+        char[] buffer = new char[maxLength];
+        int length = 0, n;
+        while (length < maxLength && (n = reader.read(buffer, length, maxLength - length)) != -1) length += n;
+        String start = new String(buffer, 0, length);
+        int end = start.startsWith("<?xml") ? start.indexOf("?>") : -1;
+        reader.reset();
+        if (end < 0) return "";
+        end += 2;
+        int whitespaceEnd = end;
+        while (whitespaceEnd < length && Character.isWhitespace(start.charAt(whitespaceEnd))) whitespaceEnd++;
+        //noinspection ResultOfMethodCallIgnored
+        reader.skip(whitespaceEnd);
+        return StreamingIdRewriter.utf8XmlDeclaration(start.substring(0, end)) + start.substring(end, whitespaceEnd);
+    }
+
+    /**
+     * Reader which keeps the white space at the end of the document, eg, a final line break.
+     */
+    private static class TrailingWhitespaceReader extends FilterReader {
+        private final StringBuilder whitespace = new StringBuilder();
+
+        TrailingWhitespaceReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c != -1) append((char) c);
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            for (int i = offset; i < offset + n; i++) append(buffer[i]);
+            return n;
+        }
+
+        private void append(char c) {
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r') whitespace.append(c);
+            else whitespace.setLength(0);
+        }
+
+        String getTrailingWhitespace() {
+            return whitespace.toString();
+        }
+    }
+
+    /**
+     * Get the identifying attributes of a competitor.
+     *
+     * @param person   Person element.
+     * @param position Position of the Person element in the result list, starting at 1.
+     */
+    private static Competitor getCompetitor(Element person, int position) {
+        Element name = getChild(person, "Name");
+        String family = getChildText(name, "Family");
+        String given = getChildText(name, "Given");
+
+        String organisation = "", controlCard = "", className = "";
+        Node personResult = person.getParentNode();
+        if (personResult instanceof Element && personResult.getNodeName().equals("PersonResult")) {
+            organisation = getChildText(getChild((Element) personResult, "Organisation"), "Name");
+            // Several Result elements are possible, take the first card number found.
+            NodeList cards = ((Element) personResult).getElementsByTagName("ControlCard");
+            for (int i = 0; i < cards.getLength() && controlCard.isEmpty(); i++) {
+                Node result = cards.item(i).getParentNode();
+                if (result.getNodeName().equals("Result") && result.getParentNode() == personResult) {
+                    controlCard = cards.item(i).getTextContent().trim();
+                }
+            }
+            Node classResult = personResult.getParentNode();
+            if (classResult instanceof Element && classResult.getNodeName().equals("ClassResult")) {
+                className = getChildText(getChild((Element) classResult, "Class"), "Name");
+            }
+        }
+        return new Competitor(position, className, family, given, organisation, controlCard);
+    }
+
+    /**
+     * Get the first child element with the given name, or null.
+     */
+    private static Element getChild(Element parent, String name) {
+        if (parent == null) return null;
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && child.getNodeName().equals(name)) return (Element) child;
+        }
+        return null;
+    }
+
+    /**
+     * Get the trimmed text of the first child element with the given name, or an empty string.
+     */
+    private static String getChildText(Element parent, String name) {
+        Element child = getChild(parent, name);
+        return child == null ? "" : child.getTextContent().trim();
+    }
+}
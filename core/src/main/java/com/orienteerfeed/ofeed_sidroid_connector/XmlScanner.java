@@ -0,0 +1,501 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Forward-only lexical scanner for XML documents. Each token is kept verbatim, which allows a
+ * document to be copied from input to output with selected parts rewritten, without building a DOM.
+ * Memory use is bounded by the largest tag, comment or CDATA section, not by the size of the document.
+ * The scanner does not validate the document.
+ */
+class XmlScanner {
+
+    // *********************************************************************************************
+    // Tokens.
+    // *********************************************************************************************
+    enum Token {
+        /**
+         * Character data between tags. Long text is split into several consecutive tokens.
+         */
+        TEXT,
+        /**
+         * Start tag, eg, {@code <Person>}.
+         */
+        START_TAG,
+        /**
+         * End tag, eg, {@code </Person>}.
+         */
+        END_TAG,
+        /**
+         * Empty element tag, eg, {@code <Id/>}.
+         */
+        EMPTY_ELEMENT_TAG,
+        /**
+         * XML declaration, processing instruction, comment, CDATA section or document type declaration.
+         */
+        OTHER,
+        /**
+         * End of document has been reached.
+         */
+        END_DOCUMENT
+    }
+
+    // *********************************************************************************************
+    // Member fields.
+    // *********************************************************************************************
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_TEXT_CHUNK = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int bufferPos, bufferLimit;
+
+    // The current token, verbatim.
+    private char[] raw = new char[256];
+    private int rawLength;
+    private Token token;
+    // Position of element name within raw, valid for tags only.
+    private int nameStart, nameEnd;
+    // Position of attribute value within raw, set by findAttribute().
+    private int valueStart, valueEnd;
+
+    // *********************************************************************************************
+    // Constructor.
+    // *********************************************************************************************
+
+    /**
+     * Forward-only lexical scanner for XML documents.
+     *
+     * @param reader The document to be scanned. The caller should close the reader when done.
+     */
+    XmlScanner(Reader reader) {
+        this.reader = reader;
+    }
+
+    // *********************************************************************************************
+    // Methods.
+    // *********************************************************************************************
+
+    /**
+     * Advance to the next token.
+     *
+     * @return The type of the token, {@link Token#END_DOCUMENT} when all input has been consumed.
+     * @throws IOException If reading fails, or if the document ends in the middle of a tag.
+     */
+    Token next() throws IOException {
+        rawLength = 0;
+        int c = read();
+        if (c == -1) return token = Token.END_DOCUMENT;
+
+        // Character data.
+        if (c != '<') {
+            append((char) c);
+            while (rawLength < MAX_TEXT_CHUNK) {
+                c = peek();
+                if (c == -1 || c == '<') break;
+                append((char) c);
+                bufferPos++;
+            }
+            return token = Token.TEXT;
+        }
+
+        append('<');
+        c = readRequired();
+        append((char) c);
+        switch (c) {
+            case '?':
+                // XML declaration or processing instruction.
+                readUntil("?>");
+                return token = Token.OTHER;
+            case '!':
+                // Comment, CDATA section or document type declaration.
+                readMarkupDeclaration();
+                return token = Token.OTHER;
+            default:
+                readTag();
+                nameStart = c == '/' ? 2 : 1;
+                nameEnd = nameStart;
+                while (nameEnd < rawLength && !isNameTerminator(raw[nameEnd])) nameEnd++;
+                if (c == '/') return token = Token.END_TAG;
+                return token = raw[rawLength - 2] == '/' ? Token.EMPTY_ELEMENT_TAG : Token.START_TAG;
+        }
+    }
+
+    /**
+     * Check the element name of the current tag.
+     *
+     * @param name Qualified element name, eg, "Person".
+     * @return True if the current token is a tag with the given name.
+     */
+    boolean nameEquals(String name) {
+        if (token != Token.START_TAG && token != Token.END_TAG && token != Token.EMPTY_ELEMENT_TAG) return false;
+        if (nameEnd - nameStart != name.length()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (raw[nameStart + i] != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the element name of the current tag.
+     */
+    String name() {
+        return new String(raw, nameStart, nameEnd - nameStart);
+    }
+
+    /**
+     * Get the current token verbatim.
+     */
+    String raw() {
+        return new String(raw, 0, rawLength);
+    }
+
+
+    /**
+     * Check if the current token is character data consisting of white space only.
+     */
+    boolean isWhitespace() {
+        if (token != Token.TEXT) return false;
+        for (int i = 0; i < rawLength; i++) {
+            if (!isWhitespace(raw[i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check if the current token is a comment.
+     */
+    boolean isComment() {
+        return token == Token.OTHER && rawLength >= 4 && raw[1] == '!' && raw[2] == '-' && raw[3] == '-';
+    }
+
+    /**
+     * Check if the current start tag or empty element tag has the given attribute.
+     */
+    boolean hasAttribute(String name) {
+        return findAttribute(name);
+    }
+
+    /**
+     * Get the value of an attribute of the current start tag or empty element tag, as written in
+     * the document, ie, entities are not resolved.
+     *
+     * @param name Attribute name.
+     * @return The attribute value, or null if the attribute is missing.
+     */
+    String attribute(String name) {
+        if (!findAttribute(name)) return null;
+        return new String(raw, valueStart, valueEnd - valueStart);
+    }
+
+    /**
+     * Append the current character data to a string builder, with character and entity references
+     * resolved. Only the predefined entities of XML are resolved.
+     */
+    void appendTextTo(StringBuilder sb) {
+        int i = 0;
+        while (i < rawLength) {
+            char c = raw[i++];
+            if (c != '&') {
+                sb.append(c);
+                continue;
+            }
+            int end = i;
+            while (end < rawLength && end - i < 10 && raw[end] != ';') end++;
+            if (end >= rawLength || raw[end] != ';') {
+                sb.append(c);   // Not a reference, keep as is.
+                continue;
+            }
+            if (regionEquals(i, end, "amp")) sb.append('&');
+            else if (regionEquals(i, end, "lt")) sb.append('<');
+            else if (regionEquals(i, end, "gt")) sb.append('>');
+            else if (regionEquals(i, end, "quot")) sb.append('"');
+            else if (regionEquals(i, end, "apos")) sb.append('\'');
+            else if (end - i > 1 && raw[i] == '#') {
+                try {
+                    boolean hex = raw[i + 1] == 'x';
+                    String digits = hex ? new String(raw, i + 2, end - i - 2) : new String(raw, i + 1, end - i - 1);
+                    sb.appendCodePoint(Integer.parseInt(digits, hex ? 16 : 10));
+                } catch (IllegalArgumentException e) {
+                    sb.append(raw, i - 1, end - i + 2);
+                }
+            } else {
+                sb.append(raw, i - 1, end - i + 2);
+            }
+            i = end + 1;
+        }
+    }
+
+    /**
+     * Read the content of the current element verbatim, up to and including its end tag, eg, to
+     * compare it with the element in a previous document. Only comments, CDATA sections,
+     * processing instructions and tags with the name of the element are scanned. Everything else
+     * is copied in bulk, so this is much faster than reading the content token by token.
+     * Only valid when the current token is a start tag. The scanner is left at the end tag.
+     *
+     * @param sb The content is appended here.
+     * @throws IOException If reading fails, or if the document ends before the end tag.
+     */
+    void appendElementContentTo(StringBuilder sb) throws IOException {
+        String name = name();
+        int level = 0;
+        while (true) {
+            if (bufferPos == bufferLimit && !fill()) throw new IOException("Unexpected end of XML document.");
+            int start = bufferPos;
+            while (bufferPos < bufferLimit && buffer[bufferPos] != '<') bufferPos++;
+            sb.append(buffer, start, bufferPos - start);
+            if (bufferPos == bufferLimit) continue;
+
+            // A "<" in well-formed XML starts markup, it can not occur in attribute values.
+            if (isOtherTag(name)) {
+                sb.append('<');
+                bufferPos++;
+                continue;
+            }
+            Token markup = next();
+            sb.append(raw, 0, rawLength);
+            if (markup == Token.START_TAG && nameEquals(name)) level++;
+            else if (markup == Token.END_TAG && nameEquals(name) && level-- == 0) return;
+        }
+    }
+
+    /**
+     * Check if the markup at the current position of the buffer is a tag with another name than
+     * the given one, ie, not a comment, CDATA section or processing instruction either.
+     */
+    private boolean isOtherTag(String name) throws IOException {
+        int length = name.length();
+        if (!lookAhead(length + 3)) return false;
+        char c = buffer[bufferPos + 1];
+        if (c == '!' || c == '?') return false;
+        int p = bufferPos + (c == '/' ? 2 : 1);
+        for (int i = 0; i < length; i++) {
+            if (buffer[p + i] != name.charAt(i)) return true;
+        }
+        return !isNameTerminator(buffer[p + length]);
+    }
+
+    /**
+     * Make sure that the buffer holds at least the given number of characters from the current
+     * position, if the document has that many left.
+     */
+    private boolean lookAhead(int n) throws IOException {
+        if (bufferLimit - bufferPos >= n) return true;
+        System.arraycopy(buffer, bufferPos, buffer, 0, bufferLimit - bufferPos);
+        bufferLimit -= bufferPos;
+        bufferPos = 0;
+        while (bufferLimit < n) {
+            int read = reader.read(buffer, bufferLimit, buffer.length - bufferLimit);
+            if (read < 0) return false;
+            bufferLimit += read;
+        }
+        return true;
+    }
+
+    /**
+     * Write the current token verbatim.
+     */
+    void copyTo(Writer out) throws IOException {
+        out.write(raw, 0, rawLength);
+    }
+
+    /**
+     * Write the current start tag or empty element tag, without its closing ">" or "/>".
+     * Used to turn an empty element tag into a start tag.
+     */
+    void copyOpenTagTo(Writer out) throws IOException {
+        int end = token == Token.EMPTY_ELEMENT_TAG ? rawLength - 2 : rawLength - 1;
+        out.write(raw, 0, end);
+    }
+
+    /**
+     * Write the current start tag or empty element tag with an attribute set to a value, eg,
+     * {@code <a b="1">} is written as {@code <a b="1" c="2">} if attribute c is set to 2.
+     *
+     * @param name  Attribute name.
+     * @param value Attribute value, which must not need escaping.
+     */
+    void copyWithAttributeValueTo(Writer out, String name, String value) throws IOException {
+        if (findAttribute(name)) {
+            out.write(raw, 0, valueStart);
+            out.write(value);
+            out.write(raw, valueEnd, rawLength - valueEnd);
+        } else {
+            copyOpenTagTo(out);
+            out.write(" " + name + "=\"" + value + "\"");
+            out.write(token == Token.EMPTY_ELEMENT_TAG ? "/>" : ">");
+        }
+    }
+
+    /**
+     * Write the current tag with the value of one attribute left out, eg, {@code <a b="1" c="2">}
+     * is written as {@code <a b="" c="2">} if the value of attribute b is left out.
+     *
+     * @param name Attribute whose value is left out.
+     */
+    void copyExcludingAttributeValueTo(Writer out, String name) throws IOException {
+        if (!findAttribute(name)) {
+            copyTo(out);
+            return;
+        }
+        out.write(raw, 0, valueStart);
+        out.write(raw, valueEnd, rawLength - valueEnd);
+    }
+
+    // *********************************************************************************************
+    // Internal methods.
+    // *********************************************************************************************
+
+    /**
+     * Locate an attribute value of the current tag and store its position in {@link #valueStart}
+     * and {@link #valueEnd}.
+     */
+    private boolean findAttribute(String name) {
+        if (token != Token.START_TAG && token != Token.EMPTY_ELEMENT_TAG) return false;
+        int i = nameEnd;
+        while (i < rawLength) {
+            // Skip white space.
+            while (i < rawLength && isNameTerminator(raw[i])) i++;
+            // Attribute name.
+            int attrStart = i;
+            while (i < rawLength && raw[i] != '=' && !isNameTerminator(raw[i])) i++;
+            int attrEnd = i;
+            while (i < rawLength && raw[i] != '=' && raw[i] != '"' && raw[i] != '\'') i++;
+            if (i >= rawLength || raw[i] != '=') return false;
+            // Attribute value.
+            while (i < rawLength && raw[i] != '"' && raw[i] != '\'') i++;
+            if (i >= rawLength) return false;
+            char quote = raw[i++];
+            int start = i;
+            while (i < rawLength && raw[i] != quote) i++;
+            if (i >= rawLength) return false;
+            if (regionEquals(attrStart, attrEnd, name)) {
+                valueStart = start;
+                valueEnd = i;
+                return true;
+            }
+            i++;
+        }
+        return false;
+    }
+
+    private boolean regionEquals(int start, int end, String s) {
+        if (end - start != s.length()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (raw[start + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read the rest of a start tag, end tag or empty element tag. A ">" within a quoted
+     * attribute value does not end the tag.
+     */
+    private void readTag() throws IOException {
+        char quote = 0;
+        if (raw[1] == '>') return;
+        while (true) {
+            char c = (char) readRequired();
+            append(c);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read the rest of a comment, CDATA section or document type declaration.
+     */
+    private void readMarkupDeclaration() throws IOException {
+        char c = (char) readRequired();
+        append(c);
+        if (c == '-') {
+            append((char) readRequired());
+            readUntil("-->");
+        } else if (c == '[') {
+            readUntil("]]>");
+        } else {
+            // Document type declaration, possibly with an internal subset in brackets.
+            int brackets = 0;
+            char quote = 0;
+            while (true) {
+                c = (char) readRequired();
+                append(c);
+                if (quote != 0) {
+                    if (c == quote) quote = 0;
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '[') {
+                    brackets++;
+                } else if (c == ']') {
+                    brackets--;
+                } else if (c == '>' && brackets <= 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Read until the current token ends with the given terminator.
+     */
+    private void readUntil(String terminator) throws IOException {
+        int n = terminator.length();
+        char last = terminator.charAt(n - 1);
+        while (true) {
+            char c = (char) readRequired();
+            append(c);
+            if (c == last && rawLength >= n + 2 && regionEquals(rawLength - n, rawLength, terminator)) return;
+        }
+    }
+
+    private void append(char c) {
+        if (rawLength == raw.length) {
+            char[] larger = new char[raw.length * 2];
+            System.arraycopy(raw, 0, larger, 0, rawLength);
+            raw = larger;
+        }
+        raw[rawLength++] = c;
+    }
+
+    private int read() throws IOException {
+        if (bufferPos == bufferLimit && !fill()) return -1;
+        return buffer[bufferPos++];
+    }
+
+    private int readRequired() throws IOException {
+        int c = read();
+        if (c == -1) throw new IOException("Unexpected end of XML document.");
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (bufferPos == bufferLimit && !fill()) return -1;
+        return buffer[bufferPos];
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = reader.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) return false;
+        bufferPos = 0;
+        bufferLimit = n;
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean isNameTerminator(char c) {
+        return isWhitespace(c) || c == '/' || c == '>';
+    }
+}
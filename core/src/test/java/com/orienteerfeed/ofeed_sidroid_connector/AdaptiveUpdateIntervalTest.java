@@ -0,0 +1,45 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AdaptiveUpdateIntervalTest {
+
+    private static final long FLOOR_MILLIS = 10_000, CEILING_MILLIS = 120_000, INITIAL_MILLIS = 30_000;
+
+    private final AdaptiveUpdateInterval interval =
+            new AdaptiveUpdateInterval(FLOOR_MILLIS, CEILING_MILLIS, INITIAL_MILLIS);
+
+    @Test
+    public void firstFetchKeepsTheInitialInterval() {
+        assertEquals(INITIAL_MILLIS, interval.onResults(100, true, 0));
+    }
+
+    @Test
+    public void unchangedResultListDoublesTheInterval() {
+        interval.onResults(100, true, 0);
+        assertEquals(60_000, interval.onResults(100, false, 30_000));
+        assertEquals(CEILING_MILLIS, interval.onResults(100, false, 90_000));
+        assertEquals(CEILING_MILLIS, interval.onResults(100, false, 210_000));
+    }
+
+    @Test
+    public void intervalFollowsTheFinishRate() {
+        interval.onResults(100, true, 0);
+        // 6 finishers in 30 s, smoothed with the rate 0 before: 3 finishers per 30 s.
+        assertEquals(30_000, interval.onResults(106, true, 30_000));
+        // Fast finishing shortens the interval down to the floor.
+        assertEquals(FLOOR_MILLIS, interval.onResults(160, true, 60_000));
+    }
+
+    @Test
+    public void changeWithoutNewResultsKeepsTheInterval() {
+        interval.onResults(100, true, 0);
+        // Same number of PersonResults, but a status has changed, eg, to disqualified.
+        assertEquals(INITIAL_MILLIS, interval.onResults(100, true, 30_000));
+        // A result removed by the organiser is a change too.
+        assertEquals(INITIAL_MILLIS, interval.onResults(99, true, 60_000));
+        assertEquals(60_000, interval.onResults(99, false, 90_000));
+    }
+}
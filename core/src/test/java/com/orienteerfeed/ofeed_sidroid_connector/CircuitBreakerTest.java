@@ -0,0 +1,141 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.SimulatedClock;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    // Sun, 06 Nov 1994 08:49:37 GMT, the example date of RFC 9110.
+    private static final long NOW_MILLIS = 784_111_777_000L;
+
+    private final SimulatedClock clock = new SimulatedClock(0, NOW_MILLIS);
+    private final CircuitBreaker breaker = new CircuitBreaker();
+
+    @Test
+    public void retryAfterInSeconds() {
+        assertEquals(120_000, CircuitBreaker.parseRetryAfter("120", NOW_MILLIS));
+        assertEquals(0, CircuitBreaker.parseRetryAfter("0", NOW_MILLIS));
+        assertEquals(5_000, CircuitBreaker.parseRetryAfter(" 5 ", NOW_MILLIS));
+    }
+
+    @Test
+    public void retryAfterAsHttpDate() {
+        assertEquals(90_000, CircuitBreaker.parseRetryAfter("Sun, 06 Nov 1994 08:51:07 GMT", NOW_MILLIS));
+        // A date in the past means now.
+        assertEquals(0, CircuitBreaker.parseRetryAfter("Sun, 06 Nov 1994 08:00:00 GMT", NOW_MILLIS));
+    }
+
+    @Test
+    public void missingOrInvalidRetryAfterIsIgnored() {
+        assertEquals(-1, CircuitBreaker.parseRetryAfter(null, NOW_MILLIS));
+        assertEquals(-1, CircuitBreaker.parseRetryAfter("", NOW_MILLIS));
+        assertEquals(-1, CircuitBreaker.parseRetryAfter("-5", NOW_MILLIS));
+        assertEquals(-1, CircuitBreaker.parseRetryAfter("soon", NOW_MILLIS));
+        assertEquals(-1, CircuitBreaker.parseRetryAfter("1994-11-06T08:51:07Z", NOW_MILLIS));
+    }
+
+    @Test
+    public void circuitOpensAfterConsecutiveFailuresWithGrowingBackoff() {
+        long first = breaker.onFailure(clock.now(), -1);
+        assertTrue(first >= 1_000 && first < 2_000);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(clock.now()));
+
+        long second = breaker.onFailure(clock.now(), -1);
+        assertTrue(second >= 2_000 && second < 4_000);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        long third = breaker.onFailure(clock.now(), -1);
+        assertTrue(third >= 4_000 && third < 8_000);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(clock.now()));
+        assertEquals(third, breaker.getRetryDelayMillis(clock.now()));
+    }
+
+    @Test
+    public void successfulProbeClosesTheCircuit() {
+        openCircuit();
+        clock.advance(breaker.getRetryDelayMillis(clock.now()) - 1);
+        assertFalse(breaker.allowRequest(clock.now()));
+
+        clock.advance(1);
+        assertTrue(breaker.allowRequest(clock.now()));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getRetryDelayMillis(clock.now()));
+        // The failures are counted from zero again.
+        breaker.onFailure(clock.now(), -1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void failedProbeOpensTheCircuitAgainWithALongerDelay() {
+        long opened = openCircuit();
+        clock.advance(opened);
+        assertTrue(breaker.allowRequest(clock.now()));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        long reopened = breaker.onFailure(clock.now(), -1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(clock.now()));
+        assertTrue(reopened >= 8_000 && reopened < 16_000);
+    }
+
+    @Test
+    public void retryAfterOpensTheCircuitAtOnce() {
+        long delay = breaker.onFailure(clock.now(), CircuitBreaker.parseRetryAfter("30", clock.now()));
+        assertEquals(30_000, delay);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // The server asked for the pause, so the network coming back does not cut it short.
+        breaker.onNetworkAvailable();
+        assertFalse(breaker.allowRequest(clock.now()));
+
+        clock.advance(30_000);
+        assertTrue(breaker.allowRequest(clock.now()));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void retryAfterIsLimitedToTheMaximumBackoff() {
+        assertEquals(5 * 60_000, breaker.onFailure(clock.now(), 3_600_000));
+    }
+
+    @Test
+    public void networkAvailableLetsAProbeThroughAfterNetworkErrors() {
+        openCircuit();
+        assertFalse(breaker.allowRequest(clock.now()));
+        breaker.onNetworkAvailable();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest(clock.now()));
+    }
+
+    @Test
+    public void retryableStatusCodes() {
+        assertTrue(CircuitBreaker.isRetryable(429));
+        assertTrue(CircuitBreaker.isRetryable(503));
+        assertFalse(CircuitBreaker.isRetryable(400));
+        assertFalse(CircuitBreaker.isRetryable(401));
+        assertFalse(CircuitBreaker.isRetryable(200));
+    }
+
+    /**
+     * Open the circuit with network errors.
+     *
+     * @return Delay until the circuit is half-open (ms).
+     */
+    private long openCircuit() {
+        breaker.onFailure(clock.now(), -1);
+        breaker.onFailure(clock.now(), -1);
+        long delay = breaker.onFailure(clock.now(), -1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return delay;
+    }
+}
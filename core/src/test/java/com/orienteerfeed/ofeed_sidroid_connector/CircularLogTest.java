@@ -0,0 +1,117 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CircularLogTest {
+
+    private static void add(CircularLog log, int from, int to) {
+        for (int i = from; i < to; i++) log.add("item " + i);
+    }
+
+    private static List<String> texts(CircularLog.Items items) {
+        List<String> texts = new ArrayList<>();
+        for (CircularLog.LogItem item : items.items) texts.add(item.text);
+        return texts;
+    }
+
+    @Test
+    public void itemsAreReadInOrderWithSequenceNumbers() {
+        CircularLog log = new CircularLog(4);
+        add(log, 0, 3);
+        CircularLog.Items items = log.get(0);
+        assertEquals(List.of("item 0", "item 1", "item 2"), texts(items));
+        assertFalse(items.skipped);
+        assertEquals(3, items.nextSequence);
+        for (int i = 0; i < 3; i++) assertEquals(i, items.items.get(i).sequence);
+    }
+
+    @Test
+    public void wrapAroundKeepsTheNewestItemsAndFlagsTheSkippedOnes() {
+        // 3 items in 4 slots, so the capacity is not the number of slots.
+        CircularLog log = new CircularLog(3);
+        add(log, 0, 10);
+        CircularLog.Items items = log.get(0);
+        assertEquals(List.of("item 7", "item 8", "item 9"), texts(items));
+        assertTrue(items.skipped);
+        assertEquals(10, items.nextSequence);
+        assertTrue(log.toString().endsWith("\n..."));
+    }
+
+    @Test
+    public void readerWhichKeepsUpSkipsNothing() {
+        CircularLog log = new CircularLog(4);
+        long next = 0;
+        for (int round = 0; round < 5; round++) {
+            add(log, 3 * round, 3 * round + 3);
+            CircularLog.Items items = log.get(next);
+            assertFalse(items.skipped);
+            assertEquals(3, items.items.size());
+            assertEquals("item " + 3 * round, items.items.get(0).text);
+            next = items.nextSequence;
+        }
+        assertEquals(log.getNextSequence(), next);
+        assertTrue(log.get(next).items.isEmpty());
+    }
+
+    @Test
+    public void readerWhichFallsBehindIsToldOfTheSkippedItems() {
+        CircularLog log = new CircularLog(4);
+        add(log, 0, 2);
+        long next = log.get(0).nextSequence;
+        add(log, 2, 9);
+        CircularLog.Items items = log.get(next);
+        assertTrue(items.skipped);
+        assertEquals(List.of("item 5", "item 6", "item 7", "item 8"), texts(items));
+    }
+
+    @Test
+    public void readersContinueAfterClear() {
+        CircularLog log = new CircularLog(4);
+        add(log, 0, 3);
+        long next = log.get(0).nextSequence;
+        log.clear();
+
+        CircularLog.Items items = log.get(0);
+        assertTrue(items.items.isEmpty());
+        assertFalse(items.skipped);
+        assertEquals("", log.toString());
+
+        // Sequence numbers are not reused, so the reader gets only the items added after clear().
+        add(log, 3, 5);
+        items = log.get(next);
+        assertEquals(List.of("item 3", "item 4"), texts(items));
+        assertFalse(items.skipped);
+        assertEquals(5, items.nextSequence);
+        // A reader from before the items cleared gets the same, not flagged as skipped.
+        items = log.get(1);
+        assertEquals(List.of("item 3", "item 4"), texts(items));
+        assertFalse(items.skipped);
+    }
+
+    @Test
+    public void wrapAroundAfterClearIsFlagged() {
+        CircularLog log = new CircularLog(2);
+        add(log, 0, 3);
+        log.clear();
+        long next = log.getNextSequence();
+        add(log, 3, 8);
+        CircularLog.Items items = log.get(next);
+        assertTrue(items.skipped);
+        assertEquals(List.of("item 6", "item 7"), texts(items));
+    }
+
+    @Test
+    public void eachItemIsPassedOn() {
+        List<String> passed = new ArrayList<>();
+        CircularLog log = new CircularLog(2, item -> passed.add(item.sequence + " " + item.text));
+        add(log, 0, 3);
+        assertEquals(List.of("0 item 0", "1 item 1", "2 item 2"), passed);
+    }
+}
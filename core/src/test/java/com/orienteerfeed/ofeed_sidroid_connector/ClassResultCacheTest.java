@@ -0,0 +1,151 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.ResultListWriter;
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.SimulatedEvent;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Rewriting with a {@link ClassResultCache} must give the same result list as without it.
+ */
+public class ClassResultCacheTest {
+
+    private static final long UNCAPPED = Long.MAX_VALUE;
+
+    private static final String ANNA = personResult("Berg", "Anna", "OK", "OK Ravinen");
+    private static final String BO = personResult("Ek", "Bo", "OK", "IFK Lidingö");
+    private static final String CARL = personResult("Falk", "Carl", "OK", "OK Ravinen");
+    private static final String DAN = personResult("Gran", "Dan", "OK", "OK Ravinen");
+
+    private static String personResult(String family, String given, String status, String club) {
+        return "<PersonResult><Person><Name><Family>" + family + "</Family><Given>" + given + "</Given></Name>"
+                + "</Person><Organisation><Name>" + club + "</Name></Organisation>"
+                + "<Result><Status>" + status + "</Status></Result></PersonResult>\n";
+    }
+
+    private static String classResult(String className, String... personResults) {
+        StringBuilder element = new StringBuilder("<ClassResult><Class><Name>" + className + "</Name></Class>\n");
+        for (String personResult : personResults) element.append(personResult);
+        return element.append("</ClassResult>\n").toString();
+    }
+
+    private static String resultList(String... classResults) {
+        StringBuilder document = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ResultList iofVersion=\"3.0\">\n");
+        for (String classResult : classResults) document.append(classResult);
+        return document.append("</ResultList>\n").toString();
+    }
+
+    /**
+     * Rewrite a result list with positional Ids, which change when a class earlier in the result
+     * list grows, so that Ids of reused classes must be replaced.
+     */
+    private static String rewrite(String resultList, ClassResultCache cache) throws Exception {
+        StringWriter writer = new StringWriter();
+        XmlModifier.updateOrInsertIds(new StringReader(resultList), writer, XmlModifier.Mode.STREAMING,
+                XmlModifier.POSITIONAL, cache);
+        return writer.toString();
+    }
+
+    private static String resultList(SimulatedEvent event, long simulatedMillis) throws IOException {
+        StringWriter writer = new StringWriter();
+        ResultListWriter.write(event, simulatedMillis, writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void unchangedClassResultIsReusedByteForByte() throws Exception {
+        ClassResultCache cache = new ClassResultCache(UNCAPPED);
+        String resultList = resultList(classResult("D21", ANNA), classResult("H21", BO, CARL));
+        String first = rewrite(resultList, cache);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        String second = rewrite(resultList, cache);
+        assertEquals(first, second);
+        assertEquals(rewrite(resultList, null), second);
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void changedClassResultIsRewritten() throws Exception {
+        ClassResultCache cache = new ClassResultCache(UNCAPPED);
+        rewrite(resultList(classResult("D21", ANNA), classResult("H21", BO, CARL)), cache);
+
+        // A status changed in H21, and a finisher in D21, which moves the positional Ids of H21.
+        String disqualified = personResult("Ek", "Bo", "Disqualified", "IFK Lidingö");
+        String changed = resultList(classResult("D21", ANNA, DAN), classResult("H21", disqualified, CARL));
+        String output = rewrite(changed, cache);
+        assertEquals(rewrite(changed, null), output);
+        assertTrue(output.contains("<Status>Disqualified</Status>"));
+        assertEquals(0, cache.getHits());
+        assertEquals(4, cache.getMisses());
+
+        // Only the class which changed.
+        String unchangedD21 = resultList(classResult("D21", ANNA, DAN), classResult("H21", BO, CARL));
+        assertEquals(rewrite(unchangedD21, null), rewrite(unchangedD21, cache));
+        assertEquals(1, cache.getHits());
+        assertEquals(5, cache.getMisses());
+    }
+
+    @Test
+    public void classResultWhoseHashCollidesIsRewritten() throws Exception {
+        // Every element has the same hash.
+        ClassResultCache cache = new ClassResultCache(UNCAPPED) {
+            @Override
+            long hashOf(CharSequence content) {
+                return 42;
+            }
+        };
+        String resultList = resultList(classResult("D21", ANNA), classResult("H21", BO, CARL),
+                classResult("H35", DAN));
+        String expected = rewrite(resultList, null);
+        assertEquals(expected, rewrite(resultList, cache));
+        // Each element is looked up under the hash of another one, and never mixed up with it.
+        assertEquals(expected, rewrite(resultList, cache));
+        String other = resultList(classResult("D21", ANNA, BO), classResult("H21", CARL));
+        assertEquals(rewrite(other, null), rewrite(other, cache));
+        assertEquals(0, cache.getHits());
+        assertEquals(8, cache.getMisses());
+    }
+
+    @Test
+    public void outputIsTheSameWithAndWithoutCacheAcrossConsecutiveDocuments() throws Exception {
+        SimulatedEvent event = new SimulatedEvent(new SimulatedEvent.Config().competitors(600).classes(12));
+        ClassResultCache cache = new ClassResultCache(UNCAPPED);
+        for (long simulatedMillis = 3_600_000; simulatedMillis <= 3_600_000 + 4 * 30_000; simulatedMillis += 30_000) {
+            String resultList = resultList(event, simulatedMillis);
+            assertEquals(rewrite(resultList, null), rewrite(resultList, cache));
+        }
+        // Most classes unchanged 30 s apart.
+        assertTrue(cache.getHits() > 0);
+    }
+
+    @Test
+    public void largeResultListStaysWithinTheCap() throws Exception {
+        SimulatedEvent event = new SimulatedEvent(new SimulatedEvent.Config().competitors(2_000).classes(20));
+        String first = resultList(event, 3_600_000), second = resultList(event, 3_630_000);
+        long maxBytes = first.length() / 4;
+        ClassResultCache cache = new ClassResultCache(maxBytes);
+
+        assertEquals(rewrite(first, null), rewrite(first, cache));
+        assertTrue(cache.getBytes() > 0);
+        assertTrue(cache.getBytes() <= maxBytes);
+        assertEquals(rewrite(second, null), rewrite(second, cache));
+        assertTrue(cache.getBytes() <= maxBytes);
+        assertTrue(cache.getHits() > 0);
+
+        // Nothing fits: every class is streamed as without the cache.
+        ClassResultCache none = new ClassResultCache(0);
+        assertEquals(rewrite(second, null), rewrite(second, none));
+        assertEquals(0, none.getBytes());
+    }
+}
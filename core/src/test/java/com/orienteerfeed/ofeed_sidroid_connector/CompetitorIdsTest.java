@@ -0,0 +1,148 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+public class CompetitorIdsTest {
+
+    private static final String EVENT_ID = "1";
+    private static final Competitor ANNA = competitor("D21", "Berg", "Anna", "OK Ravinen", "100");
+    private static final Competitor BO = competitor("H21", "Ek", "Bo", "IFK Lidingö", "200");
+    private static final Competitor CARL = competitor("H21", "Falk", "Carl", "OK Ravinen", "300");
+    private static final Competitor DAN = competitor("H21", "Gran", "Dan", "OK Ravinen", "400");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Competitor competitor(String className, String family, String given, String organisation,
+                                         String controlCard) {
+        return new Competitor(0, className, family, given, organisation, controlCard);
+    }
+
+    /**
+     * Get the Ids of the competitors of one result list, in order.
+     */
+    private static int[] ids(CompetitorIds competitorIds, Competitor... competitors) {
+        XmlModifier.IdProvider provider = competitorIds.forDocument();
+        int[] ids = new int[competitors.length];
+        for (int i = 0; i < competitors.length; i++) ids[i] = provider.getId(competitors[i]);
+        return ids;
+    }
+
+    private File idFile() {
+        return new File(folder.getRoot(), "competitor-ids-" + EVENT_ID + ".bin");
+    }
+
+    @Test
+    public void idsDoNotDependOnTheOrderOfTheResultList() {
+        CompetitorIds competitorIds = new CompetitorIds(folder.getRoot(), EVENT_ID);
+        int[] first = assertIdsUnique(competitorIds, ANNA, BO, CARL);
+        int[] reordered = ids(competitorIds, CARL, ANNA, BO);
+
+        assertEquals(first[0], reordered[1]);
+        assertEquals(first[1], reordered[2]);
+        assertEquals(first[2], reordered[0]);
+    }
+
+    @Test
+    public void duplicateKeysInOneResultListGetDistinctIds() {
+        CompetitorIds competitorIds = new CompetitorIds(folder.getRoot(), EVENT_ID);
+        int[] first = ids(competitorIds, BO, CARL, BO);
+        int[] second = ids(competitorIds, BO, BO, CARL);
+
+        assertNotEquals(first[0], first[2]);
+        // Told apart by their order in the result list.
+        assertEquals(first[0], second[0]);
+        assertEquals(first[2], second[1]);
+        assertEquals(first[1], second[2]);
+    }
+
+    @Test
+    public void idsSurviveSaveAndReload() throws IOException {
+        CompetitorIds competitorIds = new CompetitorIds(folder.getRoot(), EVENT_ID);
+        int[] saved = ids(competitorIds, ANNA, BO, CARL);
+        competitorIds.save();
+
+        CompetitorIds reloaded = new CompetitorIds(folder.getRoot(), EVENT_ID);
+        int[] ids = ids(reloaded, CARL, DAN, BO, ANNA);
+        assertEquals(saved[2], ids[0]);
+        assertEquals(saved[1], ids[2]);
+        assertEquals(saved[0], ids[3]);
+        assertEquals(4, ids[1]);
+    }
+
+    @Test
+    public void newIdsAreAboveEveryIdInTheFile() throws IOException {
+        // Ids 7 and 3, eg, written by an earlier version.
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(idFile()))) {
+            out.writeLong(1);
+            out.writeInt(7);
+            out.writeLong(2);
+            out.writeInt(3);
+        }
+        CompetitorIds competitorIds = new CompetitorIds(folder.getRoot(), EVENT_ID);
+        int[] ids = ids(competitorIds, ANNA, BO);
+        assertEquals(8, ids[0]);
+        assertEquals(9, ids[1]);
+    }
+
+    @Test
+    public void partialRecordIsDropped() throws IOException {
+        CompetitorIds competitorIds = new CompetitorIds(folder.getRoot(), EVENT_ID);
+        int[] saved = ids(competitorIds, ANNA, BO);
+        competitorIds.save();
+        // A record cut short, eg, by a crash while saving.
+        try (FileOutputStream out = new FileOutputStream(idFile(), true)) {
+            out.write(new byte[]{1, 2, 3, 4, 5});
+        }
+
+        CompetitorIds reloaded = new CompetitorIds(folder.getRoot(), EVENT_ID);
+        int[] ids = ids(reloaded, ANNA, BO, CARL);
+        assertEquals(saved[0], ids[0]);
+        assertEquals(saved[1], ids[1]);
+        assertEquals(3, ids[2]);
+        reloaded.save();
+        assertEquals(3 * 12, idFile().length());
+
+        assertIdsUnique(new CompetitorIds(folder.getRoot(), EVENT_ID), ANNA, BO, CARL, DAN);
+    }
+
+    @Test
+    public void unreadableFileNeverGivesCollidingIds() throws IOException {
+        // A directory in place of the file can not be read.
+        assertTrue(idFile().mkdir());
+        CompetitorIds competitorIds = new CompetitorIds(folder.getRoot(), EVENT_ID);
+        int[] ids = assertIdsUnique(competitorIds, ANNA, BO, CARL);
+        competitorIds.save();
+        assertTrue(idFile().isFile());
+
+        // The records appended after the unreadable file give the same Ids, and new ones above.
+        CompetitorIds reloaded = new CompetitorIds(folder.getRoot(), EVENT_ID);
+        int[] reloadedIds = assertIdsUnique(reloaded, ANNA, BO, CARL, DAN);
+        for (int i = 0; i < ids.length; i++) assertEquals(ids[i], reloadedIds[i]);
+    }
+
+    /**
+     * Check that the competitors of a result list get distinct Ids.
+     *
+     * @return The Ids.
+     */
+    private static int[] assertIdsUnique(CompetitorIds competitorIds, Competitor... competitors) {
+        int[] ids = ids(competitorIds, competitors);
+        Set<Integer> distinct = new HashSet<>();
+        for (int id : ids) assertTrue("Id " + id + " given twice", distinct.add(id));
+        return ids;
+    }
+}
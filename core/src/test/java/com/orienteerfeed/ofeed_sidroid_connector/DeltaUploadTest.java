@@ -0,0 +1,144 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.OFeedStandIn;
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.SiDroidSimulator;
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.SimulatedClock;
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.SimulatedEvent;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delta upload of {@link ResultsPipeline} against the SI-Droid simulator and the OFeed stand-in:
+ * the partial result lists merged by OFeed must give the whole result list.
+ */
+public class DeltaUploadTest {
+
+    private static final String EVENT_ID = "1", EVENT_PASSWORD = "password";
+    private static final int UPLOADS = 6, FULL_UPLOAD_EVERY = 3, UPDATE_INTERVAL_SEC = 120;
+    // Longest real-time wait for SI-Droid to be checked, before the first tick.
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void partialUploadsMergeToWholeResultList() throws Exception {
+        List<OFeedStandIn.Upload> uploads = runEvent(new OFeedStandIn.Profile());
+
+        int deltas = 0;
+        for (OFeedStandIn.Upload upload : uploads) {
+            assertTrue(upload.isAccepted());
+            if (upload.delta) deltas++;
+        }
+        assertFalse(uploads.get(0).delta);
+        assertTrue(deltas > 0);
+        // Every fullUploadEvery uploads is whole.
+        assertTrue(deltas <= uploads.size() - uploads.size() / FULL_UPLOAD_EVERY);
+    }
+
+    @Test
+    public void rejectedPartialUploadFallsBackToWholeResultLists() throws Exception {
+        List<OFeedStandIn.Upload> uploads = runEvent(new OFeedStandIn.Profile().rejectDelta(true));
+
+        int deltas = 0;
+        for (OFeedStandIn.Upload upload : uploads) {
+            if (upload.delta) {
+                deltas++;
+                assertEquals(400, upload.responseCode);
+            } else {
+                assertTrue(upload.isAccepted());
+            }
+        }
+        assertEquals(1, deltas);
+    }
+
+    /**
+     * Run the pipeline with delta upload during part of an event, and check that the results of
+     * OFeed equal the whole result list at the end. The ticks run on the test thread, on
+     * simulated time, and each tick has made its upload when it returns.
+     *
+     * @return The uploads.
+     */
+    private List<OFeedStandIn.Upload> runEvent(OFeedStandIn.Profile profile) throws Exception {
+        // The clock is moved by the test, one update interval of the event per upload.
+        SimulatedClock clock = new SimulatedClock(0, 3_600_000);
+        File deltaDir = folder.newFolder("delta"), wholeDir = folder.newFolder("whole");
+        try (SiDroidSimulator siDroid = new SiDroidSimulator(
+                new SimulatedEvent(new SimulatedEvent.Config().competitors(200)), clock, 0);
+             OFeedStandIn oFeed = new OFeedStandIn(EVENT_ID, EVENT_PASSWORD, 0);
+             OFeedStandIn reference = new OFeedStandIn(EVENT_ID, EVENT_PASSWORD, 0)) {
+            oFeed.setProfile(profile);
+            ManualScheduledExecutor timer = new ManualScheduledExecutor(clock);
+            ResultsPipeline pipeline = newPipeline(siDroid, oFeed, deltaDir, true, timer, clock);
+            pipeline.start();
+            try {
+                // The first tick is scheduled as soon as SI-Droid has been checked.
+                assertTrue(timer.awaitQueued(TIMEOUT_MILLIS));
+                timer.runDue();
+                assertEquals(1, oFeed.getUploads().size());
+                for (int i = 2; i <= UPLOADS + 1; i++) {
+                    timer.advance(UPDATE_INTERVAL_SEC * 1_000L);
+                    assertEquals(i, oFeed.getUploads().size());
+                }
+            } finally {
+                pipeline.stop();
+            }
+
+            // The whole result list at the same time, with the same competitor Ids.
+            String idFile = "competitor-ids-" + EVENT_ID + ".bin";
+            Files.copy(new File(deltaDir, idFile).toPath(), new File(wholeDir, idFile).toPath());
+            ManualScheduledExecutor wholeTimer = new ManualScheduledExecutor(clock);
+            ResultsPipeline wholePipeline = newPipeline(siDroid, reference, wholeDir, false, wholeTimer, clock);
+            wholePipeline.start();
+            try {
+                assertTrue(wholeTimer.awaitQueued(TIMEOUT_MILLIS));
+                wholeTimer.runDue();
+                assertEquals(1, reference.getUploads().size());
+            } finally {
+                wholePipeline.stop();
+            }
+            String wholeResultList = new String(reference.getUploads().get(0).resultList, StandardCharsets.UTF_8);
+            Map<String, String> expected = OFeedStandIn.personResults(wholeResultList);
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, oFeed.getResults());
+            return oFeed.getUploads();
+        }
+    }
+
+    /**
+     * Pipeline whose ticks are run by a manual timer, and whose updates run on the thread of the
+     * tick.
+     */
+    private static ResultsPipeline newPipeline(SiDroidSimulator siDroid, OFeedStandIn oFeed, File dir,
+                                               boolean deltaUpload, ManualScheduledExecutor timer,
+                                               SimulatedClock clock) throws IOException {
+        ResultsPipeline.Config config = new ResultsPipeline.Config();
+        config.siDroidUrl = siDroid.getResultsUrl();
+        config.oFeedUrl = oFeed.getUploadUrl();
+        config.oFeedEventId = EVENT_ID;
+        config.oFeedAuthorization = ResultsPipeline.Config.basicAuthorization(EVENT_ID, EVENT_PASSWORD);
+        config.userAgent = "DeltaUploadTest";
+        config.updateIntervalSec = UPDATE_INTERVAL_SEC;
+        config.deltaUpload = deltaUpload;
+        config.fullUploadEvery = FULL_UPLOAD_EVERY;
+        config.filesDir = dir;
+        config.cacheDir = new File(dir, "cache");
+        if (!config.cacheDir.mkdirs()) throw new IOException("Can not create " + config.cacheDir);
+        return new ResultsPipeline(config, ResultsPipeline.Texts.ENGLISH,
+                new ObservableValue<>(ResultsServiceStatus.STOPPED), new CircularLog(1_000),
+                new CircularLog(1_000), null, new SessionStatistics(), timer, Runnable::run, clock::now);
+    }
+}
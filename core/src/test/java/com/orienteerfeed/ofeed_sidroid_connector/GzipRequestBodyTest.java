@@ -0,0 +1,91 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.OFeedStandIn;
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.ResultListWriter;
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.SimulatedEvent;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+
+/**
+ * {@link GzipRequestBody} must send a body which the server decodes to the original body.
+ */
+public class GzipRequestBodyTest {
+
+    private static final String EVENT_ID = "1", EVENT_PASSWORD = "password";
+    private static final MediaType XML_MEDIA_TYPE = MediaType.get("text/xml; charset=utf-8");
+
+    private static byte[] resultList() throws Exception {
+        StringWriter writer = new StringWriter();
+        ResultListWriter.write(new SimulatedEvent(new SimulatedEvent.Config().competitors(1_000)), 24 * 3_600_000L, writer);
+        return writer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static RequestBody form(byte[] resultList) {
+        return new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("eventId", EVENT_ID)
+                .addFormDataPart("file", "result-list-iof-3.0.xml", RequestBody.create(resultList, XML_MEDIA_TYPE))
+                .build();
+    }
+
+    @Test
+    public void decompressesToOriginalBody() throws Exception {
+        RequestBody form = form(resultList());
+        Buffer original = new Buffer();
+        form.writeTo(original);
+
+        GzipRequestBody gzip = new GzipRequestBody(form);
+        Buffer compressed = new Buffer();
+        gzip.writeTo(compressed);
+
+        assertEquals(compressed.size(), gzip.getCompressedBytes());
+        assertEquals(original.size(), gzip.getRawBytes());
+        assertTrue(gzip.getCompressedBytes() < gzip.getRawBytes());
+        byte[] decompressed = new GZIPInputStream(compressed.inputStream()).readAllBytes();
+        assertArrayEquals(original.readByteArray(), decompressed);
+    }
+
+    @Test
+    public void serverDecodesUpload() throws Exception {
+        byte[] resultList = resultList();
+        RequestBody form = form(resultList);
+        GzipRequestBody gzip = new GzipRequestBody(form);
+        OkHttpClient client = new OkHttpClient();
+        try (OFeedStandIn oFeed = new OFeedStandIn(EVENT_ID, EVENT_PASSWORD, 0)) {
+            Request request = new Request.Builder()
+                    .url(oFeed.getUploadUrl())
+                    .header("Authorization", ResultsPipeline.Config.basicAuthorization(EVENT_ID, EVENT_PASSWORD))
+                    .header("Content-Encoding", "gzip")
+                    .post(gzip)
+                    .build();
+            try (Response response = client.newCall(request).execute()) {
+                assertEquals(200, response.code());
+            }
+
+            OFeedStandIn.Upload upload = oFeed.getUploads().get(0);
+            assertTrue(upload.gzip);
+            assertArrayEquals(resultList, upload.resultList);
+            assertEquals(upload.bodyBytes, gzip.getCompressedBytes());
+            assertEquals(form.contentLength(), gzip.getRawBytes());
+        } finally {
+            client.dispatcher().executorService().shutdown();
+            client.connectionPool().evictAll();
+        }
+    }
+}
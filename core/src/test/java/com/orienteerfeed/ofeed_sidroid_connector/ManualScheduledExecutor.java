@@ -0,0 +1,202 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.SimulatedClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduled executor on simulated time, for tests. Nothing runs until the test moves the time
+ * with {@link #advance(long)}, and then the tasks due run on the test thread, in order, each with
+ * the clock set to its scheduled time. Tasks may be scheduled from other threads.
+ */
+class ManualScheduledExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final SimulatedClock clock;
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private long sequence = 0;
+    private boolean isShutdown = false;
+
+    /**
+     * @param clock Simulated clock standing still, moved by {@link #advance(long)}.
+     */
+    ManualScheduledExecutor(SimulatedClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Move the time forward, running the tasks which become due.
+     *
+     * @param millis Time to move (ms).
+     */
+    void advance(long millis) {
+        long target = clock.now() + millis;
+        Task task;
+        while ((task = pollDue(target)) != null) task.run();
+        clock.set(target);
+    }
+
+    private synchronized Task pollDue(long target) {
+        Task task = tasks.peek();
+        if (task == null || task.dueMillis > target) return null;
+        tasks.poll();
+        task.isDone = true;
+        if (task.dueMillis > clock.now()) clock.set(task.dueMillis);
+        return task;
+    }
+
+    /**
+     * Run the tasks which are due now, eg, after the clock has been moved without running them,
+     * as when a device wakes up.
+     */
+    void runDue() {
+        advance(0);
+    }
+
+    /**
+     * Get the number of tasks scheduled and not cancelled.
+     */
+    synchronized int getQueued() {
+        return tasks.size();
+    }
+
+    /**
+     * Wait for a task to be scheduled, eg, by another thread.
+     *
+     * @param timeoutMillis Max time to wait, in real time (ms).
+     * @return True if a task is scheduled.
+     */
+    synchronized boolean awaitQueued(long timeoutMillis) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (tasks.isEmpty()) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (remainingMillis <= 0) return false;
+            wait(remainingMillis);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        if (isShutdown) throw new RejectedExecutionException("Shut down");
+        Task task = new Task(command, clock.now() + Math.max(0, unit.toMillis(delay)), sequence++);
+        tasks.add(task);
+        notifyAll();
+        return task;
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        isShutdown = true;
+        tasks.clear();
+    }
+
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<>();
+        for (Task task : tasks) pending.add(task.command);
+        shutdown();
+        return pending;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return isShutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        return isShutdown;
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) {
+        return isShutdown;
+    }
+
+    private class Task implements ScheduledFuture<Object> {
+        final Runnable command;
+        final long dueMillis, sequence;
+        boolean isCancelled = false, isDone = false;
+
+        Task(Runnable command, long dueMillis, long sequence) {
+            this.command = command;
+            this.dueMillis = dueMillis;
+            this.sequence = sequence;
+        }
+
+        void run() {
+            command.run();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueMillis - clock.now(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Task task = (Task) other;
+            int order = Long.compare(dueMillis, task.dueMillis);
+            return order != 0 ? order : Long.compare(sequence, task.sequence);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (ManualScheduledExecutor.this) {
+                if (isDone || isCancelled) return false;
+                isCancelled = true;
+                tasks.remove(this);
+                return true;
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return isDone || isCancelled;
+        }
+
+        @Override
+        public Object get() {
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+public class ResultListDeltaTest {
+
+    private static String resultList(String createTime, String eventName, String... classResults) {
+        StringBuilder document = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ResultList iofVersion=\"3.0\" createTime=\"" + createTime + "\">\n"
+                + "  <Event><Name>" + eventName + "</Name></Event>\n");
+        for (String classResult : classResults) document.append(classResult);
+        return document.append("</ResultList>\n").toString();
+    }
+
+    private static String classResult(String className, String... personResults) {
+        StringBuilder element = new StringBuilder("  <ClassResult>\n    <Class><Name>" + className + "</Name></Class>\n");
+        for (String personResult : personResults) element.append(personResult);
+        return element.append("  </ClassResult>\n").toString();
+    }
+
+    private static String personResult(int id, String time) {
+        return "    <PersonResult>\n      <Person><Id>" + id + "</Id></Person>\n"
+                + "      <Result><Time>" + time + "</Time></Result>\n    </PersonResult>\n";
+    }
+
+    private static ResultListDelta build(String document, ResultListDelta.Snapshot previous, StringWriter out)
+            throws IOException {
+        return ResultListDelta.build(new StringReader(document), previous, out);
+    }
+
+    @Test
+    public void onlyChangedPersonResultsAreWritten() throws IOException {
+        ResultListDelta first = build(resultList("10:00", "Event",
+                classResult("H21", personResult(1, "100"), personResult(2, "200")),
+                classResult("D21", personResult(3, "300"))), null, null);
+        StringWriter out = new StringWriter();
+        ResultListDelta second = build(resultList("10:01", "Event",
+                classResult("H21", personResult(1, "100"), personResult(2, "190")),
+                classResult("D21", personResult(3, "300"))), first.snapshot, out);
+
+        assertEquals(3, second.total);
+        assertEquals(1, second.changed);
+        assertEquals(0, second.removed);
+        assertFalse(second.outsideChanged);
+        String delta = out.toString();
+        assertTrue(delta.contains("<ResultList iofVersion=\"3.0\" createTime=\"10:01\" status=\"Delta\">"));
+        assertTrue(delta.contains("<Event><Name>Event</Name></Event>"));
+        assertTrue(delta.contains("<Class><Name>H21</Name></Class>"));
+        assertTrue(delta.contains(personResult(2, "190")));
+        assertFalse(delta.contains("<Id>1</Id>"));
+        assertFalse(delta.contains("D21"));
+    }
+
+    @Test
+    public void removedPersonResultsAreCounted() throws IOException {
+        ResultListDelta first = build(resultList("10:00", "Event",
+                classResult("H21", personResult(1, "100"), personResult(2, "200"))), null, null);
+        ResultListDelta second = build(resultList("10:00", "Event",
+                classResult("H21", personResult(1, "100"))), first.snapshot, null);
+
+        assertEquals(0, second.changed);
+        assertEquals(1, second.removed);
+    }
+
+    @Test
+    public void changesOutsidePersonResultsAreDetected() throws IOException {
+        String classes = classResult("H21", personResult(1, "100"));
+        ResultListDelta first = build(resultList("10:00", "Event", classes), null, null);
+
+        assertFalse(build(resultList("10:05", "Event", classes), first.snapshot, null).outsideChanged);
+        assertTrue(build(resultList("10:00", "Renamed event", classes), first.snapshot, null).outsideChanged);
+        assertTrue(build(resultList("10:00", "Event", classes, classResult("D21")), first.snapshot, null)
+                .outsideChanged);
+    }
+}
@@ -0,0 +1,140 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SessionJournalTest {
+
+    private static final int HEADER_BYTES = 4 + 8 + 1;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> texts(List<SessionJournal.Record> records) {
+        List<String> texts = new ArrayList<>();
+        for (SessionJournal.Record record : records) texts.add(record.text);
+        return texts;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private File segmentFile(long segment) {
+        return new File(SessionJournal.getDirectory(folder.getRoot()), "journal-" + segment + ".bin");
+    }
+
+    @Test
+    public void recordsAreReadNewestFirstAndPaged() throws IOException {
+        SessionJournal journal = new SessionJournal(folder.getRoot());
+        for (int i = 0; i < 10; i++) {
+            journal.append(i % 2 == 0 ? SessionJournal.Source.SERVER : SessionJournal.Source.HTTP, 1_000L * i,
+                    "record " + i);
+        }
+        journal.close();
+
+        File filesDir = folder.getRoot();
+        assertEquals(List.of("record 9", "record 8", "record 7"), texts(SessionJournal.read(filesDir, null, 0, 3)));
+        assertEquals(List.of("record 6", "record 5", "record 4"), texts(SessionJournal.read(filesDir, null, 3, 3)));
+        assertEquals(List.of("record 0"), texts(SessionJournal.read(filesDir, null, 9, 5)));
+        assertTrue(SessionJournal.read(filesDir, null, 10, 5).isEmpty());
+
+        List<SessionJournal.Record> http = SessionJournal.read(filesDir, SessionJournal.Source.HTTP, 1, 2);
+        assertEquals(List.of("record 7", "record 5"), texts(http));
+        assertEquals(SessionJournal.Source.HTTP, http.get(0).source);
+        assertEquals(7_000, http.get(0).timeMillis);
+    }
+
+    @Test
+    public void fullSegmentRollsOverAndOldSegmentsAreDeleted() throws IOException {
+        // Each record takes more than half a segment, so each one starts a new segment.
+        String filler = repeat('x', SessionJournal.SEGMENT_BYTES / 2 + 1);
+        int appended = SessionJournal.MAX_SEGMENTS + 2;
+        SessionJournal journal = new SessionJournal(folder.getRoot());
+        for (int i = 0; i < appended; i++) journal.append(SessionJournal.Source.SERVER, i, i + filler);
+        journal.close();
+
+        String[] names = SessionJournal.getDirectory(folder.getRoot()).list();
+        assertEquals(SessionJournal.MAX_SEGMENTS, names.length);
+        for (int i = 1; i <= appended; i++) {
+            assertEquals(i > appended - SessionJournal.MAX_SEGMENTS, segmentFile(i).exists());
+        }
+
+        List<SessionJournal.Record> records = SessionJournal.read(folder.getRoot(), null, 0, 100);
+        assertEquals(SessionJournal.MAX_SEGMENTS, records.size());
+        assertEquals((appended - 1) + filler, records.get(0).text);
+        assertEquals((appended - SessionJournal.MAX_SEGMENTS) + filler, records.get(records.size() - 1).text);
+
+        // Paging across segments.
+        records = SessionJournal.read(folder.getRoot(), null, 2, 2);
+        assertEquals(List.of((appended - 3) + filler, (appended - 4) + filler), texts(records));
+    }
+
+    @Test
+    public void reopenedJournalAppendsAfterTheLastCompleteRecord() throws IOException {
+        SessionJournal journal = new SessionJournal(folder.getRoot());
+        journal.append(SessionJournal.Source.SERVER, 1, "a");
+        journal.append(SessionJournal.Source.SERVER, 2, "bc");
+        journal.close();
+
+        // A record torn by the death of the process: the body was written, but not the length,
+        // which is written last. Its text happens to look like the start of another record.
+        int end = 2 * HEADER_BYTES + 3;
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(1), "rw")) {
+            file.seek(end + 4);
+            file.writeLong(3);
+            file.writeByte('S');
+            file.writeByte('x');
+            file.writeInt(1);
+            file.writeLong(4);
+            file.writeByte('S');
+            file.writeByte('!');
+        }
+        assertEquals(List.of("bc", "a"), texts(SessionJournal.read(folder.getRoot(), null, 0, 10)));
+
+        journal = new SessionJournal(folder.getRoot());
+        journal.append(SessionJournal.Source.HTTP, 5, "d");
+        journal.close();
+        // Nothing of the torn record is read, after a new record shorter than it.
+        List<SessionJournal.Record> records = SessionJournal.read(folder.getRoot(), null, 0, 10);
+        assertEquals(List.of("d", "bc", "a"), texts(records));
+        assertEquals(5, records.get(0).timeMillis);
+        assertEquals(SessionJournal.Source.HTTP, records.get(0).source);
+        assertArrayEquals(new String[]{segmentFile(1).getName()}, SessionJournal.getDirectory(folder.getRoot()).list());
+    }
+
+    @Test
+    public void longTextIsTruncatedBetweenCharacters() throws IOException {
+        // 2-byte characters, so that the limit falls within a character when it is odd.
+        String text = repeat('\u00e9', SessionJournal.MAX_TEXT_BYTES / 2 + 10);
+        // 4-byte characters (surrogate pairs), for each remainder of the limit.
+        StringBuilder emoji = new StringBuilder();
+        for (int i = 0; i < SessionJournal.MAX_TEXT_BYTES / 4 + 10; i++) emoji.appendCodePoint(0x1F3C3);
+        SessionJournal journal = new SessionJournal(folder.getRoot());
+        journal.append(SessionJournal.Source.SERVER, 1, text);
+        journal.append(SessionJournal.Source.SERVER, 2, emoji.toString());
+        journal.close();
+
+        List<SessionJournal.Record> records = SessionJournal.read(folder.getRoot(), null, 0, 10);
+        assertEquals(2, records.size());
+        String truncatedEmoji = records.get(0).text, truncatedText = records.get(1).text;
+        assertEquals(SessionJournal.MAX_TEXT_BYTES / 2, truncatedText.length());
+        assertTrue(text.startsWith(truncatedText));
+        assertEquals(SessionJournal.MAX_TEXT_BYTES / 4, truncatedEmoji.codePointCount(0, truncatedEmoji.length()));
+        assertTrue(emoji.toString().startsWith(truncatedEmoji));
+    }
+}
@@ -0,0 +1,145 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.SimulatedClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+public class SingleFlightSchedulerTest {
+
+    private static final long STALE_AFTER_MILLIS = 30_000;
+
+    // Runs are queued here, and run by the test one at a time.
+    private final Queue<Runnable> worker = new ArrayDeque<>();
+    private final SimulatedClock clock = new SimulatedClock(0);
+    private final List<SingleFlightScheduler.Run> runs = new ArrayList<>();
+    private final List<String> events = new ArrayList<>();
+    private final SingleFlightScheduler.Listener listener = new SingleFlightScheduler.Listener() {
+        @Override
+        public void onTickDeferred(boolean coalesced, long deferredTicks, long coalescedTicks) {
+            events.add((coalesced ? "coalesced " : "deferred ") + deferredTicks + "/" + coalescedTicks);
+        }
+
+        @Override
+        public void onRunCancelled(long cancelledRuns) {
+            events.add("cancelled " + cancelledRuns);
+        }
+    };
+    private SingleFlightScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new SingleFlightScheduler(runs::add, listener, STALE_AFTER_MILLIS, worker::add, clock::now);
+    }
+
+    /**
+     * Run the next run queued on the worker, until it finishes.
+     */
+    private void runNext() {
+        Runnable run = worker.poll();
+        assertNotNull("No run queued", run);
+        run.run();
+    }
+
+    @Test
+    public void tickStartsRunAtOnce() {
+        scheduler.tick();
+        assertEquals(1, worker.size());
+        runNext();
+        assertEquals(1, runs.size());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void tickWhileRunningIsDeferredUntilTheRunHasFinished() {
+        scheduler.tick();
+        scheduler.tick();
+        assertEquals(1, worker.size());
+        assertEquals(List.of("deferred 1/0"), events);
+
+        runNext();
+        // The deferred run starts as soon as the first one has finished.
+        assertEquals(1, worker.size());
+        runNext();
+        assertEquals(2, runs.size());
+        assertTrue(worker.isEmpty());
+    }
+
+    @Test
+    public void ticksWhileRunPendingAreCoalesced() {
+        scheduler.tick();
+        scheduler.tick();
+        scheduler.tick();
+        scheduler.tick();
+        assertEquals(List.of("deferred 1/0", "coalesced 2/1", "coalesced 3/2"), events);
+
+        runNext();
+        runNext();
+        // One pending run for the three ticks, no backlog.
+        assertEquals(2, runs.size());
+        assertTrue(worker.isEmpty());
+        assertEquals("ticks=4 runs=2 deferred=3 coalesced=2 cancelled=0", scheduler.getStatistics());
+    }
+
+    @Test
+    public void runInFlightForLongerThanTheLimitIsCancelledByTheNextTick() {
+        boolean[] cancelled = {false};
+        scheduler = new SingleFlightScheduler(run -> {
+            runs.add(run);
+            if (runs.size() > 1) return;
+            // Blocked in an operation, eg, an HTTP call, while ticks arrive on the timer thread.
+            run.setCancellable(() -> cancelled[0] = true);
+            clock.advance(STALE_AFTER_MILLIS);
+            scheduler.tick();
+            assertFalse(run.isCancelled());
+            clock.advance(1);
+            scheduler.tick();
+            assertTrue(run.isCancelled());
+            assertTrue(cancelled[0]);
+        }, listener, STALE_AFTER_MILLIS, worker::add, clock::now);
+
+        scheduler.tick();
+        runNext();
+        assertEquals(List.of("deferred 1/0", "coalesced 2/1", "cancelled 1"), events);
+        // The pending run fetches newer results.
+        runNext();
+        assertEquals(2, runs.size());
+        assertFalse(runs.get(1).isCancelled());
+    }
+
+    @Test
+    public void operationRegisteredAfterCancelIsCancelledAtOnce() {
+        scheduler.tick();
+        clock.advance(STALE_AFTER_MILLIS + 1);
+        scheduler.tick();
+        assertEquals(List.of("deferred 1/0", "cancelled 1"), events);
+
+        boolean[] cancelled = {false};
+        runNext();
+        runs.get(0).setCancellable(() -> cancelled[0] = true);
+        assertTrue(cancelled[0]);
+    }
+
+    @Test
+    public void stopCancelsTheRunInFlightAndDropsPendingTicks() {
+        scheduler.tick();
+        scheduler.tick();
+        scheduler.stop();
+        scheduler.tick();
+
+        runNext();
+        assertTrue(runs.get(0).isCancelled());
+        assertTrue(worker.isEmpty());
+        assertEquals("ticks=2 runs=1 deferred=1 coalesced=0 cancelled=0", scheduler.getStatistics());
+    }
+}
@@ -0,0 +1,141 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.SimulatedClock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TickTimerTest {
+
+    private static final long PERIOD_MILLIS = 30_000;
+    // Wall-clock time at the start of each test, 5 ms past a boundary.
+    private static final long START_MILLIS = 1_750_000_020_005L;
+
+    private final SimulatedClock clock = new SimulatedClock(0, START_MILLIS);
+    private final ManualScheduledExecutor executor = new ManualScheduledExecutor(clock);
+    private final List<Long> ticks = new ArrayList<>(), preTicks = new ArrayList<>();
+
+    private TickTimer newTimer(long periodMillis, long maxJitterMillis) {
+        return new TickTimer(periodMillis, maxJitterMillis, () -> ticks.add(clock.now()), executor, clock::now);
+    }
+
+    @Test
+    public void ticksAreAlignedToBoundariesWithoutDrift() {
+        TickTimer timer = newTimer(PERIOD_MILLIS, 0);
+        timer.start(0);
+        executor.advance(10 * 60_000);
+
+        assertEquals(START_MILLIS, (long) ticks.get(0));
+        // The second tick is at the first boundary at least half a period after the first one.
+        assertEquals(START_MILLIS - 5 + PERIOD_MILLIS, (long) ticks.get(1));
+        for (int i = 2; i < ticks.size(); i++) {
+            assertEquals(PERIOD_MILLIS, ticks.get(i) - ticks.get(i - 1));
+            assertEquals(0, ticks.get(i) % PERIOD_MILLIS);
+        }
+        assertEquals(21, ticks.size());
+        assertEquals(0, timer.getLatestLatenessMillis());
+    }
+
+    @Test
+    public void missedBoundariesAreSkippedAndTheTicksStayAligned() {
+        TickTimer timer = newTimer(PERIOD_MILLIS, 0);
+        timer.start(0);
+        executor.advance(PERIOD_MILLIS);
+        long lastOnTime = ticks.get(ticks.size() - 1);
+
+        // Asleep past two boundaries: the overdue tick runs late when the device wakes up.
+        clock.advance(2 * PERIOD_MILLIS + 10_000);
+        executor.runDue();
+        assertEquals(clock.now(), (long) ticks.get(ticks.size() - 1));
+        assertEquals(clock.now() - (lastOnTime + PERIOD_MILLIS), timer.getLatestLatenessMillis());
+
+        // No burst of ticks for the missed boundaries, the next tick is at the next boundary.
+        int ticksBefore = ticks.size();
+        executor.advance(PERIOD_MILLIS);
+        assertEquals(ticksBefore + 1, ticks.size());
+        long next = ticks.get(ticks.size() - 1);
+        assertEquals(lastOnTime + 3 * PERIOD_MILLIS, next);
+        assertEquals(0, next % PERIOD_MILLIS);
+        assertTrue(timer.getStatistics(), timer.getStatistics().contains("missed=1"));
+    }
+
+    @Test
+    public void changedPeriodStartsAtABoundaryOfTheNewPeriod() {
+        TickTimer timer = newTimer(PERIOD_MILLIS, 0);
+        timer.start(0);
+        executor.advance(PERIOD_MILLIS);
+        long previous = ticks.get(ticks.size() - 1);
+
+        timer.setPeriod(60_000);
+        executor.advance(5 * 60_000);
+        long next = ticks.get(2);
+        assertEquals(0, next % 60_000);
+        assertTrue(next - previous >= 30_000);
+        for (int i = 3; i < ticks.size(); i++) assertEquals(60_000, ticks.get(i) - ticks.get(i - 1));
+    }
+
+    @Test
+    public void jitterDelaysEachTickByAtMostHalfThePeriod() {
+        // Asked for more than half the period, limited to half.
+        TickTimer timer = newTimer(PERIOD_MILLIS, PERIOD_MILLIS);
+        timer.start(0);
+        executor.advance(60 * 60_000);
+
+        boolean jittered = false;
+        for (int i = 1; i < ticks.size(); i++) {
+            long delay = ticks.get(i) % PERIOD_MILLIS;
+            assertTrue("Delay " + delay, delay < PERIOD_MILLIS / 2);
+            if (delay > 0) jittered = true;
+        }
+        assertTrue(jittered);
+        // The jitter does not move the boundaries.
+        assertTrue(ticks.size() >= 119);
+        assertEquals(0, timer.getLatestLatenessMillis());
+    }
+
+    @Test
+    public void preTickRunsTheLeadTimeBeforeEachRegularTick() {
+        TickTimer timer = newTimer(PERIOD_MILLIS, 0);
+        timer.setPreTick(5_000, () -> preTicks.add(clock.now()));
+        timer.start(0);
+        executor.advance(3 * PERIOD_MILLIS);
+
+        // Not before the first tick, which is less than the lead time away.
+        assertEquals(4, ticks.size());
+        assertEquals(3, preTicks.size());
+        for (int i = 0; i < preTicks.size(); i++) {
+            assertEquals(ticks.get(i + 1) - 5_000, (long) preTicks.get(i));
+        }
+    }
+
+    @Test
+    public void extraTickDoesNotMoveTheRegularTicks() {
+        TickTimer timer = newTimer(PERIOD_MILLIS, 0);
+        timer.start(0);
+        executor.advance(1_000);
+        timer.tickOnce(7_000);
+        executor.advance(2 * PERIOD_MILLIS);
+
+        assertEquals(START_MILLIS + 1_000 + 7_000, (long) ticks.get(1));
+        assertEquals(START_MILLIS - 5 + PERIOD_MILLIS, (long) ticks.get(2));
+        assertEquals(START_MILLIS - 5 + 2 * PERIOD_MILLIS, (long) ticks.get(3));
+    }
+
+    @Test
+    public void stoppedTimerDoesNotTick() {
+        TickTimer timer = newTimer(PERIOD_MILLIS, 0);
+        timer.start(0);
+        executor.advance(PERIOD_MILLIS);
+        int ticksBefore = ticks.size();
+        timer.stop();
+        timer.tickOnce(0);
+        executor.advance(5 * PERIOD_MILLIS);
+        assertEquals(ticksBefore, ticks.size());
+        assertEquals(0, executor.getQueued());
+    }
+}
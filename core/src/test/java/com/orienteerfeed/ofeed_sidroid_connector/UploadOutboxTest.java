@@ -0,0 +1,122 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class UploadOutboxTest {
+
+    private static final String EVENT_ID = "1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Put a result list in the outbox the way the pipeline does, through a temporary file.
+     */
+    private static UploadOutbox.Entry put(UploadOutbox outbox, String resultList, String fingerprint)
+            throws IOException {
+        File temp = outbox.createTempFile();
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(resultList.getBytes(StandardCharsets.UTF_8));
+        }
+        outbox.put(temp, fingerprint);
+        UploadOutbox.Entry entry = outbox.peek();
+        assertNotNull(entry);
+        return entry;
+    }
+
+    private static String read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[(int) file.length()];
+            int length = 0, count;
+            while (length < buffer.length && (count = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += count;
+            }
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private File outboxDir() {
+        return new File(folder.getRoot(), "outbox-" + EVENT_ID);
+    }
+
+    @Test
+    public void newerResultListReplacesTheOlderOne() throws IOException {
+        UploadOutbox outbox = new UploadOutbox(folder.getRoot(), EVENT_ID);
+        assertNull(outbox.peek());
+        UploadOutbox.Entry first = put(outbox, "<first/>", "aaaa");
+        UploadOutbox.Entry second = put(outbox, "<second/>", "bbbb");
+
+        assertTrue(second.sequence > first.sequence);
+        assertEquals("bbbb", second.fingerprint);
+        assertEquals("<second/>", read(second.file));
+        assertFalse(first.file.exists());
+        assertArrayEquals(new String[]{second.file.getName()}, outboxDir().list());
+    }
+
+    @Test
+    public void acknowledgeOfReplacedResultListKeepsTheNewerOne() throws IOException {
+        UploadOutbox outbox = new UploadOutbox(folder.getRoot(), EVENT_ID);
+        UploadOutbox.Entry uploading = put(outbox, "<first/>", "aaaa");
+        // Replaced while the upload of the first one was in flight.
+        UploadOutbox.Entry second = put(outbox, "<second/>", "bbbb");
+
+        outbox.acknowledge(uploading);
+        assertEquals(second.sequence, outbox.peek().sequence);
+        assertTrue(second.file.exists());
+
+        outbox.acknowledge(second);
+        assertNull(outbox.peek());
+        assertFalse(second.file.exists());
+    }
+
+    @Test
+    public void reopenedOutboxKeepsTheLatestResultList() throws IOException {
+        UploadOutbox outbox = new UploadOutbox(folder.getRoot(), EVENT_ID);
+        put(outbox, "<first/>", "aaaa");
+        UploadOutbox.Entry second = put(outbox, "<second/>", "bbbb");
+        // Left by a crash: an older result list not yet deleted, and a partially written file.
+        File older = new File(outboxDir(), "payload-" + (second.sequence - 1) + "-aaaa.xml");
+        try (OutputStream out = new FileOutputStream(older)) {
+            out.write("<first/>".getBytes(StandardCharsets.UTF_8));
+        }
+        File temp = outbox.createTempFile();
+
+        UploadOutbox reopened = new UploadOutbox(folder.getRoot(), EVENT_ID);
+        UploadOutbox.Entry entry = reopened.peek();
+        assertNotNull(entry);
+        assertEquals(second.sequence, entry.sequence);
+        assertEquals("bbbb", entry.fingerprint);
+        assertEquals("<second/>", read(entry.file));
+        assertFalse(older.exists());
+        assertFalse(temp.exists());
+
+        // The sequence continues after the restart.
+        UploadOutbox.Entry third = put(reopened, "<third/>", "cccc");
+        assertEquals(second.sequence + 1, third.sequence);
+        assertArrayEquals(new String[]{third.file.getName()}, outboxDir().list());
+    }
+
+    @Test
+    public void eachEventHasItsOwnOutbox() throws IOException {
+        put(new UploadOutbox(folder.getRoot(), EVENT_ID), "<first/>", "aaaa");
+        assertNull(new UploadOutbox(folder.getRoot(), "2").peek());
+        assertNotNull(new UploadOutbox(folder.getRoot(), EVENT_ID).peek());
+    }
+}
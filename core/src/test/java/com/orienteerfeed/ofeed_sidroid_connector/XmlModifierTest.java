@@ -0,0 +1,91 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.ResultListWriter;
+import com.orienteerfeed.ofeed_sidroid_connector.simulator.SimulatedEvent;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * The streaming and DOM engines of {@link XmlModifier} must give the same result list.
+ */
+public class XmlModifierTest {
+
+    @Test
+    public void enginesGiveSameResultListForMultiClassResultList() throws Exception {
+        SimulatedEvent event = new SimulatedEvent(new SimulatedEvent.Config().competitors(500).classes(8));
+        StringWriter resultList = new StringWriter();
+        ResultListWriter.write(event, 24 * 3_600_000L, resultList);
+
+        String streaming = XmlModifier.updateOrInsertIds(resultList.toString(), XmlModifier.Mode.STREAMING);
+        String dom = XmlModifier.updateOrInsertIds(resultList.toString(), XmlModifier.Mode.DOM);
+
+        // Same layout, only the order of attributes may differ, the DOM sorts them.
+        assertEquals(streaming.length(), dom.length());
+        assertEquals(streaming.replaceFirst("<ResultList [^>]*>", ""), dom.replaceFirst("<ResultList [^>]*>", ""));
+        assertTrue(parse(streaming).isEqualNode(parse(dom)));
+        assertEquals(ids(streaming), ids(dom));
+        List<String> ids = ids(streaming);
+        assertEquals(500, ids.size());
+        for (int i = 0; i < ids.size(); i++) assertEquals(String.valueOf(i + 1), ids.get(i));
+    }
+
+    @Test
+    public void enginesGiveSameDocumentForUnusualMarkup() throws Exception {
+        String resultList = "<?xml version='1.0' encoding='ISO-8859-1'?>\r\n"
+                + "<!-- Exported -->\r\n"
+                + "<ResultList iofVersion=\"3.0\">\r\n"
+                + "  <ClassResult><Class><Name>H21</Name></Class>\r\n"
+                + "    <PersonResult><Person><Id>77</Id><Name><Family>O&apos;Neill</Family></Name></Person></PersonResult>\r\n"
+                + "    <PersonResult><Person><Id/><Name><Family>Berg</Family></Name></Person></PersonResult>\r\n"
+                + "    <PersonResult><Person><Name><Family>Ek</Family><Given></Given></Name></Person>"
+                + "<Result><ControlCard>123</ControlCard></Result></PersonResult>\r\n"
+                + "  </ClassResult>\r\n"
+                + "  <ClassResult><Class><Name>D21</Name></Class>\r\n"
+                + "    <PersonResult><Person/></PersonResult>\r\n"
+                + "  </ClassResult>\r\n"
+                + "</ResultList>\r\n";
+
+        String streaming = XmlModifier.updateOrInsertIds(resultList, XmlModifier.Mode.STREAMING);
+        String dom = XmlModifier.updateOrInsertIds(resultList, XmlModifier.Mode.DOM);
+
+        assertTrue(streaming.startsWith("<?xml version='1.0' encoding='UTF-8'?>"));
+        assertTrue(dom.startsWith("<?xml version='1.0' encoding='UTF-8'?>"));
+        Document streamingDocument = parse(streaming), domDocument = parse(dom);
+        assertTrue(streamingDocument.isEqualNode(domDocument));
+        assertEquals(List.of("1", "2", "3", "4"), ids(streaming));
+        assertEquals(ids(streaming), ids(dom));
+    }
+
+    private static Document parse(String xml) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new InputSource(new StringReader(xml)));
+        document.normalizeDocument();
+        return document;
+    }
+
+    /**
+     * Get the Id of each Person, in order.
+     */
+    private static List<String> ids(String xml) throws Exception {
+        List<String> ids = new ArrayList<>();
+        NodeList persons = parse(xml).getElementsByTagName("Person");
+        for (int i = 0; i < persons.getLength(); i++) {
+            ids.add(((Element) persons.item(i)).getElementsByTagName("Id").item(0).getTextContent());
+        }
+        return ids;
+    }
+}
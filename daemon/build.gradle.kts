@@ -0,0 +1,24 @@
+// Command-line daemon which runs the pipeline of the app on any JVM. Run with
+// ./gradlew :daemon:run --args=<config.properties>, or install with ./gradlew :daemon:installDist.
+plugins {
+    application
+}
+
+// Set build directory outside Android Studio development environment.
+var externalBuildDir = project.findProperty("EXTERNAL_BUILD_DIR") as String
+layout.buildDirectory.set(File("${externalBuildDir}${project.name}"))
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+application {
+    mainClass.set("com.orienteerfeed.ofeed_sidroid_connector.ConnectorDaemon")
+    applicationName = "ofeed-connector"
+}
+
+dependencies {
+    implementation(project(":core"))
+    compileOnly(libs.androidx.annotation)
+}
@@ -0,0 +1,158 @@
+package com.orienteerfeed.ofeed_sidroid_connector;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Command-line daemon which runs the same {@link ResultsPipeline} as the app, on any JVM, eg, on
+ * a computer at the finish with a better uplink than the tablet running SI-Droid Event.
+ * <p>
+ * The settings are read from a properties file given as the only argument, see the README.
+ * Competitor Ids, the outbox and the journal are kept in a data directory of the daemon, so
+ * several daemons can run side by side, each with its own settings and data directory. The log
+ * is written to standard output, and the statistics of the session when the daemon is stopped.
+ */
+public final class ConnectorDaemon {
+
+    private static final String USER_AGENT = "OFeed SI-Droid Connector daemon";
+    // Max number of items in each log. Items are also written to standard output and the journal.
+    private static final int LOG_CAPACITY = 1_000;
+
+    private ConnectorDaemon() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: ofeed-connector <config.properties>");
+            System.exit(2);
+        }
+        File configFile = new File(args[0]).getAbsoluteFile();
+        ResultsPipeline.Config config;
+        boolean logHttp;
+        try {
+            Properties properties = load(configFile);
+            config = readConfig(properties, configFile.getParentFile());
+            logHttp = Boolean.parseBoolean(properties.getProperty("log.http", "false"));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(configFile + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        PrintStream out = System.out;
+        SessionJournal journal = null;
+        try {
+            journal = new SessionJournal(config.filesDir);
+        } catch (IOException e) {
+            out.println("Can not open the session journal. " + e.getMessage());
+        }
+        SessionJournal sessionJournal = journal;
+        CircularLog serverLog = new CircularLog(LOG_CAPACITY, item -> {
+            out.println(item.getTime() + " " + item.text);
+            if (sessionJournal != null) sessionJournal.append(SessionJournal.Source.SERVER, item.timeMillis, item.text);
+        });
+        CircularLog httpLog = new CircularLog(LOG_CAPACITY, item -> {
+            if (logHttp) out.println(item.getTime() + " http " + item.text);
+            if (sessionJournal != null) sessionJournal.append(SessionJournal.Source.HTTP, item.timeMillis, item.text);
+        });
+        SessionStatistics statistics = new SessionStatistics();
+        ObservableValue<ResultsServiceStatus> status = new ObservableValue<>(ResultsServiceStatus.STOPPED);
+
+        ResultsPipeline pipeline = new ResultsPipeline(config, ResultsPipeline.Texts.ENGLISH, status,
+                serverLog, httpLog, journal, statistics);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            pipeline.stop();
+            out.println(statistics.toText());
+            if (sessionJournal != null) sessionJournal.close();
+        }, "ConnectorDaemonShutdown"));
+
+        out.println("Uploading " + config.siDroidUrl + " to " + config.oFeedUrl + ", event " + config.oFeedEventId
+                + ", data in " + config.filesDir);
+        pipeline.start();
+        Thread.currentThread().join();
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file);
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    /**
+     * Read the settings of the pipeline. Defaults as in the app.
+     *
+     * @param properties The settings.
+     * @param baseDir    Relative paths are resolved against this, typically the directory of the
+     *                   settings file.
+     * @throws IllegalArgumentException If a setting is missing or invalid.
+     */
+    static ResultsPipeline.Config readConfig(Properties properties, File baseDir) {
+        ResultsPipeline.Config config = new ResultsPipeline.Config();
+        config.siDroidUrl = required(properties, "si_droid.url");
+        config.oFeedUrl = properties.getProperty("ofeed.url", "https://api.orienteerfeed.com/rest/v1/upload/iof").trim();
+        config.oFeedEventId = required(properties, "ofeed.event_id");
+        config.oFeedAuthorization = ResultsPipeline.Config.basicAuthorization(config.oFeedEventId,
+                required(properties, "ofeed.event_password"));
+        config.userAgent = properties.getProperty("user_agent", USER_AGENT).trim();
+        config.gzipUpload = Boolean.parseBoolean(properties.getProperty("ofeed.gzip_upload", "false").trim());
+        config.deltaUpload = Boolean.parseBoolean(properties.getProperty("ofeed.delta_upload", "false").trim());
+        config.fullUploadEvery = integer(properties, "ofeed.full_upload_every", 10);
+        config.updateIntervalSec = integer(properties, "update_interval_sec", 30);
+        config.updateJitterSec = integer(properties, "update_jitter_sec", 0);
+        String range = properties.getProperty("update_interval_range_sec");
+        if (range != null && !range.trim().isEmpty()) config.intervalRangeSec = integers(range, 2, "update_interval_range_sec");
+        config.timeoutsSec = new int[]{
+                integer(properties, "ofeed.timeout_connect_sec", 10),
+                integer(properties, "ofeed.timeout_read_sec", 10),
+                integer(properties, "ofeed.timeout_write_sec", 10),
+                integer(properties, "ofeed.timeout_call_sec", 0)};
+        config.probeIntervalSec = integer(properties, "si_droid.probe_interval_sec", 3);
+        config.preConnectLeadSec = integer(properties, "ofeed.pre_connect_lead_sec", 0);
+        config.classResultCache = Boolean.parseBoolean(properties.getProperty("class_result_cache", "false").trim());
+        config.recordReplay = Boolean.parseBoolean(properties.getProperty("replay.record", "false").trim());
+
+        File dataDir = new File(properties.getProperty("data_dir", "data-" + config.oFeedEventId).trim());
+        if (!dataDir.isAbsolute()) dataDir = new File(baseDir, dataDir.getPath());
+        File cacheDir = new File(dataDir, "cache");
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IllegalArgumentException("Can not create the data directory " + dataDir);
+        }
+        config.filesDir = dataDir;
+        config.cacheDir = cacheDir;
+        return config;
+    }
+
+    private static String required(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) throw new IllegalArgumentException("Missing " + key);
+        return value.trim();
+    }
+
+    private static int integer(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) return defaultValue;
+        return integers(value, 1, key)[0];
+    }
+
+    private static int[] integers(String value, int count, String key) {
+        String[] parts = value.split(",");
+        if (parts.length != count) throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        int[] integers = new int[count];
+        try {
+            for (int i = 0; i < count; i++) integers[i] = Integer.parseInt(parts[i].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+        return integers;
+    }
+}
@@ -23,3 +23,7 @@ dependencyResolutionManagement {
 
 rootProject.name = "ofeed_sidroid_connector"
 include(":app")
+include(":core")
+include(":daemon")
+include(":simulator")
+include(":benchmark")
@@ -0,0 +1,18 @@
+// Stand-ins for the servers the app talks to, for load tests on a plain JVM. No Android dependencies.
+plugins {
+    `java-library`
+}
+
+// Set build directory outside Android Studio development environment.
+var externalBuildDir = project.findProperty("EXTERNAL_BUILD_DIR") as String
+layout.buildDirectory.set(File("${externalBuildDir}${project.name}"))
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    // Replays journals of the app, see ReplaySource.
+    implementation(project(":core"))
+}
@@ -0,0 +1,62 @@
+package com.orienteerfeed.ofeed_sidroid_connector.simulator;
+
+/**
+ * Shape of the finish rate over an event, as the share of the competitors who have finished at
+ * each point of the event, from 0 at the first start to 1 at the end of the event.
+ */
+public enum FinishCurve {
+    /**
+     * Competitors finish at a steady rate.
+     */
+    UNIFORM,
+    /**
+     * The finish rate peaks in the middle of the event, as with a start list of even density and
+     * running times of some spread.
+     */
+    PEAK,
+    /**
+     * Most competitors finish early, eg, a chasing start or a short course event.
+     */
+    EARLY,
+    /**
+     * Most competitors finish late, eg, a mass start of long courses.
+     */
+    LATE;
+
+    /**
+     * Get the share of the competitors who have finished.
+     *
+     * @param t Point of the event, from 0 (first start) to 1 (end).
+     * @return Share finished, from 0 to 1.
+     */
+    public double finishedShare(double t) {
+        t = Math.max(0, Math.min(1, t));
+        switch (this) {
+            case PEAK:
+                return t * t * (3 - 2 * t);
+            case EARLY:
+                return 1 - (1 - t) * (1 - t);
+            case LATE:
+                return t * t;
+            default:
+                return t;
+        }
+    }
+
+    /**
+     * Get the point of the event when a share of the competitors have finished, ie, the inverse
+     * of {@link #finishedShare(double)}.
+     *
+     * @param share Share finished, from 0 to 1.
+     * @return Point of the event, from 0 to 1.
+     */
+    public double timeOfShare(double share) {
+        double low = 0, high = 1;
+        for (int i = 0; i < 40; i++) {
+            double mid = (low + high) / 2;
+            if (finishedShare(mid) < share) low = mid;
+            else high = mid;
+        }
+        return (low + high) / 2;
+    }
+}
@@ -0,0 +1,607 @@
+package com.orienteerfeed.ofeed_sidroid_connector.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Stand-in for the OFeed upload endpoint {@link #UPLOAD_PATH}, for tuning the timeouts, retries
+ * and cadence of the app. Runs in-process on the loopback interface, so it needs no network.
+ * <p>
+ * Each upload is validated like OFeed does: a multipart form with an {@code eventId} field
+ * matching the event, Basic authorization with the event id and password, and a {@code file}
+ * part with a well-formed result list. Gzip request bodies ({@code Content-Encoding: gzip}) are
+ * accepted. Every upload received is recorded as an {@link Upload}, also rejected ones, so tests
+ * can assert on the number and sizes of the uploads.
+ * <p>
+ * Partial result lists, {@code <ResultList status="Delta">}, are merged into the results of the
+ * latest whole result list, see {@link #getResults()}, so tests can check that the partial
+ * uploads of the app add up to the whole result list.
+ * <p>
+ * The {@link Profile} in use simulates a slow or failing server: limited bandwidth, slow time to
+ * first byte, bursts of 429 or 5xx responses with {@code Retry-After}, and dropped connections.
+ * It can be changed while running.
+ */
+public final class OFeedStandIn implements AutoCloseable {
+
+    /**
+     * Path of the upload endpoint, as in the default OFeed server of the app.
+     */
+    public static final String UPLOAD_PATH = "/rest/v1/upload/iof";
+
+    // *********************************************************************************************
+    // Profile.
+    // *********************************************************************************************
+
+    /**
+     * Behaviour of the server. Setters return this profile, for chaining. The default profile is
+     * a fast and reliable server.
+     */
+    public static final class Profile {
+        long ttfbMillis = 0;
+        long bytesPerSecond = 0;
+        int burstEvery = 0, burstLength = 0, burstCode = 503;
+        long retryAfterSec = -1;
+        int dropEvery = 0;
+        boolean rejectDelta = false;
+
+        /**
+         * Time from the request received until the response starts (ms).
+         */
+        public Profile ttfbMillis(long ttfbMillis) {
+            this.ttfbMillis = Math.max(0, ttfbMillis);
+            return this;
+        }
+
+        /**
+         * Bandwidth of the request body and the response, in bytes per second. 0 for unlimited.
+         */
+        public Profile bandwidth(long bytesPerSecond) {
+            this.bytesPerSecond = Math.max(0, bytesPerSecond);
+            return this;
+        }
+
+        /**
+         * Respond with an error to a burst of uploads, after each number of uploads.
+         *
+         * @param every         Uploads between bursts, eg, 10 for a burst after each 10 uploads.
+         *                      0 for no bursts.
+         * @param length        Number of uploads of each burst.
+         * @param code          HTTP status code of the burst, eg, 429 or 503.
+         * @param retryAfterSec Value of the Retry-After header (s), -1 for no header.
+         */
+        public Profile failureBurst(int every, int length, int code, long retryAfterSec) {
+            this.burstEvery = Math.max(0, every);
+            this.burstLength = Math.max(0, length);
+            this.burstCode = code;
+            this.retryAfterSec = retryAfterSec;
+            return this;
+        }
+
+        /**
+         * Drop the connection of each nth upload, after the request has been read, without a
+         * response. 0 for no dropped connections.
+         */
+        public Profile dropEvery(int n) {
+            this.dropEvery = Math.max(0, n);
+            return this;
+        }
+
+        /**
+         * Respond 400 to partial result lists, like a server which does not accept them.
+         */
+        public Profile rejectDelta(boolean rejectDelta) {
+            this.rejectDelta = rejectDelta;
+            return this;
+        }
+    }
+
+    // *********************************************************************************************
+    // Upload.
+    // *********************************************************************************************
+
+    /**
+     * An upload received.
+     */
+    public static final class Upload {
+        /**
+         * Time the upload was received (epoch ms).
+         */
+        public final long timeMillis;
+        /**
+         * The eventId field, null if missing.
+         */
+        public final String eventId;
+        /**
+         * Size of the request body as received, ie, compressed if gzip.
+         */
+        public final long bodyBytes;
+        /**
+         * True if the request body was compressed with gzip.
+         */
+        public final boolean gzip;
+        /**
+         * The result list, null if missing.
+         */
+        public final byte[] resultList;
+        /**
+         * True if the result list is partial, {@code <ResultList status="Delta">}.
+         */
+        public final boolean delta;
+        /**
+         * HTTP status code of the response, or -1 if the connection was dropped.
+         */
+        public final int responseCode;
+
+        Upload(long timeMillis, String eventId, long bodyBytes, boolean gzip, byte[] resultList, boolean delta,
+               int responseCode) {
+            this.timeMillis = timeMillis;
+            this.eventId = eventId;
+            this.bodyBytes = bodyBytes;
+            this.gzip = gzip;
+            this.resultList = resultList;
+            this.delta = delta;
+            this.responseCode = responseCode;
+        }
+
+        /**
+         * True if the upload was accepted.
+         */
+        public boolean isAccepted() {
+            return responseCode == 200;
+        }
+
+        /**
+         * Get the result list as text, empty if missing.
+         */
+        public String getResultList() {
+            return resultList == null ? "" : new String(resultList, StandardCharsets.UTF_8);
+        }
+    }
+
+    // *********************************************************************************************
+    // Member fields.
+    // *********************************************************************************************
+
+    private final String eventId, authorization;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile Profile profile = new Profile();
+
+    // Guarded by this.
+    private final List<Upload> uploads = new ArrayList<>();
+    private long received = 0, sinceBurst = 0, burstLeft = 0;
+    private final Map<String, String> results = new LinkedHashMap<>();
+
+    // *********************************************************************************************
+    // Constructor.
+    // *********************************************************************************************
+
+    /**
+     * Start the stand-in.
+     *
+     * @param eventId       The OFeed event id.
+     * @param eventPassword The OFeed event password.
+     * @param port          Port on the loopback interface, 0 for any free port, see {@link #getPort()}.
+     */
+    public OFeedStandIn(String eventId, String eventPassword, int port) throws IOException {
+        this.eventId = eventId;
+        authorization = "Basic " + Base64.getEncoder().encodeToString(
+                (eventId + ":" + eventPassword).getBytes(StandardCharsets.UTF_8));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 50);
+        server.createContext(UPLOAD_PATH, this::upload);
+        server.createContext("/", this::other);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "OFeedStandIn");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    // *********************************************************************************************
+    // Methods.
+    // *********************************************************************************************
+
+    /**
+     * Get the port the stand-in listens on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Get the URL of the upload endpoint, for the app or the test.
+     */
+    public String getUploadUrl() {
+        return "http://localhost:" + getPort() + UPLOAD_PATH;
+    }
+
+    /**
+     * Set the behaviour of the server, from the next upload.
+     */
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Get the uploads received so far, oldest first.
+     */
+    public synchronized List<Upload> getUploads() {
+        return Collections.unmodifiableList(new ArrayList<>(uploads));
+    }
+
+    /**
+     * Get the number of uploads accepted so far.
+     */
+    public synchronized int getAcceptedCount() {
+        int count = 0;
+        for (Upload upload : uploads) if (upload.isAccepted()) count++;
+        return count;
+    }
+
+    /**
+     * Get the results as OFeed would show them: the PersonResults of the latest whole result
+     * list, updated by the partial result lists accepted since, see {@link #personResults(String)}.
+     */
+    public synchronized Map<String, String> getResults() {
+        return new LinkedHashMap<>(results);
+    }
+
+    /**
+     * Get the PersonResults of a result list, keyed by class name and Person Id, eg, to compare
+     * the whole result list with {@link #getResults()}. Each PersonResult is serialized as XML.
+     */
+    public static Map<String, String> personResults(String resultList) throws IOException {
+        Document document = parse(resultList.getBytes(StandardCharsets.UTF_8));
+        if (document == null) throw new IOException("Malformed result list");
+        return personResults(document);
+    }
+
+    /**
+     * Wait until a number of uploads have been received, accepted or not.
+     *
+     * @param count         Number of uploads.
+     * @param timeoutMillis Max time to wait (ms).
+     * @return True if the uploads were received in time.
+     */
+    public synchronized boolean awaitUploads(int count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (uploads.size() < count) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Stop the stand-in.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Run the stand-in on its own.
+     *
+     * @param args Port, event id, event password, time to first byte (ms), bandwidth (bytes/s),
+     *             upload count between bursts of 503, and upload count between dropped
+     *             connections. All optional.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8081;
+        String eventId = args.length > 1 ? args[1] : "1";
+        String eventPassword = args.length > 2 ? args[2] : "password";
+        Profile profile = new Profile();
+        if (args.length > 3) profile.ttfbMillis(Long.parseLong(args[3]));
+        if (args.length > 4) profile.bandwidth(Long.parseLong(args[4]));
+        if (args.length > 5) profile.failureBurst(Integer.parseInt(args[5]), 3, 503, 10);
+        if (args.length > 6) profile.dropEvery(Integer.parseInt(args[6]));
+        OFeedStandIn standIn = new OFeedStandIn(eventId, eventPassword, port);
+        standIn.setProfile(profile);
+        System.out.println("Serving " + standIn.getUploadUrl() + " for event " + eventId);
+        Thread.currentThread().join();
+    }
+
+    // *********************************************************************************************
+    // Handlers.
+    // *********************************************************************************************
+
+    private void upload(HttpExchange exchange) throws IOException {
+        Profile profile = this.profile;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, profile, 405, "{\"error\":\"Method not allowed\"}", -1);
+                return;
+            }
+            byte[] body = read(exchange.getRequestBody(), profile);
+            long receivedMillis = System.currentTimeMillis();
+            boolean gzip = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+            Map<String, byte[]> parts = null;
+            try {
+                byte[] form = gzip ? new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes() : body;
+                parts = parseMultipart(exchange.getRequestHeaders().getFirst("Content-Type"), form);
+            } catch (IOException e) {
+                // Bad gzip or form, rejected below.
+            }
+            String formEventId = parts == null || !parts.containsKey("eventId") ? null
+                    : new String(parts.get("eventId"), StandardCharsets.UTF_8);
+            byte[] resultList = parts == null ? null : parts.get("file");
+            Document document = resultList == null ? null : parse(resultList);
+            boolean delta = document != null && "Delta".equals(document.getDocumentElement().getAttribute("status"));
+
+            // Scripted failures come first, as from a proxy in front of OFeed.
+            int code;
+            String message;
+            long retryAfterSec = -1;
+            boolean drop = false;
+            synchronized (this) {
+                received++;
+                if (profile.dropEvery > 0 && received % profile.dropEvery == 0) {
+                    drop = true;
+                    code = -1;
+                } else if (burstLeft > 0 || (profile.burstEvery > 0 && ++sinceBurst > profile.burstEvery)) {
+                    if (burstLeft == 0) burstLeft = profile.burstLength;
+                    sinceBurst = 0;
+                    burstLeft--;
+                    code = profile.burstCode;
+                    retryAfterSec = profile.retryAfterSec;
+                } else {
+                    code = 0;
+                }
+            }
+            if (code == 0) {
+                if (!authorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                    code = 401;
+                    message = "Unauthorized";
+                } else if (!eventId.equals(formEventId)) {
+                    code = 400;
+                    message = "Missing or wrong eventId";
+                } else if (document == null) {
+                    code = 400;
+                    message = "Missing or malformed result list";
+                } else if (delta && profile.rejectDelta) {
+                    code = 400;
+                    message = "Partial result lists not accepted";
+                } else {
+                    code = 200;
+                    message = "Results uploaded";
+                }
+            } else {
+                message = code == 429 ? "Too many requests" : "Service unavailable";
+            }
+            Map<String, String> uploaded = code == 200 ? personResults(document) : null;
+            synchronized (this) {
+                if (uploaded != null) {
+                    if (!delta) results.clear();
+                    results.putAll(uploaded);
+                }
+                uploads.add(new Upload(receivedMillis, formEventId, body.length, gzip, resultList, delta, code));
+                notifyAll();
+            }
+            if (drop) return;   // Closed without a response.
+            respond(exchange, profile, code, "{\"message\":\"" + message + "\"}", retryAfterSec);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void other(HttpExchange exchange) throws IOException {
+        // Eg, HEAD / of the pre-connect of the app.
+        try {
+            read(exchange.getRequestBody(), new Profile());
+            boolean root = "/".equals(exchange.getRequestURI().getPath());
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(root ? 200 : 404, -1);
+            } else {
+                respond(exchange, profile, root ? 200 : 404, root ? "{\"message\":\"OFeed stand-in\"}" : "{\"error\":\"Not found\"}", -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // *********************************************************************************************
+    // Helpers.
+    // *********************************************************************************************
+
+    private static void respond(HttpExchange exchange, Profile profile, int code, String json, long retryAfterSec) throws IOException {
+        sleep(profile.ttfbMillis);
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (retryAfterSec >= 0) exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSec));
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            write(out, body, profile);
+        }
+    }
+
+    /**
+     * Read a stream, at the bandwidth of the profile.
+     */
+    private static byte[] read(InputStream in, Profile profile) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[chunkSize(profile)];
+        long startNanos = System.nanoTime();
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            throttle(out.size(), startNanos, profile);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write to a stream, at the bandwidth of the profile.
+     */
+    private static void write(OutputStream out, byte[] bytes, Profile profile) throws IOException {
+        int chunk = chunkSize(profile);
+        long startNanos = System.nanoTime();
+        for (int offset = 0; offset < bytes.length; offset += chunk) {
+            int n = Math.min(chunk, bytes.length - offset);
+            out.write(bytes, offset, n);
+            out.flush();
+            throttle(offset + n, startNanos, profile);
+        }
+    }
+
+    private static int chunkSize(Profile profile) {
+        // About 20 chunks a second when throttled.
+        return profile.bytesPerSecond == 0 ? 64 * 1024 : (int) Math.max(256, Math.min(64 * 1024, profile.bytesPerSecond / 20));
+    }
+
+    /**
+     * Sleep until the bytes transferred since the start are within the bandwidth of the profile.
+     */
+    private static void throttle(long bytes, long startNanos, Profile profile) {
+        if (profile.bytesPerSecond == 0) return;
+        long dueMillis = bytes * 1_000 / profile.bytesPerSecond;
+        sleep(dueMillis - (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parse a multipart/form-data body into its parts, by name.
+     */
+    static Map<String, byte[]> parseMultipart(String contentType, byte[] body) throws IOException {
+        if (contentType == null || !contentType.startsWith("multipart/form-data")) throw new IOException("Not multipart");
+        int b = contentType.indexOf("boundary=");
+        if (b < 0) throw new IOException("No boundary");
+        String boundary = contentType.substring(b + "boundary=".length()).replace("\"", "").trim();
+        byte[] delimiter = ("--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        Map<String, byte[]> parts = new HashMap<>();
+        int position = indexOf(body, delimiter, 0);
+        if (position < 0) throw new IOException("No parts");
+        while (true) {
+            position += delimiter.length;
+            if (position + 2 <= body.length && body[position] == '-' && body[position + 1] == '-') break;   // Last.
+            position += 2;  // CRLF.
+            int headersEnd = indexOf(body, "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1), position);
+            if (headersEnd < 0) throw new IOException("Malformed part");
+            String headers = new String(body, position, headersEnd - position, StandardCharsets.UTF_8);
+            int next = indexOf(body, delimiter, headersEnd + 4);
+            if (next < 0) throw new IOException("Unterminated part");
+            int contentEnd = next - 2;  // CRLF before the delimiter.
+            String name = null;
+            for (String header : headers.split("\r\n")) {
+                if (!header.toLowerCase().startsWith("content-disposition:")) continue;
+                int n = header.indexOf("name=\"");
+                if (n >= 0) name = header.substring(n + 6, header.indexOf('"', n + 6));
+            }
+            if (name != null) {
+                byte[] content = new byte[Math.max(0, contentEnd - (headersEnd + 4))];
+                System.arraycopy(body, headersEnd + 4, content, 0, content.length);
+                parts.put(name, content);
+            }
+            position = next;
+        }
+        return parts;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Parse a result list, null if it is malformed.
+     */
+    private static Document parse(byte[] xml) {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> personResults(Document document) throws IOException {
+        Map<String, String> personResults = new LinkedHashMap<>();
+        try {
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            NodeList classResults = document.getElementsByTagNameNS("*", "ClassResult");
+            for (int i = 0; i < classResults.getLength(); i++) {
+                Element classResult = (Element) classResults.item(i);
+                String className = childText(child(classResult, "Class"), "Name");
+                for (Node node = classResult.getFirstChild(); node != null; node = node.getNextSibling()) {
+                    if (!(node instanceof Element) || !"PersonResult".equals(node.getLocalName())) continue;
+                    Element person = child((Element) node, "Person");
+                    String id = childText(person, "Id");
+                    StringWriter writer = new StringWriter();
+                    transformer.transform(new DOMSource(node), new StreamResult(writer));
+                    personResults.put(className + " / " + (id.isEmpty() ? childText(child(person, "Name"), "Family") : id),
+                            writer.toString());
+                }
+            }
+        } catch (TransformerException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return personResults;
+    }
+
+    private static Element child(Element parent, String name) {
+        if (parent == null) return null;
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && name.equals(node.getLocalName())) return (Element) node;
+        }
+        return null;
+    }
+
+    private static String childText(Element parent, String name) {
+        Element child = child(parent, name);
+        return child == null ? "" : child.getTextContent().trim();
+    }
+}
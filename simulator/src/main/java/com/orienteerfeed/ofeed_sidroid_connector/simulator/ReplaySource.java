@@ -0,0 +1,188 @@
+package com.orienteerfeed.ofeed_sidroid_connector.simulator;
+
+import com.orienteerfeed.ofeed_sidroid_connector.ReplayJournal;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for SI-Droid Event, replaying the result lists of a {@link ReplayJournal} recorded
+ * during an event, at {@link SiDroidSimulator#RESULTS_PATH}. The time of a {@link SimulatedClock}
+ * is the time from the first result list of the journal, so the event is replayed in real time
+ * at speed 1, or accelerated. Each request gets the latest result list fetched at or before that
+ * time, as recorded.
+ * <p>
+ * {@code GET /} responds 200, like SI-Droid. The result list is sent with chunked transfer
+ * encoding, like SI-Droid.
+ * <p>
+ * Usage: {@code java ReplaySource journal [port [speed]]}.
+ */
+public final class ReplaySource implements AutoCloseable {
+
+    private final SimulatedClock clock;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    // Guarded by reader.
+    private final ReplayJournal.Reader reader;
+    private final long firstMillis;
+    private ReplayJournal.Snapshot current, next;
+
+    /**
+     * Start replaying a journal.
+     *
+     * @param journal The journal file.
+     * @param clock   Time from the first result list of the journal.
+     * @param port    Port on the loopback interface, 0 for any free port, see {@link #getPort()}.
+     * @throws IOException If the journal can not be read, or has no result list.
+     */
+    public ReplaySource(File journal, SimulatedClock clock, int port) throws IOException {
+        this.clock = clock;
+        reader = new ReplayJournal.Reader(journal);
+        current = reader.next();
+        if (current == null) {
+            reader.close();
+            throw new IOException("No result list in " + journal);
+        }
+        firstMillis = current.timeMillis;
+        next = reader.next();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 50);
+        server.createContext(SiDroidSimulator.RESULTS_PATH, this::results);
+        server.createContext("/", this::ping);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ReplaySource");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Get the port the replay listens on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Get the URL of the result list, for the app or the test.
+     */
+    public String getResultsUrl() {
+        return "http://localhost:" + getPort() + SiDroidSimulator.RESULTS_PATH;
+    }
+
+    /**
+     * Get the number of result lists served.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Get the duration of the replayed event (ms), from the first to the last result list read
+     * so far.
+     */
+    public long getElapsedMillis() {
+        synchronized (reader) {
+            return current.timeMillis - firstMillis;
+        }
+    }
+
+    /**
+     * Check if the last result list of the journal is being served.
+     */
+    public boolean isFinished() {
+        synchronized (reader) {
+            return next == null;
+        }
+    }
+
+    /**
+     * Stop the replay.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        synchronized (reader) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Nothing more to read.
+            }
+        }
+    }
+
+    /**
+     * Get the latest result list fetched at or before the time of the clock.
+     */
+    private ReplayJournal.Snapshot current() throws IOException {
+        long now = clock.now();
+        synchronized (reader) {
+            while (next != null && next.timeMillis - firstMillis <= now) {
+                current = next;
+                next = reader.next();
+            }
+            return current;
+        }
+    }
+
+    private void results(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            requests.incrementAndGet();
+            ReplayJournal.Snapshot snapshot = current();
+            exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);   // Chunked.
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(snapshot.content);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void ping(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = "SI-Droid replay\n".getBytes(StandardCharsets.UTF_8);
+            boolean head = "HEAD".equals(exchange.getRequestMethod());
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders("/".equals(exchange.getRequestURI().getPath()) ? 200 : 404, head ? -1 : body.length);
+            if (!head) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Replay a journal until the process is killed.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplaySource <journal> [port [speed]]");
+            System.exit(2);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+        ReplaySource replay = new ReplaySource(new File(args[0]), new SimulatedClock(speed), port);
+        System.out.println("Replaying " + args[0] + " at " + replay.getResultsUrl() + " at " + speed + "x");
+        Thread.currentThread().join();
+    }
+}
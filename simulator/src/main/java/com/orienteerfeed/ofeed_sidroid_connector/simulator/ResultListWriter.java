@@ -0,0 +1,113 @@
+package com.orienteerfeed.ofeed_sidroid_connector.simulator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the results of a {@link SimulatedEvent} at a simulated time as an IOF XML 3.0 result
+ * list, like the {@code /reports/ResultsIof30Xml} report of SI-Droid Event. The result list is
+ * written one competitor at a time, so it is never held in memory as a whole.
+ */
+public final class ResultListWriter {
+
+    private static final DateTimeFormatter ISO = DateTimeFormatter.ISO_INSTANT;
+
+    private ResultListWriter() {
+    }
+
+    /**
+     * Write the result list.
+     *
+     * @param event           The event.
+     * @param simulatedMillis Simulated time (ms from the first start). Only the competitors who
+     *                        have finished by then are included.
+     * @param writer          The result list is written to this.
+     */
+    public static void write(SimulatedEvent event, long simulatedMillis, Writer writer) throws IOException {
+        Instant firstStart = event.getConfig().firstStart;
+
+        // Group the competitors who have finished by class, in order of result.
+        Map<SimulatedEvent.EventClass, List<SimulatedEvent.Competitor>> byClass = new HashMap<>();
+        for (SimulatedEvent.Competitor competitor : event.getFinished(simulatedMillis)) {
+            byClass.computeIfAbsent(competitor.eventClass, c -> new ArrayList<>()).add(competitor);
+        }
+
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<ResultList xmlns=\"http://www.orienteering.org/datastandard/3.0\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" iofVersion=\"3.0\" createTime=\""
+                + format(firstStart, simulatedMillis) + "\" creator=\"SI-Droid simulator\" status=\"Snapshot\">\n");
+        writer.write("  <Event>\n    <Name>Simulated event</Name>\n    <StartTime><Date>"
+                + firstStart.toString().substring(0, 10) + "</Date></StartTime>\n  </Event>\n");
+        StringBuilder sb = new StringBuilder(1024);
+        for (SimulatedEvent.EventClass eventClass : event.getClasses()) {
+            List<SimulatedEvent.Competitor> competitors = byClass.get(eventClass);
+            if (competitors == null) continue;
+            competitors.sort((a, b) -> {
+                if (a.status != b.status) return a.status.compareTo(b.status);
+                return Long.compare(a.timeMillis(), b.timeMillis());
+            });
+            writer.write("  <ClassResult>\n    <Class>\n      <Name>");
+            writer.write(escape(eventClass.name));
+            writer.write("</Name>\n    </Class>\n");
+            long winnerMillis = competitors.get(0).timeMillis();
+            int position = 0;
+            for (SimulatedEvent.Competitor competitor : competitors) {
+                sb.setLength(0);
+                boolean ok = competitor.status == SimulatedEvent.Status.OK;
+                if (ok) position++;
+                appendPersonResult(sb, competitor, firstStart, ok ? position : 0, winnerMillis);
+                writer.write(sb.toString());
+            }
+            writer.write("  </ClassResult>\n");
+        }
+        writer.write("</ResultList>\n");
+    }
+
+    private static void appendPersonResult(StringBuilder sb, SimulatedEvent.Competitor competitor, Instant firstStart,
+                                           int position, long winnerMillis) {
+        sb.append("    <PersonResult>\n      <Person>\n        <Name>\n          <Family>")
+                .append(escape(competitor.family)).append("</Family>\n          <Given>")
+                .append(escape(competitor.given)).append("</Given>\n        </Name>\n      </Person>\n")
+                .append("      <Organisation>\n        <Name>").append(escape(competitor.organisation))
+                .append("</Name>\n      </Organisation>\n      <Result>\n");
+        sb.append("        <StartTime>").append(format(firstStart, competitor.startMillis)).append("</StartTime>\n");
+        sb.append("        <FinishTime>").append(format(firstStart, competitor.finishMillis)).append("</FinishTime>\n");
+        if (competitor.status != SimulatedEvent.Status.DID_NOT_FINISH) {
+            sb.append("        <Time>").append(competitor.timeMillis() / 1_000).append("</Time>\n");
+        }
+        if (position > 0) {
+            sb.append("        <TimeBehind>").append((competitor.timeMillis() - winnerMillis) / 1_000).append("</TimeBehind>\n");
+            sb.append("        <Position>").append(position).append("</Position>\n");
+        }
+        sb.append("        <Status>").append(competitor.status.iof).append("</Status>\n");
+        int[] codes = competitor.eventClass.controlCodes;
+        for (int i = 0; i < codes.length; i++) {
+            long split = competitor.splitMillis[i];
+            if (split < 0) {
+                sb.append("        <SplitTime status=\"Missing\">\n          <ControlCode>").append(codes[i])
+                        .append("</ControlCode>\n        </SplitTime>\n");
+            } else {
+                sb.append("        <SplitTime>\n          <ControlCode>").append(codes[i])
+                        .append("</ControlCode>\n          <Time>").append(split / 1_000).append("</Time>\n        </SplitTime>\n");
+            }
+        }
+        sb.append("        <ControlCard>").append(competitor.controlCard).append("</ControlCard>\n");
+        sb.append("      </Result>\n    </PersonResult>\n");
+    }
+
+    private static String format(Instant firstStart, long simulatedMillis) {
+        return ISO.format(firstStart.plusMillis(simulatedMillis).truncatedTo(ChronoUnit.SECONDS));
+    }
+
+    private static String escape(String text) {
+        if (text.indexOf('&') < 0 && text.indexOf('<') < 0 && text.indexOf('>') < 0) return text;
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
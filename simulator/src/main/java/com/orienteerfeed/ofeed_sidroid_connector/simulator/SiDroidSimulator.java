@@ -0,0 +1,141 @@
+package com.orienteerfeed.ofeed_sidroid_connector.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for SI-Droid Event, serving the result list of a {@link SimulatedEvent} at
+ * {@link #RESULTS_PATH}, as it stands at the time of a {@link SimulatedClock}. Runs in-process
+ * on the loopback interface, so it needs no network, and serves any number of requests at once.
+ * <p>
+ * {@code GET /} responds 200, like SI-Droid, so the app sees the simulator as reachable.
+ * The result list is streamed, with chunked transfer encoding, like SI-Droid.
+ * <p>
+ * Usage: {@code java SiDroidSimulator [port [competitors [classes [controls [speed]]]]]}, eg,
+ * port 8080 for the default URL of the app, see {@code Preferences.SI_DROID_URL}.
+ */
+public final class SiDroidSimulator implements AutoCloseable {
+
+    /**
+     * Path of the result list, as in {@code Preferences.SI_DROID_URL}.
+     */
+    public static final String RESULTS_PATH = "/reports/ResultsIof30Xml";
+
+    private final SimulatedEvent event;
+    private final SimulatedClock clock;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Start the simulator.
+     *
+     * @param event The event.
+     * @param clock Simulated time of the event.
+     * @param port  Port on the loopback interface, 0 for any free port, see {@link #getPort()}.
+     */
+    public SiDroidSimulator(SimulatedEvent event, SimulatedClock clock, int port) throws IOException {
+        this.event = event;
+        this.clock = clock;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 50);
+        server.createContext(RESULTS_PATH, this::results);
+        server.createContext("/", this::ping);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "SiDroidSimulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Get the port the simulator listens on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Get the URL of the result list, for the app or the test.
+     */
+    public String getResultsUrl() {
+        return "http://localhost:" + getPort() + RESULTS_PATH;
+    }
+
+    /**
+     * Get the number of result lists served.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Stop the simulator.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void results(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            requests.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);   // Chunked.
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 64 * 1024)) {
+                ResultListWriter.write(event, clock.now(), writer);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void ping(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = "SI-Droid simulator\n".getBytes(StandardCharsets.UTF_8);
+            boolean head = "HEAD".equals(exchange.getRequestMethod());
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders("/".equals(exchange.getRequestURI().getPath()) ? 200 : 404, head ? -1 : body.length);
+            if (!head) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Run the simulator until the process is killed.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        SimulatedEvent.Config config = new SimulatedEvent.Config();
+        if (args.length > 1) config.competitors(Integer.parseInt(args[1]));
+        if (args.length > 2) config.classes(Integer.parseInt(args[2]));
+        if (args.length > 3) config.controls(Integer.parseInt(args[3]));
+        double speed = args.length > 4 ? Double.parseDouble(args[4]) : 60;
+        SiDroidSimulator simulator = new SiDroidSimulator(new SimulatedEvent(config), new SimulatedClock(speed), port);
+        System.out.println("Serving " + simulator.getResultsUrl() + " at " + speed + "x");
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,63 @@
+package com.orienteerfeed.ofeed_sidroid_connector.simulator;
+
+/**
+ * Simulated time of an event, in milliseconds from the first start. Threadsafe.
+ * <p>
+ * The clock runs at a speed relative to real time, eg, 60 for one simulated minute per second,
+ * or stands still at speed 0, and is then moved by the test with {@link #set(long)} or
+ * {@link #advance(long)}.
+ */
+public final class SimulatedClock {
+
+    private final double speed;
+    // Guarded by this.
+    private long baseMillis;
+    private long baseNanos;
+
+    /**
+     * A clock at the first start.
+     *
+     * @param speed Simulated time per real time, 0 for a clock moved only by the test.
+     */
+    public SimulatedClock(double speed) {
+        this(speed, 0);
+    }
+
+    /**
+     * A clock at a simulated time.
+     *
+     * @param speed       Simulated time per real time, 0 for a clock moved only by the test.
+     * @param startMillis Simulated time now (ms from the first start).
+     */
+    public SimulatedClock(double speed, long startMillis) {
+        this.speed = Math.max(0, speed);
+        baseMillis = startMillis;
+        baseNanos = System.nanoTime();
+    }
+
+    /**
+     * Get the simulated time (ms from the first start).
+     */
+    public synchronized long now() {
+        return baseMillis + (long) ((System.nanoTime() - baseNanos) / 1e6 * speed);
+    }
+
+    /**
+     * Set the simulated time. The clock keeps running from there, if its speed is not 0.
+     *
+     * @param simulatedMillis Simulated time (ms from the first start).
+     */
+    public synchronized void set(long simulatedMillis) {
+        baseMillis = simulatedMillis;
+        baseNanos = System.nanoTime();
+    }
+
+    /**
+     * Move the simulated time forward.
+     *
+     * @param millis Simulated time to add (ms).
+     */
+    public synchronized void advance(long millis) {
+        set(now() + millis);
+    }
+}
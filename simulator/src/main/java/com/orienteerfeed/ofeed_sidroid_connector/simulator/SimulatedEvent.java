@@ -0,0 +1,348 @@
+package com.orienteerfeed.ofeed_sidroid_connector.simulator;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A synthetic orienteering event: classes, courses and competitors, with start and finish times
+ * and split times. Generated from a {@link Config}, and the same config always gives the same
+ * event.
+ * <p>
+ * Simulated time is measured in milliseconds from the first start. Competitors finish according
+ * to the {@link FinishCurve} of the config, from the first start until the end of the event.
+ * Each competitor's running time depends on the course of the class, with a log-normal spread,
+ * and the start time is the finish time less the running time. A small share of the competitors
+ * miss a punch or do not finish.
+ */
+public final class SimulatedEvent {
+
+    // *********************************************************************************************
+    // Config.
+    // *********************************************************************************************
+
+    /**
+     * Parameters of a simulated event. Setters return this config, for chaining.
+     */
+    public static final class Config {
+        int classes = 30;
+        int competitors = 5_000;
+        int controls = 12;
+        long durationMillis = 4 * 3_600_000L;
+        FinishCurve finishCurve = FinishCurve.PEAK;
+        double missingPunchShare = 0.015, didNotFinishShare = 0.01;
+        Instant firstStart = Instant.parse("2025-06-01T08:00:00Z");
+        long seed = 1;
+
+        /**
+         * Number of classes. Default 30.
+         */
+        public Config classes(int classes) {
+            this.classes = Math.max(1, classes);
+            return this;
+        }
+
+        /**
+         * Number of competitors, spread unevenly over the classes. Default 5,000.
+         */
+        public Config competitors(int competitors) {
+            this.competitors = Math.max(0, competitors);
+            return this;
+        }
+
+        /**
+         * Number of controls of each course, ie, split times per competitor. 0 for no split
+         * times. Default 12.
+         */
+        public Config controls(int controls) {
+            this.controls = Math.max(0, controls);
+            return this;
+        }
+
+        /**
+         * Time from the first start until the last competitor has finished (ms). Default 4 h.
+         */
+        public Config durationMillis(long durationMillis) {
+            this.durationMillis = Math.max(1, durationMillis);
+            return this;
+        }
+
+        /**
+         * Shape of the finish rate over the event. Default {@link FinishCurve#PEAK}.
+         */
+        public Config finishCurve(FinishCurve finishCurve) {
+            this.finishCurve = finishCurve;
+            return this;
+        }
+
+        /**
+         * Share of the competitors with a missing punch, and share who do not finish.
+         * Default 1.5 % and 1 %.
+         */
+        public Config failures(double missingPunchShare, double didNotFinishShare) {
+            this.missingPunchShare = missingPunchShare;
+            this.didNotFinishShare = didNotFinishShare;
+            return this;
+        }
+
+        /**
+         * Wall-clock time of the first start, for the times in the result list.
+         */
+        public Config firstStart(Instant firstStart) {
+            this.firstStart = firstStart;
+            return this;
+        }
+
+        /**
+         * Seed of the random generator. Default 1.
+         */
+        public Config seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+    }
+
+    // *********************************************************************************************
+    // Model.
+    // *********************************************************************************************
+
+    /**
+     * Status of a competitor, as in IOF XML 3.0.
+     */
+    enum Status {
+        OK("OK"),
+        MISSING_PUNCH("MissingPunch"),
+        DID_NOT_FINISH("DidNotFinish");
+
+        final String iof;
+
+        Status(String iof) {
+            this.iof = iof;
+        }
+    }
+
+    /**
+     * A class and its course.
+     */
+    static final class EventClass {
+        final String name;
+        final int[] controlCodes;
+
+        EventClass(String name, int[] controlCodes) {
+            this.name = name;
+            this.controlCodes = controlCodes;
+        }
+    }
+
+    /**
+     * A competitor and the result, known once the competitor has finished.
+     */
+    static final class Competitor {
+        final EventClass eventClass;
+        final String given, family, organisation;
+        final int controlCard;
+        final long startMillis, finishMillis;
+        final Status status;
+        /**
+         * Time from the start to each control (ms), -1 for a missing punch.
+         */
+        final long[] splitMillis;
+
+        Competitor(EventClass eventClass, String given, String family, String organisation, int controlCard,
+                   long startMillis, long finishMillis, Status status, long[] splitMillis) {
+            this.eventClass = eventClass;
+            this.given = given;
+            this.family = family;
+            this.organisation = organisation;
+            this.controlCard = controlCard;
+            this.startMillis = startMillis;
+            this.finishMillis = finishMillis;
+            this.status = status;
+            this.splitMillis = splitMillis;
+        }
+
+        long timeMillis() {
+            return finishMillis - startMillis;
+        }
+    }
+
+    private static final String[] AGES = {"21", "35", "40", "45", "50", "55", "60", "65", "70", "75", "80",
+            "20", "18", "16", "14", "12", "10"};
+    private static final String[] GIVEN_MEN = {"Anders", "Bengt", "Carl", "David", "Erik", "Fredrik", "Gustav",
+            "Henrik", "Isak", "Johan", "Karl", "Lars", "Magnus", "Nils", "Olof", "Per", "Rasmus", "Stefan",
+            "Tomas", "Ulf", "Viktor", "William", "Axel", "Emil", "Oskar", "Hugo", "Liam", "Noah"};
+    private static final String[] GIVEN_WOMEN = {"Anna", "Birgitta", "Cecilia", "Disa", "Elin", "Frida",
+            "Greta", "Hanna", "Ida", "Johanna", "Karin", "Lena", "Maria", "Nora", "Olivia", "Petra", "Sara",
+            "Tove", "Ulla", "Vera", "Wilma", "Alva", "Ebba", "Maja", "Saga", "Stina", "Tilda", "Elsa"};
+    private static final String[] FAMILY = {"Andersson", "Johansson", "Karlsson", "Nilsson", "Eriksson",
+            "Larsson", "Olsson", "Persson", "Svensson", "Gustafsson", "Pettersson", "Jonsson", "Jansson",
+            "Hansson", "Bengtsson", "Lindberg", "Jakobsson", "Magnusson", "Lindström", "Olofsson", "Lindqvist",
+            "Lindgren", "Berg", "Axelsson", "Bergström", "Lundberg", "Lind", "Lundgren", "Mattsson", "Berglund",
+            "Fredriksson", "Sandberg", "Henriksson", "Forsberg", "Sjöberg", "Wallin", "Engström", "Eklund"};
+    private static final String[] CLUB_PREFIX = {"OK", "IFK", "SK", "OL", "IK", "OK"};
+    private static final String[] CLUB_NAME = {"Linné", "Ravinen", "Tisaren", "Skogsfalken", "Södertörn",
+            "Österåker", "Hällen", "Kåre", "Klyftamo", "Göteborg", "Lidingö", "Mora", "Pan", "Orion",
+            "Tyresö", "Denseln", "Älvsjö", "Rodhen", "Gävle", "Uppsala", "Vikingarna", "Kolmården",
+            "Eskilstuna", "Hagaby", "Borlänge", "Umeå", "Luleå", "Leksand", "Malung", "Sundsvall"};
+
+    private final Config config;
+    private final List<EventClass> classes = new ArrayList<>();
+    // Sorted by finish time.
+    private final List<Competitor> competitors = new ArrayList<>();
+
+    // *********************************************************************************************
+    // Constructor.
+    // *********************************************************************************************
+
+    /**
+     * Generate an event.
+     */
+    public SimulatedEvent(Config config) {
+        this.config = config;
+        Random random = new Random(config.seed);
+
+        // Classes, with a course and a mean running time each, and a share of the competitors.
+        double[] weights = new double[config.classes];
+        long[] meanMillis = new long[config.classes];
+        double totalWeight = 0;
+        for (int i = 0; i < config.classes; i++) {
+            classes.add(new EventClass(className(i), course(random, config.controls)));
+            weights[i] = (i < 2 ? 3.0 : 0.5 + random.nextDouble());   // The elite classes are the largest.
+            totalWeight += weights[i];
+            meanMillis[i] = (25 + random.nextInt(50)) * 60_000L;
+        }
+
+        // Finish times follow the finish curve, spread evenly over its quantiles.
+        List<Integer> order = new ArrayList<>(config.competitors);
+        for (int i = 0; i < config.competitors; i++) order.add(i);
+        Collections.shuffle(order, random);
+        double[] cumulative = new double[config.classes];
+        double sum = 0;
+        for (int i = 0; i < config.classes; i++) {
+            sum += weights[i] / totalWeight;
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < config.competitors; i++) {
+            double u = random.nextDouble();
+            int c = 0;
+            while (c < config.classes - 1 && cumulative[c] < u) c++;
+            EventClass eventClass = classes.get(c);
+            boolean women = c % 2 == 1;
+            long runMillis = (long) (meanMillis[c] * Math.exp(random.nextGaussian() * 0.25));
+            double share = (order.get(i) + 0.5) / config.competitors;
+            long finishMillis = (long) (config.finishCurve.timeOfShare(share) * config.durationMillis);
+            // Nobody starts before the first start.
+            finishMillis = Math.max(finishMillis, runMillis + random.nextInt(60_000));
+            long startMillis = finishMillis - runMillis;
+            double r = random.nextDouble();
+            Status status = r < config.missingPunchShare ? Status.MISSING_PUNCH
+                    : r < config.missingPunchShare + config.didNotFinishShare ? Status.DID_NOT_FINISH : Status.OK;
+            competitors.add(new Competitor(eventClass,
+                    pick(random, women ? GIVEN_WOMEN : GIVEN_MEN), pick(random, FAMILY),
+                    pick(random, CLUB_PREFIX) + " " + pick(random, CLUB_NAME),
+                    2_000_000 + i, startMillis, finishMillis, status,
+                    splits(random, eventClass.controlCodes.length, runMillis, status)));
+        }
+        competitors.sort(Comparator.comparingLong(competitor -> competitor.finishMillis));
+    }
+
+    // *********************************************************************************************
+    // Methods.
+    // *********************************************************************************************
+
+    /**
+     * Get the config the event was generated from.
+     */
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Get the number of competitors who have finished.
+     *
+     * @param simulatedMillis Simulated time (ms from the first start).
+     */
+    public int getFinishedCount(long simulatedMillis) {
+        int low = 0, high = competitors.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (competitors.get(mid).finishMillis <= simulatedMillis) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Get the classes, in the order of the result list.
+     */
+    List<EventClass> getClasses() {
+        return classes;
+    }
+
+    /**
+     * Get the competitors who have finished, in the order they finished.
+     *
+     * @param simulatedMillis Simulated time (ms from the first start).
+     */
+    List<Competitor> getFinished(long simulatedMillis) {
+        return competitors.subList(0, getFinishedCount(simulatedMillis));
+    }
+
+    // *********************************************************************************************
+    // Helpers.
+    // *********************************************************************************************
+
+    /**
+     * Get the name of a class: H21, D21, H35, D35, ..., and then open classes.
+     */
+    private static String className(int index) {
+        int age = index / 2;
+        if (age < AGES.length) return (index % 2 == 0 ? "H" : "D") + AGES[age];
+        return "Öppen " + (index - 2 * AGES.length + 1);
+    }
+
+    /**
+     * Get the control codes of a course, distinct, from 31 up.
+     */
+    private static int[] course(Random random, int controls) {
+        List<Integer> codes = new ArrayList<>();
+        for (int code = 31; code < 31 + Math.max(controls * 3, 30); code++) codes.add(code);
+        Collections.shuffle(codes, random);
+        int[] course = new int[controls];
+        for (int i = 0; i < controls; i++) course[i] = codes.get(i);
+        return course;
+    }
+
+    /**
+     * Get the split times, with legs of random length. One punch is missing for a missing punch,
+     * and the punches after a random control are missing for did not finish.
+     */
+    private static long[] splits(Random random, int controls, long runMillis, Status status) {
+        long[] splits = new long[controls];
+        if (controls == 0) return splits;
+        double[] legs = new double[controls + 1];  // The last leg is to the finish.
+        double total = 0;
+        for (int i = 0; i <= controls; i++) {
+            legs[i] = 0.5 + random.nextDouble();
+            total += legs[i];
+        }
+        double elapsed = 0;
+        for (int i = 0; i < controls; i++) {
+            elapsed += legs[i];
+            splits[i] = (long) (runMillis * elapsed / total);
+        }
+        if (status == Status.MISSING_PUNCH) {
+            splits[random.nextInt(controls)] = -1;
+        } else if (status == Status.DID_NOT_FINISH) {
+            for (int i = random.nextInt(controls); i < controls; i++) splits[i] = -1;
+        }
+        return splits;
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}